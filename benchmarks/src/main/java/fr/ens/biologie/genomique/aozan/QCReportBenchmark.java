@@ -0,0 +1,327 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
+import static fr.ens.biologie.genomique.aozan.collectors.SamplesheetCollector.SAMPLESHEET_DATA_PREFIX;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.ens.biologie.genomique.aozan.collectors.stats.ProjectStatisticsCollector;
+import fr.ens.biologie.genomique.aozan.collectors.stats.SampleStatisticsCollector;
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
+import fr.ens.biologie.genomique.aozan.tests.global.GlobalTest;
+import fr.ens.biologie.genomique.aozan.tests.global.ProjectCountGlobalTest;
+import fr.ens.biologie.genomique.aozan.tests.global.SampleCountGlobalTest;
+import fr.ens.biologie.genomique.aozan.tests.lane.LaneTest;
+import fr.ens.biologie.genomique.aozan.tests.lane.PFClusterCountLaneTest;
+import fr.ens.biologie.genomique.aozan.tests.lane.RawClusterCountLaneTest;
+import fr.ens.biologie.genomique.aozan.tests.pooledsample.PooledSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.pooledsample.RawClusterCountPooledSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.pooledsample.SampleInPoolCountPooledSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.project.LaneCountProjectTest;
+import fr.ens.biologie.genomique.aozan.tests.project.ProjectTest;
+import fr.ens.biologie.genomique.aozan.tests.project.RawClusterCountProjectTest;
+import fr.ens.biologie.genomique.aozan.tests.project.SampleCountProjectTest;
+import fr.ens.biologie.genomique.aozan.tests.sample.InLanePercentSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.sample.PFClusterCountSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.sample.PFPercentSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.sample.RawClusterCountSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.sample.SampleTest;
+
+/**
+ * This class define a benchmark of the generation of the QC report of a
+ * synthetic run with 4 lanes and 1,000 samples. The report is generated from a
+ * RunData already in memory and from a RunData read from a data file like
+ * when a report is generated again from the data of a previous execution.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QCReportBenchmark {
+
+  private static final int LANE_COUNT = 4;
+  private static final int PROJECT_COUNT = 20;
+
+  @Param({"1000"})
+  private int sampleCount;
+
+  private RunData data;
+  private File dataFile;
+
+  private final List<GlobalTest> globalTests = new ArrayList<>();
+  private final List<LaneTest> laneTests = new ArrayList<>();
+  private final List<ProjectTest> projectTests = new ArrayList<>();
+  private final List<PooledSampleTest> pooledSampleTests = new ArrayList<>();
+  private final List<SampleTest> sampleTests = new ArrayList<>();
+
+  /**
+   * Create the synthetic run data and the tests.
+   * @throws AozanException if an error occurs while configuring the tests
+   * @throws IOException if an error occurs while writing the data file
+   */
+  @Setup
+  public void setup() throws AozanException, IOException {
+
+    this.data = createRunData(this.sampleCount);
+    this.dataFile = File.createTempFile("qcreport-benchmark-", ".data");
+    this.data.createRunDataFile(this.dataFile);
+
+    addTests(this.globalTests, GlobalTest.class, new SampleCountGlobalTest(),
+        new ProjectCountGlobalTest());
+    addTests(this.laneTests, LaneTest.class, new RawClusterCountLaneTest(),
+        new PFClusterCountLaneTest());
+    addTests(this.projectTests, ProjectTest.class,
+        new RawClusterCountProjectTest(), new SampleCountProjectTest(),
+        new LaneCountProjectTest());
+    addTests(this.pooledSampleTests, PooledSampleTest.class,
+        new RawClusterCountPooledSampleTest(),
+        new SampleInPoolCountPooledSampleTest());
+    addTests(this.sampleTests, SampleTest.class,
+        new RawClusterCountSampleTest(), new PFClusterCountSampleTest(),
+        new PFPercentSampleTest(), new InLanePercentSampleTest());
+  }
+
+  /**
+   * Remove the data file.
+   */
+  @TearDown
+  public void tearDown() {
+
+    if (!this.dataFile.delete()) {
+      Common.getLogger().warning("Cannot remove file: " + this.dataFile);
+    }
+  }
+
+  @Benchmark
+  public String reportFromMemory() throws AozanException, IOException {
+
+    return createReport(this.data).toXML();
+  }
+
+  @Benchmark
+  public String reportFromDataFile() throws AozanException, IOException {
+
+    return createReport(new RunData(this.dataFile)).toXML();
+  }
+
+  @Benchmark
+  public QCTestEvaluator testsEvaluation() {
+
+    return new QCTestEvaluator(this.data, this.globalTests, this.laneTests,
+        this.projectTests, this.pooledSampleTests, this.sampleTests);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private QCReport createReport(final RunData data) {
+
+    return new QCReport(data, this.globalTests, this.laneTests,
+        this.projectTests, this.pooledSampleTests, this.sampleTests);
+  }
+
+  private static <T> void addTests(final List<T> list, final Class<T> clazz,
+      final AozanTest... tests) throws AozanException {
+
+    final TestConfiguration conf =
+        new TestConfiguration(Collections.<String, String> emptyMap());
+
+    for (AozanTest test : tests) {
+      for (AozanTest t : test.configure(conf)) {
+        list.add(clazz.cast(t));
+      }
+    }
+  }
+
+  /**
+   * Create the RunData of a synthetic run. The samples are spread over the
+   * lanes and each lane has an undetermined sample. The samples with the same
+   * name in the different lanes belong to the same pooled sample.
+   * @param sampleCount the number of samples of the run without the
+   *          undetermined samples
+   * @return a new RunData object
+   */
+  static RunData createRunData(final int sampleCount) {
+
+    final RunData data = new RunData();
+    final String ss = SAMPLESHEET_DATA_PREFIX;
+    final int samplesPerLane = sampleCount / LANE_COUNT;
+    final int tiles = 64;
+
+    // Run info
+    data.put("run.info.run.id", "170101_NB500000_0001_AHXXXXXXXX");
+    data.put("run.info.date", "170101");
+    data.put("run.info.flow.cell.id", "HXXXXXXXX");
+    data.put("run.info.sequencer.name", "NB500000");
+    data.put("run.info.read.count", 3);
+    data.put("run.info.indexed.read.count", 1);
+    data.put("run.info.flow.cell.lane.count", LANE_COUNT);
+    data.put("run.info.tiles.per.lane.count", tiles);
+    for (int read = 1; read <= 3; read++) {
+      data.put("run.info.read" + read + ".indexed", read == 2);
+      data.put("run.info.read" + read + ".cycles", read == 2 ? 8 : 151);
+    }
+
+    int sampleId = 0;
+    final List<List<Integer>> projectSamples = new ArrayList<>();
+    final List<List<Integer>> pooledSamples = new ArrayList<>();
+    for (int i = 0; i < PROJECT_COUNT; i++) {
+      projectSamples.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i <= samplesPerLane; i++) {
+      pooledSamples.add(new ArrayList<Integer>());
+    }
+
+    for (int lane = 1; lane <= LANE_COUNT; lane++) {
+
+      final List<String> laneSamples = new ArrayList<>();
+      long laneRaw = 0;
+
+      for (int i = 0; i <= samplesPerLane; i++) {
+
+        final boolean undetermined = i == samplesPerLane;
+        final int project = i % PROJECT_COUNT;
+        final String prefix = ss + ".sample" + ++sampleId;
+        final long raw = 1000000 + 7919L * sampleId;
+
+        laneSamples.add(Integer.toString(sampleId));
+        pooledSamples.get(i).add(sampleId);
+        laneRaw += raw;
+
+        data.put(prefix + ".lane", lane);
+        data.put(prefix + ".id", undetermined ? "" : "S" + i);
+        data.put(prefix + ".name", undetermined ? "" : "S" + i);
+        data.put(prefix + ".demux.name", undetermined
+            ? SampleStatisticsCollector.UNDETERMINED_SAMPLE : "S" + i);
+        data.put(prefix + ".project",
+            undetermined ? "" : "Project" + (project + 1));
+        data.put(prefix + ".description", "Sample " + i);
+        data.put(prefix + ".index",
+            undetermined ? "" : "ACGTACGT".substring(i % 4, i % 4 + 4));
+        data.put(prefix + ".indexed", !undetermined);
+        data.put(prefix + ".undetermined", undetermined);
+
+        if (!undetermined) {
+          projectSamples.get(project).add(sampleId);
+        }
+
+        data.put("demux.sample" + sampleId + ".read1.raw.cluster.count", raw);
+        data.put("demux.sample" + sampleId + ".read1.pf.cluster.count",
+            raw * 9 / 10);
+        data.put("demux.sample" + sampleId + ".read2.raw.cluster.count", raw);
+        data.put("demux.sample" + sampleId + ".read2.pf.cluster.count",
+            raw * 9 / 10);
+      }
+
+      data.put(ss + ".lane" + lane + ".samples", laneSamples);
+      data.put(ss + ".lane" + lane + ".indexed", true);
+
+      for (int read = 1; read <= 2; read++) {
+        data.put(
+            "demux.lane" + lane + ".all.read" + read + ".raw.cluster.count",
+            laneRaw);
+      }
+
+      for (int read = 1; read <= 3; read++) {
+        final String prefix =
+            READ_DATA_PREFIX + ".read" + read + ".lane" + lane;
+        data.put(prefix + ".clusters.raw", laneRaw / tiles);
+        data.put(prefix + ".clusters.pf", laneRaw * 9 / 10 / tiles);
+      }
+    }
+    data.put(ss + ".sample.count", sampleId);
+    data.put(READ_DATA_PREFIX + ".read1.lane1.tile.count", tiles);
+
+    // Projects
+    data.put(ss + ".project.count", PROJECT_COUNT);
+    for (int i = 1; i <= PROJECT_COUNT; i++) {
+
+      final String prefix = ProjectStatisticsCollector.COLLECTOR_PREFIX
+          + ".project" + i;
+      final List<Integer> samples = projectSamples.get(i - 1);
+
+      data.put(ss + ".project" + i + ".name", "Project" + i);
+      data.put(ss + ".project" + i + ".samples", toStrings(samples));
+      data.put(prefix + ".raw.cluster.sum", 1000000L * samples.size());
+      data.put(prefix + ".samples.count", samples.size());
+      data.put(prefix + ".lanes", LANE_COUNT);
+    }
+
+    // Pooled samples
+    data.put(ss + ".pooledsample.count", pooledSamples.size());
+    for (int i = 1; i <= pooledSamples.size(); i++) {
+
+      final boolean undetermined = i == pooledSamples.size();
+      final String prefix = ss + ".pooledsample" + i;
+      final List<Integer> samples = pooledSamples.get(i - 1);
+
+      data.put(prefix + ".demux.name", undetermined
+          ? SampleStatisticsCollector.UNDETERMINED_SAMPLE : "S" + (i - 1));
+      data.put(prefix + ".project",
+          undetermined ? 0 : (i - 1) % PROJECT_COUNT + 1);
+      data.put(prefix + ".project.name",
+          undetermined ? "" : "Project" + ((i - 1) % PROJECT_COUNT + 1));
+      data.put(prefix + ".index", "");
+      data.put(prefix + ".description", "");
+      data.put(prefix + ".samples", toStrings(samples));
+      data.put(prefix + ".undetermined", undetermined);
+      data.put(SampleStatisticsCollector.COLLECTOR_PREFIX
+          + ".pooledsample" + i + ".raw.cluster.sum",
+          1000000L * samples.size());
+    }
+
+    return data;
+  }
+
+  private static List<String> toStrings(final List<Integer> values) {
+
+    final List<String> result = new ArrayList<>(values.size());
+    for (int value : values) {
+      result.add(Integer.toString(value));
+    }
+
+    return result;
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This class define a benchmark of the getters of RunData used by the tests of
+ * the QC report, on the synthetic run data of QCReportBenchmark.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RunDataBenchmark {
+
+  @Param({"96", "1000"})
+  private int sampleCount;
+
+  private RunData data;
+
+  @Setup
+  public void setup() {
+
+    this.data = QCReportBenchmark.createRunData(this.sampleCount);
+  }
+
+  @Benchmark
+  public long sampleGetters() {
+
+    final RunData data = this.data;
+    long result = 0;
+
+    for (int lane = 1; lane <= data.getLaneCount(); lane++) {
+      for (int sampleId : data.getAllSamplesInLane(lane)) {
+
+        result += data.getSampleLane(sampleId);
+        result += data.getSampleDemuxName(sampleId).length();
+        result += data.getProjectSample(sampleId).length();
+        result += data.getSampleIndex(sampleId).length();
+        result += data.isUndeterminedSample(sampleId) ? 1 : 0;
+        result += data.getSampleRawClusterCount(sampleId, 1);
+        result += data.getSamplePFClusterCount(sampleId, 1);
+      }
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public long laneGetters() {
+
+    final RunData data = this.data;
+    long result = 0;
+
+    for (int read = 1; read <= data.getReadCount(); read++) {
+      for (int lane = 1; lane <= data.getLaneCount(); lane++) {
+
+        result += data.isReadIndexed(read) ? 1 : 0;
+        result += data.getSamplesInLane(lane).size();
+        result += data.getReadRawClusterCount(lane, read);
+        result += data.getReadPFClusterCount(lane, read);
+      }
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public long projectAndPooledSampleGetters() {
+
+    final RunData data = this.data;
+    long result = 0;
+
+    for (int projectId : data.getProjects()) {
+      result += data.getProjectName(projectId).length();
+      result += data.getSamplesInProject(projectId).size();
+    }
+
+    for (int pooledSampleId : data.getAllPooledSamples()) {
+      result += data.getPooledSampleDemuxName(pooledSampleId).length();
+      result += data.getSamplesInPooledSample(pooledSampleId).size();
+    }
+
+    return result;
+  }
+
+}
@@ -0,0 +1,1283 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static fr.ens.biologie.genomique.aozan.collectors.SamplesheetCollector.SAMPLESHEET_DATA_PREFIX;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Joiner;
+
+/**
+ * This class define a generator of synthetic run folders for the benchmarks.
+ * The generated run contains the RunInfo.xml, RunParameters.xml and sample
+ * sheet files, the InterOp files read by Aozan, the statistics files of
+ * bcl2fastq 2 and gzipped FASTQ files with Illumina read identifiers. The
+ * layout of the flow cell follows the layout of the chosen sequencer, from a
+ * MiSeq flow cell to a NovaSeq S4 flow cell. The InterOp files are written in
+ * the versions produced by RTA 1.18, that are the versions read by all the
+ * versions of Aozan. The generated data only depend on the seed of the
+ * generator.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public class SyntheticRunGenerator {
+
+  private static final String RUN_DATE = "170101";
+  private static final int RUN_NUMBER = 1;
+  private static final int PROJECT_COUNT = 4;
+  private static final int INDEX_LENGTH = 8;
+  private static final int MIN_INDEX_MISMATCHES = 3;
+  private static final double UNDETERMINED_RATIO = 0.05;
+  private static final double PF_RATIO = 0.9;
+  private static final double TILE_AREA = 0.9;
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  private final File runDir;
+  private final Scale scale;
+  private final int samplesPerLane;
+  private final int readsPerSample;
+  private final long seed;
+
+  private final String flowcellId;
+  private final String runId;
+  private final int[] tiles;
+  private final long[][] tileClusters;
+  private final String[][] indexes1;
+  private final String[][] indexes2;
+  private final double[][] sampleRatios;
+
+  /**
+   * This enum define the layout of the flow cells and the read structures of
+   * the sequencers.
+   */
+  public enum Scale {
+
+    MISEQ("M00000", "MiSeq Control Software", "000000000-A%s", 1, 2, 1, 19,
+        900000, false, 301, 8, 8, 301),
+    NEXTSEQ("NB500000", "NextSeq Control Software", "AH%sBGX2", 4, 2, 3, 12,
+        1400000, true, 151, 8, 8, 151),
+    HISEQ_4000("K00000", "HiSeq Control Software", "AH%sBBXX", 8, 2, 2, 28,
+        3100000, false, 151, 8, 8, 151),
+    NOVASEQ_S1("A00000", "NovaSeq Control Software", "AH%sDRXX", 2, 2, 2,
+        78, 2100000, true, 151, 8, 8, 151),
+    NOVASEQ_S4("A00000", "NovaSeq Control Software", "AH%sDSXX", 4, 2, 6,
+        88, 2400000, true, 151, 8, 8, 151);
+
+    private final String instrument;
+    private final String applicationName;
+    private final String flowcellFormat;
+    private final int lanes;
+    private final int surfaces;
+    private final int swaths;
+    private final int tilesPerSwath;
+    private final long clustersPerTile;
+    private final boolean binnedQualities;
+    private final int[] reads;
+
+    /**
+     * Get the number of lanes of the flow cell.
+     * @return the number of lanes
+     */
+    public int getLaneCount() {
+      return this.lanes;
+    }
+
+    /**
+     * Get the number of tiles of a lane.
+     * @return the number of tiles of a lane
+     */
+    public int getTilesPerLane() {
+      return this.surfaces * this.swaths * this.tilesPerSwath;
+    }
+
+    /**
+     * Get the number of cycles of the run.
+     * @return the number of cycles
+     */
+    public int getCycleCount() {
+
+      int result = 0;
+      for (int cycles : this.reads) {
+        result += cycles;
+      }
+
+      return result;
+    }
+
+    Scale(final String instrument, final String applicationName,
+        final String flowcellFormat, final int lanes, final int surfaces,
+        final int swaths, final int tilesPerSwath, final long clustersPerTile,
+        final boolean binnedQualities, final int... reads) {
+
+      this.instrument = instrument;
+      this.applicationName = applicationName;
+      this.flowcellFormat = flowcellFormat;
+      this.lanes = lanes;
+      this.surfaces = surfaces;
+      this.swaths = swaths;
+      this.tilesPerSwath = tilesPerSwath;
+      this.clustersPerTile = clustersPerTile;
+      this.binnedQualities = binnedQualities;
+      this.reads = reads;
+    }
+  }
+
+  /**
+   * This class define a writer of the little endian records of an InterOp
+   * file.
+   */
+  private static final class InterOpWriter implements Closeable {
+
+    private final OutputStream out;
+    private final ByteBuffer buffer;
+
+    void putShort(final int value) throws IOException {
+      ensure(2).putShort((short) value);
+    }
+
+    void putInt(final long value) throws IOException {
+      ensure(4).putInt((int) value);
+    }
+
+    void putFloat(final double value) throws IOException {
+      ensure(4).putFloat((float) value);
+    }
+
+    void putLong(final long value) throws IOException {
+      ensure(8).putLong(value);
+    }
+
+    private ByteBuffer ensure(final int length) throws IOException {
+
+      if (this.buffer.remaining() < length) {
+        flush();
+      }
+
+      return this.buffer;
+    }
+
+    private void flush() throws IOException {
+
+      this.out.write(this.buffer.array(), 0, this.buffer.position());
+      this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      try {
+        flush();
+      } finally {
+        this.out.close();
+      }
+    }
+
+    InterOpWriter(final File file, final int version, final int recordSize)
+        throws IOException {
+
+      this.out = new FileOutputStream(file);
+      this.buffer = ByteBuffer.allocate(64 * 1024);
+      this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+      this.buffer.put((byte) version);
+      this.buffer.put((byte) recordSize);
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the run directory.
+   * @return the run directory
+   */
+  public File getRunDir() {
+    return this.runDir;
+  }
+
+  /**
+   * Get the InterOp directory.
+   * @return the InterOp directory
+   */
+  public File getInterOpDir() {
+    return new File(this.runDir, "InterOp");
+  }
+
+  /**
+   * Get the output directory of bcl2fastq.
+   * @return the output directory of bcl2fastq
+   */
+  public File getFastqDir() {
+    return new File(this.runDir, "fastq");
+  }
+
+  /**
+   * Get the sample sheet file.
+   * @return the sample sheet file
+   */
+  public File getSampleSheetFile() {
+    return new File(this.runDir, "SampleSheet.csv");
+  }
+
+  /**
+   * Get the ConversionStats.xml file of bcl2fastq.
+   * @return the ConversionStats.xml file
+   */
+  public File getConversionStatsFile() {
+    return new File(getFastqDir(), "Stats/ConversionStats.xml");
+  }
+
+  /**
+   * Get the FASTQ file of the undetermined reads of a lane.
+   * @param lane the lane
+   * @param read the read (without the indexed reads)
+   * @return the FASTQ file
+   */
+  public File getUndeterminedFastqFile(final int lane, final int read) {
+
+    return new File(getFastqDir(), "Undetermined_S0_L00"
+        + lane + "_R" + read + "_001.fastq.gz");
+  }
+
+  /**
+   * Get the run id.
+   * @return the run id
+   */
+  public String getRunId() {
+    return this.runId;
+  }
+
+  /**
+   * Get the scale of the run.
+   * @return the scale of the run
+   */
+  public Scale getScale() {
+    return this.scale;
+  }
+
+  //
+  // Generation methods
+  //
+
+  /**
+   * Generate all the files of the run.
+   * @throws IOException if an error occurs while writing the files
+   */
+  public void generate() throws IOException {
+
+    writeRunInfo();
+    writeRunParameters();
+    writeSampleSheet();
+    writeInterOp();
+    writeBcl2fastqStats();
+    writeFastq();
+  }
+
+  /**
+   * Remove the run directory and all its files.
+   */
+  public void delete() {
+
+    delete(this.runDir);
+  }
+
+  /**
+   * Write the RunInfo.xml file.
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void writeRunInfo() throws IOException {
+
+    try (Writer w = createWriter(new File(this.runDir, "RunInfo.xml"))) {
+
+      w.write("<?xml version=\"1.0\"?>\n");
+      w.write("<RunInfo xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" "
+          + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+          + "Version=\"2\">\n");
+      w.write("  <Run Id=\""
+          + this.runId + "\" Number=\"" + RUN_NUMBER + "\">\n");
+      w.write("    <Flowcell>" + this.flowcellId + "</Flowcell>\n");
+      w.write("    <Instrument>" + this.scale.instrument + "</Instrument>\n");
+      w.write("    <Date>" + RUN_DATE + "</Date>\n");
+      w.write("    <Reads>\n");
+      for (int i = 0; i < this.scale.reads.length; i++) {
+        w.write("      <Read Number=\""
+            + (i + 1) + "\" NumCycles=\"" + this.scale.reads[i]
+            + "\" IsIndexedRead=\"" + (isIndexedRead(i) ? "Y" : "N")
+            + "\" />\n");
+      }
+      w.write("    </Reads>\n");
+      w.write("    <FlowcellLayout LaneCount=\""
+          + this.scale.lanes + "\" SurfaceCount=\"" + this.scale.surfaces
+          + "\" SwathCount=\"" + this.scale.swaths + "\" TileCount=\""
+          + this.scale.tilesPerSwath + "\" />\n");
+      w.write("    <AlignToPhiX>\n");
+      for (int lane = 1; lane <= this.scale.lanes; lane++) {
+        w.write("      <Lane>" + lane + "</Lane>\n");
+      }
+      w.write("    </AlignToPhiX>\n");
+      w.write("  </Run>\n");
+      w.write("</RunInfo>\n");
+    }
+  }
+
+  /**
+   * Write the RunParameters.xml file.
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void writeRunParameters() throws IOException {
+
+    try (Writer w = createWriter(new File(this.runDir, "RunParameters.xml"))) {
+
+      w.write("<?xml version=\"1.0\"?>\n");
+      w.write("<RunParameters>\n");
+      w.write("  <Setup>\n");
+      w.write("    <ApplicationName>"
+          + this.scale.applicationName + "</ApplicationName>\n");
+      w.write("    <ApplicationVersion>1.0.0</ApplicationVersion>\n");
+      w.write("  </Setup>\n");
+      w.write("  <RTAVersion>1.18.54</RTAVersion>\n");
+      w.write("</RunParameters>\n");
+    }
+  }
+
+  /**
+   * Write the sample sheet file in the bcl2fastq 2 format.
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void writeSampleSheet() throws IOException {
+
+    try (Writer w = createWriter(getSampleSheetFile())) {
+
+      w.write("[Header]\n");
+      w.write("IEMFileVersion,4\n");
+      w.write("Experiment Name," + this.runId + "\n");
+      w.write("Date," + RUN_DATE + "\n");
+      w.write("Workflow,GenerateFASTQ\n");
+      w.write("Application,FASTQ Only\n");
+      w.write("Description,Synthetic run\n");
+      w.write("\n[Reads]\n");
+      for (int i = 0; i < this.scale.reads.length; i++) {
+        if (!isIndexedRead(i)) {
+          w.write(this.scale.reads[i] + "\n");
+        }
+      }
+      w.write("\n[Settings]\n");
+      w.write("\n[Data]\n");
+      w.write("Lane,Sample_ID,Sample_Name,index,index2,Sample_Project,"
+          + "Description\n");
+
+      for (int lane = 1; lane <= this.scale.lanes; lane++) {
+        for (int i = 0; i < this.samplesPerLane; i++) {
+
+          final String name = getSampleName(lane, i);
+          w.write(Joiner.on(',').join(lane, name, name,
+              this.indexes1[lane - 1][i], this.indexes2[lane - 1][i],
+              getProjectName(i), "Sample " + name) + "\n");
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the InterOp files: TileMetricsOut.bin, ErrorMetricsOut.bin,
+   * ExtractionMetricsOut.bin and QMetricsOut.bin. Like in the files written by
+   * RTA, the records of the cycle metrics are sorted by cycle.
+   * @throws IOException if an error occurs while writing the files
+   */
+  public void writeInterOp() throws IOException {
+
+    final File dir = getInterOpDir();
+    mkdirs(dir);
+
+    writeTileMetrics(new File(dir, "TileMetricsOut.bin"));
+    writeErrorMetrics(new File(dir, "ErrorMetricsOut.bin"));
+    writeExtractionMetrics(new File(dir, "ExtractionMetricsOut.bin"));
+    writeQualityMetrics(new File(dir, "QMetricsOut.bin"));
+  }
+
+  /**
+   * Write the TileMetricsOut.bin file in its version 2.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeTileMetrics(final File file) throws IOException {
+
+    final Random random = createRandom(1);
+
+    try (InterOpWriter w = new InterOpWriter(file, 2, 10)) {
+
+      for (int lane = 1; lane <= this.scale.lanes; lane++) {
+        for (int t = 0; t < this.tiles.length; t++) {
+
+          final long raw = this.tileClusters[lane - 1][t];
+          final long pf = Math.round(raw * PF_RATIO);
+
+          putTileMetric(w, lane, t, 100, raw / TILE_AREA);
+          putTileMetric(w, lane, t, 101, pf / TILE_AREA);
+          putTileMetric(w, lane, t, 102, raw);
+          putTileMetric(w, lane, t, 103, pf);
+
+          for (int read = 0; read < this.scale.reads.length; read++) {
+            putTileMetric(w, lane, t, 200 + 2 * read,
+                0.1 + 0.05 * random.nextDouble());
+            putTileMetric(w, lane, t, 201 + 2 * read,
+                0.08 + 0.05 * random.nextDouble());
+            putTileMetric(w, lane, t, 300 + read,
+                isIndexedRead(read) ? 0.0 : 0.8 + 0.4 * random.nextDouble());
+          }
+        }
+      }
+    }
+  }
+
+  private void putTileMetric(final InterOpWriter w, final int lane,
+      final int tileIndex, final int code, final double value)
+      throws IOException {
+
+    w.putShort(lane);
+    w.putShort(this.tiles[tileIndex]);
+    w.putShort(code);
+    w.putFloat(value);
+  }
+
+  /**
+   * Write the ErrorMetricsOut.bin file in its version 3. Only the cycles of
+   * the reads that are not indexed have error metrics.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeErrorMetrics(final File file) throws IOException {
+
+    final Random random = createRandom(2);
+
+    try (InterOpWriter w = new InterOpWriter(file, 3, 30)) {
+
+      int cycle = 0;
+      for (int read = 0; read < this.scale.reads.length; read++) {
+        for (int c = 0; c < this.scale.reads[read]; c++) {
+
+          cycle++;
+          if (isIndexedRead(read)) {
+            continue;
+          }
+
+          for (int lane = 1; lane <= this.scale.lanes; lane++) {
+            for (int t = 0; t < this.tiles.length; t++) {
+
+              w.putShort(lane);
+              w.putShort(this.tiles[t]);
+              w.putShort(cycle);
+              w.putFloat(0.1 + c * 0.01 + 0.1 * random.nextDouble());
+              for (int i = 0; i < 5; i++) {
+                w.putInt(i == 0 ? 1000 + random.nextInt(100) : 0);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the ExtractionMetricsOut.bin file in its version 2.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeExtractionMetrics(final File file) throws IOException {
+
+    final Random random = createRandom(3);
+    final int cycles = this.scale.getCycleCount();
+
+    // Date and time of the extraction in the .NET format
+    final long dateTime = 0x08D4321000000000L;
+
+    try (InterOpWriter w = new InterOpWriter(file, 2, 38)) {
+
+      for (int cycle = 1; cycle <= cycles; cycle++) {
+        for (int lane = 1; lane <= this.scale.lanes; lane++) {
+          for (int t = 0; t < this.tiles.length; t++) {
+
+            w.putShort(lane);
+            w.putShort(this.tiles[t]);
+            w.putShort(cycle);
+            for (int i = 0; i < 4; i++) {
+              w.putFloat(2.5 + 0.5 * random.nextDouble());
+            }
+            for (int i = 0; i < 4; i++) {
+              w.putShort(Math.max(100, 4000 - 10 * cycle)
+                  + random.nextInt(500));
+            }
+            w.putLong(dateTime + cycle);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the QMetricsOut.bin file in its version 4. The quality scores of the
+   * clusters decrease along the reads.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeQualityMetrics(final File file) throws IOException {
+
+    final Random random = createRandom(4);
+    final long[] counts = new long[50];
+
+    try (InterOpWriter w = new InterOpWriter(file, 4, 206)) {
+
+      int cycle = 0;
+      for (int read = 0; read < this.scale.reads.length; read++) {
+        for (int c = 0; c < this.scale.reads[read]; c++) {
+
+          cycle++;
+          for (int lane = 1; lane <= this.scale.lanes; lane++) {
+            for (int t = 0; t < this.tiles.length; t++) {
+
+              final long pf =
+                  Math.round(this.tileClusters[lane - 1][t] * PF_RATIO);
+              final int mean = 38
+                  - 10 * c / this.scale.reads[read] - random.nextInt(3);
+
+              fillQualityCounts(counts, pf, mean);
+
+              w.putShort(lane);
+              w.putShort(this.tiles[t]);
+              w.putShort(cycle);
+              for (long count : counts) {
+                w.putInt(count);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Spread the clusters of a tile over the quality scores.
+   * @param counts the array of the counts of the quality scores to fill
+   * @param clusters the number of clusters
+   * @param mean the mean quality score
+   */
+  private void fillQualityCounts(final long[] counts, final long clusters,
+      final int mean) {
+
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = 0;
+    }
+
+    final long high = clusters / 4;
+    final long low = clusters / 4;
+
+    counts[binQuality(mean + 2) - 1] += high;
+    counts[binQuality(mean - 2) - 1] += low;
+    counts[binQuality(mean) - 1] += clusters - high - low;
+  }
+
+  /**
+   * Write the ConversionStats.xml and DemultiplexingStats.xml files of
+   * bcl2fastq 2.
+   * @throws IOException if an error occurs while writing the files
+   */
+  public void writeBcl2fastqStats() throws IOException {
+
+    final File statsDir = getConversionStatsFile().getParentFile();
+    mkdirs(statsDir);
+
+    writeConversionStats(getConversionStatsFile());
+    writeDemultiplexingStats(new File(statsDir, "DemultiplexingStats.xml"));
+  }
+
+  /**
+   * Write the ConversionStats.xml file of bcl2fastq 2. The file contains the
+   * statistics for each tile of each sample, of the undetermined reads and of
+   * all the reads of the lanes.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeConversionStats(final File file) throws IOException {
+
+    try (Writer w = createWriter(file)) {
+
+      w.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+      w.write("<Stats>\n");
+      w.write("  <Flowcell flowcell-id=\"" + this.flowcellId + "\">\n");
+
+      for (int p = 0; p < Math.min(PROJECT_COUNT, this.samplesPerLane); p++) {
+
+        w.write("    <Project name=\"" + getProjectName(p) + "\">\n");
+
+        for (int lane = 1; lane <= this.scale.lanes; lane++) {
+          for (int i = p; i < this.samplesPerLane; i += PROJECT_COUNT) {
+
+            w.write("      <Sample name=\"" + getSampleName(lane, i) + "\">\n");
+            for (String barcode : new String[] {getBarcode(lane, i), "all"}) {
+
+              w.write("        <Barcode name=\"" + barcode + "\">\n");
+              writeLaneStats(w, lane, this.sampleRatios[lane - 1][i]);
+              w.write("        </Barcode>\n");
+            }
+            w.write("      </Sample>\n");
+          }
+        }
+        w.write("    </Project>\n");
+      }
+
+      // Undetermined reads
+      w.write("    <Project name=\"default\">\n");
+      w.write("      <Sample name=\"Undetermined\">\n");
+      for (String barcode : new String[] {"unknown", "all"}) {
+
+        w.write("        <Barcode name=\"" + barcode + "\">\n");
+        for (int lane = 1; lane <= this.scale.lanes; lane++) {
+          writeLaneStats(w, lane, UNDETERMINED_RATIO);
+        }
+        w.write("        </Barcode>\n");
+      }
+      w.write("      </Sample>\n");
+      w.write("    </Project>\n");
+
+      // All the reads of the lanes
+      w.write("    <Project name=\"all\">\n");
+      w.write("      <Sample name=\"all\">\n");
+      w.write("        <Barcode name=\"all\">\n");
+      for (int lane = 1; lane <= this.scale.lanes; lane++) {
+        writeLaneStats(w, lane, 1.0);
+      }
+      w.write("        </Barcode>\n");
+      w.write("      </Sample>\n");
+      w.write("    </Project>\n");
+
+      w.write("  </Flowcell>\n");
+      w.write("</Stats>\n");
+    }
+  }
+
+  /**
+   * Write the statistics of the tiles of a lane in the ConversionStats.xml
+   * file.
+   * @param w the writer
+   * @param lane the lane
+   * @param ratio the ratio of the clusters of the tiles to write
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeLaneStats(final Writer w, final int lane,
+      final double ratio) throws IOException {
+
+    final StringBuilder sb = new StringBuilder();
+
+    w.write("          <Lane number=\"" + lane + "\">\n");
+    for (int t = 0; t < this.tiles.length; t++) {
+
+      final long raw = Math.round(this.tileClusters[lane - 1][t] * ratio);
+      final long pf = Math.round(raw * PF_RATIO);
+
+      sb.setLength(0);
+      sb.append("            <Tile number=\"")
+          .append(this.tiles[t]).append("\">\n");
+      appendClusterStats(sb, "Raw", raw);
+      appendClusterStats(sb, "Pf", pf);
+      sb.append("            </Tile>\n");
+      w.append(sb);
+    }
+    w.write("          </Lane>\n");
+  }
+
+  private void appendClusterStats(final StringBuilder sb, final String type,
+      final long clusters) {
+
+    sb.append("              <").append(type).append(">\n");
+    sb.append("                <ClusterCount>").append(clusters)
+        .append("</ClusterCount>\n");
+
+    int readNumber = 0;
+    for (int read = 0; read < this.scale.reads.length; read++) {
+
+      if (isIndexedRead(read)) {
+        continue;
+      }
+
+      final long yield = clusters * this.scale.reads[read];
+      sb.append("                <Read number=\"").append(++readNumber)
+          .append("\">\n");
+      sb.append("                  <Yield>").append(yield)
+          .append("</Yield>\n");
+      sb.append("                  <YieldQ30>").append(yield * 9 / 10)
+          .append("</YieldQ30>\n");
+      sb.append("                  <QualityScoreSum>").append(yield * 35)
+          .append("</QualityScoreSum>\n");
+      sb.append("                </Read>\n");
+    }
+    sb.append("              </").append(type).append(">\n");
+  }
+
+  /**
+   * Write the DemultiplexingStats.xml file of bcl2fastq 2.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void writeDemultiplexingStats(final File file) throws IOException {
+
+    try (Writer w = createWriter(file)) {
+
+      w.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+      w.write("<Stats>\n");
+      w.write("  <Flowcell flowcell-id=\"" + this.flowcellId + "\">\n");
+
+      for (int p = 0; p < Math.min(PROJECT_COUNT, this.samplesPerLane); p++) {
+
+        w.write("    <Project name=\"" + getProjectName(p) + "\">\n");
+        for (int lane = 1; lane <= this.scale.lanes; lane++) {
+          for (int i = p; i < this.samplesPerLane; i += PROJECT_COUNT) {
+
+            long count = 0;
+            for (long clusters : this.tileClusters[lane - 1]) {
+              count += Math.round(clusters * this.sampleRatios[lane - 1][i]);
+            }
+
+            w.write("      <Sample name=\"" + getSampleName(lane, i) + "\">\n");
+            w.write("        <Barcode name=\"" + getBarcode(lane, i) + "\">\n");
+            w.write("          <Lane number=\"" + lane + "\">\n");
+            w.write("            <BarcodeCount>"
+                + count + "</BarcodeCount>\n");
+            w.write("            <PerfectBarcodeCount>"
+                + count * 98 / 100 + "</PerfectBarcodeCount>\n");
+            w.write("            <OneMismatchBarcodeCount>"
+                + (count - count * 98 / 100)
+                + "</OneMismatchBarcodeCount>\n");
+            w.write("          </Lane>\n");
+            w.write("        </Barcode>\n");
+            w.write("      </Sample>\n");
+          }
+        }
+        w.write("    </Project>\n");
+      }
+
+      w.write("  </Flowcell>\n");
+      w.write("</Stats>\n");
+    }
+  }
+
+  /**
+   * Write the gzipped FASTQ files of the samples and of the undetermined
+   * reads. The reads of the FASTQ files are sorted by tile like in the files
+   * written by bcl2fastq.
+   * @throws IOException if an error occurs while writing the files
+   */
+  public void writeFastq() throws IOException {
+
+    writeSampleFastq();
+    writeUndeterminedFastq();
+  }
+
+  /**
+   * Write the gzipped FASTQ files of the samples.
+   * @throws IOException if an error occurs while writing the files
+   */
+  public void writeSampleFastq() throws IOException {
+
+    final Random random = createRandom(5);
+    mkdirs(getFastqDir());
+
+    int sampleNumber = 0;
+    for (int lane = 1; lane <= this.scale.lanes; lane++) {
+      for (int i = 0; i < this.samplesPerLane; i++) {
+
+        final File projectDir = new File(getFastqDir(), getProjectName(i));
+        mkdirs(projectDir);
+
+        final String prefix = getSampleName(lane, i)
+            + "_S" + ++sampleNumber + "_L00" + lane + "_R";
+
+        writeFastq(random, lane,
+            new File(projectDir, prefix + "1_001.fastq.gz"),
+            new File(projectDir, prefix + "2_001.fastq.gz"),
+            this.indexes1[lane - 1][i], this.indexes2[lane - 1][i]);
+      }
+    }
+  }
+
+  /**
+   * Write the gzipped FASTQ files of the undetermined reads of the lanes.
+   * @throws IOException if an error occurs while writing the files
+   */
+  public void writeUndeterminedFastq() throws IOException {
+
+    final Random random = createRandom(6);
+    mkdirs(getFastqDir());
+
+    for (int lane = 1; lane <= this.scale.lanes; lane++) {
+      writeFastq(random, lane, getUndeterminedFastqFile(lane, 1),
+          getUndeterminedFastqFile(lane, 2), null, null);
+    }
+  }
+
+  /**
+   * Write the FASTQ files of a sample. The reads of the undetermined samples
+   * have an index that is a sample index with one mismatch or a random index.
+   * @param random the random generator
+   * @param lane the lane of the sample
+   * @param file1 the FASTQ file of the first read
+   * @param file2 the FASTQ file of the second read
+   * @param index1 the first index of the sample, null for undetermined reads
+   * @param index2 the second index of the sample, null for undetermined reads
+   * @throws IOException if an error occurs while writing the files
+   */
+  private void writeFastq(final Random random, final int lane,
+      final File file1, final File file2, final String index1,
+      final String index2) throws IOException {
+
+    final int length1 = this.scale.reads[0];
+    final int length2 = this.scale.reads[this.scale.reads.length - 1];
+    final StringBuilder sb = new StringBuilder();
+
+    try (Writer w1 = createGzipWriter(file1);
+        Writer w2 = createGzipWriter(file2)) {
+
+      for (int n = 0; n < this.readsPerSample; n++) {
+
+        // The reads are sorted by tile
+        final int tile = this.tiles[(int) ((long) n
+            * this.tiles.length / this.readsPerSample)];
+        final String id = "@"
+            + this.scale.instrument + ':' + RUN_NUMBER + ':' + this.flowcellId
+            + ':' + lane + ':' + tile + ':' + random.nextInt(32000) + ':'
+            + random.nextInt(32000);
+        final char filtered = random.nextDouble() < PF_RATIO ? 'N' : 'Y';
+
+        final String barcode;
+        if (index1 == null) {
+
+          final int sample = random.nextInt(this.samplesPerLane);
+          barcode = random.nextBoolean()
+              ? mutate(random, this.indexes1[lane - 1][sample])
+                  + '+' + this.indexes2[lane - 1][sample]
+              : randomSequence(random, INDEX_LENGTH)
+                  + '+' + randomSequence(random, INDEX_LENGTH);
+        } else {
+          barcode = index1 + '+' + index2;
+        }
+
+        appendRead(sb, random, id, 1, filtered, barcode, length1);
+        w1.append(sb);
+        appendRead(sb, random, id, 2, filtered, barcode, length2);
+        w2.append(sb);
+      }
+    }
+  }
+
+  private void appendRead(final StringBuilder sb, final Random random,
+      final String id, final int read, final char filtered,
+      final String barcode, final int length) {
+
+    sb.setLength(0);
+    sb.append(id).append(' ').append(read).append(':').append(filtered)
+        .append(":0:").append(barcode).append('\n');
+
+    for (int i = 0; i < length; i++) {
+      sb.append(BASES[random.nextInt(BASES.length)]);
+    }
+    sb.append("\n+\n");
+
+    for (int i = 0; i < length; i++) {
+      final int q = binQuality(38 - 10 * i / length - random.nextInt(6));
+      sb.append((char) ('!' + q));
+    }
+    sb.append('\n');
+  }
+
+  //
+  // RunData methods
+  //
+
+  /**
+   * Create a RunData object with the run information and the sample sheet
+   * data of the run, like the RunData created by the RunInfoCollector and
+   * the SamplesheetCollector.
+   * @return a new RunData object
+   */
+  public RunData createRunData() {
+
+    final RunData data = new RunData();
+    final String ss = SAMPLESHEET_DATA_PREFIX;
+    final int[] reads = this.scale.reads;
+
+    data.put("run.info.run.id", this.runId);
+    data.put("run.info.date", RUN_DATE);
+    data.put("run.info.flow.cell.id", this.flowcellId);
+    data.put("run.info.sequencer.name", this.scale.instrument);
+    data.put("run.info.read.count", reads.length);
+    data.put("run.info.flow.cell.lane.count", this.scale.lanes);
+    data.put("run.info.tiles.per.lane.count", this.tiles.length);
+
+    int indexedReads = 0;
+    for (int i = 0; i < reads.length; i++) {
+
+      data.put("run.info.read" + (i + 1) + ".indexed", isIndexedRead(i));
+      data.put("run.info.read" + (i + 1) + ".cycles", reads[i]);
+      if (isIndexedRead(i)) {
+        indexedReads++;
+      }
+    }
+    data.put("run.info.indexed.read.count", indexedReads);
+
+    int sampleNumber = 0;
+    final List<String> undeterminedSamples = new ArrayList<>();
+
+    for (int lane = 1; lane <= this.scale.lanes; lane++) {
+
+      final List<String> laneSamples = new ArrayList<>();
+
+      for (int i = 0; i <= this.samplesPerLane; i++) {
+
+        final boolean undetermined = i == this.samplesPerLane;
+        final String prefix = ss + ".sample" + ++sampleNumber;
+        final String name = undetermined ? "" : getSampleName(lane, i);
+
+        data.put(prefix + ".id", undetermined ? "undetermined" : name);
+        data.put(prefix + ".name", name);
+        data.put(prefix + ".demux.name", name);
+        data.put(prefix + ".lane", lane);
+        data.put(prefix + ".undetermined", undetermined);
+        data.put(prefix + ".indexed", !undetermined);
+        data.put(prefix + ".index",
+            undetermined ? "" : this.indexes1[lane - 1][i]);
+        if (!undetermined) {
+          data.put(prefix + ".index2", this.indexes2[lane - 1][i]);
+        }
+        data.put(prefix + ".description",
+            undetermined ? "" : "Sample " + name);
+        data.put(prefix + ".project", undetermined ? "" : getProjectName(i));
+
+        laneSamples.add(Integer.toString(sampleNumber));
+      }
+
+      undeterminedSamples.add(Integer.toString(sampleNumber));
+      data.put(ss + ".lane" + lane + ".undetermined.sample", sampleNumber);
+      data.put(ss + ".lane" + lane + ".samples",
+          Joiner.on(',').join(laneSamples));
+      data.put(ss + ".lane" + lane + ".indexed", true);
+    }
+
+    data.put(ss + ".undetermined.samples",
+        Joiner.on(',').join(undeterminedSamples));
+    data.put(ss + ".sample.count", sampleNumber);
+
+    return data;
+  }
+
+  //
+  // Utility methods
+  //
+
+  private boolean isIndexedRead(final int read) {
+
+    // The read structure of all the scales is read 1, index 1, index 2 and
+    // read 2
+    return read > 0 && read < this.scale.reads.length - 1;
+  }
+
+  private static String getSampleName(final int lane, final int sample) {
+
+    return "Sample" + lane + "_" + (sample + 1);
+  }
+
+  private static String getProjectName(final int sample) {
+
+    return "Project" + (sample % PROJECT_COUNT + 1);
+  }
+
+  private String getBarcode(final int lane, final int sample) {
+
+    return this.indexes1[lane - 1][sample]
+        + '+' + this.indexes2[lane - 1][sample];
+  }
+
+  /**
+   * Bin a quality score like the sequencers that use binned quality scores.
+   * @param quality the quality score
+   * @return the binned quality score
+   */
+  private int binQuality(final int quality) {
+
+    final int q = Math.max(2, Math.min(41, quality));
+
+    if (!this.scale.binnedQualities) {
+      return q;
+    }
+
+    if (q >= 30) {
+      return 37;
+    }
+    if (q >= 20) {
+      return 23;
+    }
+
+    return q >= 10 ? 12 : 2;
+  }
+
+  private Random createRandom(final int stream) {
+
+    return new Random(this.seed * 31 + stream);
+  }
+
+  private static String randomSequence(final Random random, final int length) {
+
+    final char[] result = new char[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = BASES[random.nextInt(BASES.length)];
+    }
+
+    return new String(result);
+  }
+
+  private static String mutate(final Random random, final String sequence) {
+
+    final char[] result = sequence.toCharArray();
+    final int pos = random.nextInt(result.length);
+    result[pos] = BASES[(indexOf(result[pos]) + 1 + random.nextInt(3)) % 4];
+
+    return new String(result);
+  }
+
+  private static int indexOf(final char base) {
+
+    for (int i = 0; i < BASES.length; i++) {
+      if (BASES[i] == base) {
+        return i;
+      }
+    }
+
+    return 0;
+  }
+
+  private static int mismatches(final String a, final String b) {
+
+    int result = 0;
+    for (int i = 0; i < a.length(); i++) {
+      if (a.charAt(i) != b.charAt(i)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the indexes of the samples of a lane. The indexes of the samples
+   * of a lane have at least 3 mismatches between them.
+   * @param random the random generator
+   * @return an array with the indexes
+   */
+  private String[] createIndexes(final Random random) {
+
+    final String[] result = new String[this.samplesPerLane];
+
+    for (int i = 0; i < result.length; i++) {
+
+      String index;
+      boolean valid;
+      do {
+        index = randomSequence(random, INDEX_LENGTH);
+        valid = true;
+        for (int j = 0; j < i && valid; j++) {
+          valid = mismatches(index, result[j]) >= MIN_INDEX_MISMATCHES;
+        }
+      } while (!valid);
+
+      result[i] = index;
+    }
+
+    return result;
+  }
+
+  private static void mkdirs(final File dir) throws IOException {
+
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create directory: " + dir);
+    }
+  }
+
+  private static void delete(final File file) {
+
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+
+    if (!file.delete()) {
+      Common.getLogger().warning("Cannot remove file: " + file);
+    }
+  }
+
+  private static Writer createWriter(final File file) throws IOException {
+
+    return new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(file), StandardCharsets.UTF_8));
+  }
+
+  private static Writer createGzipWriter(final File file) throws IOException {
+
+    return new OutputStreamWriter(
+        new GZIPOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)), 64 * 1024),
+        StandardCharsets.US_ASCII);
+  }
+
+  //
+  // Main method
+  //
+
+  /**
+   * Main method.
+   * @param args command line arguments: output directory, scale, samples per
+   *          lane, reads per sample and seed
+   * @throws IOException if an error occurs while writing the run
+   */
+  public static void main(final String[] args) throws IOException {
+
+    if (args.length < 2) {
+      System.err.println("Usage: "
+          + SyntheticRunGenerator.class.getName()
+          + " output_dir MISEQ|NEXTSEQ|HISEQ_4000|NOVASEQ_S1|NOVASEQ_S4"
+          + " [samples_per_lane] [reads_per_sample] [seed]");
+      System.exit(1);
+    }
+
+    final SyntheticRunGenerator generator = new SyntheticRunGenerator(
+        new File(args[0]), Scale.valueOf(args[1].toUpperCase()),
+        args.length > 2 ? Integer.parseInt(args[2]) : 24,
+        args.length > 3 ? Integer.parseInt(args[3]) : 10000,
+        args.length > 4 ? Long.parseLong(args[4]) : 0);
+
+    generator.generate();
+
+    System.out.println("Synthetic run written in " + generator.getRunDir());
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param outputDir the directory where the run directory will be created
+   * @param scale the scale of the run
+   * @param samplesPerLane the number of samples of each lane
+   * @param readsPerSample the number of reads of the FASTQ files of each
+   *          sample
+   * @param seed the seed of the random generators
+   * @throws IOException if the run directory cannot be created
+   */
+  public SyntheticRunGenerator(final File outputDir, final Scale scale,
+      final int samplesPerLane, final int readsPerSample, final long seed)
+      throws IOException {
+
+    checkNotNull(outputDir, "outputDir argument cannot be null");
+    checkNotNull(scale, "scale argument cannot be null");
+    checkArgument(samplesPerLane > 0, "samplesPerLane must be greater than 0");
+    checkArgument(readsPerSample > 0, "readsPerSample must be greater than 0");
+
+    this.scale = scale;
+    this.samplesPerLane = samplesPerLane;
+    this.readsPerSample = readsPerSample;
+    this.seed = seed;
+
+    final Random random = createRandom(0);
+
+    // The format of the flow cell id in the run id contains the side of the
+    // flow cell for the sequencers that have two sides
+    final String flowcell =
+        String.format(scale.flowcellFormat, randomSequence(random, 4));
+    this.flowcellId =
+        flowcell.startsWith("0") ? flowcell : flowcell.substring(1);
+    this.runId = RUN_DATE
+        + '_' + scale.instrument + '_' + String.format("%04d", RUN_NUMBER)
+        + '_' + flowcell;
+    this.runDir = new File(outputDir, this.runId);
+    mkdirs(this.runDir);
+
+    // Tile numbers: surface, swath and tile in the swath
+    this.tiles = new int[scale.getTilesPerLane()];
+    int t = 0;
+    for (int surface = 1; surface <= scale.surfaces; surface++) {
+      for (int swath = 1; swath <= scale.swaths; swath++) {
+        for (int tile = 1; tile <= scale.tilesPerSwath; tile++) {
+          this.tiles[t++] = surface * 1000 + swath * 100 + tile;
+        }
+      }
+    }
+
+    // Number of clusters of the tiles, with +/- 10% of variation
+    this.tileClusters = new long[scale.lanes][this.tiles.length];
+    for (int lane = 0; lane < scale.lanes; lane++) {
+      for (int i = 0; i < this.tiles.length; i++) {
+        this.tileClusters[lane][i] = Math.round(
+            scale.clustersPerTile * (0.9 + 0.2 * random.nextDouble()));
+      }
+    }
+
+    // Indexes and part of the demultiplexed clusters of the samples
+    this.indexes1 = new String[scale.lanes][];
+    this.indexes2 = new String[scale.lanes][];
+    this.sampleRatios = new double[scale.lanes][samplesPerLane];
+    for (int lane = 0; lane < scale.lanes; lane++) {
+
+      this.indexes1[lane] = createIndexes(random);
+      this.indexes2[lane] = createIndexes(random);
+
+      double sum = 0;
+      for (int i = 0; i < samplesPerLane; i++) {
+        this.sampleRatios[lane][i] = 0.5 + random.nextDouble();
+        sum += this.sampleRatios[lane][i];
+      }
+      for (int i = 0; i < samplesPerLane; i++) {
+        this.sampleRatios[lane][i] *= (1.0 - UNDETERMINED_RATIO) / sum;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.SyntheticRunGenerator;
+import fr.ens.biologie.genomique.aozan.SyntheticRunGenerator.Scale;
+
+/**
+ * This class define a benchmark of the parsing of the ConversionStats.xml file
+ * written by bcl2fastq for a synthetic run. The size of the file grows with the
+ * number of tiles and the number of samples of the lanes.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConversionStatsBenchmark {
+
+  @Param({"MISEQ", "NOVASEQ_S1", "HISEQ_4000"})
+  private Scale scale;
+
+  @Param({"24"})
+  private int samplesPerLane;
+
+  private File outputDir;
+  private SyntheticRunGenerator generator;
+
+  /**
+   * Write the statistics files of bcl2fastq for the synthetic run.
+   * @throws IOException if an error occurs while writing the files
+   */
+  @Setup
+  public void setup() throws IOException {
+
+    this.outputDir = Files.createTempDir();
+    this.generator = new SyntheticRunGenerator(this.outputDir, this.scale,
+        this.samplesPerLane, 1, 0);
+    this.generator.writeBcl2fastqStats();
+  }
+
+  /**
+   * Remove the synthetic run.
+   */
+  @TearDown
+  public void tearDown() {
+
+    this.generator.delete();
+    this.outputDir.delete();
+  }
+
+  @Benchmark
+  public RunData parse() throws AozanException {
+
+    final RunData data = this.generator.createRunData();
+
+    new ConversionStatsCollector().collect(data,
+        this.generator.getConversionStatsFile());
+
+    return data;
+  }
+
+}
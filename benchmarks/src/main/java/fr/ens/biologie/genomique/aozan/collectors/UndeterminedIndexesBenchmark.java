@@ -0,0 +1,161 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.SyntheticRunGenerator;
+import fr.ens.biologie.genomique.aozan.SyntheticRunGenerator.Scale;
+import fr.ens.biologie.genomique.aozan.io.FastqSample;
+import uk.ac.babraham.FastQC.Sequence.Sequence;
+
+/**
+ * This class define a benchmark of the per read cost of the count of the
+ * indexes of the undetermined reads of a lane of a synthetic run. The reads
+ * are read from the undetermined FASTQ file before the benchmark. Half of the
+ * undetermined reads have the index of a sample with one mismatch.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UndeterminedIndexesBenchmark {
+
+  private static final int READ_COUNT = 100000;
+
+  @Param({"8", "96"})
+  private int samplesPerLane;
+
+  private File outputDir;
+  private SyntheticRunGenerator generator;
+  private RunData data;
+  private FastqSample fastqSample;
+  private Sequence[] sequences;
+
+  /**
+   * Write the sample sheet and the undetermined FASTQ files of the synthetic
+   * run and read the reads of the first lane.
+   * @throws IOException if an error occurs while writing or reading the files
+   */
+  @Setup
+  public void setup() throws IOException {
+
+    this.outputDir = Files.createTempDir();
+    this.generator = new SyntheticRunGenerator(this.outputDir, Scale.MISEQ,
+        this.samplesPerLane, READ_COUNT, 0);
+    this.generator.writeSampleSheet();
+    this.generator.writeBcl2fastqStats();
+    this.generator.writeUndeterminedFastq();
+
+    this.data = this.generator.createRunData();
+    final int sampleId =
+        this.data.getInt(SamplesheetCollector.SAMPLESHEET_DATA_PREFIX
+            + ".lane1.undetermined.sample");
+    this.fastqSample = new FastqSample(this.generator.getSampleSheetFile(),
+        this.generator.getFastqDir(), this.outputDir,
+        this.generator.getRunId(), sampleId, 1, 1);
+
+    this.sequences =
+        readSequences(this.generator.getUndeterminedFastqFile(1, 1));
+  }
+
+  /**
+   * Remove the synthetic run.
+   */
+  @TearDown
+  public void tearDown() {
+
+    this.generator.delete();
+    this.outputDir.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READ_COUNT)
+  public UndeterminedIndexesProcessThread processSequences()
+      throws AozanException {
+
+    final UndeterminedIndexesProcessThread thread =
+        new UndeterminedIndexesProcessThread(this.data, this.fastqSample,
+            this.outputDir, null);
+
+    thread.startScan(null);
+    for (final Sequence s : this.sequences) {
+      thread.processSequence(s);
+    }
+
+    return thread;
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static Sequence[] readSequences(final File file) throws IOException {
+
+    final List<Sequence> result = new ArrayList<>();
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)),
+        StandardCharsets.US_ASCII))) {
+
+      String id;
+      while ((id = reader.readLine()) != null) {
+
+        final String sequence = reader.readLine();
+        reader.readLine();
+        final String quality = reader.readLine();
+
+        result.add(new Sequence(null, sequence, quality, id));
+      }
+    }
+
+    return result.toArray(new Sequence[result.size()]);
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.SyntheticRunGenerator;
+import fr.ens.biologie.genomique.aozan.SyntheticRunGenerator.Scale;
+import fr.ens.biologie.genomique.aozan.collectors.interop.AbstractBinaryFileReader.MetricsHandler;
+
+/**
+ * This class define a benchmark of the readers of the InterOp files of a
+ * synthetic run. The records are read with the handlers used by the
+ * collectors and, for the quality metrics, with the list of records as a
+ * baseline.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InterOpReaderBenchmark {
+
+  @Param({"MISEQ", "HISEQ_4000", "NOVASEQ_S4"})
+  private Scale scale;
+
+  private File outputDir;
+  private SyntheticRunGenerator generator;
+  private File interOpDir;
+
+  /**
+   * Write the InterOp files of the synthetic run.
+   * @throws IOException if an error occurs while writing the files
+   */
+  @Setup
+  public void setup() throws IOException {
+
+    this.outputDir = Files.createTempDir();
+    this.generator = new SyntheticRunGenerator(this.outputDir, this.scale, 1,
+        1, 0);
+    this.generator.writeInterOp();
+    this.interOpDir = this.generator.getInterOpDir();
+  }
+
+  /**
+   * Remove the synthetic run.
+   */
+  @TearDown
+  public void tearDown() {
+
+    this.generator.delete();
+    this.outputDir.delete();
+  }
+
+  @Benchmark
+  public double tileMetrics() throws AozanException {
+
+    final double[] sum = new double[1];
+
+    new TileMetricsReader(this.interOpDir)
+        .readMetrics(new MetricsHandler<TileMetrics>() {
+
+          @Override
+          public void handle(final TileMetrics metrics) {
+            sum[0] += metrics.getMetricValue();
+          }
+        });
+
+    return sum[0];
+  }
+
+  @Benchmark
+  public double errorMetrics() throws AozanException {
+
+    final double[] sum = new double[1];
+
+    new ErrorMetricsReader(this.interOpDir)
+        .readMetrics(new MetricsHandler<ErrorMetrics>() {
+
+          @Override
+          public void handle(final ErrorMetrics metrics) {
+            sum[0] += metrics.getErrorRate();
+          }
+        });
+
+    return sum[0];
+  }
+
+  @Benchmark
+  public long extractionMetrics() throws AozanException {
+
+    final long[] sum = new long[1];
+
+    new ExtractionMetricsReader(this.interOpDir)
+        .readMetrics(new MetricsHandler<ExtractionMetrics>() {
+
+          @Override
+          public void handle(final ExtractionMetrics metrics) {
+            sum[0] += metrics.getIntensity(0);
+          }
+        });
+
+    return sum[0];
+  }
+
+  @Benchmark
+  public long[] qualityMetrics() throws AozanException {
+
+    final long[] counts = new long[50];
+
+    new QMetricsVersion4Reader(this.interOpDir)
+        .readMetrics(new MetricsHandler<QualityMetrics>() {
+
+          @Override
+          public void handle(final QualityMetrics metrics) {
+            metrics.addClustersScore(counts);
+          }
+        });
+
+    return counts;
+  }
+
+  @Benchmark
+  public long[] qualityMetricsList() throws AozanException {
+
+    final long[] counts = new long[50];
+
+    for (QualityMetrics metrics : new QMetricsVersion4Reader(this.interOpDir)
+        .getSetIlluminaMetrics()) {
+      metrics.addClustersScore(counts);
+    }
+
+    return counts;
+  }
+
+}
@@ -0,0 +1,218 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.demux;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
+
+/**
+ * This class define a benchmark of the dispatch of the reads of a synthetic
+ * undetermined FASTQ file to the re-demultiplexed samples. The previous
+ * implementation that matches the index of each read against all the regular
+ * expressions is kept here as a baseline.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReDemuxBenchmark {
+
+  private static final int READ_COUNT = 100000;
+  private static final int INDEX_LENGTH = 6;
+  private static final int READ_LENGTH = 76;
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  @Param({"8", "96"})
+  private int sampleCount;
+
+  private byte[] fastq;
+  private List<Pattern> patterns;
+  private List<List<Pattern>> samplePatterns;
+  private ReDemuxIndexTable<Integer> table;
+
+  /**
+   * Create a random sequence.
+   * @param random random generator
+   * @param length length of the sequence
+   * @return a string with the sequence
+   */
+  private static String randomSequence(final Random random, final int length) {
+
+    final char[] result = new char[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = BASES[random.nextInt(BASES.length)];
+    }
+
+    return new String(result);
+  }
+
+  @Setup
+  public void setup() {
+
+    final Random random = new Random(42);
+
+    // Create the indexes of the samples, each index allows one mismatch
+    final List<String> indexes = new ArrayList<>();
+    this.patterns = new ArrayList<>();
+    this.samplePatterns = new ArrayList<>();
+    this.table = new ReDemuxIndexTable<>();
+
+    for (int i = 0; i < this.sampleCount; i++) {
+
+      final String index = randomSequence(random, INDEX_LENGTH);
+      final List<Pattern> list = new ArrayList<>();
+      indexes.add(index);
+
+      for (int j = 0; j < INDEX_LENGTH; j++) {
+
+        final String regex =
+            index.substring(0, j) + '.' + index.substring(j + 1);
+
+        list.add(Pattern.compile(regex));
+        this.table.addIndex(regex, i);
+      }
+
+      this.patterns.addAll(list);
+      this.samplePatterns.add(list);
+    }
+
+    // Create the synthetic undetermined FASTQ file, half of the reads have
+    // the index of a sample with one mismatch
+    final StringBuilder sb = new StringBuilder();
+    final String quality = new String(new char[READ_LENGTH]).replace('\0', 'F');
+
+    for (int i = 0; i < READ_COUNT; i++) {
+
+      final String index;
+      if (random.nextBoolean()) {
+        final char[] array =
+            indexes.get(random.nextInt(indexes.size())).toCharArray();
+        array[random.nextInt(INDEX_LENGTH)] = 'N';
+        index = new String(array);
+      } else {
+        index = randomSequence(random, INDEX_LENGTH);
+      }
+
+      sb.append("@NB500892:10:H3YL2AFXX:1:11101:")
+          .append(i % 20000).append(':').append(i / 20000)
+          .append(" 1:N:0:").append(index).append('\n')
+          .append(randomSequence(random, READ_LENGTH)).append("\n+\n")
+          .append(quality).append('\n');
+    }
+
+    this.fastq = sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Get the index of a read.
+   * @param rs the read
+   * @return the index of the read
+   */
+  private static String getIndex(final ReadSequence rs) {
+
+    final String seqName = rs.getName();
+    return seqName.substring(seqName.lastIndexOf(':') + 1);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READ_COUNT)
+  public int legacyRegexDispatch() throws IOException, BadBioEntryException {
+
+    int result = 0;
+
+    final FastqReader reader =
+        new FastqReader(new ByteArrayInputStream(this.fastq));
+
+    try {
+
+      for (ReadSequence rs : reader) {
+
+        final String index = getIndex(rs);
+
+        for (Pattern p : this.patterns) {
+          if (p.matcher(index).matches()) {
+
+            for (int i = 0; i < this.samplePatterns.size(); i++) {
+              if (this.samplePatterns.get(i).contains(p)) {
+                result += i;
+                break;
+              }
+            }
+          }
+        }
+      }
+      reader.throwException();
+    } finally {
+      reader.close();
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READ_COUNT)
+  public int tableDispatch() throws IOException, BadBioEntryException {
+
+    int result = 0;
+
+    final FastqReader reader =
+        new FastqReader(new ByteArrayInputStream(this.fastq));
+
+    try {
+
+      for (ReadSequence rs : reader) {
+        for (Integer output : this.table.get(getIndex(rs))) {
+          result += output;
+        }
+      }
+      reader.throwException();
+    } finally {
+      reader.close();
+    }
+
+    return result;
+  }
+
+}
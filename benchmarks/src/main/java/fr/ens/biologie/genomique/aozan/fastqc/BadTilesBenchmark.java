@@ -0,0 +1,180 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.IlluminaReadId;
+import uk.ac.babraham.FastQC.Sequence.Sequence;
+
+/**
+ * This class define a benchmark of the per read cost of the BadTiles FastQC
+ * module. The previous implementation that use a map of boxed counts per cycle
+ * is kept here as a baseline.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BadTilesBenchmark {
+
+  private static final int READ_COUNT = 10000;
+  private static final int LANE_OFFSET = 10000;
+
+  @Param({"76", "151"})
+  private int readLength;
+
+  @Param({"4"})
+  private int tileCount;
+
+  private Sequence[] sequences;
+  private BadTiles badTiles;
+  private LegacyBadTiles legacyBadTiles;
+
+  /**
+   * The per read processing of the previous implementation of BadTiles.
+   */
+  private static final class LegacyBadTiles {
+
+    private final Map<Integer, Map<Character, Long>[]> tiles = new HashMap<>();
+    private IlluminaReadId irid;
+
+    @SuppressWarnings("unchecked")
+    void processSequence(final Sequence sequence) {
+
+      try {
+        if (this.irid == null) {
+          this.irid = new IlluminaReadId(sequence.getID().substring(1));
+        } else {
+          this.irid.parse(sequence.getID().substring(1));
+        }
+      } catch (EoulsanException e) {
+        return;
+      }
+
+      final int tileId = this.irid.getFlowCellLane() * LANE_OFFSET
+          + this.irid.getTileNumberInFlowCellLane();
+
+      final char[] qual = sequence.getQualityString().toCharArray();
+
+      Map<Character, Long>[] counts = this.tiles.get(tileId);
+      if (counts == null) {
+        counts = new Map[qual.length];
+        for (int i = 0; i < counts.length; i++) {
+          counts[i] = new HashMap<>();
+        }
+        this.tiles.put(tileId, counts);
+      }
+
+      for (int i = 0; i < qual.length && i < counts.length; i++) {
+
+        final Map<Character, Long> m = counts[i];
+        if (m.containsKey(qual[i])) {
+          m.put(qual[i], m.get(qual[i]) + 1);
+        } else {
+          m.put(qual[i], 1L);
+        }
+      }
+    }
+
+    void reset() {
+      this.tiles.clear();
+      this.irid = null;
+    }
+  }
+
+  @Setup
+  public void setup() {
+
+    final Random random = new Random(12345);
+    this.sequences = new Sequence[READ_COUNT];
+
+    final StringBuilder seq = new StringBuilder();
+    final StringBuilder qual = new StringBuilder();
+
+    for (int i = 0; i < READ_COUNT; i++) {
+
+      seq.setLength(0);
+      qual.setLength(0);
+
+      for (int j = 0; j < this.readLength; j++) {
+        seq.append("ACGT".charAt(random.nextInt(4)));
+        qual.append((char) ('!' + 2 + random.nextInt(40)));
+      }
+
+      // Reads are sorted by tile in FASTQ files
+      final int tile = 1101 + i * this.tileCount / READ_COUNT;
+
+      final String id = "@NB500000:12:HXXXXBGXY:1:"
+          + tile + ":" + random.nextInt(30000) + ":" + random.nextInt(30000)
+          + " 1:N:0:ATCACG";
+
+      this.sequences[i] =
+          new Sequence(null, seq.toString(), qual.toString(), id);
+    }
+
+    this.badTiles = new BadTiles();
+    this.legacyBadTiles = new LegacyBadTiles();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READ_COUNT)
+  public void primitiveHistograms() {
+
+    final BadTiles badTiles = this.badTiles;
+    badTiles.reset();
+
+    for (final Sequence s : this.sequences) {
+      badTiles.processSequence(s);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READ_COUNT)
+  public void legacyMapHistograms() {
+
+    final LegacyBadTiles badTiles = this.legacyBadTiles;
+    badTiles.reset();
+
+    for (final Sequence s : this.sequences) {
+      badTiles.processSequence(s);
+    }
+  }
+
+}
@@ -0,0 +1,540 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.toTimeHumanReadable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import com.google.common.base.Joiner;
+
+import fr.ens.biologie.genomique.aozan.collectors.CacheableCollector;
+import fr.ens.biologie.genomique.aozan.collectors.Collector;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorCache;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+
+/**
+ * This class define a scheduler that executes collectors concurrently using
+ * the dependency graph built from the required collectors declared by each
+ * collector. Each collector writes its result in its own RunData fragment and
+ * the fragments are merged in the order of the collector list, so the final
+ * RunData does not depend on the execution order. Summary collectors are only
+ * launched when all the other collectors have ended. The result of a
+ * collector found in the cache of the collectors is used instead of executing
+ * the collector.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+class CollectorScheduler {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  private final List<Collector> collectors;
+  private final Map<Collector, Set<Collector>> dependencies;
+  private final Map<Collector, Set<Collector>> allDependencies;
+  private final int threadCount;
+  private final String runId;
+  private final CollectorCache cache;
+  private final Map<Collector, CollectorConfiguration> confs;
+
+  /**
+   * This interface define a listener called each time a collector has ended.
+   */
+  interface CollectorListener {
+
+    /**
+     * Method called when a collector has ended.
+     * @param collector the collector
+     * @param fragment the data generated by the collector
+     * @throws AozanException if an error occurs while handling the event
+     */
+    void collectorEnded(Collector collector, RunData fragment)
+        throws AozanException;
+  }
+
+  /**
+   * This class define the task that execute a collector.
+   */
+  private static final class CollectorTask implements Callable<CollectorTask> {
+
+    private final Collector collector;
+    private final RunData input;
+    private final String runId;
+    private final CollectorCache cache;
+    private final CollectorConfiguration conf;
+    private RunData fragment;
+    private long startTime;
+    private long endTime;
+    private boolean restored;
+
+    @Override
+    public CollectorTask call() throws AozanException {
+
+      this.startTime = System.currentTimeMillis();
+
+      // Restore the data of the collector from the cache
+      CollectorCache.Fingerprint fingerprint = null;
+      if (this.cache != null && this.collector instanceof CacheableCollector) {
+
+        fingerprint = this.cache.newFingerprint(
+            (CacheableCollector) this.collector, this.conf, this.input);
+        this.fragment = this.cache.load(fingerprint);
+
+        if (this.fragment != null) {
+
+          LOGGER.info(this.collector.getName().toUpperCase()
+              + " collector restored from the cache for run " + this.runId);
+          this.endTime = this.startTime;
+          this.restored = true;
+
+          return this;
+        }
+      }
+
+      LOGGER.info("Starting "
+          + this.collector.getName().toUpperCase() + " collector for run "
+          + this.runId);
+
+      // Keep a copy of the input data to extract the new entries
+      final RunData before = new RunData();
+      before.put(this.input);
+
+      // Collect data
+      this.collector.collect(this.input);
+
+      this.fragment = newEntries(before, this.input);
+      this.endTime = System.currentTimeMillis();
+
+      if (fingerprint != null) {
+        this.cache.save(fingerprint, this.fragment);
+      }
+
+      LOGGER.info("Ended "
+          + this.collector.getName().toUpperCase() + " collector for run "
+          + this.runId + " in "
+          + toTimeHumanReadable(this.endTime - this.startTime));
+
+      return this;
+    }
+
+    /**
+     * Get the duration of the task.
+     * @return the duration of the task in milliseconds
+     */
+    long getDuration() {
+      return this.endTime - this.startTime;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param collector the collector to execute
+     * @param input the input data of the collector
+     * @param runId run id
+     * @param cache the cache of the collectors, can be null
+     * @param conf the configuration of the collector
+     */
+    CollectorTask(final Collector collector, final RunData input,
+        final String runId, final CollectorCache cache,
+        final CollectorConfiguration conf) {
+
+      this.collector = collector;
+      this.input = input;
+      this.runId = runId;
+      this.cache = cache;
+      this.conf = conf;
+    }
+
+    /**
+     * Constructor for a collector that has been executed by a previous
+     * execution of Aozan.
+     * @param collector the collector
+     * @param fragment the data generated by the collector
+     * @param time the start time of the scheduler
+     */
+    CollectorTask(final Collector collector, final RunData fragment,
+        final long time) {
+
+      this.collector = collector;
+      this.input = null;
+      this.runId = null;
+      this.cache = null;
+      this.conf = null;
+      this.fragment = fragment;
+      this.startTime = time;
+      this.endTime = time;
+      this.restored = true;
+    }
+  }
+
+  //
+  // Collect methods
+  //
+
+  /**
+   * Execute the collectors. The collectors must have been configured before
+   * the call to this method.
+   * @param restoredFragments the data of the collectors that have been
+   *          executed by a previous execution of Aozan, by collector names.
+   *          Can be null
+   * @param listener listener to call when a collector has ended. Can be null
+   * @return a RunData object with the merged results of all the collectors
+   * @throws AozanException if an error occurs while collecting data
+   */
+  public RunData collect(final Map<String, RunData> restoredFragments,
+      final CollectorListener listener) throws AozanException {
+
+    final long startTime = System.currentTimeMillis();
+
+    final Map<Collector, CollectorTask> ended = new HashMap<>();
+    final List<Collector> completionOrder = new ArrayList<>();
+    final Set<Collector> submitted = new HashSet<>();
+
+    // Do not execute again the collectors of a previous execution
+    if (restoredFragments != null) {
+      for (final Collector collector : this.collectors) {
+
+        final RunData fragment = restoredFragments.get(collector.getName());
+        if (fragment != null) {
+          ended.put(collector,
+              new CollectorTask(collector, fragment, startTime));
+          completionOrder.add(collector);
+          submitted.add(collector);
+        }
+      }
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(this.threadCount, this.collectors.size())));
+    final CompletionService<CollectorTask> completionService =
+        new ExecutorCompletionService<>(executor);
+
+    try {
+
+      int running =
+          submitReadyCollectors(completionService, ended, submitted);
+
+      while (ended.size() < this.collectors.size()) {
+
+        if (running == 0) {
+          throw new AozanException("Unable to resolve collectors dependencies");
+        }
+
+        final CollectorTask task = completionService.take().get();
+        running--;
+
+        ended.put(task.collector, task);
+        completionOrder.add(task.collector);
+
+        if (listener != null) {
+          listener.collectorEnded(task.collector, task.fragment);
+        }
+
+        running += submitReadyCollectors(completionService, ended, submitted);
+      }
+
+    } catch (InterruptedException e) {
+      throw new AozanException(e);
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof AozanException) {
+        throw (AozanException) e.getCause();
+      }
+      throw new AozanException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    logTimings(ended, completionOrder, startTime);
+
+    // Merge the fragments using the order of the collector list
+    final RunData result = new RunData();
+    for (final Collector collector : this.collectors) {
+      result.put(ended.get(collector).fragment);
+    }
+
+    return result;
+  }
+
+  /**
+   * Submit all the collectors that have all their dependencies completed.
+   * @param completionService the completion service
+   * @param ended the ended collector tasks
+   * @param submitted the collectors already submitted
+   * @return the number of submitted collectors
+   */
+  private int submitReadyCollectors(
+      final CompletionService<CollectorTask> completionService,
+      final Map<Collector, CollectorTask> ended,
+      final Set<Collector> submitted) {
+
+    int count = 0;
+
+    for (final Collector collector : this.collectors) {
+
+      if (submitted.contains(collector)
+          || !ended.keySet().containsAll(this.dependencies.get(collector))) {
+        continue;
+      }
+
+      // The input data contains the results of all the upstream collectors
+      final RunData input = new RunData();
+      for (final Collector c : this.collectors) {
+        if (this.allDependencies.get(collector).contains(c)) {
+          input.put(ended.get(c).fragment);
+        }
+      }
+
+      completionService.submit(new CollectorTask(collector, input, this.runId,
+          this.cache, this.confs.get(collector)));
+      submitted.add(collector);
+      count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * Log the duration of each collector and the critical path of the
+   * collectors.
+   * @param ended the ended tasks
+   * @param completionOrder the completion order of the collectors
+   * @param startTime the start time of the scheduler
+   */
+  private void logTimings(final Map<Collector, CollectorTask> ended,
+      final List<Collector> completionOrder, final long startTime) {
+
+    final Map<Collector, Long> pathDurations = new HashMap<>();
+    final Map<Collector, Collector> predecessors = new HashMap<>();
+    Collector last = null;
+
+    // The completion order is a topological order of the dependency graph
+    for (final Collector collector : completionOrder) {
+
+      final CollectorTask task = ended.get(collector);
+
+      if (task.restored) {
+        LOGGER.info("Collector "
+            + collector.getName().toUpperCase()
+            + " restored from a previous execution");
+      } else {
+        LOGGER.info("Collector "
+            + collector.getName().toUpperCase() + " started after "
+            + toTimeHumanReadable(task.startTime - startTime) + " and ran in "
+            + toTimeHumanReadable(task.getDuration()));
+      }
+
+      long max = 0;
+      for (final Collector dep : this.dependencies.get(collector)) {
+        if (pathDurations.get(dep) > max) {
+          max = pathDurations.get(dep);
+          predecessors.put(collector, dep);
+        }
+      }
+      pathDurations.put(collector, max + task.getDuration());
+
+      if (last == null
+          || pathDurations.get(collector) > pathDurations.get(last)) {
+        last = collector;
+      }
+    }
+
+    if (last == null) {
+      return;
+    }
+
+    // Build the critical path
+    final List<String> path = new ArrayList<>();
+    for (Collector c = last; c != null; c = predecessors.get(c)) {
+      path.add(c.getName().toUpperCase()
+          + " (" + toTimeHumanReadable(ended.get(c).getDuration()) + ")");
+    }
+    Collections.reverse(path);
+
+    LOGGER.info("Collectors critical path: "
+        + Joiner.on(" -> ").join(path) + " in "
+        + toTimeHumanReadable(pathDurations.get(last)));
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Get the entries that has been added or modified in a RunData object.
+   * @param before the RunData before the modification
+   * @param after the RunData after the modification
+   * @return a new RunData object with the new entries
+   */
+  static RunData newEntries(final RunData before, final RunData after) {
+
+    final Map<String, String> beforeMap = before.getMap();
+    final RunData result = new RunData();
+
+    for (final Map.Entry<String, String> e : after.getMap().entrySet()) {
+
+      if (!e.getValue().equals(beforeMap.get(e.getKey()))) {
+        result.put(e.getKey(), e.getValue());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the direct dependencies map of the collectors.
+   * @param collectors the collectors
+   * @return a map with the direct dependencies of the collectors
+   */
+  private static Map<Collector, Set<Collector>> createDependencies(
+      final List<Collector> collectors) {
+
+    final Map<String, Collector> names = new HashMap<>();
+    final Set<Collector> standardCollectors = new LinkedHashSet<>();
+
+    for (final Collector c : collectors) {
+      names.put(c.getName(), c);
+      if (!c.isSummaryCollector()) {
+        standardCollectors.add(c);
+      }
+    }
+
+    final Map<Collector, Set<Collector>> result = new HashMap<>();
+
+    for (final Collector c : collectors) {
+
+      final Set<Collector> deps = new LinkedHashSet<>();
+      final List<String> requiredNames = c.getCollectorsNamesRequiered();
+
+      if (requiredNames != null) {
+        for (final String name : requiredNames) {
+          if (names.containsKey(name)) {
+            deps.add(names.get(name));
+          }
+        }
+      }
+
+      // Summary collectors must be executed after all the other collectors
+      if (c.isSummaryCollector()) {
+        deps.addAll(standardCollectors);
+      }
+
+      deps.remove(c);
+      result.put(c, deps);
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the transitive dependencies of the collectors.
+   * @param collectors the collectors
+   * @return a map with all the dependencies of the collectors
+   */
+  static Map<Collector, Set<Collector>> createAllDependencies(
+      final List<Collector> collectors) {
+
+    return createAllDependencies(createDependencies(collectors));
+  }
+
+  /**
+   * Create the transitive dependencies of the collectors.
+   * @param dependencies the direct dependencies of the collectors
+   * @return a map with all the dependencies of the collectors
+   */
+  private static Map<Collector, Set<Collector>> createAllDependencies(
+      final Map<Collector, Set<Collector>> dependencies) {
+
+    final Map<Collector, Set<Collector>> result = new HashMap<>();
+
+    for (final Collector c : dependencies.keySet()) {
+
+      final Set<Collector> deps = new HashSet<>();
+      final List<Collector> toVisit = new ArrayList<>(dependencies.get(c));
+
+      while (!toVisit.isEmpty()) {
+
+        final Collector dep = toVisit.remove(toVisit.size() - 1);
+        if (deps.add(dep)) {
+          toVisit.addAll(dependencies.get(dep));
+        }
+      }
+
+      result.put(c, deps);
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param collectors the ordered list of collectors
+   * @param threadCount the maximal number of collectors to execute at the
+   *          same time
+   * @param runId run id
+   * @param cache the cache of the collectors, can be null
+   * @param confs the configurations of the collectors
+   */
+  CollectorScheduler(final List<Collector> collectors, final int threadCount,
+      final String runId, final CollectorCache cache,
+      final Map<Collector, CollectorConfiguration> confs) {
+
+    checkNotNull(collectors, "collectors argument cannot be null");
+    checkArgument(threadCount > 0, "threadCount must be greater than 0");
+    checkNotNull(confs, "confs argument cannot be null");
+
+    this.collectors = new ArrayList<>(collectors);
+    this.threadCount = threadCount;
+    this.runId = runId;
+    this.cache = cache;
+    this.confs = confs;
+    this.dependencies = createDependencies(this.collectors);
+    this.allDependencies = createAllDependencies(this.dependencies);
+  }
+
+}
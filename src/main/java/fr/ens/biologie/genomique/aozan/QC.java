@@ -23,8 +23,10 @@
 
 package fr.ens.biologie.genomique.aozan;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.toTimeHumanReadable;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,22 +36,32 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import javax.xml.transform.Templates;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
 import fr.ens.biologie.genomique.aozan.collectors.Collector;
 import fr.ens.biologie.genomique.aozan.collectors.CollectorRegistry;
+import fr.ens.biologie.genomique.aozan.collectors.FastqSampleScheduler;
+import fr.ens.biologie.genomique.aozan.collectors.FastqScanStage;
 import fr.ens.biologie.genomique.aozan.collectors.FastqScreenCollector;
 import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
 import fr.ens.biologie.genomique.aozan.collectors.SamplesheetCollector;
 import fr.ens.biologie.genomique.aozan.fastqc.RuntimePatchFastQC;
 import fr.ens.biologie.genomique.aozan.fastqscreen.GenomeAliases;
 import fr.ens.biologie.genomique.aozan.fastqscreen.GenomeDescriptionCreator;
+import fr.ens.biologie.genomique.aozan.fastqscreen.MapperIndexCache;
+import fr.ens.biologie.genomique.aozan.io.ParallelDecompression;
 import fr.ens.biologie.genomique.aozan.tests.AozanTest;
 import fr.ens.biologie.genomique.aozan.tests.AozanTestRegistry;
 import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
@@ -58,7 +70,10 @@ import fr.ens.biologie.genomique.aozan.tests.lane.LaneTest;
 import fr.ens.biologie.genomique.aozan.tests.pooledsample.PooledSampleTest;
 import fr.ens.biologie.genomique.aozan.tests.project.ProjectTest;
 import fr.ens.biologie.genomique.aozan.tests.sample.SampleTest;
+import fr.ens.biologie.genomique.aozan.util.XSLReportRenderer;
 import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
+import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.data.protocols.DataProtocolService;
 import uk.ac.babraham.FastQC.FastQCConfig;
 
@@ -72,6 +87,10 @@ public class QC {
   /** Logger. */
   private static final Logger LOGGER = Common.getLogger();
 
+  /** Splitter of the lists of the configuration. */
+  private static final Splitter COMMA_SPLITTER =
+      Splitter.on(',').trimResults().omitEmptyStrings();
+
   /** RTA output directory property key. */
   public static final String RTA_OUTPUT_DIR = "rta.output.dir";
 
@@ -115,6 +134,9 @@ public class QC {
   private final File sampleSheetFile;
 
   private final CollectorRegistry collectorRegistry = new CollectorRegistry();
+  private final FastqSampleScheduler sampleScheduler;
+  private final int decompressionThreads;
+  private final FastqScanStage fastqScanStage = new FastqScanStage();
 
   //
   // Getters
@@ -176,6 +198,31 @@ public class QC {
     return this.settings;
   }
 
+  /**
+   * Get the scheduler of the threads of the samples of the FASTQ collectors.
+   * @return the FastqSampleScheduler of the QC
+   */
+  public FastqSampleScheduler getSampleScheduler() {
+    return this.sampleScheduler;
+  }
+
+  /**
+   * Get the number of threads used to uncompress each FASTQ file.
+   * @return the number of threads used to uncompress each FASTQ file
+   */
+  public int getDecompressionThreads() {
+    return this.decompressionThreads;
+  }
+
+  /**
+   * Get the stage that share the reading of the FASTQ files between the FASTQ
+   * collectors.
+   * @return the FastqScanStage of the QC
+   */
+  public FastqScanStage getFastqScanStage() {
+    return this.fastqScanStage;
+  }
+
   //
   // Report methods
   //
@@ -240,7 +287,12 @@ public class QC {
           new RunDataGenerator(this.collectors, this.runId, this.globalConf);
 
       // Create the run data object
-      data = rdg.collect(this);
+      try {
+        data = rdg.collect(this);
+      } finally {
+        this.sampleScheduler.shutdown();
+        this.fastqScanStage.clear();
+      }
     }
 
     if (data.size() == 0) {
@@ -255,6 +307,10 @@ public class QC {
     // Create the completed raw data file
     writeRawData(qcReport, dataFile);
 
+    // The journal of the collectors is now useless
+    new RunDataJournal(RunDataJournal.getJournalFile(this.qcDir, this.runId))
+        .delete();
+
     return qcReport;
   }
 
@@ -307,27 +363,13 @@ public class QC {
       throw new AozanException("The filename for the qc report is null");
     }
 
-    InputStream is = null;
-    try {
-
-      if (stylesheetFilename == null) {
-        is = this.getClass().getResourceAsStream(Globals.EMBEDDED_QC_XSL);
-      } else {
-        is = new FileInputStream(stylesheetFilename);
-      }
-
-      writeReport(report, is, new File(outputFilename));
-    } catch (final IOException e) {
-      throw new AozanException(e);
+    // Get the compiled stylesheet
+    final Templates templates = XSLReportRenderer.getInstance().getTemplates(
+        stylesheetFilename == null ? null : new File(stylesheetFilename),
+        Globals.EMBEDDED_QC_XSL);
 
-    } finally {
-      try {
-        if (is != null) {
-          is.close();
-        }
-      } catch (final IOException ignored) {
-      }
-    }
+    // Write the report directly in the output file
+    report.export(templates, new File(outputFilename));
   }
 
   /**
@@ -340,16 +382,12 @@ public class QC {
   public void writeReport(final QCReport report, final InputStream xslIs,
       final File outputFile) throws AozanException {
 
-    try {
-      final Writer writer =
-          Files.newWriter(outputFile, Globals.DEFAULT_FILE_ENCODING);
-
-      writer.write(report.export(xslIs));
-
-      writer.close();
-    } catch (final IOException e) {
-      throw new AozanException(e);
+    if (xslIs == null) {
+      throw new NullPointerException(
+          "The input stream for the XSL stylesheet is null.");
     }
+
+    report.export(XSLReportRenderer.compile(xslIs), outputFile);
   }
 
   /**
@@ -632,6 +670,66 @@ public class QC {
     this.globalConf.put(TMP_DIR, this.tmpDir.getAbsolutePath());
   }
 
+  /**
+   * Get the number of threads used to uncompress the FASTQ files from the
+   * settings.
+   * @param settings Aozan settings
+   * @return the number of threads used to uncompress the FASTQ files
+   * @throws AozanException if the number of threads is invalid
+   */
+  private static int parseDecompressionThreads(final Settings settings)
+      throws AozanException {
+
+    final String value =
+        settings.get(Settings.QC_CONF_FASTQ_DECOMPRESSION_THREADS_KEY);
+
+    if (value == null || value.trim().isEmpty()) {
+      return ParallelDecompression.getDefaultThreadCount();
+    }
+
+    try {
+      final int threads = Integer.parseInt(value.trim());
+
+      if (threads < 1) {
+        throw new AozanException("Invalid number of decompression threads: "
+            + threads);
+      }
+
+      return threads;
+
+    } catch (final NumberFormatException e) {
+      throw new AozanException(
+          "Invalid number of decompression threads: " + value);
+    }
+  }
+
+  /**
+   * Create the scheduler of the threads of the samples of the FASTQ collectors.
+   * @param settings Aozan settings
+   * @return a new FastqSampleScheduler object
+   * @throws AozanException if the number of threads is invalid
+   */
+  private static FastqSampleScheduler createSampleScheduler(
+      final Settings settings) throws AozanException {
+
+    final String value = settings.get(Settings.QC_CONF_THREADS_KEY);
+
+    if (value == null || value.trim().isEmpty()) {
+      return new FastqSampleScheduler(
+          Runtime.getRuntime().availableProcessors());
+    }
+
+    try {
+      final int threads = Integer.parseInt(value.trim());
+
+      return new FastqSampleScheduler(
+          threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+
+    } catch (final NumberFormatException e) {
+      throw new AozanException("Invalid number of threads: " + value);
+    }
+  }
+
   /**
    * Initialize FastQC v0.11.X from configuration Aozan.
    * @param settings Aozan settings
@@ -706,8 +804,8 @@ public class QC {
    * @throws AozanException if an error occurs while initializing the genome
    *           aliases
    */
-  private void initFastqScreenCollectorRequirements(final Settings settings)
-      throws AozanException {
+  private static void initFastqScreenCollectorRequirements(
+      final Settings settings) throws AozanException {
 
     final fr.ens.biologie.genomique.eoulsan.Settings eoulsanSettings =
         EoulsanRuntime.getSettings();
@@ -759,6 +857,95 @@ public class QC {
     // Initialize GenomeDescriptionCreator
     GenomeDescriptionCreator.initialize(
         settings.get(Settings.QC_CONF_FASTQSCREEN_GENOMES_DESC_PATH_KEY));
+
+    // Initialize the cache of the extracted mapper indexes
+    initMapperIndexCache(settings);
+  }
+
+  /**
+   * Create the descriptions of the FastqScreen genomes defined in the
+   * configuration and in the genome alias file that are not in the genome
+   * description storage. This avoid the computation of the descriptions during
+   * the first QC that use the genomes.
+   * @param settings Aozan settings
+   * @throws AozanException if an error occurs while initializing the
+   *           FastqScreen requirements
+   */
+  public static void createGenomeDescriptions(final Settings settings)
+      throws AozanException {
+
+    checkNotNull(settings, "settings argument cannot be null");
+
+    initFastqScreenCollectorRequirements(settings);
+    GenomeAliases.initialize(settings);
+
+    final Set<String> genomes = new LinkedHashSet<>();
+
+    final String contaminantGenomes =
+        settings.get(Settings.QC_CONF_FASTQSCREEN_GENOMES_KEY);
+    if (contaminantGenomes != null) {
+      genomes.addAll(COMMA_SPLITTER.splitToList(contaminantGenomes));
+    }
+    genomes.addAll(GenomeAliases.getInstance().getGenomes());
+
+    final GenomeDescriptionCreator creator =
+        GenomeDescriptionCreator.getInstance();
+
+    for (String genome : genomes) {
+
+      final Stopwatch timer = Stopwatch.createStarted();
+
+      try {
+        creator.createGenomeDescription(new DataFile("genome://" + genome));
+
+        LOGGER.info("Description of the genome "
+            + genome + " ready in "
+            + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+      } catch (final BadBioEntryException | IOException e) {
+        LOGGER.warning("Unable to create the description of the genome "
+            + genome + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Initialize the cache of the extracted mapper indexes.
+   * @param settings Aozan settings
+   * @throws AozanException if the maximal size of the cache is invalid
+   */
+  private static void initMapperIndexCache(final Settings settings)
+      throws AozanException {
+
+    final String path =
+        settings.get(Settings.QC_CONF_FASTQSCREEN_MAPPER_INDEX_CACHE_PATH_KEY);
+
+    if (path == null || path.trim().isEmpty()) {
+      return;
+    }
+
+    final String maxSizeValue = settings
+        .get(Settings.QC_CONF_FASTQSCREEN_MAPPER_INDEX_CACHE_MAX_SIZE_KEY);
+    long maxSize = 0;
+
+    if (maxSizeValue != null && !maxSizeValue.trim().isEmpty()) {
+
+      try {
+        maxSize = (long) (Double.parseDouble(maxSizeValue.trim())
+            * 1024 * 1024 * 1024);
+      } catch (final NumberFormatException e) {
+        maxSize = -1;
+      }
+
+      if (maxSize < 0) {
+        throw new AozanException(
+            "Invalid maximal size of the mapper index cache: " + maxSizeValue);
+      }
+    }
+
+    MapperIndexCache.initialize(new File(path.trim()), maxSize,
+        Boolean.parseBoolean(settings.get(
+            Settings.QC_CONF_FASTQSCREEN_MAPPER_INDEX_CACHE_PREFAULT_KEY)));
   }
 
   /**
@@ -924,6 +1111,13 @@ public class QC {
     // Create the global settings for collectors and tests
     initGlobalConf(settings);
 
+    // Set the number of threads used to uncompress the FASTQ files
+    this.decompressionThreads = parseDecompressionThreads(settings);
+
+    // The threads of the samples of the FASTQ collectors share the threads of
+    // the QC
+    this.sampleScheduler = createSampleScheduler(settings);
+
     // Initialize FastQC requirements
     initFastQCCollectorRequirements(settings);
 
@@ -37,6 +37,7 @@ import java.util.TreeSet;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -54,6 +55,7 @@ import fr.ens.biologie.genomique.aozan.tests.pooledsample.PooledSampleTest;
 import fr.ens.biologie.genomique.aozan.tests.project.ProjectTest;
 import fr.ens.biologie.genomique.aozan.tests.sample.SampleTest;
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLReportRenderer;
 
 /**
  * This class generate the QC Report.
@@ -69,6 +71,7 @@ public class QCReport {
   private final List<ProjectTest> projectStatsTests = new ArrayList<>();
   private final List<PooledSampleTest> samplesStatsTests = new ArrayList<>();
   private final List<SampleTest> sampleTests = new ArrayList<>();
+  private QCTestEvaluator results;
   private Document doc;
 
   /**
@@ -106,8 +109,9 @@ public class QCReport {
     final Element runElement = doc.createElement("Run");
     root.appendChild(runElement);
 
-    for (final GlobalTest test : this.globalTests) {
-      final TestResult result = test.test(this.data);
+    for (int i = 0; i < this.globalTests.size(); i++) {
+      final GlobalTest test = this.globalTests.get(i);
+      final TestResult result = this.results.getGlobalResult(i);
 
       final Element testElement = doc.createElement("Test");
       testElement.setAttribute("name", test.getName());
@@ -163,9 +167,9 @@ public class QCReport {
         laneElement.setAttribute("number", Integer.toString(lane));
         readElement.appendChild(laneElement);
 
-        for (final LaneTest test : this.laneTests) {
-          final TestResult result =
-              test.test(this.data, read, indexedRead, lane);
+        for (int i = 0; i < this.laneTests.size(); i++) {
+          final LaneTest test = this.laneTests.get(i);
+          final TestResult result = this.results.getLaneResult(read, lane, i);
 
           final Element testElement = doc.createElement("Test");
           testElement.setAttribute("name", test.getName());
@@ -212,8 +216,9 @@ public class QCReport {
       projectElement.setAttribute("name", data.getProjectName(projectId));
       projectsElement.appendChild(projectElement);
 
-      for (final ProjectTest test : this.projectStatsTests) {
-        final TestResult result = test.test(this.data, projectId);
+      for (int i = 0; i < this.projectStatsTests.size(); i++) {
+        final ProjectTest test = this.projectStatsTests.get(i);
+        final TestResult result = this.results.getProjectResult(projectId, i);
 
         final Element testElement = doc.createElement("Test");
         testElement.setAttribute("name", test.getName());
@@ -270,8 +275,10 @@ public class QCReport {
           this.data.getPooledSampleProjectName(pooledSampleId));
       samplesStatsElement.appendChild(sampleStatsElement);
 
-      for (final PooledSampleTest test : this.samplesStatsTests) {
-        final TestResult result = test.test(this.data, pooledSampleId);
+      for (int i = 0; i < this.samplesStatsTests.size(); i++) {
+        final PooledSampleTest test = this.samplesStatsTests.get(i);
+        final TestResult result =
+            this.results.getPooledSampleResult(pooledSampleId, i);
 
         final Element testElement = doc.createElement("Test");
         testElement.setAttribute("name", test.getName());
@@ -456,10 +463,11 @@ public class QCReport {
 
     readElement.appendChild(sampleElement);
 
-    for (final SampleTest test : this.sampleTests) {
+    for (int i = 0; i < this.sampleTests.size(); i++) {
 
+      final SampleTest test = this.sampleTests.get(i);
       final TestResult result =
-          test.test(this.data, read, readSample, sampleId);
+          this.results.getSampleResult(readSample, sampleId, i);
 
       final Element testElement = this.doc.createElement("Test");
       testElement.setAttribute("name", test.getName());
@@ -471,15 +479,22 @@ public class QCReport {
   }
 
   /**
-   * Create the QC report.
+   * Create the QC report. The tests are evaluated only once in parallel, then
+   * the document is created from the results of the tests.
    * @throws AozanException if an error occurs while creating the report
    */
-  private void doTests() throws AozanException {
+  private synchronized void doTests() throws AozanException {
 
     if (this.doc != null) {
       return;
     }
 
+    if (this.results == null) {
+      this.results = new QCTestEvaluator(this.data, this.globalTests,
+          this.laneTests, this.projectStatsTests, this.samplesStatsTests,
+          this.sampleTests);
+    }
+
     try {
 
       final DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
@@ -567,6 +582,25 @@ public class QCReport {
     return XMLUtilsWriter.createHTMLFileFromXSL(this.doc, is);
   }
 
+  /**
+   * Export the QC report in a file. The XML report is transformed using a
+   * compiled XSL style sheet and the result is written directly in the file.
+   * @param templates the compiled XSL style sheet
+   * @param outputFile the output file
+   * @throws AozanException if an error occurs while creating the report
+   */
+  public void export(final Templates templates, final File outputFile)
+      throws AozanException {
+
+    if (templates == null) {
+      throw new NullPointerException("The XSL stylesheet is null.");
+    }
+
+    doTests();
+
+    XSLReportRenderer.render(this.doc, templates, outputFile);
+  }
+
   /**
    * Collect lanes number for each project name to run.
    * @param typeFilter filter type
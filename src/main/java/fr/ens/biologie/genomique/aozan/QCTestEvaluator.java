@@ -0,0 +1,430 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+import fr.ens.biologie.genomique.aozan.tests.global.GlobalTest;
+import fr.ens.biologie.genomique.aozan.tests.lane.LaneTest;
+import fr.ens.biologie.genomique.aozan.tests.pooledsample.PooledSampleTest;
+import fr.ens.biologie.genomique.aozan.tests.project.ProjectTest;
+import fr.ens.biologie.genomique.aozan.tests.sample.SampleTest;
+
+/**
+ * This class define the evaluation of the tests of the QC report. The tests
+ * only read the run data, so all the tests of all the entities (run, lanes,
+ * projects, pooled samples and samples) are evaluated once in parallel with a
+ * fork/join pool and the results are stored in a matrix. The creation of the
+ * report then only reads the results from the matrix.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class QCTestEvaluator {
+
+  /** Number of entities evaluated by a fork/join task without splitting. */
+  private static final int ENTITIES_PER_TASK = 16;
+
+  private static ForkJoinPool pool;
+
+  private final TestResult[] globalResults;
+  private final TestResult[][][] laneResults;
+  private final Map<Integer, TestResult[]> projectResults = new HashMap<>();
+  private final Map<Integer, TestResult[]> pooledSampleResults =
+      new HashMap<>();
+  private final List<Map<Integer, TestResult[]>> sampleResults =
+      new ArrayList<>();
+
+  /**
+   * This class define the results of the tests of an entity.
+   */
+  private abstract static class EntityResults {
+
+    final TestResult[] results;
+
+    /**
+     * Evaluate a test of the entity.
+     * @param testIndex the index of the test
+     * @return the result of the test
+     */
+    abstract TestResult test(int testIndex);
+
+    /**
+     * Evaluate all the tests of the entity.
+     */
+    void evaluate() {
+
+      for (int i = 0; i < this.results.length; i++) {
+        this.results[i] = test(i);
+      }
+    }
+
+    EntityResults(final int testCount) {
+
+      this.results = new TestResult[testCount];
+    }
+  }
+
+  /**
+   * This class define a fork/join task that evaluate the tests of a range of
+   * entities.
+   */
+  private static final class EvaluateAction extends RecursiveAction {
+
+    private static final long serialVersionUID = -1873458203757345161L;
+
+    private final List<EntityResults> entities;
+    private final int start;
+    private final int end;
+
+    @Override
+    protected void compute() {
+
+      if (this.end - this.start <= ENTITIES_PER_TASK) {
+
+        for (int i = this.start; i < this.end; i++) {
+          this.entities.get(i).evaluate();
+        }
+        return;
+      }
+
+      final int middle = (this.start + this.end) >>> 1;
+      invokeAll(new EvaluateAction(this.entities, this.start, middle),
+          new EvaluateAction(this.entities, middle, this.end));
+    }
+
+    EvaluateAction(final List<EntityResults> entities, final int start,
+        final int end) {
+
+      this.entities = entities;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the result of a global test.
+   * @param testIndex the index of the test
+   * @return the result of the test
+   */
+  TestResult getGlobalResult(final int testIndex) {
+
+    return this.globalResults[testIndex];
+  }
+
+  /**
+   * Get the result of a lane test.
+   * @param read the read
+   * @param lane the lane
+   * @param testIndex the index of the test
+   * @return the result of the test
+   */
+  TestResult getLaneResult(final int read, final int lane,
+      final int testIndex) {
+
+    return this.laneResults[read - 1][lane - 1][testIndex];
+  }
+
+  /**
+   * Get the result of a project test.
+   * @param projectId the identifier of the project
+   * @param testIndex the index of the test
+   * @return the result of the test
+   */
+  TestResult getProjectResult(final int projectId, final int testIndex) {
+
+    return this.projectResults.get(projectId)[testIndex];
+  }
+
+  /**
+   * Get the result of a pooled sample test.
+   * @param pooledSampleId the identifier of the pooled sample
+   * @param testIndex the index of the test
+   * @return the result of the test
+   */
+  TestResult getPooledSampleResult(final int pooledSampleId,
+      final int testIndex) {
+
+    return this.pooledSampleResults.get(pooledSampleId)[testIndex];
+  }
+
+  /**
+   * Get the result of a sample test.
+   * @param readSample the number of the read without the indexed reads
+   * @param sampleId the identifier of the sample
+   * @param testIndex the index of the test
+   * @return the result of the test
+   */
+  TestResult getSampleResult(final int readSample, final int sampleId,
+      final int testIndex) {
+
+    return this.sampleResults.get(readSample - 1).get(sampleId)[testIndex];
+  }
+
+  //
+  // Evaluation methods
+  //
+
+  /**
+   * Create the entities of the global tests.
+   * @param data the run data
+   * @param tests the tests
+   * @param entities the list of entities to fill
+   * @return the results of the tests
+   */
+  private static TestResult[] addGlobalEntities(final RunData data,
+      final List<GlobalTest> tests, final List<EntityResults> entities) {
+
+    final EntityResults e = new EntityResults(tests.size()) {
+
+      @Override
+      TestResult test(final int testIndex) {
+
+        return tests.get(testIndex).test(data);
+      }
+    };
+    entities.add(e);
+
+    return e.results;
+  }
+
+  /**
+   * Create the entities of the lane tests.
+   * @param data the run data
+   * @param tests the tests
+   * @param entities the list of entities to fill
+   * @return the results of the tests
+   */
+  private static TestResult[][][] addLaneEntities(final RunData data,
+      final List<LaneTest> tests, final List<EntityResults> entities) {
+
+    final int readCount = tests.isEmpty() ? 0 : data.getReadCount();
+    final int laneCount = tests.isEmpty() ? 0 : data.getLaneCount();
+
+    final TestResult[][][] results = new TestResult[readCount][laneCount][];
+
+    for (int r = 1; r <= readCount; r++) {
+
+      final int read = r;
+      final boolean indexedRead = data.isReadIndexed(read);
+
+      for (int l = 1; l <= laneCount; l++) {
+
+        final int lane = l;
+        final EntityResults e = new EntityResults(tests.size()) {
+
+          @Override
+          TestResult test(final int testIndex) {
+
+            return tests.get(testIndex).test(data, read, indexedRead, lane);
+          }
+        };
+        entities.add(e);
+        results[read - 1][lane - 1] = e.results;
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * Create the entities of the project tests.
+   * @param data the run data
+   * @param tests the tests
+   * @param entities the list of entities to fill
+   */
+  private void addProjectEntities(final RunData data,
+      final List<ProjectTest> tests, final List<EntityResults> entities) {
+
+    if (tests.isEmpty()) {
+      return;
+    }
+
+    for (final int projectId : data.getProjects()) {
+
+      final EntityResults e = new EntityResults(tests.size()) {
+
+        @Override
+        TestResult test(final int testIndex) {
+
+          return tests.get(testIndex).test(data, projectId);
+        }
+      };
+      entities.add(e);
+      this.projectResults.put(projectId, e.results);
+    }
+  }
+
+  /**
+   * Create the entities of the pooled sample tests.
+   * @param data the run data
+   * @param tests the tests
+   * @param entities the list of entities to fill
+   */
+  private void addPooledSampleEntities(final RunData data,
+      final List<PooledSampleTest> tests, final List<EntityResults> entities) {
+
+    // The pooled sample tests are only reported for runs with one project
+    if (tests.isEmpty() || data.getProjectCount() > 1) {
+      return;
+    }
+
+    for (final int pooledSampleId : data.getAllPooledSamples()) {
+
+      final EntityResults e = new EntityResults(tests.size()) {
+
+        @Override
+        TestResult test(final int testIndex) {
+
+          return tests.get(testIndex).test(data, pooledSampleId);
+        }
+      };
+      entities.add(e);
+      this.pooledSampleResults.put(pooledSampleId, e.results);
+    }
+  }
+
+  /**
+   * Create the entities of the sample tests.
+   * @param data the run data
+   * @param tests the tests
+   * @param entities the list of entities to fill
+   */
+  private void addSampleEntities(final RunData data,
+      final List<SampleTest> tests, final List<EntityResults> entities) {
+
+    if (tests.isEmpty()) {
+      return;
+    }
+
+    final int readCount = data.getReadCount();
+    final int laneCount = data.getLaneCount();
+    int readSample = 0;
+
+    for (int r = 1; r <= readCount; r++) {
+
+      if (data.isReadIndexed(r)) {
+        continue;
+      }
+
+      final int read = r;
+      final int rs = ++readSample;
+      final Map<Integer, TestResult[]> results = new HashMap<>();
+      this.sampleResults.add(results);
+
+      for (int lane = 1; lane <= laneCount; lane++) {
+        for (final int sampleId : data.getAllSamplesInLane(lane)) {
+
+          final EntityResults e = new EntityResults(tests.size()) {
+
+            @Override
+            TestResult test(final int testIndex) {
+
+              return tests.get(testIndex).test(data, read, rs, sampleId);
+            }
+          };
+          entities.add(e);
+          results.put(sampleId, e.results);
+        }
+      }
+    }
+  }
+
+  /**
+   * Evaluate the tests of the entities in parallel.
+   * @param entities the entities
+   */
+  private static void evaluate(final List<EntityResults> entities) {
+
+    if (entities.isEmpty()) {
+      return;
+    }
+
+    getPool().invoke(new EvaluateAction(
+        Collections.unmodifiableList(entities), 0, entities.size()));
+  }
+
+  /**
+   * Get the fork/join pool used to evaluate the tests.
+   * @return the fork/join pool
+   */
+  private static synchronized ForkJoinPool getPool() {
+
+    if (pool == null) {
+      pool = new ForkJoinPool();
+    }
+
+    return pool;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor. All the tests are evaluated by the constructor.
+   * @param data the run data
+   * @param globalTests the global tests
+   * @param laneTests the lane tests
+   * @param projectTests the project tests
+   * @param pooledSampleTests the pooled sample tests
+   * @param sampleTests the sample tests
+   */
+  QCTestEvaluator(final RunData data, final List<GlobalTest> globalTests,
+      final List<LaneTest> laneTests, final List<ProjectTest> projectTests,
+      final List<PooledSampleTest> pooledSampleTests,
+      final List<SampleTest> sampleTests) {
+
+    checkNotNull(data, "data argument cannot be null");
+    checkNotNull(globalTests, "globalTests argument cannot be null");
+    checkNotNull(laneTests, "laneTests argument cannot be null");
+    checkNotNull(projectTests, "projectTests argument cannot be null");
+    checkNotNull(pooledSampleTests,
+        "pooledSampleTests argument cannot be null");
+    checkNotNull(sampleTests, "sampleTests argument cannot be null");
+
+    final List<EntityResults> entities = new ArrayList<>();
+
+    this.globalResults = addGlobalEntities(data, globalTests, entities);
+    this.laneResults = addLaneEntities(data, laneTests, entities);
+    addProjectEntities(data, projectTests, entities);
+    addPooledSampleEntities(data, pooledSampleTests, entities);
+    addSampleEntities(data, sampleTests, entities);
+
+    evaluate(entities);
+  }
+
+}
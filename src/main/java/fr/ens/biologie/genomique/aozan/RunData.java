@@ -33,15 +33,21 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
 import fr.ens.biologie.genomique.aozan.collectors.AozanCollector;
@@ -59,8 +65,321 @@ public class RunData {
   private static final Splitter COMMA_SPLITTER =
       Splitter.on(",").trimResults().omitEmptyStrings();
 
+  /** Key interner shared by all the RunData objects. */
+  private static final Interner<String> KEY_INTERNER =
+      Interners.newWeakInterner();
+
+  /** Function that convert the values of the map to strings. */
+  private static final Function<Value, String> VALUE_TO_STRING =
+      new Function<Value, String>() {
+
+        @Override
+        public String apply(final Value value) {
+          return value.getText();
+        }
+      };
+
   /** The map. */
-  private final Map<String, String> map = new LinkedHashMap<>();
+  private final Map<String, Value> map = new LinkedHashMap<>();
+
+  /** The indexes on the samplesheet entries, built on demand. */
+  private volatile SamplesheetIndex index;
+
+  //
+  // Inner classes
+  //
+
+  /**
+   * This class define a value of the RunData. Numeric values are stored as
+   * primitives and their text is only created when needed. The result of the
+   * parsing of text values is cached to avoid parsing a value several times.
+   */
+  private static final class Value {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte VALID = 1;
+    private static final byte INVALID = 2;
+
+    private volatile String text;
+    private long longValue;
+    private double doubleValue;
+    private volatile byte longState;
+    private volatile byte doubleState;
+
+    /**
+     * Get the value as a string.
+     * @return the value as a string
+     */
+    String getText() {
+
+      String result = this.text;
+
+      if (result == null) {
+
+        result = this.longState == VALID
+            ? Long.toString(this.longValue)
+            : Double.toString(this.doubleValue);
+        this.text = result;
+      }
+
+      return result;
+    }
+
+    /**
+     * Test if the value can be converted to a long.
+     * @return true if the value can be converted to a long
+     */
+    boolean isLong() {
+
+      if (this.longState == UNKNOWN) {
+        try {
+          this.longValue = Long.parseLong(this.text);
+          this.longState = VALID;
+        } catch (NumberFormatException e) {
+          this.longState = INVALID;
+        }
+      }
+
+      return this.longState == VALID;
+    }
+
+    /**
+     * Test if the value can be converted to a double.
+     * @return true if the value can be converted to a double
+     */
+    boolean isDouble() {
+
+      if (this.doubleState == UNKNOWN) {
+        try {
+          this.doubleValue = Double.parseDouble(getText());
+          this.doubleState = VALID;
+        } catch (NumberFormatException e) {
+          this.doubleState = INVALID;
+        }
+      }
+
+      return this.doubleState == VALID;
+    }
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructor for a text value.
+     * @param text the text of the value
+     */
+    Value(final String text) {
+
+      this.text = text;
+    }
+
+    /**
+     * Constructor for a long value.
+     * @param value the value
+     */
+    Value(final long value) {
+
+      this.longValue = value;
+      this.doubleValue = value;
+      this.doubleState = VALID;
+      this.longState = VALID;
+    }
+
+    /**
+     * Constructor for a double value.
+     * @param value the value
+     */
+    Value(final double value) {
+
+      this.doubleValue = value;
+      this.longState = INVALID;
+      this.doubleState = VALID;
+    }
+
+  }
+
+  /**
+   * This class define the indexes on the samplesheet entries of a RunData. It
+   * avoid to rebuild keys, split lists and parse numbers each time a sample,
+   * project or pooled sample getter is called. The object is immutable and is
+   * discarded each time a samplesheet entry of the RunData is changed. A
+   * missing entry in an index means that the getter must use the RunData
+   * entries.
+   */
+  private static final class SamplesheetIndex {
+
+    private static final String SAMPLE_PREFIX =
+        SAMPLESHEET_DATA_PREFIX + ".sample";
+    private static final String LANE_PREFIX = SAMPLESHEET_DATA_PREFIX + ".lane";
+    private static final String PROJECT_PREFIX =
+        SAMPLESHEET_DATA_PREFIX + ".project";
+    private static final String POOLED_SAMPLE_PREFIX =
+        SAMPLESHEET_DATA_PREFIX + ".pooledsample";
+
+    private final Map<Integer, List<Integer>> allSamplesInLane =
+        new HashMap<>();
+    private final Map<Integer, List<Integer>> samplesInLane = new HashMap<>();
+    private final Map<Integer, Map<String, Integer>> samplesByDemuxName =
+        new HashMap<>();
+    private final Map<Integer, List<Integer>> samplesInProject =
+        new HashMap<>();
+    private final Map<Integer, List<Integer>> samplesInPooledSample =
+        new HashMap<>();
+    private final Map<String, Integer> projectIds = new HashMap<>();
+    private final Map<Integer, Integer> sampleLanes = new HashMap<>();
+    private final BitSet undeterminedSamples = new BitSet();
+    private final BitSet undeterminedPooledSamples = new BitSet();
+
+    /**
+     * Parse a comma separated list of integers.
+     * @param value the value to parse
+     * @param skipInvalid skip invalid values instead of failing
+     * @return a unmodifiable list of integers or null if the value is invalid
+     */
+    private static List<Integer> parseIntegerList(final String value,
+        final boolean skipInvalid) {
+
+      final List<Integer> result = new ArrayList<>();
+
+      for (String s : COMMA_SPLITTER.split(value)) {
+        try {
+          result.add(Integer.parseInt(s));
+        } catch (NumberFormatException e) {
+          if (!skipInvalid) {
+            return null;
+          }
+        }
+      }
+
+      return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Parse the identifier of an entity in a key.
+     * @param key the key
+     * @param prefix the prefix of the entity in the key
+     * @param suffix the suffix of the key
+     * @return the identifier of the entity or -1 if the key does not match
+     */
+    private static int parseId(final String key, final String prefix,
+        final String suffix) {
+
+      final int start = prefix.length();
+      final int end = key.length() - suffix.length();
+
+      if (end <= start || !key.startsWith(prefix) || !key.endsWith(suffix)) {
+        return -1;
+      }
+
+      int result = 0;
+      for (int i = start; i < end; i++) {
+
+        final char c = key.charAt(i);
+        if (c < '0'
+            || c > '9' || (c == '0' && i == start && end - start > 1)
+            || result > Integer.MAX_VALUE / 10 - 1) {
+          return -1;
+        }
+        result = result * 10 + c - '0';
+      }
+
+      return result;
+    }
+
+    /**
+     * Index an entry of the RunData.
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @param demuxNames the demultiplexing names of the samples
+     */
+    private void add(final String key, final String value,
+        final Map<Integer, String> demuxNames) {
+
+      int id;
+
+      if ((id = parseId(key, SAMPLE_PREFIX, ".lane")) != -1) {
+        try {
+          this.sampleLanes.put(id, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+          // Handled by the getter
+        }
+      } else if ((id = parseId(key, SAMPLE_PREFIX, ".undetermined")) != -1) {
+        this.undeterminedSamples.set(id, Boolean.parseBoolean(value));
+      } else if ((id = parseId(key, SAMPLE_PREFIX, ".demux.name")) != -1) {
+        demuxNames.put(id, value);
+      } else if ((id = parseId(key, LANE_PREFIX, ".samples")) != -1) {
+        final List<Integer> samples = parseIntegerList(value, false);
+        if (samples != null) {
+          this.allSamplesInLane.put(id, samples);
+        }
+      } else if ((id = parseId(key, PROJECT_PREFIX, ".samples")) != -1) {
+        this.samplesInProject.put(id, parseIntegerList(value, true));
+      } else if ((id = parseId(key, PROJECT_PREFIX, ".name")) > 0) {
+        final Integer previous = this.projectIds.get(value);
+        if (previous == null || previous > id) {
+          this.projectIds.put(value, id);
+        }
+      } else if ((id = parseId(key, POOLED_SAMPLE_PREFIX, ".samples")) != -1) {
+        this.samplesInPooledSample.put(id, parseIntegerList(value, true));
+      } else if ((id =
+          parseId(key, POOLED_SAMPLE_PREFIX, ".undetermined")) != -1) {
+        this.undeterminedPooledSamples.set(id, Boolean.parseBoolean(value));
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param map the entries of the RunData
+     */
+    SamplesheetIndex(final Map<String, Value> map) {
+
+      final Map<Integer, String> demuxNames = new HashMap<>();
+
+      for (Map.Entry<String, Value> e : map.entrySet()) {
+
+        final String key = e.getKey();
+        if (key.startsWith(SAMPLESHEET_DATA_PREFIX)) {
+          add(key, e.getValue().getText(), demuxNames);
+        }
+      }
+
+      // Create the lists of samples without undetermined samples and the
+      // demultiplexing names index of the lanes
+      for (Map.Entry<Integer, List<Integer>> e : this.allSamplesInLane
+          .entrySet()) {
+
+        final List<Integer> samples = new ArrayList<>();
+        final Map<String, Integer> names = new HashMap<>();
+        boolean validIds = true;
+
+        for (int sampleId : e.getValue()) {
+
+          if (sampleId < 0) {
+            validIds = false;
+          } else if (!this.undeterminedSamples.get(sampleId)) {
+            samples.add(sampleId);
+          }
+
+          final String demuxName = demuxNames.get(sampleId);
+          if (demuxName != null && !names.containsKey(demuxName)) {
+            names.put(demuxName, sampleId);
+          }
+        }
+
+        if (validIds) {
+          this.samplesInLane.put(e.getKey(),
+              Collections.unmodifiableList(samples));
+        }
+        this.samplesByDemuxName.put(e.getKey(), names);
+      }
+    }
+
+  }
 
   //
   // Comparators
@@ -179,6 +498,11 @@ public class RunData {
    */
   public List<Integer> getAllSamplesInLane(final int lane) {
 
+    final List<Integer> indexed = getIndex().allSamplesInLane.get(lane);
+    if (indexed != null) {
+      return new ArrayList<>(indexed);
+    }
+
     final String value =
         get(SAMPLESHEET_DATA_PREFIX + ".lane" + lane + ".samples");
 
@@ -205,6 +529,11 @@ public class RunData {
    */
   public List<Integer> getSamplesInLane(final int lane) {
 
+    final List<Integer> indexed = getIndex().samplesInLane.get(lane);
+    if (indexed != null) {
+      return new ArrayList<>(indexed);
+    }
+
     final List<Integer> result = new ArrayList<Integer>();
 
     for (int sampleId : getAllSamplesInLane(lane)) {
@@ -241,9 +570,10 @@ public class RunData {
 
     final List<Integer> result = new ArrayList<Integer>();
     final int sampleCount = getSampleCount();
+    final BitSet undetermined = getIndex().undeterminedSamples;
 
     for (int i = 1; i <= sampleCount; i++) {
-      if (!isUndeterminedSample(i)) {
+      if (!undetermined.get(i)) {
         result.add(i);
       }
     }
@@ -324,6 +654,12 @@ public class RunData {
    * @return sequence index related to the lane and sample name
    */
   public int getSampleLane(final int sampleId) {
+
+    final Integer indexed = getIndex().sampleLanes.get(sampleId);
+    if (indexed != null) {
+      return indexed;
+    }
+
     return getInt(SAMPLESHEET_DATA_PREFIX + ".sample" + sampleId + ".lane");
   }
 
@@ -333,6 +669,11 @@ public class RunData {
    * @return sequence index related to the lane and sample name
    */
   public boolean isUndeterminedSample(final int sampleId) {
+
+    if (sampleId >= 0) {
+      return getIndex().undeterminedSamples.get(sampleId);
+    }
+
     return getBoolean(
         SAMPLESHEET_DATA_PREFIX + ".sample" + sampleId + ".undetermined");
   }
@@ -437,6 +778,13 @@ public class RunData {
       return -1;
     }
 
+    final Map<String, Integer> indexed =
+        getIndex().samplesByDemuxName.get(lane);
+    if (indexed != null) {
+      final Integer result = indexed.get(demuxName);
+      return result == null ? -1 : result;
+    }
+
     for (int i : getAllSamplesInLane(lane)) {
 
       if (demuxName.equals(getSampleDemuxName(i))) {
@@ -516,6 +864,12 @@ public class RunData {
    */
   public List<Integer> getSamplesInPooledSample(final int pooledSampleId) {
 
+    final List<Integer> indexed =
+        getIndex().samplesInPooledSample.get(pooledSampleId);
+    if (indexed != null) {
+      return new ArrayList<>(indexed);
+    }
+
     final List<Integer> result = new ArrayList<Integer>();
 
     for (String s : Splitter.on(',').trimResults().omitEmptyStrings()
@@ -555,9 +909,10 @@ public class RunData {
 
     final List<Integer> result = new ArrayList<Integer>();
     final int pooledSampleCount = getPooledSampleCount();
+    final BitSet undetermined = getIndex().undeterminedPooledSamples;
 
     for (int i = 1; i <= pooledSampleCount; i++) {
-      if (!isUndeterminedPooledSample(i)) {
+      if (!undetermined.get(i)) {
         result.add(i);
       }
     }
@@ -571,6 +926,11 @@ public class RunData {
    * @return sequence index related to the lane and sample name
    */
   public boolean isUndeterminedPooledSample(final int pooledSampleId) {
+
+    if (pooledSampleId >= 0) {
+      return getIndex().undeterminedPooledSamples.get(pooledSampleId);
+    }
+
     return getBoolean(SAMPLESHEET_DATA_PREFIX
         + ".pooledsample" + pooledSampleId + ".undetermined");
   }
@@ -626,6 +986,11 @@ public class RunData {
 
     final int projectCount = getProjectCount();
 
+    final Integer indexed = getIndex().projectIds.get(projectName);
+    if (indexed != null) {
+      return indexed >= 1 && indexed <= projectCount ? indexed : -1;
+    }
+
     for (int i = 1; i <= projectCount; i++) {
 
       if (projectName
@@ -645,6 +1010,11 @@ public class RunData {
    */
   public List<Integer> getSamplesInProject(final int projectId) {
 
+    final List<Integer> indexed = getIndex().samplesInProject.get(projectId);
+    if (indexed != null) {
+      return new ArrayList<>(indexed);
+    }
+
     final List<Integer> result = new ArrayList<Integer>();
 
     for (String s : Splitter.on(',').trimResults().omitEmptyStrings().split(
@@ -929,11 +1299,9 @@ public class RunData {
    */
   public String get(final String key) {
 
-    if (key == null) {
-      return null;
-    }
+    final Value value = getValue(key);
 
-    return this.map.get(key.toLowerCase().trim());
+    return value == null ? null : value.getText();
   }
 
   /**
@@ -953,20 +1321,22 @@ public class RunData {
    */
   public int getInt(final String key) {
 
-    final String value = get(key);
+    final Value value = getValue(key);
 
     if (value == null) {
       throw new AozanRuntimeException(
           "DataRun getInt throw NullPointerException on this key " + key);
     }
 
-    try {
-      return Integer.parseInt(value);
-    } catch (NumberFormatException e) {
+    if (!value.isLong()
+        || value.longValue < Integer.MIN_VALUE
+        || value.longValue > Integer.MAX_VALUE) {
       throw new AozanRuntimeException(
           "DataRun getInt throw NumberFormatException on this key "
-              + key + " (value is " + value + ")");
+              + key + " (value is " + value.getText() + ")");
     }
+
+    return (int) value.longValue;
   }
 
   /**
@@ -1004,20 +1374,20 @@ public class RunData {
    */
   public long getLong(final String key) {
 
-    final String value = get(key);
+    final Value value = getValue(key);
 
     if (value == null) {
       throw new AozanRuntimeException(
           "DataRun getInt throw NullPointerException on this key " + key);
     }
 
-    try {
-      return Long.parseLong(value);
-    } catch (NumberFormatException e) {
+    if (!value.isLong()) {
       throw new AozanRuntimeException(
           "DataRun getLong throw NumberFormatException on this key "
-              + key + " (value is " + value + ")");
+              + key + " (value is " + value.getText() + ")");
     }
+
+    return value.longValue;
   }
 
   /**
@@ -1050,20 +1420,50 @@ public class RunData {
    */
   public double getDouble(final String key) {
 
-    final String value = get(key);
+    final Value value = getValue(key);
 
     if (value == null) {
       throw new AozanRuntimeException(
           "DataRun getInt throw NullPointerException on this key " + key);
     }
 
-    try {
-      return Double.parseDouble(value);
-    } catch (NumberFormatException e) {
+    if (!value.isDouble()) {
       throw new AozanRuntimeException(
           "DataRun getDouble throw NumberFormatException on this key "
-              + key + " (value is " + value + ")");
+              + key + " (value is " + value.getText() + ")");
+    }
+
+    return value.doubleValue;
+  }
+
+  /**
+   * Get the value of a key.
+   * @param key key name
+   * @return the value of the key or null if the key does not exist
+   */
+  private Value getValue(final String key) {
+
+    if (key == null) {
+      return null;
     }
+
+    return this.map.get(normalizeKey(key));
+  }
+
+  /**
+   * Get the samplesheet indexes. The indexes are created if needed.
+   * @return the samplesheet indexes
+   */
+  private SamplesheetIndex getIndex() {
+
+    SamplesheetIndex result = this.index;
+
+    if (result == null) {
+      result = new SamplesheetIndex(this.map);
+      this.index = result;
+    }
+
+    return result;
   }
 
   //
@@ -1081,7 +1481,7 @@ public class RunData {
       return;
     }
 
-    this.map.put(key.toLowerCase().trim(), value == null ? "" : value.trim());
+    putValue(key, new Value(value == null ? "" : value.trim()));
   }
 
   /**
@@ -1101,7 +1501,11 @@ public class RunData {
    */
   public void put(final String key, final int intValue) {
 
-    put(key, Integer.toString(intValue));
+    if (key == null) {
+      return;
+    }
+
+    putValue(key, new Value(intValue));
   }
 
   /**
@@ -1111,7 +1515,11 @@ public class RunData {
    */
   public void put(final String key, final long longValue) {
 
-    put(key, Long.toString(longValue));
+    if (key == null) {
+      return;
+    }
+
+    putValue(key, new Value(longValue));
   }
 
   /**
@@ -1131,7 +1539,11 @@ public class RunData {
    */
   public void put(final String key, final double doubleValue) {
 
-    put(key, Double.toString(doubleValue));
+    if (key == null) {
+      return;
+    }
+
+    putValue(key, new Value(doubleValue));
   }
 
   /**
@@ -1193,9 +1605,63 @@ public class RunData {
       return;
     }
 
-    for (final Map.Entry<String, String> e : data.map.entrySet()) {
-      this.map.put(e.getKey(), e.getValue());
+    boolean samplesheetChanged = false;
+
+    for (final Map.Entry<String, Value> e : data.map.entrySet()) {
+
+      final String key = e.getKey();
+      this.map.put(key, e.getValue());
+
+      if (!samplesheetChanged && key.startsWith(SAMPLESHEET_DATA_PREFIX)) {
+        samplesheetChanged = true;
+      }
+    }
+
+    if (samplesheetChanged) {
+      this.index = null;
+    }
+  }
+
+  /**
+   * Set the value of a key.
+   * @param key key to set
+   * @param value value of the key
+   */
+  private void putValue(final String key, final Value value) {
+
+    final String normalizedKey = KEY_INTERNER.intern(normalizeKey(key));
+
+    this.map.put(normalizedKey, value);
+
+    // The indexes must be rebuilt if the samplesheet entries change
+    if (normalizedKey.startsWith(SAMPLESHEET_DATA_PREFIX)) {
+      this.index = null;
+    }
+  }
+
+  /**
+   * Normalize a key. The key is converted to lower case and trimmed. Keys that
+   * are already normalized are returned as is to avoid creating new strings.
+   * @param key the key to normalize
+   * @return the normalized key
+   */
+  private static String normalizeKey(final String key) {
+
+    final int len = key.length();
+
+    if (len == 0 || key.charAt(0) <= ' ' || key.charAt(len - 1) <= ' ') {
+      return key.toLowerCase().trim();
+    }
+
+    for (int i = 0; i < len; i++) {
+
+      final char c = key.charAt(i);
+      if ((c >= 'A' && c <= 'Z') || c > 127) {
+        return key.toLowerCase().trim();
+      }
     }
+
+    return key;
   }
 
   //
@@ -1213,7 +1679,7 @@ public class RunData {
       return false;
     }
 
-    return this.map.containsKey(key.toLowerCase().trim());
+    return this.map.containsKey(normalizeKey(key));
   }
 
   /**
@@ -1229,10 +1695,10 @@ public class RunData {
   public String toString() {
 
     final StringBuilder sb = new StringBuilder();
-    for (final Map.Entry<String, String> e : this.map.entrySet()) {
+    for (final Map.Entry<String, Value> e : this.map.entrySet()) {
       sb.append(e.getKey());
       sb.append('=');
-      sb.append(e.getValue());
+      sb.append(e.getValue().getText());
       sb.append('\n');
     }
 
@@ -1318,8 +1784,8 @@ public class RunData {
    */
   public void print() {
 
-    for (final Map.Entry<String, String> e : this.map.entrySet()) {
-      System.out.println(e.getKey() + "=" + e.getValue());
+    for (final Map.Entry<String, Value> e : this.map.entrySet()) {
+      System.out.println(e.getKey() + "=" + e.getValue().getText());
     }
   }
 
@@ -1329,7 +1795,8 @@ public class RunData {
    */
   public Map<String, String> getMap() {
 
-    return Collections.unmodifiableMap(map);
+    return Collections
+        .unmodifiableMap(Maps.transformValues(this.map, VALUE_TO_STRING));
   }
 
   //
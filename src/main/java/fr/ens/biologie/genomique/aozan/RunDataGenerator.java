@@ -33,13 +33,16 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
 
+import fr.ens.biologie.genomique.aozan.collectors.CacheableCollector;
 import fr.ens.biologie.genomique.aozan.collectors.Collector;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorCache;
 import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
 
 /**
@@ -61,6 +64,15 @@ public class RunDataGenerator {
 
   private final String runId;
 
+  /** The journal of the collectors, null if snapshots are used. */
+  private RunDataJournal journal;
+
+  /** The cache of the collectors, null if the cache is not used. */
+  private CollectorCache cache;
+
+  /** The configurations of the collectors. */
+  private final Map<Collector, CollectorConfiguration> confs = new HashMap<>();
+
   //
   // Others methods
   //
@@ -76,8 +88,6 @@ public class RunDataGenerator {
       throw new NullPointerException("qc argument cannot be null");
     }
 
-    final RunData data = new RunData();
-
     if (this.generatorsProperties.containsKey(COLLECT_DONE)) {
       throw new AozanException("Collect has been already done.");
     }
@@ -107,39 +117,58 @@ public class RunDataGenerator {
 
     LOGGER.info("Starting step collector");
 
-    // For all collectors
-    for (final Collector collector : this.collectors) {
-
-      final Stopwatch timerCollector = Stopwatch.createStarted();
-      LOGGER.info("Starting "
-          + collector.getName().toUpperCase() + " collector for run "
-          + this.runId);
-
-      // Configure
-      collector.configure(qc,
-          new CollectorConfiguration(this.generatorsProperties));
+    final CollectorConfiguration conf =
+        new CollectorConfiguration(this.generatorsProperties);
 
-      // And collect data
-      collector.collect(data);
+    final int threads = conf.getInt(Settings.QC_CONF_COLLECTORS_THREADS_KEY, 1);
 
-      LOGGER.info("Ended "
-          + collector.getName().toUpperCase() + " collector for run "
-          + this.runId + " in "
-          + toTimeHumanReadable(timerCollector.elapsed(TimeUnit.MILLISECONDS)));
+    // Use a journal instead of snapshots, the collectors found in the journal
+    // will not be executed again
+    if (conf.getBoolean(Settings.QC_CONF_COLLECTORS_JOURNAL_KEY, false)) {
 
-      final File qcDir =
-          new File(this.generatorsProperties.get(QC.QC_OUTPUT_DIR));
-      final File dataFile = new File(qcDir, collector.getName()
-          + '-' + System.currentTimeMillis() + ".snapshot.data");
+      this.journal = new RunDataJournal(RunDataJournal.getJournalFile(
+          new File(this.generatorsProperties.get(QC.QC_OUTPUT_DIR)),
+          this.runId));
 
-      LOGGER.fine("Writing rundata to " + dataFile);
+      // The journal is discarded if the settings or the samplesheet have
+      // changed
+      final File samplesheetFile = new File(
+          this.generatorsProperties.get(QC.BCL2FASTQ_SAMPLESHEET_PATH));
 
       try {
-        data.createRunDataFile(dataFile);
+        this.journal.load(RunDataJournal.computeFingerprint(
+            this.generatorsProperties, samplesheetFile));
       } catch (IOException e) {
         throw new AozanException(e);
       }
 
+      if (!this.journal.getFragments().isEmpty()) {
+        LOGGER.info("Resume the collect of the run "
+            + this.runId + ", collectors already executed: "
+            + Joiner.on(", ").join(this.journal.getFragments().keySet()));
+      }
+    }
+
+    // Restore the results of the collectors whose inputs have not changed
+    if (conf.getBoolean(Settings.QC_CONF_COLLECTORS_CACHE_KEY, false)) {
+      this.cache = CollectorCache.getCache(qc);
+    }
+
+    // Configure all the collectors before collecting data, as some collectors
+    // can share work with the collectors executed after them
+    for (final Collector collector : this.collectors) {
+
+      final CollectorConfiguration collectorConf =
+          new CollectorConfiguration(this.generatorsProperties);
+      this.confs.put(collector, collectorConf);
+      collector.configure(qc, collectorConf);
+    }
+
+    final RunData data;
+    if (threads > 1) {
+      data = collectConcurrently(threads);
+    } else {
+      data = collectSequentially();
     }
 
     for (final Collector collector : this.collectors) {
@@ -155,6 +184,200 @@ public class RunDataGenerator {
     return data;
   }
 
+  /**
+   * Execute the collectors one after another.
+   * @return a RunData object with all data about the run
+   * @throws AozanException if an error occurs while collecting data
+   */
+  private RunData collectSequentially() throws AozanException {
+
+    final RunData data = new RunData();
+
+    // The data generated by each collector, only used by the cache
+    final Map<Collector, RunData> fragments = new HashMap<>();
+    final Map<Collector, Set<Collector>> dependencies =
+        CollectorScheduler.createAllDependencies(this.collectors);
+
+    // For all collectors
+    for (final Collector collector : this.collectors) {
+
+      // Restore the data of the collectors of a previous execution
+      if (this.journal != null
+          && this.journal.getFragments().containsKey(collector.getName())) {
+
+        LOGGER.info(collector.getName().toUpperCase()
+            + " collector restored from the journal for run " + this.runId);
+
+        final RunData fragment =
+            this.journal.getFragments().get(collector.getName());
+        data.put(fragment);
+        fragments.put(collector, fragment);
+        continue;
+      }
+
+      // Restore the data of the collector from the cache
+      final CollectorCache.Fingerprint fingerprint =
+          newFingerprint(collector, dependencies.get(collector), fragments);
+      RunData fragment =
+          fingerprint == null ? null : this.cache.load(fingerprint);
+
+      if (fragment != null) {
+
+        LOGGER.info(collector.getName().toUpperCase()
+            + " collector restored from the cache for run " + this.runId);
+        data.put(fragment);
+
+      } else {
+
+        // Keep a copy of the data to extract the entries of the collector
+        final RunData before;
+        if (this.journal != null || this.cache != null) {
+          before = new RunData();
+          before.put(data);
+        } else {
+          before = null;
+        }
+
+        final Stopwatch timerCollector = Stopwatch.createStarted();
+        LOGGER.info("Starting "
+            + collector.getName().toUpperCase() + " collector for run "
+            + this.runId);
+
+        // Collect data
+        collector.collect(data);
+
+        LOGGER.info("Ended "
+            + collector.getName().toUpperCase() + " collector for run "
+            + this.runId + " in " + toTimeHumanReadable(
+                timerCollector.elapsed(TimeUnit.MILLISECONDS)));
+
+        if (before != null) {
+          fragment = CollectorScheduler.newEntries(before, data);
+        }
+
+        if (fingerprint != null) {
+          this.cache.save(fingerprint, fragment);
+        }
+      }
+
+      if (this.cache != null) {
+        fragments.put(collector, fragment);
+      }
+
+      if (this.journal != null) {
+        writeJournal(collector, fragment);
+      } else {
+        writeSnapshot(collector, data);
+      }
+    }
+
+    return data;
+  }
+
+  /**
+   * Execute the independent collectors at the same time.
+   * @param threads the number of collectors to execute at the same time
+   * @return a RunData object with all data about the run
+   * @throws AozanException if an error occurs while collecting data
+   */
+  private RunData collectConcurrently(final int threads) throws AozanException {
+
+    LOGGER.info("Execute collectors using " + threads + " threads");
+
+    // Data of the ended collectors, only used for the snapshots
+    final RunData snapshotData = new RunData();
+
+    final CollectorScheduler scheduler = new CollectorScheduler(
+        this.collectors, threads, this.runId, this.cache, this.confs);
+
+    return scheduler.collect(
+        this.journal == null ? null : this.journal.getFragments(),
+        new CollectorScheduler.CollectorListener() {
+
+          @Override
+          public void collectorEnded(final Collector collector,
+              final RunData fragment) throws AozanException {
+
+            if (journal != null) {
+              writeJournal(collector, fragment);
+            } else {
+              snapshotData.put(fragment);
+              writeSnapshot(collector, snapshotData);
+            }
+          }
+        });
+  }
+
+  /**
+   * Create the fingerprint of the inputs of a collector for the cache.
+   * @param collector the collector
+   * @param dependencies all the collectors required by the collector
+   * @param fragments the data generated by the collectors already executed
+   * @return a Fingerprint object or null if the result of the collector
+   *         cannot be cached
+   */
+  private CollectorCache.Fingerprint newFingerprint(final Collector collector,
+      final Set<Collector> dependencies,
+      final Map<Collector, RunData> fragments) {
+
+    if (this.cache == null || !(collector instanceof CacheableCollector)) {
+      return null;
+    }
+
+    // The input data contains the results of all the upstream collectors
+    final RunData input = new RunData();
+    for (final Collector c : this.collectors) {
+      if (dependencies.contains(c) && fragments.containsKey(c)) {
+        input.put(fragments.get(c));
+      }
+    }
+
+    return this.cache.newFingerprint((CacheableCollector) collector,
+        this.confs.get(collector), input);
+  }
+
+  /**
+   * Append the data generated by a collector to the journal.
+   * @param collector the collector
+   * @param fragment the data generated by the collector
+   * @throws AozanException if an error occurs while writing the journal
+   */
+  private void writeJournal(final Collector collector, final RunData fragment)
+      throws AozanException {
+
+    LOGGER.fine("Append "
+        + collector.getName() + " data to " + this.journal.getFile());
+
+    try {
+      this.journal.append(collector.getName(), fragment);
+    } catch (IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Write a snapshot of the data after the execution of a collector.
+   * @param collector the collector
+   * @param data the data to write
+   * @throws AozanException if an error occurs while writing the snapshot
+   */
+  private void writeSnapshot(final Collector collector, final RunData data)
+      throws AozanException {
+
+    final File qcDir =
+        new File(this.generatorsProperties.get(QC.QC_OUTPUT_DIR));
+    final File dataFile = new File(qcDir, collector.getName()
+        + '-' + System.currentTimeMillis() + ".snapshot.data");
+
+    LOGGER.fine("Writing rundata to " + dataFile);
+
+    try {
+      data.createRunDataFile(dataFile);
+    } catch (IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
   /**
    * Adds the all collectors and change order per default to move
    * ProjectStatCollector at the end, if is selected.
@@ -0,0 +1,297 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.collectors.CollectorCache;
+
+/**
+ * This class define a journal of the data generated by the collectors. After
+ * the execution of each collector, only the entries added by the collector
+ * are appended to the journal, followed by a checkpoint line with the name of
+ * the collector. The entries after the last checkpoint are ignored as they
+ * have been written by a collector that has not ended. The first line of the
+ * journal contains a fingerprint of the settings and of the samplesheet of the
+ * run, the journal is discarded when they have changed.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+class RunDataJournal {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  /** Journal file extension. */
+  private static final String JOURNAL_EXTENSION = ".journal";
+
+  /** Prefix of the checkpoint lines. */
+  private static final String CHECKPOINT_PREFIX = "#checkpoint ";
+
+  /** Prefix of the fingerprint line. */
+  private static final String FINGERPRINT_PREFIX = "#fingerprint ";
+
+  private final File file;
+  private final Map<String, RunData> fragments = new LinkedHashMap<>();
+  private String fingerprint;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the journal file.
+   * @return the journal file
+   */
+  File getFile() {
+    return this.file;
+  }
+
+  /**
+   * Get the data of the collectors found in the journal.
+   * @return an unmodifiable map with the data of the collectors by collector
+   *         names
+   */
+  Map<String, RunData> getFragments() {
+
+    return Collections.unmodifiableMap(this.fragments);
+  }
+
+  //
+  // Journal methods
+  //
+
+  /**
+   * Load the journal file if exists. The content of the journal after the last
+   * checkpoint is removed. The journal file is deleted if its fingerprint is
+   * not the fingerprint of the current execution.
+   * @param fingerprint the fingerprint of the settings and of the samplesheet
+   *          of the run
+   * @throws IOException if an error occurs while reading the journal
+   */
+  void load(final String fingerprint) throws IOException {
+
+    checkNotNull(fingerprint, "fingerprint argument cannot be null");
+
+    this.fragments.clear();
+    this.fingerprint = fingerprint;
+
+    if (!this.file.exists()) {
+      return;
+    }
+
+    final byte[] bytes = Files.toByteArray(this.file);
+    final String content = new String(bytes, Globals.DEFAULT_FILE_ENCODING);
+
+    // The results of the journal cannot be used if the settings or the
+    // samplesheet have changed
+    final int headerEnd = content.indexOf('\n');
+    if (headerEnd == -1 || !content.substring(0, headerEnd)
+        .equals(FINGERPRINT_PREFIX + fingerprint)) {
+
+      LOGGER.info("The settings or the samplesheet of the run have changed, "
+          + "discard the journal file: " + this.file);
+
+      if (!this.file.delete()) {
+        throw new IOException("Cannot delete the journal file: " + this.file);
+      }
+
+      return;
+    }
+
+    RunData current = new RunData();
+    int lastCheckpointEnd = headerEnd + 1;
+    int pos = lastCheckpointEnd;
+
+    while (pos < content.length()) {
+
+      int end = content.indexOf('\n', pos);
+
+      // Incomplete line
+      if (end == -1) {
+        break;
+      }
+
+      final String line = content.substring(pos, end);
+      pos = end + 1;
+
+      if (line.startsWith(CHECKPOINT_PREFIX)) {
+
+        this.fragments.put(line.substring(CHECKPOINT_PREFIX.length()).trim(),
+            current);
+        current = new RunData();
+        lastCheckpointEnd = pos;
+        continue;
+      }
+
+      final int sep = line.indexOf('=');
+      if (sep != -1) {
+        current.put(line.substring(0, sep), line.substring(sep + 1));
+      }
+    }
+
+    // Remove the entries of the collector that has not ended
+    final long validLength = content.substring(0, lastCheckpointEnd)
+        .getBytes(Globals.DEFAULT_FILE_ENCODING).length;
+
+    if (validLength < bytes.length) {
+
+      LOGGER.warning("Remove the incomplete end of the journal file: "
+          + this.file);
+
+      try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+        raf.setLength(validLength);
+      }
+    }
+  }
+
+  /**
+   * Append the data of a collector to the journal.
+   * @param collectorName the name of the collector
+   * @param fragment the data generated by the collector
+   * @throws IOException if an error occurs while writing the journal
+   */
+  void append(final String collectorName, final RunData fragment)
+      throws IOException {
+
+    checkNotNull(collectorName, "collectorName argument cannot be null");
+    checkNotNull(fragment, "fragment argument cannot be null");
+    checkNotNull(this.fingerprint, "the journal has not been loaded");
+
+    final boolean newFile = this.file.length() == 0;
+
+    try (FileOutputStream out = new FileOutputStream(this.file, true)) {
+
+      final Writer writer =
+          new OutputStreamWriter(out, Globals.DEFAULT_FILE_ENCODING);
+
+      if (newFile) {
+        writer.write(FINGERPRINT_PREFIX + this.fingerprint + '\n');
+      }
+
+      writer.write(fragment.toString());
+      writer.write(CHECKPOINT_PREFIX + collectorName + '\n');
+      writer.flush();
+
+      // The checkpoint must be on the disk before the next collector starts
+      out.getFD().sync();
+    }
+
+    this.fragments.put(collectorName, fragment);
+  }
+
+  /**
+   * Delete the journal file.
+   */
+  void delete() {
+
+    this.fragments.clear();
+
+    if (this.file.exists() && !this.file.delete()) {
+      LOGGER.warning("Cannot delete the journal file: " + this.file);
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the journal file of a run.
+   * @param qcDir the QC directory
+   * @param runId the run id
+   * @return the journal file of the run
+   */
+  static File getJournalFile(final File qcDir, final String runId) {
+
+    checkNotNull(qcDir, "qcDir argument cannot be null");
+    checkNotNull(runId, "runId argument cannot be null");
+
+    return new File(qcDir, runId + JOURNAL_EXTENSION);
+  }
+
+  /**
+   * Compute the fingerprint of the settings and of the samplesheet of a run.
+   * The settings that does not change the result of the collectors are
+   * ignored.
+   * @param settings the settings of the collectors
+   * @param samplesheetFile the samplesheet file, can be null
+   * @return the SHA-1 sum of the settings and of the samplesheet
+   * @throws IOException if an error occurs while reading the samplesheet
+   */
+  static String computeFingerprint(final Map<String, String> settings,
+      final File samplesheetFile) throws IOException {
+
+    checkNotNull(settings, "settings argument cannot be null");
+
+    final Hasher hasher = Hashing.sha1().newHasher();
+
+    for (Map.Entry<String, String> e : new TreeMap<>(settings).entrySet()) {
+
+      if (!CollectorCache.IGNORED_SETTINGS.contains(e.getKey())) {
+        hasher.putString(e.getKey() + '=' + e.getValue() + '\n',
+            StandardCharsets.UTF_8);
+      }
+    }
+
+    if (samplesheetFile != null && samplesheetFile.isFile()) {
+      hasher.putBytes(Files.toByteArray(samplesheetFile));
+    }
+
+    return hasher.hash().toString();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param file the journal file
+   */
+  RunDataJournal(final File file) {
+
+    checkNotNull(file, "file argument cannot be null");
+
+    this.file = file;
+  }
+
+}
@@ -126,12 +126,12 @@ public final class Settings {
   /** Erase input after recompression. */
   public static final String RECOMPRESS_DELETE_ORIGINAL_FASTQ_KEY =
       "recompress.delete.original.fastq.files";
-  /** Erase input after recompression. */
+  /** Compression level of the recompressed files. */
   public static final String RECOMPRESS_COMPRESSION_LEVEL_KEY =
       "recompress.compression.level";
-  /** Erase input after recompression. */
+  /** Number of threads of the recompression. */
   public static final String RECOMPRESS_THREADS_KEY = "recompress.threads";
-  /** Erase input after recompression. */
+  /** Compression type of the recompressed files. */
   public static final String RECOMPRESS_COMPRESSION_KEY =
       "recompress.compression";
 
@@ -245,6 +245,12 @@ public final class Settings {
   /** Use Docker for Blast. */
   public static final String QC_CONF_FASTQC_BLAST_USE_DOCKER_KEY =
       "qc.conf.fastqc.blast.use.docker";
+  /** Collector FastQC blast cache directory. */
+  public static final String QC_CONF_FASTQC_BLAST_CACHE_PATH_KEY =
+      "qc.conf.fastqc.blast.cache.path";
+  /** Collector FastQC blast cache maximal number of entries. */
+  public static final String QC_CONF_FASTQC_BLAST_CACHE_MAX_ENTRIES_KEY =
+      "qc.conf.fastqc.blast.cache.max.entries";
 
   /** Collector cluster density ratio. */
   public static final String QC_CONF_CLUSTER_DENSITY_RATIO_KEY =
@@ -256,6 +262,12 @@ public final class Settings {
   /** Collector fastqscreen fastq reads pf used. */
   public static final String QC_CONF_FASTQSCREEN_FASTQ_READS_PF_USED_KEY =
       "qc.conf.fastqscreen.fastq.reads.pf.used";
+  /** Collector fastqscreen fastq reservoir sampling. */
+  public static final String QC_CONF_FASTQSCREEN_FASTQ_RESERVOIR_SAMPLING_KEY =
+      "qc.conf.fastqscreen.fastq.reservoir.sampling";
+  /** Collector fastqscreen fastq sampling seed. */
+  public static final String QC_CONF_FASTQSCREEN_FASTQ_SAMPLING_SEED_KEY =
+      "qc.conf.fastqscreen.fastq.sampling.seed";
   /** Collector fastqscreen genomes. */
   public static final String QC_CONF_FASTQSCREEN_GENOMES_KEY =
       "qc.conf.fastqscreen.genomes";
@@ -265,6 +277,12 @@ public final class Settings {
   /** Collector fastqscreen mapper argument. */
   public static final String QC_CONF_FASTQSCREEN_MAPPER_ARGUMENTS_KEY =
       "qc.conf.fastqscreen.mapper.arguments";
+  /** Collector fastqscreen number of threads of the mapper for a sample. */
+  public static final String QC_CONF_FASTQSCREEN_MAPPER_THREADS_KEY =
+      "qc.conf.fastqscreen.mapper.threads";
+  /** Collector fastqscreen number of genomes mapped at the same time. */
+  public static final String QC_CONF_FASTQSCREEN_CONCURRENT_GENOMES_KEY =
+      "qc.conf.fastqscreen.concurrent.genomes";
   /** Collector fastqscreen mapping ignore paired mode. */
   public static final String QC_CONF_FASTQSCREEN_MAPPING_IGNORE_PAIRED_END_MODE_KEY =
       "qc.conf.fastqscreen.mapping.ignore.paired.end.mode";
@@ -283,6 +301,15 @@ public final class Settings {
   /** Collector fastqscreen settings mappers indexes path. */
   public static final String QC_CONF_FASTQSCREEN_MAPPERS_INDEXES_PATH_KEY =
       "qc.conf.fastqscreen.mapper.indexes.path";
+  /** Collector fastqscreen directory of the extracted mapper indexes. */
+  public static final String QC_CONF_FASTQSCREEN_MAPPER_INDEX_CACHE_PATH_KEY =
+      "qc.conf.fastqscreen.mapper.index.cache.path";
+  /** Collector fastqscreen maximal size of the extracted indexes in GB. */
+  public static final String QC_CONF_FASTQSCREEN_MAPPER_INDEX_CACHE_MAX_SIZE_KEY =
+      "qc.conf.fastqscreen.mapper.index.cache.max.size";
+  /** Collector fastqscreen read the indexes before the mapping. */
+  public static final String QC_CONF_FASTQSCREEN_MAPPER_INDEX_CACHE_PREFAULT_KEY =
+      "qc.conf.fastqscreen.mapper.index.cache.prefault";
   /** Collector fastqscreen xsl file. */
   public static final String QC_CONF_FASTQSCREEN_XSL_FILE_KEY =
       "qc.conf.fastqscreen.xsl.file";
@@ -302,6 +329,21 @@ public final class Settings {
       "qc.conf.read.xml.collector.used";
   /** Collector threads. */
   public static final String QC_CONF_THREADS_KEY = "qc.conf.threads";
+  /** Number of collectors that can be executed at the same time. */
+  public static final String QC_CONF_COLLECTORS_THREADS_KEY =
+      "qc.conf.collectors.threads";
+  /** Read the FASTQ files only once for all the FASTQ collectors. */
+  public static final String QC_CONF_FASTQ_FUSED_SCAN_KEY =
+      "qc.conf.fastq.fused.scan";
+  /** Number of threads used to uncompress the FASTQ files. */
+  public static final String QC_CONF_FASTQ_DECOMPRESSION_THREADS_KEY =
+      "qc.conf.fastq.decompression.threads";
+  /** Use a journal to resume the collectors instead of data snapshots. */
+  public static final String QC_CONF_COLLECTORS_JOURNAL_KEY =
+      "qc.conf.collectors.journal";
+  /** Keep the results of the collectors to not compute them again. */
+  public static final String QC_CONF_COLLECTORS_CACHE_KEY =
+      "qc.conf.collectors.cache";
 
   /** Collector undetermined indexed xsl file. */
   public static final String QC_CONF_UNDETERMINED_INDEXED_XSL_FILE_KEY =
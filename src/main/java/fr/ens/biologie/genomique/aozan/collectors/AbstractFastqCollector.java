@@ -31,16 +31,15 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import com.google.common.collect.Lists;
@@ -50,6 +49,7 @@ import fr.ens.biologie.genomique.aozan.Common;
 import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.QC;
 import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.Settings;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
 import fr.ens.biologie.genomique.aozan.io.FastqSampleUtils;
 
@@ -76,21 +76,18 @@ public abstract class AbstractFastqCollector implements Collector {
   /** The fastq samples. */
   private final Set<FastqSample> fastqSamples = new LinkedHashSet<>();
 
-  // mode threaded
-  /** The Constant CHECKING_DELAY_MS. */
-  private static final int CHECKING_DELAY_MS = 5000;
+  /** The stage that share the reading of the FASTQ files. */
+  private FastqScanStage scanStage;
 
-  /** The Constant WAIT_SHUTDOWN_MINUTES. */
-  private static final int WAIT_SHUTDOWN_MINUTES = 60;
+  /** The configuration of the collector. */
+  private CollectorConfiguration conf;
 
-  /** The threads. */
-  private List<AbstractFastqProcessThread> threads;
+  /** The cache of the results of the samples, null if not used. */
+  private CollectorCache cache;
 
-  /** The future threads. */
-  private List<Future<? extends AbstractFastqProcessThread>> futureThreads;
-
-  /** The executor. */
-  private ExecutorService executor;
+  /** The fingerprints of the samples to save in the cache. */
+  private final Map<FastqSample, CollectorCache.Fingerprint> fingerprints =
+      new ConcurrentHashMap<>();
 
   //
   // Abstract methods
@@ -115,6 +112,15 @@ public abstract class AbstractFastqCollector implements Collector {
    */
   protected abstract int getThreadsNumber();
 
+  /**
+   * Return the number of processors used by the thread of a sample.
+   * @return the number of processors
+   */
+  protected int getSampleThreadsNumber() {
+
+    return 1;
+  }
+
   /**
    * Test if undetermined indices samples must be processed.
    * @return true if undetermined indices samples must be processed
@@ -140,6 +146,56 @@ public abstract class AbstractFastqCollector implements Collector {
     return true;
   }
 
+  /**
+   * Test if the threads of the collector can share the reading of the FASTQ
+   * files with the threads of the other collectors. The threads of the
+   * collectors that return true must implement FastqScanConsumer.
+   * @return true if the reading of the FASTQ files can be shared
+   */
+  protected boolean isFastqScanSupported() {
+
+    return false;
+  }
+
+  /**
+   * Test if the results of the samples can be saved in the cache of the
+   * collectors.
+   * @return true if the results of the samples can be saved in the cache
+   */
+  protected boolean isResultCacheable() {
+
+    return true;
+  }
+
+  /**
+   * Add to the fingerprint of a sample the data and the files used to process
+   * the sample. By default, the fingerprint contains the run information, the
+   * samplesheet entries of the sample and the FASTQ files of all the reads of
+   * the sample.
+   * @param fingerprint the fingerprint of the sample
+   * @param data result data object
+   * @param fastqSample sample object
+   * @param reportDir the report dir
+   */
+  protected void addSampleFingerprint(
+      final CollectorCache.Fingerprint fingerprint, final RunData data,
+      final FastqSample fastqSample, final File reportDir) {
+
+    fingerprint.addValue("sample.filename.prefix",
+        fastqSample.getFilenamePrefix());
+    fingerprint.addValue("sample.project", fastqSample.getProjectName());
+    fingerprint.addEntries(data, "run.info.");
+    fingerprint.addEntries(data, SamplesheetCollector.SAMPLESHEET_DATA_PREFIX
+        + ".sample" + fastqSample.getSampleId() + ".");
+
+    for (final FastqSample fs : this.fastqSamples) {
+      if (fs.getSampleId() == fastqSample.getSampleId()
+          && fs.getLane() == fastqSample.getLane()) {
+        fingerprint.addInputFiles(fs.getFastqFiles());
+      }
+    }
+  }
+
   /**
    * Get the temporary path.
    * @return a File object with the temporary path
@@ -182,15 +238,20 @@ public abstract class AbstractFastqCollector implements Collector {
     this.qcReportOutputPath = qc.getQcDir();
     this.tmpDir = qc.getTmpDir();
     this.qc = qc;
+    this.conf = conf;
 
-    if (this.getThreadsNumber() > 1) {
+    // Do not process again the samples whose inputs have not changed
+    if (isResultCacheable()
+        && conf.getBoolean(Settings.QC_CONF_COLLECTORS_CACHE_KEY, false)) {
+      this.cache = CollectorCache.getCache(qc);
+    }
 
-      // Create the list for threads
-      this.threads = new ArrayList<>();
-      this.futureThreads = new ArrayList<>();
+    // Share the reading of the FASTQ files with the other collectors
+    if (isFastqScanSupported()
+        && conf.getBoolean(Settings.QC_CONF_FASTQ_FUSED_SCAN_KEY, false)) {
 
-      // Create executor service
-      this.executor = Executors.newFixedThreadPool(this.getThreadsNumber());
+      this.scanStage = qc.getFastqScanStage();
+      this.scanStage.register(this);
     }
   }
 
@@ -220,43 +281,50 @@ public abstract class AbstractFastqCollector implements Collector {
 
     final boolean isRunPE = data.getRunMode().toUpperCase().equals("PE");
 
+    // The data used by the other collectors in shared scans must not change
+    // during the collect
+    final FastqScanStage.Requester scanRequester;
+    if (this.scanStage != null) {
+
+      final RunData scanData = new RunData();
+      scanData.put(data);
+      scanRequester = this.scanStage.newRequester(this, scanData, isRunPE);
+    } else {
+      scanRequester = null;
+    }
+
     RunData resultPart;
     if (this.getThreadsNumber() > 1) {
 
-      for (final FastqSample fs : this.fastqSamples) {
+      // The threads of all the FASTQ collectors share the same processors
+      final FastqSampleScheduler.Batch batch =
+          this.qc.getSampleScheduler().newBatch();
+      final List<AbstractFastqProcessThread> threads = new ArrayList<>();
+
+      for (final FastqSample fs : sortBySize(this.fastqSamples)) {
         if (fs.getFastqFiles() != null && !fs.getFastqFiles().isEmpty()) {
 
+          final File reportDir = createReportDir(fs);
           resultPart = this.loadResultPart(fs);
 
+          if (resultPart == null) {
+            resultPart = this.loadCachedResultPart(data, fs, reportDir);
+          }
+
           if (resultPart != null) {
             data.put(resultPart);
           } else {
 
-            // Create directory for the sample
-            final File reportDir;
-
-            if (fs.isUndeterminedIndex()) {
-              reportDir =
-                  new File(this.qcReportOutputPath, "Undetermined_indices");
-            } else {
-              reportDir = new File(this.qcReportOutputPath,
-                  "Project_" + fs.getProjectName());
-            }
-
-            if (!reportDir.exists()) {
-              if (!reportDir.mkdirs()) {
-                throw new AozanException("Cannot create report directory: "
-                    + reportDir.getAbsolutePath());
-              }
-            }
-
             final AbstractFastqProcessThread thread =
                 this.collectSample(data, fs, reportDir, isRunPE);
 
             if (thread != null) {
-              // Add thread to executor or futureThreads, I don't know
-              this.threads.add(thread);
-              this.futureThreads.add(this.executor.submit(thread, thread));
+              thread.setScanRequester(scanRequester);
+              thread.setDecompressionThreads(
+                  this.qc.getDecompressionThreads());
+
+              threads.add(thread);
+              batch.submit(thread, getSampleThreadsNumber());
             }
           }
         } else {
@@ -270,13 +338,13 @@ public abstract class AbstractFastqCollector implements Collector {
         }
       }
 
-      if (this.futureThreads.size() > 0) {
+      if (batch.size() > 0) {
 
         // Wait for threads
-        this.waitThreads(this.futureThreads, this.executor);
+        this.waitThreads(batch);
 
         // Add results of the threads to the data object
-        for (final AbstractFastqProcessThread sft : this.threads) {
+        for (final AbstractFastqProcessThread sft : threads) {
           data.put(sft.getResults());
         }
       }
@@ -288,27 +356,14 @@ public abstract class AbstractFastqCollector implements Collector {
 
         if (fs.getFastqFiles() != null && !fs.getFastqFiles().isEmpty()) {
 
+          final File reportDir = createReportDir(fs);
           resultPart = this.loadResultPart(fs);
 
           if (resultPart == null) {
+            resultPart = this.loadCachedResultPart(data, fs, reportDir);
+          }
 
-            // Create directory for the sample
-            final File reportDir;
-
-            if (fs.isUndeterminedIndex()) {
-              reportDir =
-                  new File(this.qcReportOutputPath, "Undetermined_indices");
-            } else {
-              reportDir = new File(this.qcReportOutputPath,
-                  "Project_" + fs.getProjectName());
-            }
-
-            if (!reportDir.exists()) {
-              if (!reportDir.mkdirs()) {
-                throw new AozanException("Cannot create report directory: "
-                    + reportDir.getAbsolutePath());
-              }
-            }
+          if (resultPart == null) {
 
             final AbstractFastqProcessThread pseudoThread =
                 this.collectSample(data, fs, reportDir, isRunPE);
@@ -317,6 +372,10 @@ public abstract class AbstractFastqCollector implements Collector {
               continue;
             }
 
+            pseudoThread.setScanRequester(scanRequester);
+            pseudoThread.setDecompressionThreads(
+                this.qc.getDecompressionThreads());
+
             // This not really a thread as it will be never started
             pseudoThread.run();
 
@@ -374,6 +433,10 @@ public abstract class AbstractFastqCollector implements Collector {
   @Override
   public void clear() {
 
+    if (this.scanStage != null) {
+      this.scanStage.unregister(this);
+    }
+
     // Delete temporary uncompress fastq file
     clearTemporaryFiles();
 
@@ -391,10 +454,90 @@ public abstract class AbstractFastqCollector implements Collector {
     }
   }
 
+  /**
+   * Create a thread for a sample scanned by another collector.
+   * @param data result data object
+   * @param fastqSample sample object
+   * @param runPE if is a PE run
+   * @return a process thread instance or null if the collector does not need
+   *         to process the sample
+   * @throws AozanException if an error occurs while creating the thread
+   */
+  AbstractFastqProcessThread createScanThread(final RunData data,
+      final FastqSample fastqSample, final boolean runPE)
+      throws AozanException {
+
+    if (!isFastqScanSupported()
+        || !isSampleProcessed(fastqSample)
+        || loadResultPart(fastqSample) != null) {
+      return null;
+    }
+
+    final File reportDir = createReportDir(fastqSample);
+
+    if (loadCachedResultPart(data, fastqSample, reportDir) != null) {
+      return null;
+    }
+
+    final AbstractFastqProcessThread thread =
+        this.collectSample(data, fastqSample, reportDir, runPE);
+
+    if (thread != null) {
+      thread.setDecompressionThreads(this.qc.getDecompressionThreads());
+    }
+
+    return thread;
+  }
+
   //
   // Private methods
   //
 
+  /**
+   * Test if a sample is processed by the collector.
+   * @param fastqSample the sample
+   * @return true if the sample is processed by the collector
+   */
+  private boolean isSampleProcessed(final FastqSample fastqSample) {
+
+    if (fastqSample.isUndeterminedIndex()
+        ? !isProcessUndeterminedIndicesSamples()
+        : !isProcessStandardSamples()) {
+      return false;
+    }
+
+    return isProcessAllReads() || fastqSample.getRead() == 1;
+  }
+
+  /**
+   * Create the report directory of a sample if not exists.
+   * @param fastqSample the sample
+   * @return the report directory of the sample
+   * @throws AozanException if the directory cannot be created
+   */
+  private File createReportDir(final FastqSample fastqSample)
+      throws AozanException {
+
+    // Create directory for the sample
+    final File reportDir;
+
+    if (fastqSample.isUndeterminedIndex()) {
+      reportDir = new File(this.qcReportOutputPath, "Undetermined_indices");
+    } else {
+      reportDir = new File(this.qcReportOutputPath,
+          "Project_" + fastqSample.getProjectName());
+    }
+
+    if (!reportDir.exists()) {
+      if (!reportDir.mkdirs() && !reportDir.isDirectory()) {
+        throw new AozanException("Cannot create report directory: "
+            + reportDir.getAbsolutePath());
+      }
+    }
+
+    return reportDir;
+  }
+
   /**
    * Restore rundata from the save file if it exists.
    * @param fastqSample sample object
@@ -431,13 +574,55 @@ public abstract class AbstractFastqCollector implements Collector {
   }
 
   /**
-   * Save rundata for a sample in a file in a qc report directory.
+   * Restore the result of a sample from the cache of the collectors if the
+   * inputs of the sample have not changed.
+   * @param data result data object
+   * @param fastqSample sample object
+   * @param reportDir the report dir
+   * @return RunData with the result of the sample or null
+   */
+  private RunData loadCachedResultPart(final RunData data,
+      final FastqSample fastqSample, final File reportDir) {
+
+    if (this.cache == null) {
+      return null;
+    }
+
+    final CollectorCache.Fingerprint fingerprint = this.cache.newFingerprint(
+        this.getName() + fastqSample.getRundataPrefix(), this.conf);
+    addSampleFingerprint(fingerprint, data, fastqSample, reportDir);
+
+    final RunData result = this.cache.load(fingerprint);
+
+    if (result == null) {
+
+      // The result of the sample will be saved with this fingerprint
+      this.fingerprints.put(fastqSample, fingerprint);
+    } else {
+
+      LOGGER.fine("For the "
+          + this.getName().toUpperCase() + " : Restore cached result for "
+          + fastqSample.getFilenamePrefix());
+    }
+
+    return result;
+  }
+
+  /**
+   * Save rundata for a sample in a file in a qc report directory and in the
+   * cache of the collectors.
    * @param fastqSample sample object
    * @param data RunData corresponding to one sample
    */
   protected void saveResultPart(final FastqSample fastqSample,
       final RunData data) {
 
+    final CollectorCache.Fingerprint fingerprint =
+        this.fingerprints.remove(fastqSample);
+    if (fingerprint != null) {
+      this.cache.save(fingerprint, data);
+    }
+
     try {
       // Define the part result directory
       final File dataFile = this.createTemporaryDataFile(fastqSample);
@@ -480,85 +665,72 @@ public abstract class AbstractFastqCollector implements Collector {
   }
 
   /**
-   * Wait the end of the threads.
-   * @param threads list with the threads
-   * @param executor the executor
+   * Wait the end of the threads. The threads are handled in their order of
+   * completion.
+   * @param batch the batch of the threads
    * @throws AozanException if an error occurs while executing a thread
    */
-  private void waitThreads(
-      final List<Future<? extends AbstractFastqProcessThread>> threads,
-      final ExecutorService executor) throws AozanException {
-
-    final boolean interruptThreadIfRunning = true;
+  private void waitThreads(final FastqSampleScheduler.Batch batch)
+      throws AozanException {
 
-    int samplesNotProcessed;
-
-    // Wait until all samples are processed
-    do {
+    for (int i = 0; i < batch.size(); i++) {
 
       try {
-        Thread.sleep(CHECKING_DELAY_MS);
-      } catch (final InterruptedException e) {
-        // LOGGER.warning("InterruptedException: " + e.getMessage());
-      }
 
-      final Set<AbstractFastqProcessThread> threadDataSaved = new HashSet<>();
-      samplesNotProcessed = 0;
+        final AbstractFastqProcessThread st = batch.take().get();
 
-      for (final Future<? extends AbstractFastqProcessThread> fst : threads) {
+        if (!st.isSuccess()) {
 
-        if (fst.isDone()) {
+          // Cancel the other threads
+          batch.cancel();
 
-          try {
+          // Return error Step Result
+          throw new AozanException(st.getException());
+        }
 
-            final AbstractFastqProcessThread st = fst.get();
+        // if success, save results
+        this.saveResultPart(st.getFastqSample(), st.getResults());
 
-            if (!st.isSuccess()) {
+      } catch (final InterruptedException e) {
 
-              // Close the thread pool
-              executor.shutdownNow();
+        batch.cancel();
+        Thread.currentThread().interrupt();
 
-              // Wait the termination of current running task
-              executor.awaitTermination(WAIT_SHUTDOWN_MINUTES,
-                  TimeUnit.MINUTES);
+        throw new AozanException(e);
 
-              // Return error Step Result
-              throw new AozanException(st.getException());
+      } catch (final ExecutionException e) {
 
-            } else {
-              // if success, save results
-              if (!threadDataSaved.contains(st)) {
-                this.saveResultPart(st.getFastqSample(), st.getResults());
-                threadDataSaved.add(st);
-              }
+        batch.cancel();
+        LOGGER.severe("Throw exception by thread execution, task is cancelled."
+            + e.getMessage() + '\n' + stackTraceToString(e));
 
-            }
-          } catch (final InterruptedException | ExecutionException e) {
+        // Throw exception
+        throw new AozanException(e);
+      }
+    }
+  }
 
-            if (fst.cancel(interruptThreadIfRunning)) {
-              LOGGER.severe(
-                  "Throw exception by thread execution, task could not be cancelled. "
-                      + e.getMessage() + '\n' + stackTraceToString(e));
-            } else {
-              LOGGER.severe(
-                  "Throw exception by thread execution, task is cancelled."
-                      + e.getMessage() + '\n' + stackTraceToString(e));
-            }
+  /**
+   * Sort samples from the largest to the smallest.
+   * @param samples the samples to sort
+   * @return a sorted list with the samples
+   */
+  private static List<FastqSample> sortBySize(
+      final Collection<FastqSample> samples) {
 
-            // Throw exception
-            throw new AozanException(e);
-          }
+    final List<FastqSample> result = new ArrayList<>(samples);
 
-        } else {
-          samplesNotProcessed++;
-        }
+    Collections.sort(result, new Comparator<FastqSample>() {
 
-      }
+      @Override
+      public int compare(final FastqSample s1, final FastqSample s2) {
 
-    } while (samplesNotProcessed > 0);
+        return Long.compare(s2.getUncompressedSize(),
+            s1.getUncompressedSize());
+      }
+    });
 
-    // Close the thread pool
-    executor.shutdown();
+    return result;
   }
 
   /**
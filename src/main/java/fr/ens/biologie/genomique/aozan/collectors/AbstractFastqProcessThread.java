@@ -23,6 +23,7 @@
 
 package fr.ens.biologie.genomique.aozan.collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.toTimeHumanReadable;
 
 import java.util.concurrent.TimeUnit;
@@ -32,6 +33,7 @@ import com.google.common.base.Stopwatch;
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
+import fr.ens.biologie.genomique.aozan.io.ParallelDecompression;
 
 /**
  * The abstract class define a thread, it calls by AbstractFastqCollector.
@@ -47,6 +49,10 @@ abstract class AbstractFastqProcessThread implements Runnable {
   private Throwable exception;
   private boolean success;
 
+  private FastqScanStage.Requester scanRequester;
+  private int decompressionThreads =
+      ParallelDecompression.getDefaultThreadCount();
+
   @Override
   public void run() {
 
@@ -84,6 +90,31 @@ abstract class AbstractFastqProcessThread implements Runnable {
 
   protected abstract void process() throws AozanException;
 
+  //
+  // Scan method
+  //
+
+  /**
+   * Read the FASTQ files of the sample and send the reads to a consumer. If a
+   * scan requester has been set, the reading of the FASTQ files is shared with
+   * the other collectors.
+   * @param consumer the consumer of the reads
+   * @throws AozanException if an error occurs while reading the FASTQ files
+   */
+  protected void scanFastqFiles(final FastqScanConsumer consumer)
+      throws AozanException {
+
+    if (this.scanRequester != null) {
+      this.scanRequester.scan(this, consumer);
+    } else {
+
+      final FastqScanner scanner = new FastqScanner(this.fastqSample,
+          this.decompressionThreads);
+      scanner.addConsumer(consumer);
+      scanner.scan();
+    }
+  }
+
   //
   // Getters
   //
@@ -116,6 +147,25 @@ abstract class AbstractFastqProcessThread implements Runnable {
     return this.success;
   }
 
+  /**
+   * Test if the reading of the FASTQ files is shared with the other
+   * collectors.
+   * @return true if the reading of the FASTQ files is shared
+   */
+  protected boolean isFastqScanShared() {
+
+    return this.scanRequester != null;
+  }
+
+  /**
+   * Get the number of threads used to uncompress the FASTQ files.
+   * @return the number of threads used to uncompress the FASTQ files
+   */
+  protected int getDecompressionThreads() {
+
+    return this.decompressionThreads;
+  }
+
   /**
    * Return the fastqSample which represent a sample to treat.
    * @return fastqSample, object which represent a sample to treat
@@ -144,6 +194,28 @@ abstract class AbstractFastqProcessThread implements Runnable {
     this.success = success;
   }
 
+  /**
+   * Set the requester to use to share the reading of the FASTQ files with the
+   * other collectors.
+   * @param scanRequester the scan requester. Can be null
+   */
+  void setScanRequester(final FastqScanStage.Requester scanRequester) {
+    this.scanRequester = scanRequester;
+  }
+
+  /**
+   * Set the number of threads used to uncompress the FASTQ files.
+   * @param decompressionThreads the number of threads, 1 to disable parallel
+   *          uncompression
+   */
+  void setDecompressionThreads(final int decompressionThreads) {
+
+    checkArgument(decompressionThreads > 0,
+        "decompressionThreads must be greater than 0");
+
+    this.decompressionThreads = decompressionThreads;
+  }
+
   //
   // Constructor
   //
@@ -0,0 +1,45 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * This interface define a collector whose result can be stored in the cache
+ * of the collectors. The result of the collector must only depend on its input
+ * files, on its configuration and on the data of its required collectors.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public interface CacheableCollector extends Collector {
+
+  /**
+   * Get the files read by the collector. This method is called after the
+   * configuration of the collector.
+   * @return a list with the input files of the collector
+   */
+  List<File> getInputFiles();
+
+}
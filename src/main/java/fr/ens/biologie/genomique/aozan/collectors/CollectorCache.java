@@ -0,0 +1,566 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.Common;
+import fr.ens.biologie.genomique.aozan.Globals;
+import fr.ens.biologie.genomique.aozan.QC;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.Settings;
+
+/**
+ * This class define a cache for the results of the collectors. Each entry of
+ * the cache contains the data generated by a collector, or by a collector for
+ * a sample, and the fingerprint of the inputs used to generate this data: the
+ * input files, the settings read by the collector and the data of the run
+ * used by the collector. An entry is only restored when all these inputs are
+ * unchanged. The content of an input file is only checked using its MD5 sum
+ * when its modification time has changed. To not read again the FASTQ files
+ * when the entries are saved, the MD5 sum is only computed for the small input
+ * files, the large input files are unchanged only if their modification time
+ * has not changed.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class CollectorCache {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  /** Name of the directory of the cache in the QC directory. */
+  public static final String CACHE_DIRNAME = "cache";
+
+  private static final Map<QC, CollectorCache> CACHES = new WeakHashMap<>();
+
+  private static final String PREFIX = "cache.";
+  private static final String FINGERPRINT_KEY = PREFIX + "fingerprint";
+  private static final String CONF_KEYS_KEY = PREFIX + "conf.keys";
+  private static final String CONF_FINGERPRINT_KEY =
+      PREFIX + "conf.fingerprint";
+  private static final String INPUT_COUNT_KEY = PREFIX + "input.count";
+  private static final String INPUT_PREFIX = PREFIX + "input";
+
+  /** The settings that does not change the result of the collectors. */
+  public static final Set<String> IGNORED_SETTINGS = ImmutableSet.of(
+      Settings.QC_CONF_THREADS_KEY, Settings.QC_CONF_COLLECTORS_THREADS_KEY,
+      Settings.QC_CONF_FASTQ_FUSED_SCAN_KEY,
+      Settings.QC_CONF_FASTQ_DECOMPRESSION_THREADS_KEY,
+      Settings.QC_CONF_COLLECTORS_JOURNAL_KEY,
+      Settings.QC_CONF_COLLECTORS_CACHE_KEY);
+
+  private static final Splitter COMMA_SPLITTER =
+      Splitter.on(',').omitEmptyStrings();
+
+  /** Maximal length of the input files whose MD5 sum is saved. */
+  private static final long DEFAULT_MD5_MAX_LENGTH = 16 * 1024 * 1024;
+
+  private final File dir;
+  private final long md5MaxLength;
+
+  /** The MD5 sums of the input files, by path, length and modification time. */
+  private final ConcurrentMap<String, String> md5Sums =
+      new ConcurrentHashMap<>();
+
+  /**
+   * This class define the fingerprint of the inputs of a cache entry.
+   */
+  public static final class Fingerprint {
+
+    private final String name;
+    private final CollectorConfiguration conf;
+    private final Map<String, String> values = new TreeMap<>();
+    private final Set<File> inputFiles = new TreeSet<>();
+    private final Set<File> outputFiles = new TreeSet<>();
+
+    /**
+     * Add a value to the fingerprint.
+     * @param key the key of the value
+     * @param value the value, can be null
+     */
+    public void addValue(final String key, final String value) {
+
+      checkNotNull(key, "key argument cannot be null");
+
+      this.values.put(key, String.valueOf(value));
+    }
+
+    /**
+     * Add all the entries of a RunData to the fingerprint.
+     * @param data the RunData
+     */
+    public void addEntries(final RunData data) {
+
+      addEntries(data, "");
+    }
+
+    /**
+     * Add the entries of a RunData whose key starts with a prefix to the
+     * fingerprint.
+     * @param data the RunData
+     * @param prefix the prefix of the keys
+     */
+    public void addEntries(final RunData data, final String prefix) {
+
+      checkNotNull(data, "data argument cannot be null");
+      checkNotNull(prefix, "prefix argument cannot be null");
+
+      for (Map.Entry<String, String> e : data.getMap().entrySet()) {
+        if (e.getKey().startsWith(prefix)) {
+          this.values.put("data." + e.getKey(), e.getValue());
+        }
+      }
+    }
+
+    /**
+     * Add input files to the fingerprint.
+     * @param files the input files
+     */
+    public void addInputFiles(final Collection<File> files) {
+
+      checkNotNull(files, "files argument cannot be null");
+
+      for (File file : files) {
+        this.inputFiles.add(file.getAbsoluteFile());
+      }
+    }
+
+    /**
+     * Add an output file to the fingerprint. The entry is not restored if an
+     * output file does not exist.
+     * @param file the output file
+     */
+    public void addOutputFile(final File file) {
+
+      checkNotNull(file, "file argument cannot be null");
+
+      this.outputFiles.add(file.getAbsoluteFile());
+    }
+
+    /**
+     * Get the SHA-1 sum of the fingerprint. The settings and the content of
+     * the input files are checked separately.
+     * @return the SHA-1 sum of the fingerprint
+     */
+    private String sum() {
+
+      final Hasher hasher = Hashing.sha1().newHasher();
+      putString(hasher, this.name);
+
+      for (Map.Entry<String, String> e : this.values.entrySet()) {
+        putString(hasher, e.getKey());
+        putString(hasher, e.getValue());
+      }
+
+      for (File file : this.inputFiles) {
+        putString(hasher, "input:" + file.getPath());
+      }
+
+      for (File file : this.outputFiles) {
+        putString(hasher, "output:" + file.getPath());
+      }
+
+      return hasher.hash().toString();
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param name the name of the entry
+     * @param conf the configuration of the collector
+     */
+    private Fingerprint(final String name, final CollectorConfiguration conf) {
+
+      this.name = name;
+      this.conf = conf;
+    }
+  }
+
+  //
+  // Cache methods
+  //
+
+  /**
+   * Create a new fingerprint.
+   * @param name the name of the entry, the name of the collector or the name
+   *          of the collector followed by the sample
+   * @param conf the configuration of the collector
+   * @return a new Fingerprint object
+   */
+  public Fingerprint newFingerprint(final String name,
+      final CollectorConfiguration conf) {
+
+    checkNotNull(name, "name argument cannot be null");
+    checkNotNull(conf, "conf argument cannot be null");
+
+    return new Fingerprint(name, conf);
+  }
+
+  /**
+   * Create the fingerprint of a collector. The fingerprint contains the input
+   * files of the collector and the data of its required collectors.
+   * @param collector the collector
+   * @param conf the configuration of the collector
+   * @param input the data generated by the required collectors
+   * @return a new Fingerprint object
+   */
+  public Fingerprint newFingerprint(final CacheableCollector collector,
+      final CollectorConfiguration conf, final RunData input) {
+
+    checkNotNull(collector, "collector argument cannot be null");
+    checkNotNull(input, "input argument cannot be null");
+
+    final Fingerprint result = newFingerprint(collector.getName(), conf);
+    result.addEntries(input);
+    result.addInputFiles(collector.getInputFiles());
+
+    return result;
+  }
+
+  /**
+   * Get the data of an entry.
+   * @param fingerprint the fingerprint of the entry
+   * @return a RunData object with the data of the entry or null if the entry
+   *         does not exist or if its inputs have changed
+   */
+  public RunData load(final Fingerprint fingerprint) {
+
+    checkNotNull(fingerprint, "fingerprint argument cannot be null");
+
+    final File file = getEntryFile(fingerprint.name);
+
+    if (!file.isFile()) {
+      return null;
+    }
+
+    final RunData entry;
+    try {
+      entry = new RunData(file);
+    } catch (IOException e) {
+      LOGGER.warning("Unable to read the cache entry "
+          + file + ": " + e.getMessage());
+      return null;
+    }
+
+    if (!fingerprint.sum().equals(entry.get(FINGERPRINT_KEY))
+        || !isConfigurationUnchanged(entry, fingerprint.conf)
+        || !areInputFilesUnchanged(entry)) {
+      return null;
+    }
+
+    for (File outputFile : fingerprint.outputFiles) {
+      if (!outputFile.exists()) {
+        return null;
+      }
+    }
+
+    // Remove the fingerprint from the entry
+    final RunData result = new RunData();
+    for (Map.Entry<String, String> e : entry.getMap().entrySet()) {
+      if (!e.getKey().startsWith(PREFIX)) {
+        result.put(e.getKey(), e.getValue());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Save the data of an entry. The settings that have been read by the
+   * collector when this method is called are added to the fingerprint. An
+   * error while saving the entry is not fatal and is only logged.
+   * @param fingerprint the fingerprint of the entry
+   * @param data the data to save
+   */
+  public void save(final Fingerprint fingerprint, final RunData data) {
+
+    checkNotNull(fingerprint, "fingerprint argument cannot be null");
+    checkNotNull(data, "data argument cannot be null");
+
+    final File file = getEntryFile(fingerprint.name);
+
+    try {
+
+      final RunData entry = new RunData();
+      entry.put(FINGERPRINT_KEY, fingerprint.sum());
+
+      final List<String> confKeys = new ArrayList<>();
+      for (String key : fingerprint.conf.getUsedKeys()) {
+        if (!IGNORED_SETTINGS.contains(key)) {
+          confKeys.add(key);
+        }
+      }
+      entry.put(CONF_KEYS_KEY, Joiner.on(',').join(confKeys));
+      entry.put(CONF_FINGERPRINT_KEY,
+          configurationSum(fingerprint.conf, confKeys));
+
+      int count = 0;
+      for (File inputFile : fingerprint.inputFiles) {
+
+        final String prefix = INPUT_PREFIX + count++;
+        final long length = inputFile.length();
+        final long modified = inputFile.lastModified();
+
+        entry.put(prefix + ".path", inputFile.getPath());
+        entry.put(prefix + ".length", length);
+        entry.put(prefix + ".modified", modified);
+
+        if (length <= this.md5MaxLength) {
+          entry.put(prefix + ".md5", md5Sum(inputFile, length, modified));
+        }
+      }
+      entry.put(INPUT_COUNT_KEY, count);
+
+      entry.put(data);
+
+      if (!this.dir.isDirectory()
+          && !this.dir.mkdirs() && !this.dir.isDirectory()) {
+        throw new IOException("Cannot create directory: " + this.dir);
+      }
+
+      // Write the entry in a temporary file to not keep an incomplete entry
+      final File tmpFile = new File(this.dir, file.getName() + ".tmp");
+      entry.createRunDataFile(tmpFile);
+
+      if (!tmpFile.renameTo(file)) {
+        throw new IOException("Cannot rename " + tmpFile + " to " + file);
+      }
+
+    } catch (IOException e) {
+      LOGGER.warning("Unable to save the cache entry "
+          + file + ": " + e.getMessage());
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  /**
+   * Get the file of an entry.
+   * @param name the name of the entry
+   * @return the file of the entry
+   */
+  private File getEntryFile(final String name) {
+
+    return new File(this.dir,
+        name.replaceAll("[^A-Za-z0-9._-]", "_") + Globals.QC_DATA_EXTENSION);
+  }
+
+  /**
+   * Test if the settings read by the collector of an entry are unchanged.
+   * @param entry the entry
+   * @param conf the current configuration of the collector
+   * @return true if the settings are unchanged
+   */
+  private static boolean isConfigurationUnchanged(final RunData entry,
+      final CollectorConfiguration conf) {
+
+    final String keys = entry.get(CONF_KEYS_KEY);
+
+    if (keys == null) {
+      return false;
+    }
+
+    return configurationSum(conf, COMMA_SPLITTER.splitToList(keys))
+        .equals(entry.get(CONF_FINGERPRINT_KEY));
+  }
+
+  /**
+   * Test if the input files of an entry are unchanged.
+   * @param entry the entry
+   * @return true if the input files are unchanged
+   */
+  private boolean areInputFilesUnchanged(final RunData entry) {
+
+    if (!entry.contains(INPUT_COUNT_KEY)) {
+      return false;
+    }
+
+    final int count = entry.getInt(INPUT_COUNT_KEY);
+
+    for (int i = 0; i < count; i++) {
+
+      final String prefix = INPUT_PREFIX + i;
+      final File file = new File(entry.get(prefix + ".path"));
+      final long length = file.length();
+      final long modified = file.lastModified();
+
+      if (!file.isFile() || length != entry.getLong(prefix + ".length")) {
+        return false;
+      }
+
+      // The content of the file is only checked if it has been touched
+      if (modified != entry.getLong(prefix + ".modified")
+          && (!entry.contains(prefix + ".md5") || !md5Sum(file, length,
+              modified).equals(entry.get(prefix + ".md5")))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the MD5 sum of a file. The sums are computed only once for a length
+   * and a modification time of the file.
+   * @param file the file
+   * @param length the length of the file
+   * @param modified the modification time of the file
+   * @return the MD5 sum of the file
+   */
+  private String md5Sum(final File file, final long length,
+      final long modified) {
+
+    final String key = file.getPath() + '\t' + length + '\t' + modified;
+    String result = this.md5Sums.get(key);
+
+    if (result == null) {
+
+      try {
+        result = Files.asByteSource(file).hash(Hashing.md5()).toString();
+      } catch (IOException e) {
+        // An unreadable file never matches a cache entry
+        return "";
+      }
+      this.md5Sums.put(key, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the SHA-1 sum of settings.
+   * @param conf the configuration
+   * @param keys the keys of the settings
+   * @return the SHA-1 sum of the settings
+   */
+  private static String configurationSum(final CollectorConfiguration conf,
+      final List<String> keys) {
+
+    final Hasher hasher = Hashing.sha1().newHasher();
+
+    for (String key : keys) {
+
+      final String value = conf.getUntracked(key);
+
+      putString(hasher, key);
+      hasher.putBoolean(value != null);
+      putString(hasher, value == null ? "" : value);
+    }
+
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Add a string and its length to a hasher.
+   * @param hasher the hasher
+   * @param s the string
+   */
+  private static void putString(final Hasher hasher, final String s) {
+
+    hasher.putInt(s.length());
+    hasher.putString(s, StandardCharsets.UTF_8);
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the cache of a QC. The cache is located in the QC directory.
+   * @param qc the QC object
+   * @return the CollectorCache of the QC
+   */
+  public static CollectorCache getCache(final QC qc) {
+
+    checkNotNull(qc, "qc argument cannot be null");
+
+    synchronized (CACHES) {
+
+      CollectorCache result = CACHES.get(qc);
+
+      if (result == null) {
+        result = new CollectorCache(new File(qc.getQcDir(), CACHE_DIRNAME));
+        CACHES.put(qc, result);
+      }
+
+      return result;
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param dir the directory of the cache
+   */
+  public CollectorCache(final File dir) {
+
+    this(dir, DEFAULT_MD5_MAX_LENGTH);
+  }
+
+  /**
+   * Constructor.
+   * @param dir the directory of the cache
+   * @param md5MaxLength the maximal length of the input files whose MD5 sum is
+   *          saved
+   */
+  CollectorCache(final File dir, final long md5MaxLength) {
+
+    checkNotNull(dir, "dir argument cannot be null");
+
+    this.dir = dir;
+    this.md5MaxLength = md5MaxLength;
+  }
+
+}
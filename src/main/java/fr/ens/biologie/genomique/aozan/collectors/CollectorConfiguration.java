@@ -2,8 +2,10 @@ package fr.ens.biologie.genomique.aozan.collectors;
 
 import java.io.File;
 import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * This class define the configuration of a collector.
@@ -14,6 +16,9 @@ public class CollectorConfiguration {
 
   private final Map<String, String> map;
 
+  /** The keys read by the collector, shared with the copies. */
+  private final Set<String> usedKeys;
+
   /**
    * Get a setting value.
    * @param key the setting key
@@ -21,6 +26,8 @@ public class CollectorConfiguration {
    */
   public String get(final String key) {
 
+    this.usedKeys.add(key);
+
     return this.map.get(key);
   }
 
@@ -132,6 +139,8 @@ public class CollectorConfiguration {
    */
   public boolean containsKey(final String key) {
 
+    this.usedKeys.add(key);
+
     return this.map.containsKey(key);
   }
 
@@ -141,9 +150,33 @@ public class CollectorConfiguration {
    */
   public Set<Map.Entry<String, String>> entrySet() {
 
+    this.usedKeys.addAll(this.map.keySet());
+
     return this.map.entrySet();
   }
 
+  /**
+   * Get the keys that have been read with this configuration or with one of
+   * its copies, including the keys that does not exist in the configuration.
+   * @return a sorted set with the keys
+   */
+  public Set<String> getUsedKeys() {
+
+    synchronized (this.usedKeys) {
+      return new TreeSet<>(this.usedKeys);
+    }
+  }
+
+  /**
+   * Get a setting value without adding the key to the used keys.
+   * @param key the setting key
+   * @return the value of the setting or null if the setting does not exists
+   */
+  String getUntracked(final String key) {
+
+    return this.map.get(key);
+  }
+
   @Override
   public String toString() {
     return this.map.toString();
@@ -164,6 +197,7 @@ public class CollectorConfiguration {
     }
 
     this.map = new LinkedHashMap<>(map);
+    this.usedKeys = Collections.synchronizedSet(new TreeSet<String>());
   }
 
   /**
@@ -177,6 +211,7 @@ public class CollectorConfiguration {
     }
 
     this.map = new LinkedHashMap<>(conf.map);
+    this.usedKeys = conf.usedKeys;
   }
 
 }
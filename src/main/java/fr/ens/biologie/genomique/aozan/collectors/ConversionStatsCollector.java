@@ -23,9 +23,6 @@
 
 package fr.ens.biologie.genomique.aozan.collectors;
 
-import static fr.ens.biologie.genomique.eoulsan.util.XMLUtils.getElementsByTagName;
-import static fr.ens.biologie.genomique.eoulsan.util.XMLUtils.getTagValue;
-
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -35,13 +32,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.google.common.base.Splitter;
 
@@ -106,62 +99,156 @@ class ConversionStatsCollector extends DemultiplexingCollector {
     // Create the input stream
     try (InputStream is = new FileInputStream(demuxSummaryFile)) {
 
-      final DocumentBuilder dBuilder =
-          DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      final Document doc = dBuilder.parse(is);
-      doc.getDocumentElement().normalize();
+      final XMLStreamReader reader = createXMLStreamReader(is);
 
-      // Parse document to update run data
-      parse(doc, data);
+      try {
+        // Parse document to update run data
+        parse(reader, data);
+      } finally {
+        reader.close();
+      }
 
-    } catch (final IOException | SAXException
-        | ParserConfigurationException e) {
+    } catch (final IOException | XMLStreamException e) {
 
       throw new AozanException(e);
     }
   }
 
   /**
-   * Parses the document.
-   * @param document the document
+   * Parses the document. The statistics of the tiles are aggregated while the
+   * document is read, so only the data of the current tile is kept in memory.
+   * @param reader the XML stream reader of the document
    * @param data the data
+   * @throws XMLStreamException if an error occurs while reading the document
    * @throws AozanException, it throws if an error occurs when extract data from
    *           document.
    */
-  private void parse(final Document document, final RunData data)
-      throws AozanException {
+  private void parse(final XMLStreamReader reader, final RunData data)
+      throws XMLStreamException, AozanException {
 
     final int readIndexedCount = countReadIndexed(data);
 
-    String projectName;
-    String sampleName;
-    String barcodeSeq;
-    int laneNumber;
+    String projectName = null;
+    String sampleName = null;
+    String barcodeSeq = null;
+    GroupTilesStats stats = null;
+    TileStats tile = null;
+    String type = null;
+    ReadElement read = null;
 
-    for (final Element project : getElementsByTagName(document, "Project")) {
-      projectName = project.getAttribute("name");
+    while (reader.hasNext()) {
 
-      for (final Element sample : getElementsByTagName(project, "Sample")) {
-        sampleName = sample.getAttribute("name");
+      switch (reader.next()) {
 
-        for (final Element barcode : getElementsByTagName(sample, "Barcode")) {
-          barcodeSeq = barcode.getAttribute("name");
+      case XMLStreamConstants.START_ELEMENT:
 
-          for (final Element lane : getElementsByTagName(barcode, "Lane")) {
-            laneNumber = Integer.parseInt(lane.getAttribute("number"));
+        switch (reader.getLocalName()) {
 
-            // Create Tile stats for new group tiles related tuple
-            // sample/barecode/lane
-            final GroupTilesStats stats = new GroupTilesStats(projectName,
-                sampleName, laneNumber, readIndexedCount);
+        case "Project":
+          projectName = reader.getAttributeValue(null, "name");
+          break;
 
-            // Add tiles data
-            stats.addTilesStats(lane, checkBarcodeSeq(barcodeSeq));
+        case "Sample":
+          sampleName = reader.getAttributeValue(null, "name");
+          break;
+
+        case "Barcode":
+          barcodeSeq = reader.getAttributeValue(null, "name");
+          break;
+
+        case "Lane":
+          final int laneNumber =
+              Integer.parseInt(reader.getAttributeValue(null, "number"));
+
+          // Create Tile stats for new group tiles related tuple
+          // sample/barecode/lane
+          stats = new GroupTilesStats(projectName, sampleName, laneNumber,
+              readIndexedCount);
+          stats.addBarcodeSeq(checkBarcodeSeq(barcodeSeq));
+          break;
+
+        case "Tile":
+          tile = new TileStats();
+          break;
+
+        case GroupTilesStats.RAW_TYPE:
+        case GroupTilesStats.PF_TYPE:
+          type = reader.getLocalName();
+          break;
+
+        case "Read":
+          if (tile != null && type != null) {
+            read = new ReadElement(
+                reader.getAttributeValue(null, "number").trim());
+            tile.addRead(type, read);
+          }
+          break;
+
+        case "ClusterCount":
+          if (tile != null && type != null && read == null) {
+            tile.setClusterCount(type, parseLong(reader));
+          }
+          break;
 
-            // Compile data on group tiles in global
+        case "Yield":
+          if (read != null) {
+            read.yield = parseLong(reader);
+          }
+          break;
+
+        case "YieldQ30":
+          if (read != null) {
+            read.yieldQ30 = parseLong(reader);
+          }
+          break;
+
+        case "QualityScoreSum":
+          if (read != null) {
+            read.qualityScoreSum = parseLong(reader);
+          }
+          break;
+
+        default:
+          break;
+        }
+        break;
+
+      case XMLStreamConstants.END_ELEMENT:
+
+        switch (reader.getLocalName()) {
+
+        case "Read":
+          read = null;
+          break;
+
+        case GroupTilesStats.RAW_TYPE:
+        case GroupTilesStats.PF_TYPE:
+          type = null;
+          break;
+
+        case "Tile":
+          // Compile tile statistics element
+          if (stats != null) {
+            stats.add(tile);
+          }
+          tile = null;
+          break;
+
+        case "Lane":
+          // Compile data on group tiles in global
+          if (stats != null) {
             stats.putData(data);
           }
+          stats = null;
+          break;
+
+        default:
+          break;
         }
+        break;
+
+      default:
+        break;
       }
     }
   }
@@ -351,25 +438,15 @@ class ConversionStatsCollector extends DemultiplexingCollector {
     //
 
     /**
-     * Adds a tiles stats.
-     * @param lane the lane element
+     * Adds a barcode sequence.
      * @param barcodeSeq the barcode sequence
-     * @throws AozanException, it throws if an error occurs when extract data
-     *           from lane element.
      */
-    public void addTilesStats(final Element lane, final String barcodeSeq)
-        throws AozanException {
+    public void addBarcodeSeq(final String barcodeSeq) {
 
       // Update list barcode sequences
       if (!this.barcodeSeqs.contains(barcodeSeq)) {
         this.barcodeSeqs.add(barcodeSeq);
       }
-
-      for (final Element tile : getElementsByTagName(lane, "Tile")) {
-        // Compile tile statistics element
-        this.add(new TileStats(tile));
-      }
-
     }
 
     /**
@@ -387,10 +464,10 @@ class ConversionStatsCollector extends DemultiplexingCollector {
       for (int read = 1; read <= readCount; read++) {
 
         // Add raw data
-        addDataStats(t, RAW_TYPE, t.clusterCountRaw, read);
+        addDataStats(t, RAW_TYPE, t.getClusterCount(RAW_TYPE), read);
 
         // Add PF data
-        addDataStats(t, PF_TYPE, t.clusterCountPF, read);
+        addDataStats(t, PF_TYPE, t.getClusterCount(PF_TYPE), read);
       }
     }
 
@@ -539,38 +616,51 @@ class ConversionStatsCollector extends DemultiplexingCollector {
   }
 
   /**
-   * The internal class extract data from tile element.
+   * The internal class store the data of a read element of a tile.
+   * @since 2.3
+   */
+  private static final class ReadElement {
+
+    private final String number;
+    private long yield;
+    private long yieldQ30;
+    private long qualityScoreSum;
+
+    /**
+     * Public constructor
+     * @param number the value of the number attribute of the read element
+     */
+    public ReadElement(final String number) {
+      this.number = number;
+    }
+  }
+
+  /**
+   * The internal class store the data extracted from a tile element.
    * @author Sandrine Perrin
    * @since 2.0
    */
   private static final class TileStats {
 
-    private final Element tileElem;
-    private final long clusterCountPF;
-    private final long clusterCountRaw;
+    private final Map<String, Long> clusterCounts = new HashMap<>();
+    private final Map<String, List<ReadElement>> reads = new HashMap<>();
 
     public long getYield(final String type, final int readNumber)
         throws AozanException {
 
-      final Element e = getElementRead(type, readNumber);
-
-      return Long.parseLong(getTagValue(e, "Yield"));
+      return getElementRead(type, readNumber).yield;
     }
 
     public long getYieldQ30(final String type, final int readNumber)
         throws AozanException {
 
-      final Element e = getElementRead(type, readNumber);
-
-      return Long.parseLong(getTagValue(e, "YieldQ30"));
+      return getElementRead(type, readNumber).yieldQ30;
     }
 
     public long getQualityScoreSum(final String type, final int readNumber)
         throws AozanException {
 
-      final Element e = getElementRead(type, readNumber);
-
-      return Long.parseLong(getTagValue(e, "QualityScoreSum"));
+      return getElementRead(type, readNumber).qualityScoreSum;
     }
 
     /**
@@ -580,26 +670,28 @@ class ConversionStatsCollector extends DemultiplexingCollector {
      * @return the element read
      * @throws AozanException the aozan exception
      */
-    private Element getElementRead(final String type, final int readNumber)
-        throws AozanException {
+    private ReadElement getElementRead(final String type,
+        final int readNumber) throws AozanException {
 
-      // Extract element related to the required type
-      final Element typeElem = getElementsByTagName(this.tileElem, type).get(0);
+      // Extract elements related to the required type
+      final List<ReadElement> typeReads = this.reads.get(type);
 
       // Find element read to the required read number
-      for (Element readElem : getElementsByTagName(typeElem, "Read")) {
-        final String readAtt = readElem.getAttribute("number").trim();
-
-        // Patch for bc2fastq2 when no index is set
-        // TODO Remove this when bcl2fastq will be fixed
-        if (readAtt.length() > 1 && readNumber == 1) {
-          return readElem;
-        }
+      if (typeReads != null) {
+        for (ReadElement readElem : typeReads) {
+          final String readAtt = readElem.number;
+
+          // Patch for bc2fastq2 when no index is set
+          // TODO Remove this when bcl2fastq will be fixed
+          if (readAtt.length() > 1 && readNumber == 1) {
+            return readElem;
+          }
 
-        if (readAtt.equals(readNumber + "")) {
+          if (readAtt.equals(readNumber + "")) {
 
-          // Return element
-          return readElem;
+            // Return element
+            return readElem;
+          }
         }
       }
 
@@ -610,38 +702,48 @@ class ConversionStatsCollector extends DemultiplexingCollector {
     }
 
     /**
-     * Extract cluster count.
+     * Gets the cluster count.
      * @param type the type
      * @return cluster count for a tile
      */
-    private long extractClusterCount(final String type) {
+    public long getClusterCount(final String type) {
 
-      final Element e = getElementsByTagName(this.tileElem, type).get(0);
+      final Long result = this.clusterCounts.get(type);
 
-      if (e == null) {
+      if (result == null) {
         throw new AozanRuntimeException(
             "Demultiplexing collector: no found tile element related to the type "
                 + type);
       }
 
-      return Long.parseLong(getTagValue(e, "ClusterCount"));
+      return result;
     }
 
-    //
-    // Constructors
-    //
+    /**
+     * Sets the cluster count.
+     * @param type the type
+     * @param clusterCount the cluster count
+     */
+    public void setClusterCount(final String type, final long clusterCount) {
+
+      this.clusterCounts.put(type, clusterCount);
+    }
 
     /**
-     * Public constructor
-     * @param tileElem the tile element
+     * Adds a read element.
+     * @param type the type
+     * @param read the read element
      */
-    public TileStats(final Element tileElem) {
+    public void addRead(final String type, final ReadElement read) {
 
-      this.tileElem = tileElem;
+      List<ReadElement> list = this.reads.get(type);
 
-      this.clusterCountRaw = extractClusterCount(GroupTilesStats.RAW_TYPE);
-      this.clusterCountPF = extractClusterCount(GroupTilesStats.PF_TYPE);
+      if (list == null) {
+        list = new ArrayList<>();
+        this.reads.put(type, list);
+      }
 
+      list.add(read);
     }
 
   }
@@ -25,11 +25,16 @@ package fr.ens.biologie.genomique.aozan.collectors;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import com.google.common.collect.ImmutableList;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
@@ -259,6 +264,42 @@ public class DemultiplexingCollector implements Collector {
 
   }
 
+  //
+  // XML streaming methods
+  //
+
+  /**
+   * Create a XML stream reader for the XML files of bcl2fastq. The XML files
+   * of bcl2fastq can be very large, so they are read as a stream instead of
+   * being loaded in a DOM.
+   * @param is input stream
+   * @return a new XMLStreamReader object
+   * @throws XMLStreamException if an error occurs while creating the reader
+   */
+  static XMLStreamReader createXMLStreamReader(final InputStream is)
+      throws XMLStreamException {
+
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        false);
+
+    return factory.createXMLStreamReader(is);
+  }
+
+  /**
+   * Parse the text of the current element as a long. The reader is moved to
+   * the end of the element.
+   * @param reader the XML stream reader
+   * @return the value of the element
+   * @throws XMLStreamException if an error occurs while reading the element
+   */
+  static long parseLong(final XMLStreamReader reader)
+      throws XMLStreamException {
+
+    return Long.parseLong(reader.getElementText().trim());
+  }
+
   @Override
   public void clear() {
   }
@@ -107,6 +107,18 @@ public class FastQCCollector extends AbstractFastqCollector {
         reportDir, this.keepZipReportFile);
   }
 
+  @Override
+  protected void addSampleFingerprint(
+      final CollectorCache.Fingerprint fingerprint, final RunData data,
+      final FastqSample fastqSample, final File reportDir) {
+
+    super.addSampleFingerprint(fingerprint, data, fastqSample, reportDir);
+
+    // The report of the sample is required to restore the result
+    fingerprint.addOutputFile(new File(reportDir,
+        fastqSample.getFilenamePrefix() + "-fastqc.html"));
+  }
+
   //
   // Getters & Setters
   //
@@ -120,4 +132,10 @@ public class FastQCCollector extends AbstractFastqCollector {
   protected boolean isProcessUndeterminedIndicesSamples() {
     return this.isProcessUndeterminedIndicesSamples;
   }
+
+  @Override
+  protected boolean isFastqScanSupported() {
+
+    return true;
+  }
 }
@@ -42,9 +42,7 @@ import uk.ac.babraham.FastQC.Modules.ModuleFactory;
 import uk.ac.babraham.FastQC.Modules.QCModule;
 import uk.ac.babraham.FastQC.Report.HTMLReportArchive;
 import uk.ac.babraham.FastQC.Sequence.Sequence;
-import uk.ac.babraham.FastQC.Sequence.SequenceFactory;
 import uk.ac.babraham.FastQC.Sequence.SequenceFile;
-import uk.ac.babraham.FastQC.Sequence.SequenceFormatException;
 
 /**
  * This private class define a class for a thread that read fastq file for
@@ -52,12 +50,13 @@ import uk.ac.babraham.FastQC.Sequence.SequenceFormatException;
  * @since 1.0
  * @author Laurent Jourdren
  */
-class FastQCProcessThread extends AbstractFastqProcessThread {
+class FastQCProcessThread extends AbstractFastqProcessThread
+    implements FastqSequenceConsumer {
 
   /** Logger. */
   private static final Logger LOGGER = Common.getLogger();
 
-  private final SequenceFile seqFile;
+  private SequenceFile seqFile;
   private final boolean ignoreFilteredSequences;
   private final List<QCModule> moduleList;
   private final File reportDir;
@@ -73,7 +72,7 @@ class FastQCProcessThread extends AbstractFastqProcessThread {
   @Override
   protected void process() throws AozanException {
 
-    processSequences(this.seqFile);
+    scanFastqFiles(this);
   }
 
   @Override
@@ -83,54 +82,50 @@ class FastQCProcessThread extends AbstractFastqProcessThread {
         + getFastqSample().getFilenamePrefix() + " in " + duration);
   }
 
-  /**
-   * Read FASTQ file and process the data by FastQC modules.
-   * @param seqFile input file
-   * @throws AozanException if an error occurs while processing file
-   */
-  protected void processSequences(final SequenceFile seqFile)
-      throws AozanException {
+  //
+  // FastqSequenceConsumer methods
+  //
+
+  @Override
+  public void startScan(final SequenceFile seqFile) {
 
-    final boolean ignoreFiltered = this.ignoreFilteredSequences;
-    final List<QCModule> modules = this.moduleList;
+    this.seqFile = seqFile;
     this.processedReads = 0;
 
     // Reset modules
-    for (final QCModule module : modules) {
+    for (final QCModule module : this.moduleList) {
       module.reset();
     }
+  }
 
-    try {
-
-      while (seqFile.hasNext()) {
-
-        final Sequence seq = seqFile.next();
+  @Override
+  public boolean processSequence(final Sequence seq) {
 
-        boolean processed = false;
+    boolean processed = false;
 
-        for (final QCModule module : modules) {
+    for (final QCModule module : this.moduleList) {
 
-          if (ignoreFiltered && module.ignoreFilteredSequences()) {
-            continue;
-          }
-          processed = true;
-          module.processSequence(seq);
-        }
-        if (processed) {
-          this.processedReads++;
-        }
+      if (this.ignoreFilteredSequences && module.ignoreFilteredSequences()) {
+        continue;
       }
+      processed = true;
+      module.processSequence(seq);
+    }
+    if (processed) {
+      this.processedReads++;
+    }
 
-      // Process results
-      processResults();
+    return true;
+  }
 
-      // Keep module data is now unnecessary
-      this.moduleList.clear();
+  @Override
+  public void endScan() throws AozanException {
 
-    } catch (final SequenceFormatException e) {
-      throw new AozanException(e);
-    }
+    // Process results
+    processResults();
 
+    // Keep module data is now unnecessary
+    this.moduleList.clear();
   }
 
   /**
@@ -225,8 +220,7 @@ class FastQCProcessThread extends AbstractFastqProcessThread {
 
   /**
    * Thread constructor.
-   * @throws AozanException if an error occurs while creating sequence file for
-   *           FastQC
+   * @throws AozanException if the sample has no FASTQ file
    */
   public FastQCProcessThread(final FastqSample fastqSample,
       final boolean ignoreFilteredSequences, final File reportDir,
@@ -238,14 +232,6 @@ class FastQCProcessThread extends AbstractFastqProcessThread {
     this.reportDir = reportDir;
     this.keepZipReportFile = keepZipReportFile;
 
-    try {
-      this.seqFile = SequenceFactory.getSequenceFile(fastqSample.getFastqFiles()
-          .toArray(new File[fastqSample.getFastqFiles().size()]));
-
-    } catch (final IOException | SequenceFormatException e) {
-      throw new AozanException(e);
-    }
-
     // Define modules list
     this.moduleList = Lists.newArrayList(ModuleFactory.getStandardModuleList());
     this.moduleList.add(new BadTiles());
@@ -0,0 +1,47 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This interface define a consumer of the reads of a FASTQ sample that only
+ * need the bytes of the FASTQ records of the reads. When all the consumers of
+ * a scan are record consumers, the FASTQ files are not parsed by FastQC.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+interface FastqRecordConsumer extends FastqScanConsumer {
+
+  /**
+   * Process a read.
+   * @param record the bytes of the read in FASTQ format, with the final new
+   *          line. The array is reused for the next reads
+   * @param length the length of the read in the array
+   * @return false if the consumer does not need the next reads
+   * @throws AozanException if an error occurs while processing the read
+   */
+  boolean processRecord(byte[] record, int length) throws AozanException;
+
+}
@@ -0,0 +1,207 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class define a reader of the records of a FASTQ file as raw bytes. The
+ * records are not parsed: the four lines of each record are copied in a
+ * buffer that is reused for the next record. The empty lines between the
+ * records are skipped.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class FastqRecordReader {
+
+  private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+
+  // Input buffer
+  private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+  private int inputPos;
+  private int inputLength;
+
+  // Current record
+  private byte[] record = new byte[1024];
+  private int recordLength;
+  private int headerLength;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the bytes of the current record. The array is reused for the next
+   * record.
+   * @return the bytes of the record in FASTQ format, with the final new line
+   */
+  byte[] getRecord() {
+    return this.record;
+  }
+
+  /**
+   * Get the length of the current record.
+   * @return the length of the record in the array
+   */
+  int getRecordLength() {
+    return this.recordLength;
+  }
+
+  /**
+   * Get the length of the header of the current record.
+   * @return the length of the header with its new line
+   */
+  int getHeaderLength() {
+    return this.headerLength;
+  }
+
+  //
+  // Reading methods
+  //
+
+  /**
+   * Read the next FASTQ record of the input stream.
+   * @return true if a record has been read
+   * @throws IOException if an error occurs while reading the record
+   */
+  boolean readRecord() throws IOException {
+
+    this.recordLength = 0;
+
+    // Skip the empty lines between the records
+    int length;
+    while ((length = readLine()) == 1) {
+      this.recordLength = 0;
+    }
+
+    if (length == -1) {
+      return false;
+    }
+
+    this.headerLength = length;
+
+    for (int i = 0; i < 3; i++) {
+      if (readLine() == -1) {
+        throw new IOException("Truncated FASTQ record: "
+            + new String(this.record, 0, this.headerLength - 1,
+                StandardCharsets.US_ASCII));
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Append the next line of the input stream to the current record. A new line
+   * is added if the last line of the stream does not end with a new line.
+   * @return the length of the line with the new line or -1 if the end of the
+   *         stream has been reached
+   * @throws IOException if an error occurs while reading the line
+   */
+  private int readLine() throws IOException {
+
+    final int start = this.recordLength;
+
+    while (true) {
+
+      if (this.inputPos == this.inputLength) {
+
+        this.inputLength = this.in.read(this.inputBuffer);
+        this.inputPos = 0;
+
+        if (this.inputLength <= 0) {
+
+          this.inputLength = 0;
+
+          if (this.recordLength == start) {
+            return -1;
+          }
+
+          append(new byte[] {'\n'}, 0, 1);
+          return this.recordLength - start;
+        }
+      }
+
+      // Search the end of the line in the input buffer
+      int end = this.inputPos;
+      while (end < this.inputLength && this.inputBuffer[end] != '\n') {
+        end++;
+      }
+
+      final boolean endOfLine = end < this.inputLength;
+      if (endOfLine) {
+        end++;
+      }
+
+      append(this.inputBuffer, this.inputPos, end - this.inputPos);
+      this.inputPos = end;
+
+      if (endOfLine) {
+        return this.recordLength - start;
+      }
+    }
+  }
+
+  /**
+   * Append bytes to the current record.
+   * @param bytes the bytes to append
+   * @param offset offset of the bytes
+   * @param length number of bytes to append
+   */
+  private void append(final byte[] bytes, final int offset, final int length) {
+
+    final int newLength = this.recordLength + length;
+
+    if (newLength > this.record.length) {
+      this.record = Arrays.copyOf(this.record,
+          Math.max(newLength, this.record.length * 2));
+    }
+
+    System.arraycopy(bytes, offset, this.record, this.recordLength, length);
+    this.recordLength = newLength;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param is input stream of the uncompressed FASTQ file
+   */
+  FastqRecordReader(final InputStream is) {
+
+    checkNotNull(is, "is argument cannot be null");
+
+    this.in = is;
+  }
+
+}
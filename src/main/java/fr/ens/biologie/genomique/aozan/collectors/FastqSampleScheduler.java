@@ -0,0 +1,273 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class define a scheduler that share a budget of processors between the
+ * threads of the samples of all the FASTQ collectors of a QC. The pending
+ * threads are started from the largest sample to the smallest one, so the
+ * largest samples do not end the collect alone. A thread is only started when
+ * the processors it needs are available, the threads that use several
+ * processors like the mappers of FastqScreen are so not executed at the same
+ * time than the threads of the other collectors. The scheduler is owned by
+ * the QC object and its threads are stopped at the end of the collect.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class FastqSampleScheduler {
+
+  private final int budget;
+  private final PriorityQueue<SampleTask> pending = new PriorityQueue<>();
+  private ExecutorService executor;
+  private long taskCount;
+  private int used;
+
+  /**
+   * This class define a task waiting for processors.
+   */
+  private final class SampleTask implements Runnable, Comparable<SampleTask> {
+
+    private final Runnable task;
+    private final long size;
+    private final int cost;
+    private final long order;
+    private int reserved;
+
+    @Override
+    public void run() {
+
+      try {
+        this.task.run();
+      } finally {
+        release(this);
+      }
+    }
+
+    @Override
+    public int compareTo(final SampleTask o) {
+
+      // The largest samples first, then the oldest tasks
+      final int result = Long.compare(o.size, this.size);
+
+      return result != 0 ? result : Long.compare(this.order, o.order);
+    }
+
+    SampleTask(final Runnable task, final long size, final int cost,
+        final long order) {
+
+      this.task = task;
+      this.size = size;
+      this.cost = cost;
+      this.order = order;
+    }
+  }
+
+  /**
+   * This class define the threads submitted by a collector. The completion
+   * services of a batch share the same completion queue, so the threads can
+   * be retrieved in their order of completion.
+   */
+  final class Batch {
+
+    private final BlockingQueue<Future<AbstractFastqProcessThread>> completed =
+        new LinkedBlockingQueue<>();
+    private final List<Future<AbstractFastqProcessThread>> futures =
+        new ArrayList<>();
+
+    /**
+     * Submit a thread.
+     * @param thread the thread to submit
+     * @param cost the number of processors used by the thread
+     */
+    void submit(final AbstractFastqProcessThread thread, final int cost) {
+
+      checkNotNull(thread, "thread argument cannot be null");
+      checkArgument(cost > 0, "cost must be greater than 0");
+
+      final long size = thread.getFastqSample().getUncompressedSize();
+
+      final CompletionService<AbstractFastqProcessThread> service =
+          new ExecutorCompletionService<>(new Executor() {
+
+            @Override
+            public void execute(final Runnable command) {
+              schedule(command, size, cost);
+            }
+          }, this.completed);
+
+      this.futures.add(service.submit(thread, thread));
+    }
+
+    /**
+     * Get the number of submitted threads.
+     * @return the number of submitted threads
+     */
+    int size() {
+
+      return this.futures.size();
+    }
+
+    /**
+     * Wait the end of the next thread.
+     * @return the Future of the thread
+     * @throws InterruptedException if the current thread has been interrupted
+     */
+    Future<AbstractFastqProcessThread> take() throws InterruptedException {
+
+      return this.completed.take();
+    }
+
+    /**
+     * Cancel all the threads of the batch.
+     */
+    void cancel() {
+
+      for (Future<AbstractFastqProcessThread> f : this.futures) {
+        f.cancel(true);
+      }
+    }
+
+    private Batch() {
+    }
+  }
+
+  //
+  // Scheduling methods
+  //
+
+  /**
+   * Create a new batch.
+   * @return a new Batch object
+   */
+  Batch newBatch() {
+
+    return new Batch();
+  }
+
+  /**
+   * Stop the threads of the scheduler. The pending tasks are cancelled and the
+   * threads will be created again if new tasks are submitted.
+   */
+  public synchronized void shutdown() {
+
+    this.pending.clear();
+
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Add a task to the pending tasks.
+   * @param task the task
+   * @param size the size of the sample of the task
+   * @param cost the number of processors used by the task
+   */
+  private synchronized void schedule(final Runnable task, final long size,
+      final int cost) {
+
+    this.pending.add(new SampleTask(task, size, cost, this.taskCount++));
+    dispatch();
+  }
+
+  /**
+   * Release the processors of an ended task.
+   * @param task the task
+   */
+  private synchronized void release(final SampleTask task) {
+
+    this.used -= task.reserved;
+    dispatch();
+  }
+
+  /**
+   * Start the pending tasks while there is enough processors. A task that need
+   * more processors than the budget is started alone.
+   */
+  private void dispatch() {
+
+    while (!this.pending.isEmpty()) {
+
+      final SampleTask task = this.pending.peek();
+      final int cost = Math.min(task.cost, this.budget);
+
+      if (this.used > 0 && this.used + cost > this.budget) {
+        return;
+      }
+
+      this.pending.poll();
+      task.reserved = cost;
+      this.used += cost;
+      getExecutor().execute(task);
+    }
+  }
+
+  /**
+   * Get the executor of the tasks, create it if needed.
+   * @return the executor
+   */
+  private ExecutorService getExecutor() {
+
+    if (this.executor == null) {
+      this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("fastq-sample-%d").build());
+    }
+
+    return this.executor;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param threads the number of processors shared by the threads
+   */
+  public FastqSampleScheduler(final int threads) {
+
+    checkArgument(threads > 0, "threads must be greater than 0");
+
+    this.budget = threads;
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import uk.ac.babraham.FastQC.Sequence.SequenceFile;
+
+/**
+ * This interface define a consumer of the reads of a FASTQ sample. The reads
+ * are provided by a FastqScanner that can share a single reading of the FASTQ
+ * files between several consumers. The consumers get the reads as FastQC
+ * sequences if they implement FastqSequenceConsumer or as raw FASTQ records if
+ * they implement FastqRecordConsumer.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+interface FastqScanConsumer {
+
+  /**
+   * Method called before the first read.
+   * @param seqFile the sequence file that is read, null if the FASTQ files are
+   *          read as raw records
+   * @throws AozanException if an error occurs while starting the scan
+   */
+  void startScan(SequenceFile seqFile) throws AozanException;
+
+  /**
+   * Method called after the last read.
+   * @throws AozanException if an error occurs while ending the scan
+   */
+  void endScan() throws AozanException;
+
+}
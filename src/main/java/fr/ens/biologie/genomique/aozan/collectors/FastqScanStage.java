@@ -0,0 +1,374 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Common;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.io.FastqSample;
+
+/**
+ * This class define a stage that share the reading of the FASTQ files between
+ * the FASTQ collectors of a QC. When a collector process a sample, the other
+ * registered collectors that process the same sample get the reads in the
+ * same pass. Their results are saved as result parts, so they do not read
+ * again the FASTQ files when they are executed. The results of a collector
+ * for a sample are kept in memory only until the collector process the
+ * sample. The stage is owned by the QC object and is cleared at the end of
+ * the collect.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class FastqScanStage {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  private final Set<AbstractFastqCollector> collectors = new LinkedHashSet<>();
+  private final Map<List<File>, Object> locks = new HashMap<>();
+
+  // Results of the shared scans not yet collected by their collector
+  private final Map<AbstractFastqCollector, Map<List<File>, RunData>> results =
+      new HashMap<>();
+
+  // Samples already scanned for each collector
+  private final Map<AbstractFastqCollector, Set<List<File>>> scanned =
+      new HashMap<>();
+
+  /**
+   * This class define a collector that request the scan of its samples.
+   */
+  static final class Requester {
+
+    private final FastqScanStage stage;
+    private final AbstractFastqCollector collector;
+    private final RunData data;
+    private final boolean runPE;
+
+    /**
+     * Scan the FASTQ files of the sample of a thread.
+     * @param thread the thread of the collector
+     * @param consumer the consumer of the thread
+     * @throws AozanException if an error occurs while scanning the sample
+     */
+    void scan(final AbstractFastqProcessThread thread,
+        final FastqScanConsumer consumer) throws AozanException {
+
+      this.stage.scan(this, thread, consumer);
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param stage the stage
+     * @param collector the collector
+     * @param data the data to use to create the threads of the other
+     *          collectors
+     * @param runPE true if the run is a paired-end run
+     */
+    private Requester(final FastqScanStage stage,
+        final AbstractFastqCollector collector, final RunData data,
+        final boolean runPE) {
+
+      this.stage = stage;
+      this.collector = collector;
+      this.data = data;
+      this.runPE = runPE;
+    }
+  }
+
+  //
+  // Registration methods
+  //
+
+  /**
+   * Register a collector.
+   * @param collector collector to register
+   */
+  synchronized void register(final AbstractFastqCollector collector) {
+
+    checkNotNull(collector, "collector argument cannot be null");
+
+    this.collectors.add(collector);
+  }
+
+  /**
+   * Unregister a collector.
+   * @param collector collector to unregister
+   */
+  synchronized void unregister(final AbstractFastqCollector collector) {
+
+    checkNotNull(collector, "collector argument cannot be null");
+
+    this.collectors.remove(collector);
+    this.results.remove(collector);
+    this.scanned.remove(collector);
+  }
+
+  /**
+   * Clear the stage: unregister all the collectors and drop the results that
+   * have not been collected.
+   */
+  public synchronized void clear() {
+
+    this.collectors.clear();
+    this.locks.clear();
+    this.results.clear();
+    this.scanned.clear();
+  }
+
+  /**
+   * Create a requester for a collector.
+   * @param collector the collector
+   * @param data the data to use to create the threads of the other collectors.
+   *          This object must not be modified during the collect
+   * @param runPE true if the run is a paired-end run
+   * @return a new Requester object
+   */
+  Requester newRequester(final AbstractFastqCollector collector,
+      final RunData data, final boolean runPE) {
+
+    checkNotNull(collector, "collector argument cannot be null");
+    checkNotNull(data, "data argument cannot be null");
+
+    return new Requester(this, collector, data, runPE);
+  }
+
+  //
+  // Scan methods
+  //
+
+  /**
+   * Scan the FASTQ files of a sample for a collector and for all the other
+   * registered collectors that process the same sample.
+   * @param requester the requester
+   * @param thread the thread of the collector
+   * @param consumer the consumer of the thread
+   * @throws AozanException if an error occurs while scanning the sample
+   */
+  private void scan(final Requester requester,
+      final AbstractFastqProcessThread thread, final FastqScanConsumer consumer)
+      throws AozanException {
+
+    final FastqSample fastqSample = thread.getFastqSample();
+    final List<File> key = fastqSample.getFastqFiles();
+
+    synchronized (getLock(key)) {
+
+      // The sample may have been already processed for this collector, the
+      // results are not needed anymore by the stage once collected
+      final RunData previousResults = removeResults(requester.collector, key);
+      if (previousResults != null) {
+
+        LOGGER.fine(requester.collector.getName().toUpperCase()
+            + ": reuse the results of a shared scan for "
+            + fastqSample.getFilenamePrefix());
+
+        thread.getResults().put(previousResults);
+        return;
+      }
+
+      final FastqScanner scanner = new FastqScanner(fastqSample,
+          thread.getDecompressionThreads());
+      scanner.addConsumer(consumer);
+
+      // Add the consumers of the other collectors
+      final Map<AbstractFastqCollector, AbstractFastqProcessThread> others =
+          new LinkedHashMap<>();
+      for (final AbstractFastqCollector collector : getCollectors()) {
+
+        if (collector == requester.collector || isScanned(collector, key)) {
+          continue;
+        }
+
+        final AbstractFastqProcessThread otherThread = collector
+            .createScanThread(requester.data, fastqSample, requester.runPE);
+
+        if (otherThread instanceof FastqScanConsumer) {
+          scanner.addConsumer((FastqScanConsumer) otherThread);
+          others.put(collector, otherThread);
+        }
+      }
+
+      if (!others.isEmpty()) {
+
+        final List<String> names = new ArrayList<>();
+        for (final AbstractFastqCollector collector : others.keySet()) {
+          names.add(collector.getName().toUpperCase());
+        }
+
+        LOGGER.fine(requester.collector.getName().toUpperCase()
+            + ": share the scan of " + fastqSample.getFilenamePrefix()
+            + " with " + names);
+      }
+
+      scanner.scan();
+      setScanned(requester.collector, key);
+
+      // Save the results of the other collectors
+      for (final Map.Entry<AbstractFastqCollector, AbstractFastqProcessThread> e : others
+          .entrySet()) {
+
+        final RunData otherResults = e.getValue().getResults();
+        e.getKey().saveResultPart(fastqSample, otherResults);
+        putResults(e.getKey(), key, otherResults);
+      }
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  /**
+   * Get the lock object of a list of FASTQ files.
+   * @param key the list of FASTQ files
+   * @return the lock object
+   */
+  private synchronized Object getLock(final List<File> key) {
+
+    Object result = this.locks.get(key);
+
+    if (result == null) {
+      result = new Object();
+      this.locks.put(key, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get a copy of the registered collectors.
+   * @return a list with the registered collectors
+   */
+  private synchronized List<AbstractFastqCollector> getCollectors() {
+
+    return new ArrayList<>(this.collectors);
+  }
+
+  /**
+   * Test if a sample has been already scanned for a collector.
+   * @param collector the collector
+   * @param key the list of FASTQ files
+   * @return true if the sample has been already scanned for the collector
+   */
+  private synchronized boolean isScanned(
+      final AbstractFastqCollector collector, final List<File> key) {
+
+    final Set<List<File>> set = this.scanned.get(collector);
+
+    return set != null && set.contains(key);
+  }
+
+  /**
+   * Set that a sample has been scanned for a collector.
+   * @param collector the collector
+   * @param key the list of FASTQ files
+   */
+  private synchronized void setScanned(final AbstractFastqCollector collector,
+      final List<File> key) {
+
+    Set<List<File>> set = this.scanned.get(collector);
+
+    if (set == null) {
+      set = new HashSet<>();
+      this.scanned.put(collector, set);
+    }
+
+    set.add(key);
+  }
+
+  /**
+   * Remove the results of a shared scan for a collector.
+   * @param collector the collector
+   * @param key the list of FASTQ files
+   * @return the results or null if the sample has not been scanned for the
+   *         collector by a shared scan or if the results have been already
+   *         removed
+   */
+  private synchronized RunData removeResults(
+      final AbstractFastqCollector collector, final List<File> key) {
+
+    final Map<List<File>, RunData> map = this.results.get(collector);
+
+    if (map == null) {
+      return null;
+    }
+
+    final RunData result = map.remove(key);
+
+    if (map.isEmpty()) {
+      this.results.remove(collector);
+    }
+
+    return result;
+  }
+
+  /**
+   * Set the results of a shared scan for a collector.
+   * @param collector the collector
+   * @param key the list of FASTQ files
+   * @param data the results
+   */
+  private synchronized void putResults(final AbstractFastqCollector collector,
+      final List<File> key, final RunData data) {
+
+    Map<List<File>, RunData> map = this.results.get(collector);
+
+    if (map == null) {
+      map = new HashMap<>();
+      this.results.put(collector, map);
+    }
+
+    map.put(key, data);
+    setScanned(collector, key);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   */
+  public FastqScanStage() {
+  }
+
+}
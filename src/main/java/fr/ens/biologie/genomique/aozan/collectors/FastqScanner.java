@@ -0,0 +1,271 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.fastqc.RuntimePatchFastQC;
+import fr.ens.biologie.genomique.aozan.io.FastqSample;
+import fr.ens.biologie.genomique.aozan.io.ParallelDecompression;
+import uk.ac.babraham.FastQC.Sequence.Sequence;
+import uk.ac.babraham.FastQC.Sequence.SequenceFactory;
+import uk.ac.babraham.FastQC.Sequence.SequenceFile;
+import uk.ac.babraham.FastQC.Sequence.SequenceFormatException;
+
+/**
+ * This class define a scanner that read the FASTQ files of a sample only once
+ * and send each read to several consumers. The reading stops when no more
+ * consumer need reads. If no consumer need FastQC sequences, the FASTQ files
+ * are read as raw records that are sent without any conversion to the
+ * consumers. Otherwise the FASTQ files are parsed by FastQC and the reads are
+ * converted once in FASTQ records for the record consumers.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+class FastqScanner {
+
+  private final FastqSample fastqSample;
+  private final int decompressionThreads;
+  private final List<FastqScanConsumer> consumers = new ArrayList<>();
+
+  // Buffer of the FASTQ records converted from the FastQC sequences
+  private byte[] record = new byte[1024];
+  private int recordLength;
+
+  /**
+   * Add a consumer.
+   * @param consumer the consumer to add, must implement FastqSequenceConsumer
+   *          or FastqRecordConsumer
+   */
+  void addConsumer(final FastqScanConsumer consumer) {
+
+    checkNotNull(consumer, "consumer argument cannot be null");
+
+    if (!(consumer instanceof FastqSequenceConsumer)
+        && !(consumer instanceof FastqRecordConsumer)) {
+      throw new IllegalArgumentException(
+          "Unknown type of consumer: " + consumer.getClass().getName());
+    }
+
+    this.consumers.add(consumer);
+  }
+
+  /**
+   * Read the FASTQ files of the sample and send the reads to the consumers.
+   * @throws AozanException if an error occurs while reading the FASTQ files or
+   *           while processing the reads
+   */
+  void scan() throws AozanException {
+
+    boolean sequencesNeeded = false;
+    for (final FastqScanConsumer consumer : this.consumers) {
+      sequencesNeeded |= consumer instanceof FastqSequenceConsumer;
+    }
+
+    try {
+
+      if (sequencesNeeded) {
+
+        // The files opened by FastQC are uncompressed with the threads of the
+        // scanner
+        RuntimePatchFastQC.setDecompressionThreads(this.decompressionThreads);
+        try {
+          scanSequences();
+        } finally {
+          RuntimePatchFastQC.clearDecompressionThreads();
+        }
+
+      } else {
+        scanRecords();
+      }
+
+    } catch (final IOException | SequenceFormatException e) {
+      throw new AozanException(e);
+    }
+
+    for (final FastqScanConsumer consumer : this.consumers) {
+      consumer.endScan();
+    }
+  }
+
+  /**
+   * Read the FASTQ files of the sample with FastQC.
+   * @throws AozanException if an error occurs while processing the reads
+   * @throws IOException if an error occurs while reading the FASTQ files
+   * @throws SequenceFormatException if a read is invalid
+   */
+  private void scanSequences()
+      throws AozanException, IOException, SequenceFormatException {
+
+    final List<File> files = this.fastqSample.getFastqFiles();
+    final SequenceFile seqFile =
+        SequenceFactory.getSequenceFile(files.toArray(new File[files.size()]));
+
+    for (final FastqScanConsumer consumer : this.consumers) {
+      consumer.startScan(seqFile);
+    }
+
+    final List<FastqScanConsumer> activeConsumers =
+        new ArrayList<>(this.consumers);
+
+    while (!activeConsumers.isEmpty() && seqFile.hasNext()) {
+
+      final Sequence seq = seqFile.next();
+
+      // The read is converted in a FASTQ record only if needed
+      boolean converted = false;
+
+      final Iterator<FastqScanConsumer> it = activeConsumers.iterator();
+      while (it.hasNext()) {
+
+        final FastqScanConsumer consumer = it.next();
+        final boolean next;
+
+        if (consumer instanceof FastqSequenceConsumer) {
+          next = ((FastqSequenceConsumer) consumer).processSequence(seq);
+        } else {
+
+          if (!converted) {
+            toRecord(seq);
+            converted = true;
+          }
+          next = ((FastqRecordConsumer) consumer).processRecord(this.record,
+              this.recordLength);
+        }
+
+        if (!next) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the FASTQ files of the sample as raw records.
+   * @throws AozanException if an error occurs while processing the reads
+   * @throws IOException if an error occurs while reading the FASTQ files
+   */
+  private void scanRecords() throws AozanException, IOException {
+
+    for (final FastqScanConsumer consumer : this.consumers) {
+      consumer.startScan(null);
+    }
+
+    final List<FastqScanConsumer> activeConsumers =
+        new ArrayList<>(this.consumers);
+
+    for (final File fastqFile : this.fastqSample.getFastqFiles()) {
+
+      if (activeConsumers.isEmpty()) {
+        break;
+      }
+
+      // Closing the stream stop the uncompression of the file when no more
+      // consumer need reads
+      try (InputStream is = ParallelDecompression.createInputStream(
+          this.fastqSample.getCompressionType(),
+          new FileInputStream(fastqFile), this.decompressionThreads)) {
+
+        final FastqRecordReader reader = new FastqRecordReader(is);
+
+        while (!activeConsumers.isEmpty() && reader.readRecord()) {
+
+          final Iterator<FastqScanConsumer> it = activeConsumers.iterator();
+          while (it.hasNext()) {
+
+            if (!((FastqRecordConsumer) it.next()).processRecord(
+                reader.getRecord(), reader.getRecordLength())) {
+              it.remove();
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Convert a FastQC sequence in a FASTQ record.
+   * @param seq the sequence to convert
+   */
+  private void toRecord(final Sequence seq) {
+
+    this.recordLength = 0;
+
+    append(seq.getID());
+    append(seq.getSequence());
+    append("+");
+    append(seq.getQualityString());
+  }
+
+  /**
+   * Append a line to the FASTQ record.
+   * @param line the line to append
+   */
+  private void append(final String line) {
+
+    final int newLength = this.recordLength + line.length() + 1;
+
+    if (newLength > this.record.length) {
+      this.record = Arrays.copyOf(this.record,
+          Math.max(newLength, this.record.length * 2));
+    }
+
+    // The FASTQ records only contain ASCII characters
+    for (int i = 0; i < line.length(); i++) {
+      this.record[this.recordLength++] = (byte) line.charAt(i);
+    }
+    this.record[this.recordLength++] = '\n';
+  }
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param fastqSample the FASTQ sample to read
+   * @param decompressionThreads the number of threads used to uncompress the
+   *          FASTQ files
+   */
+  FastqScanner(final FastqSample fastqSample, final int decompressionThreads) {
+
+    checkNotNull(fastqSample, "fastqSample argument cannot be null");
+    checkArgument(decompressionThreads > 0,
+        "decompressionThreads must be greater than 0");
+
+    this.fastqSample = fastqSample;
+    this.decompressionThreads = decompressionThreads;
+  }
+
+}
@@ -55,6 +55,7 @@ public class FastqScreenCollector extends AbstractFastqCollector {
   private boolean ignorePairedMode;
   private File fastqscreenXSLFile;
   private boolean isProcessUndeterminedIndicesSamples;
+  private int numberThreads = Runtime.getRuntime().availableProcessors();
 
   @Override
   public String getName() {
@@ -82,6 +83,12 @@ public class FastqScreenCollector extends AbstractFastqCollector {
 
     this.fastqscreen = new FastqScreen(conf);
 
+    // Set the number of threads
+    final int confThreads = conf.getInt(Settings.QC_CONF_THREADS_KEY, -1);
+    if (confThreads > 0) {
+      this.numberThreads = confThreads;
+    }
+
     try {
       this.ignorePairedMode = conf.getBoolean(
           Settings.QC_CONF_FASTQSCREEN_MAPPING_IGNORE_PAIRED_END_MODE_KEY);
@@ -148,6 +155,18 @@ public class FastqScreenCollector extends AbstractFastqCollector {
         isRunPE);
   }
 
+  @Override
+  protected void addSampleFingerprint(
+      final CollectorCache.Fingerprint fingerprint, final RunData data,
+      final FastqSample fastqSample, final File reportDir) {
+
+    super.addSampleFingerprint(fingerprint, data, fastqSample, reportDir);
+
+    // The report of the sample is required to restore the result
+    fingerprint.addOutputFile(new File(reportDir,
+        fastqSample.getFilenamePrefix() + "-fastqscreen.html"));
+  }
+
   /**
    * Collect data for a fastqSample for standard sample.
    * @param data result data object
@@ -247,7 +266,16 @@ public class FastqScreenCollector extends AbstractFastqCollector {
    */
   @Override
   protected int getThreadsNumber() {
-    return 1;
+    return this.numberThreads;
+  }
+
+  /**
+   * Get the number of threads used by the mapper for a sample.
+   * @return number of thread
+   */
+  @Override
+  protected int getSampleThreadsNumber() {
+    return this.fastqscreen.getMapperThreads();
   }
 
   @Override
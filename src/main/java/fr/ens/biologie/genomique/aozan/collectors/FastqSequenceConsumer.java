@@ -0,0 +1,45 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import uk.ac.babraham.FastQC.Sequence.Sequence;
+
+/**
+ * This interface define a consumer of the reads of a FASTQ sample that need
+ * the reads as FastQC sequences.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+interface FastqSequenceConsumer extends FastqScanConsumer {
+
+  /**
+   * Process a read.
+   * @param seq the read to process
+   * @return false if the consumer does not need the next reads
+   * @throws AozanException if an error occurs while processing the read
+   */
+  boolean processSequence(Sequence seq) throws AozanException;
+
+}
@@ -0,0 +1,298 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class define a sampler that create a subset of the reads of FASTQ files.
+ * The reads are handled as raw bytes: only the filter flag of the header of
+ * the reads is parsed and the selected reads are written through a large
+ * buffer. The reads can be selected with a fixed stride or by a reservoir
+ * sampling initialized with a seed. With the reservoir sampling, the reads are
+ * selected uniformly among all the parsed reads of a file and not only among
+ * the first reads of the file. As the same seed is used for the two ends of a
+ * paired-end run, the mates are selected in both files.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class FastqSubsetSampler implements Closeable {
+
+  private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+  private final OutputStream out;
+  private final Random random;
+
+  // Sampling of the current file
+  private int quota;
+  private int step;
+  private long maxCandidates;
+  private long candidates;
+  private int fileWrittenReads;
+  private final List<ReservoirEntry> reservoir = new ArrayList<>();
+
+  private long writtenReads;
+
+  /**
+   * This class define an entry of the reservoir.
+   */
+  private static final class ReservoirEntry {
+
+    private final long ordinal;
+    private final byte[] record;
+
+    ReservoirEntry(final long ordinal, final byte[] record) {
+      this.ordinal = ordinal;
+      this.record = record;
+    }
+  }
+
+  //
+  // Sampling methods
+  //
+
+  /**
+   * Sample the reads of a FASTQ file. The reading of the input stream is
+   * stopped as soon as no more reads are needed.
+   * @param is input stream of the uncompressed FASTQ file
+   * @param onlyPFReads true if the reads that not pass the Illumina filter must
+   *          be ignored
+   * @param quota maximal number of reads to select
+   * @param step the step between two selected reads if the reads are selected
+   *          with a fixed stride
+   * @param maxCandidates maximal number of reads to parse when the reads are
+   *          selected by a reservoir sampling
+   * @throws IOException if an error occurs while reading or writing the reads
+   */
+  void sample(final InputStream is, final boolean onlyPFReads,
+      final int quota, final int step, final long maxCandidates)
+      throws IOException {
+
+    checkNotNull(is, "is argument cannot be null");
+
+    final FastqRecordReader reader = new FastqRecordReader(is);
+
+    startFile(quota, step, maxCandidates);
+
+    while (reader.readRecord()) {
+
+      if (onlyPFReads
+          && isFiltered(reader.getRecord(), reader.getHeaderLength())) {
+        continue;
+      }
+
+      if (!addRecord(reader.getRecord(), reader.getRecordLength())) {
+        break;
+      }
+    }
+
+    endFile();
+  }
+
+  /**
+   * Start the sampling of a new file.
+   * @param quota maximal number of reads to select
+   * @param step the step between two selected reads if the reads are selected
+   *          with a fixed stride
+   * @param maxCandidates maximal number of reads to parse when the reads are
+   *          selected by a reservoir sampling
+   */
+  void startFile(final int quota, final int step, final long maxCandidates) {
+
+    checkArgument(quota >= 0, "quota cannot be lower than 0");
+
+    this.quota = quota;
+    this.step = Math.max(1, step);
+    this.maxCandidates = maxCandidates;
+    this.candidates = 0;
+    this.fileWrittenReads = 0;
+    this.reservoir.clear();
+  }
+
+  /**
+   * Add a read to the sampling of the current file.
+   * @param record the bytes of the read in FASTQ format, with the final new
+   *          line
+   * @param length the length of the read in the array
+   * @return true if more reads are needed for the current file
+   * @throws IOException if an error occurs while writing the read
+   */
+  boolean addRecord(final byte[] record, final int length)
+      throws IOException {
+
+    // Fixed stride
+    if (this.random == null) {
+
+      if (this.fileWrittenReads >= this.quota) {
+        return false;
+      }
+
+      if (++this.candidates % this.step == 0) {
+
+        this.out.write(record, 0, length);
+        this.fileWrittenReads++;
+        this.writtenReads++;
+
+        return this.fileWrittenReads < this.quota;
+      }
+
+      return true;
+    }
+
+    // Reservoir sampling
+    if (this.candidates >= this.maxCandidates) {
+      return false;
+    }
+
+    final long ordinal = this.candidates++;
+
+    if (ordinal < this.quota) {
+      this.reservoir
+          .add(new ReservoirEntry(ordinal, Arrays.copyOf(record, length)));
+    } else {
+
+      final long index = (long) (this.random.nextDouble() * (ordinal + 1));
+      if (index < this.quota) {
+        this.reservoir.set((int) index,
+            new ReservoirEntry(ordinal, Arrays.copyOf(record, length)));
+      }
+    }
+
+    return this.candidates < this.maxCandidates;
+  }
+
+  /**
+   * End the sampling of the current file. The reads of the reservoir are
+   * written in the order of the file.
+   * @throws IOException if an error occurs while writing the reads
+   */
+  void endFile() throws IOException {
+
+    if (this.reservoir.isEmpty()) {
+      return;
+    }
+
+    Collections.sort(this.reservoir, new Comparator<ReservoirEntry>() {
+
+      @Override
+      public int compare(final ReservoirEntry e1, final ReservoirEntry e2) {
+
+        return Long.compare(e1.ordinal, e2.ordinal);
+      }
+    });
+
+    for (ReservoirEntry e : this.reservoir) {
+      this.out.write(e.record);
+    }
+
+    this.fileWrittenReads += this.reservoir.size();
+    this.writtenReads += this.reservoir.size();
+    this.reservoir.clear();
+  }
+
+  /**
+   * Get the number of written reads.
+   * @return the number of written reads
+   */
+  long getWrittenReadCount() {
+
+    return this.writtenReads;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    this.out.close();
+  }
+
+  //
+  // Parsing methods
+  //
+
+  /**
+   * Test if a read does not pass the Illumina filter. The filter flag is the
+   * field that follows the read number after the space of the header (e.g.
+   * "@NB500892:10:H3YL2AFXX:1:11101:10000:1034 1:Y:0:ATCACG"). Only the
+   * first line of the bytes is parsed.
+   * @param header the bytes of the header or of the whole record
+   * @param length the length of the bytes
+   * @return true if the read does not pass the filter
+   */
+  static boolean isFiltered(final byte[] header, final int length) {
+
+    for (int i = 0; i < length && header[i] != '\n'; i++) {
+
+      if (header[i] == ' ') {
+
+        for (int j = i + 1; j < length - 1 && header[j] != '\n'; j++) {
+          if (header[j] == ':') {
+            return header[j + 1] == 'Y';
+          }
+        }
+
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param outputFile the output file
+   * @param reservoirSampling true if the reads must be selected by a reservoir
+   *          sampling instead of a fixed stride
+   * @param seed the seed of the reservoir sampling
+   * @throws IOException if an error occurs while creating the output file
+   */
+  FastqSubsetSampler(final File outputFile, final boolean reservoirSampling,
+      final long seed) throws IOException {
+
+    checkNotNull(outputFile, "outputFile argument cannot be null");
+
+    this.out = new BufferedOutputStream(new FileOutputStream(outputFile),
+        OUTPUT_BUFFER_SIZE);
+    this.random = reservoirSampling ? new Random(seed) : null;
+  }
+
+}
@@ -23,29 +23,21 @@
 
 package fr.ens.biologie.genomique.aozan.collectors;
 
-import static fr.ens.biologie.genomique.eoulsan.util.XMLUtils.getAttributeValue;
-import static fr.ens.biologie.genomique.eoulsan.util.XMLUtils.getTagValue;
-
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.google.common.base.Objects;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.QC;
 import fr.ens.biologie.genomique.aozan.RunData;
-import fr.ens.biologie.genomique.eoulsan.util.XMLUtils;
 
 /**
  * This class define a collector for demux statistics data from bcl2fastq
@@ -82,117 +74,174 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
     // Create the input stream
     try (InputStream is = new FileInputStream(demuxSummaryPath)) {
 
-      final DocumentBuilder dBuilder =
-          DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      final Document doc = dBuilder.parse(is);
-      doc.getDocumentElement().normalize();
+      final XMLStreamReader reader = createXMLStreamReader(is);
 
-      parse(doc, data);
+      try {
+        parse(reader, data);
+      } finally {
+        reader.close();
+      }
 
-    } catch (final IOException | SAXException
-        | ParserConfigurationException e) {
+    } catch (final IOException | XMLStreamException e) {
       throw new AozanException(e);
     }
   }
 
-  private void parse(final Document document, final RunData data) {
+  /**
+   * Parse the document. The statistics of the tiles are aggregated while the
+   * document is read.
+   * @param reader the XML stream reader of the document
+   * @param data the data
+   * @throws XMLStreamException if an error occurs while reading the document
+   */
+  private void parse(final XMLStreamReader reader, final RunData data)
+      throws XMLStreamException {
 
-    for (final Element e1 : XMLUtils.getElementsByTagName(document,
-        "Summary")) {
-      for (final Element e2 : XMLUtils.getElementsByTagName(e1, "Lane")) {
-        parseLane(e2, data);
-      }
-    }
+    boolean inSummary = false;
+    int lane = -1;
+    String sample = null;
+    String barcode = null;
+    int read = -1;
+    String type = null;
+    TileStats current = null;
 
-  }
+    Map<Integer, TileStats> rawLine = null;
+    Map<Integer, TileStats> pfLine = null;
+    Map<Integer, TileStats> mapRaw = null;
+    Map<Integer, TileStats> mapPF = null;
 
-  private void parseLane(final Element e, final RunData data) {
+    while (reader.hasNext()) {
 
-    final int lane = Integer.parseInt(getAttributeValue(e, "index"));
+      final int event = reader.next();
 
-    final Map<Integer, TileStats> rawLine = new HashMap<>();
-    final Map<Integer, TileStats> pfLine = new HashMap<>();
+      if (event == XMLStreamConstants.START_ELEMENT) {
 
-    // Parse samples of the line
-    for (final Element e1 : XMLUtils.getElementsByTagName(e, "Sample")) {
-      parseSample(e1, lane, data, rawLine, pfLine);
-    }
+        final String name = reader.getLocalName();
 
-    // Put the line stats
-    for (final Map.Entry<Integer, TileStats> entry : rawLine.entrySet()) {
-      entry.getValue().putData(data,
-          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".raw");
-    }
+        if ("Summary".equals(name)) {
+          inSummary = true;
+        } else if (!inSummary) {
+          continue;
+        } else if ("Lane".equals(name)) {
 
-    for (final Map.Entry<Integer, TileStats> entry : pfLine.entrySet()) {
-      entry.getValue().putData(data,
-          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".pf");
-    }
-  }
+          lane = Integer.parseInt(reader.getAttributeValue(null, "index"));
+          rawLine = new HashMap<>();
+          pfLine = new HashMap<>();
 
-  private void parseSample(final Element e, final int lane, final RunData data,
-      final Map<Integer, TileStats> rawLine,
-      final Map<Integer, TileStats> pfLine) {
+        } else if ("Sample".equals(name) && rawLine != null) {
 
-    final String sample = getAttributeValue(e, "index").trim();
+          sample = reader.getAttributeValue(null, "index").trim();
 
-    for (final Element e1 : XMLUtils.getElementsByTagName(e, "Barcode")) {
-      final String barcode = getAttributeValue(e1, "index").trim();
+        } else if ("Barcode".equals(name) && sample != null) {
 
-      final Map<Integer, TileStats> mapRaw = new HashMap<>();
-      final Map<Integer, TileStats> mapPF = new HashMap<>();
+          barcode = reader.getAttributeValue(null, "index").trim();
+          mapRaw = new HashMap<>();
+          mapPF = new HashMap<>();
 
-      for (final Element e2 : XMLUtils.getElementsByTagName(e1, "Tile")) {
-        // final int tile = Integer.parseInt(getAttributeValue(e2, "index"));
+        } else if ("Read".equals(name) && mapRaw != null) {
 
-        for (final Element e3 : XMLUtils.getElementsByTagName(e2, "Read")) {
-          final int read = Integer.parseInt(getAttributeValue(e3, "index"));
+          read = Integer.parseInt(reader.getAttributeValue(null, "index"));
 
           if (!rawLine.containsKey(read)) {
             rawLine.put(read, new TileStats());
             pfLine.put(read, new TileStats());
           }
 
-          final TileStats raw;
-          final TileStats pf;
-
           if (!mapRaw.containsKey(read)) {
-            raw = new TileStats();
-            pf = new TileStats();
-            mapRaw.put(read, raw);
-            mapPF.put(read, pf);
-          } else {
-            raw = mapRaw.get(read);
-            pf = mapPF.get(read);
+            mapRaw.put(read, new TileStats());
+            mapPF.put(read, new TileStats());
           }
 
-          for (final Element e4 : XMLUtils.getElementsByTagName(e3, "Raw")) {
-            raw.add(new TileStats(e4));
-          }
+        } else if (("Raw".equals(name) || "Pf".equals(name)) && read != -1) {
+
+          type = name;
+          current = new TileStats();
+
+        } else if (current != null) {
+          current.set(name, reader);
+        }
+
+      } else if (event == XMLStreamConstants.END_ELEMENT && inSummary) {
+
+        final String name = reader.getLocalName();
+
+        if (name.equals(type)) {
 
-          for (final Element e5 : XMLUtils.getElementsByTagName(e3, "Pf")) {
-            pf.add(new TileStats(e5));
+          if ("Raw".equals(type)) {
+            mapRaw.get(read).add(current);
+          } else {
+            mapPF.get(read).add(current);
           }
+          type = null;
+          current = null;
+
+        } else if ("Read".equals(name)) {
+
+          read = -1;
+
+        } else if ("Barcode".equals(name) && mapRaw != null) {
+
+          putBarcodeData(data, lane, sample, barcode, rawLine, pfLine, mapRaw,
+              mapPF);
+          mapRaw = null;
+          mapPF = null;
+
+        } else if ("Sample".equals(name)) {
+
+          sample = null;
+
+        } else if ("Lane".equals(name) && rawLine != null) {
+
+          putLaneData(data, lane, rawLine, pfLine);
+          rawLine = null;
+          pfLine = null;
+
+        } else if ("Summary".equals(name)) {
+          inSummary = false;
         }
       }
+    }
+  }
 
-      final String prefix = PREFIX + ".lane" + lane + ".sample." + sample;
+  private static void putLaneData(final RunData data, final int lane,
+      final Map<Integer, TileStats> rawLine,
+      final Map<Integer, TileStats> pfLine) {
 
-      data.put(prefix + ".barcode", barcode);
+    // Put the line stats
+    for (final Map.Entry<Integer, TileStats> entry : rawLine.entrySet()) {
+      entry.getValue().putData(data,
+          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".raw");
+    }
 
-      for (final Map.Entry<Integer, TileStats> entry : mapRaw.entrySet()) {
-        final int read = entry.getKey();
-        final TileStats ts = entry.getValue();
-        rawLine.get(read).add(ts);
-        ts.putData(data, prefix + ".read" + entry.getKey() + ".raw");
-      }
+    for (final Map.Entry<Integer, TileStats> entry : pfLine.entrySet()) {
+      entry.getValue().putData(data,
+          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".pf");
+    }
+  }
 
-      for (final Map.Entry<Integer, TileStats> entry : mapPF.entrySet()) {
-        final int read = entry.getKey();
-        final TileStats ts = entry.getValue();
-        pfLine.get(read).add(ts);
-        ts.putData(data, prefix + ".read" + entry.getKey() + ".pf");
-      }
+  private static void putBarcodeData(final RunData data, final int lane,
+      final String sample, final String barcode,
+      final Map<Integer, TileStats> rawLine,
+      final Map<Integer, TileStats> pfLine,
+      final Map<Integer, TileStats> mapRaw,
+      final Map<Integer, TileStats> mapPF) {
+
+    final String prefix = PREFIX + ".lane" + lane + ".sample." + sample;
+
+    data.put(prefix + ".barcode", barcode);
+
+    for (final Map.Entry<Integer, TileStats> entry : mapRaw.entrySet()) {
+      final int read = entry.getKey();
+      final TileStats ts = entry.getValue();
+      rawLine.get(read).add(ts);
+      ts.putData(data, prefix + ".read" + entry.getKey() + ".raw");
+    }
+
+    for (final Map.Entry<Integer, TileStats> entry : mapPF.entrySet()) {
+      final int read = entry.getKey();
+      final TileStats ts = entry.getValue();
+      pfLine.get(read).add(ts);
+      ts.putData(data, prefix + ".read" + entry.getKey() + ".pf");
     }
   }
 
@@ -238,6 +287,46 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
           .add("qualityScoreSum", this.qualityScoreSum).toString();
     }
 
+    /**
+     * Set a value from the current element of a XML stream reader.
+     * @param name name of the element
+     * @param reader the XML stream reader
+     * @throws XMLStreamException if an error occurs while reading the element
+     */
+    public void set(final String name, final XMLStreamReader reader)
+        throws XMLStreamException {
+
+      switch (name) {
+
+      case "Yield":
+        this.yield = parseLong(reader);
+        break;
+
+      case "YieldQ30":
+        this.yieldQ30 = parseLong(reader);
+        break;
+
+      case "ClusterCount":
+        this.clusterCount = parseLong(reader);
+        break;
+
+      case "ClusterCount0MismatchBarcode":
+        this.clusterCount0MismatchBarcode = parseLong(reader);
+        break;
+
+      case "ClusterCount1MismatchBarcode":
+        this.clusterCount1MismatchBarcode = parseLong(reader);
+        break;
+
+      case "QualityScoreSum":
+        this.qualityScoreSum = parseLong(reader);
+        break;
+
+      default:
+        break;
+      }
+    }
+
     public void putData(final RunData runData, final String prefix) {
 
       if (runData == null || prefix == null) {
@@ -261,16 +350,5 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
     public TileStats() {
     }
 
-    public TileStats(final Element e) {
-      this.yield = Long.parseLong(getTagValue(e, "Yield"));
-      this.yieldQ30 = Long.parseLong(getTagValue(e, "YieldQ30"));
-      this.clusterCount = Long.parseLong(getTagValue(e, "ClusterCount"));
-      this.clusterCount0MismatchBarcode =
-          Long.parseLong(getTagValue(e, "ClusterCount0MismatchBarcode"));
-      this.clusterCount1MismatchBarcode =
-          Long.parseLong(getTagValue(e, "ClusterCount1MismatchBarcode"));
-      this.qualityScoreSum = Long.parseLong(getTagValue(e, "QualityScoreSum"));
-    }
-
   }
 }
@@ -27,10 +27,12 @@ import static fr.ens.biologie.genomique.aozan.io.FastqSample.UNDETERMINED_DIR_NA
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.Lists;
 
@@ -40,6 +42,7 @@ import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.Settings;
 import fr.ens.biologie.genomique.aozan.collectors.stats.EntityStat;
 import fr.ens.biologie.genomique.aozan.fastqscreen.FastqScreenProjectReport;
+import fr.ens.biologie.genomique.aozan.util.XSLReportRenderer;
 
 /**
  * The class define a abstract statistics collector.
@@ -138,6 +141,9 @@ public abstract class StatisticsCollector implements Collector {
       return;
     }
 
+    // The reports of the projects are rendered in parallel
+    final List<Future<Void>> renderings = new ArrayList<>();
+
     for (Map.Entry<String, List<File>> e : this.fastqScreenReportFiles
         .entrySet()) {
 
@@ -166,8 +172,13 @@ public abstract class StatisticsCollector implements Collector {
             data.getProjectName(projectId) + "-fastqscreen.html");
       }
 
-      fpr.createReport(htmlReportFile);
+      final Future<Void> rendering = fpr.submitReport(htmlReportFile);
+      if (rendering != null) {
+        renderings.add(rendering);
+      }
     }
+
+    XSLReportRenderer.waitRenderings(renderings);
   }
 
   //
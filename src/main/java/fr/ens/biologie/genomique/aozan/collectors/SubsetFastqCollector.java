@@ -62,6 +62,10 @@ public class SubsetFastqCollector extends AbstractFastqCollector {
   // if it is -1 parse integral fastq file
   private int maxReadsPFtoParse;
 
+  // Select the reads with a reservoir sampling instead of a fixed stride
+  private boolean reservoirSampling;
+  private int samplingSeed;
+
   private int numberThreads = Runtime.getRuntime().availableProcessors();
 
   /**
@@ -141,6 +145,11 @@ public class SubsetFastqCollector extends AbstractFastqCollector {
       this.maxReadsPFtoParse = countReads;
     }
 
+    this.reservoirSampling = conf.getBoolean(
+        Settings.QC_CONF_FASTQSCREEN_FASTQ_RESERVOIR_SAMPLING_KEY, false);
+    this.samplingSeed =
+        conf.getInt(Settings.QC_CONF_FASTQSCREEN_FASTQ_SAMPLING_SEED_KEY, 0);
+
     // Check if process undetermined indices samples specify in Aozan
     // configuration
     this.isProcessUndeterminedIndicesSamples = conf.getBoolean(
@@ -228,7 +237,18 @@ public class SubsetFastqCollector extends AbstractFastqCollector {
 
     // Create the thread object
     return new SubsetFastqThread(fastqSample, rawClusterCount, pfClusterCount,
-        this.countReadsPFtoCopy, this.maxReadsPFtoParse);
+        this.countReadsPFtoCopy, this.maxReadsPFtoParse,
+        this.reservoirSampling, this.samplingSeed);
+  }
+
+  /**
+   * The subset FASTQ files are temporary files required by the FastqScreen
+   * collector, the results of the samples cannot be restored from the cache.
+   */
+  @Override
+  protected boolean isResultCacheable() {
+
+    return false;
   }
 
   /**
@@ -250,4 +270,10 @@ public class SubsetFastqCollector extends AbstractFastqCollector {
     return this.isProcessUndeterminedIndicesSamples;
   }
 
+  @Override
+  protected boolean isFastqScanSupported() {
+
+    return true;
+  }
+
 }
@@ -30,22 +30,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.Writer;
+import java.util.List;
 import java.util.logging.Logger;
 
-import com.google.common.io.Files;
-
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.Common;
-import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
-import fr.ens.biologie.genomique.eoulsan.EoulsanException;
-import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
-import fr.ens.biologie.genomique.eoulsan.bio.IlluminaReadId;
-import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
-import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
+import fr.ens.biologie.genomique.aozan.io.ParallelDecompression;
 import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+import uk.ac.babraham.FastQC.Sequence.SequenceFile;
 
 /**
  * The class define a class for a thread that create a temporary partial fastq
@@ -54,7 +48,8 @@ import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
  * @since 1.1
  * @author Sandrine Perrin
  */
-public class SubsetFastqThread extends AbstractFastqProcessThread {
+public class SubsetFastqThread extends AbstractFastqProcessThread
+    implements FastqRecordConsumer {
 
   /** Logger. */
   private static final Logger LOGGER = Common.getLogger();
@@ -68,6 +63,13 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
   private final File tmpFastqFile;
   private boolean uncompressFastqFile = false;
 
+  private final boolean reservoirSampling;
+  private final long samplingSeed;
+
+  // Fields used by the shared scan
+  private FastqSubsetSampler scanSampler;
+  private boolean scanOnlyPFReads;
+
   @Override
   protected void logThreadStart() {
     // Nothing to log
@@ -76,7 +78,11 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
   @Override
   protected void process() throws AozanException {
 
-    processResults();
+    if (isFastqScanShared()) {
+      scanFastqFiles(this);
+    } else {
+      processResults();
+    }
   }
 
   @Override
@@ -94,6 +100,83 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
 
   }
 
+  //
+  // FastqRecordConsumer methods
+  //
+
+  @Override
+  public void startScan(final SequenceFile seqFile) throws AozanException {
+
+    // Nothing to do if the subset file already exists
+    if (getFastqSample().getSubsetFastqFile().exists()) {
+      return;
+    }
+
+    this.uncompressFastqFile = this.countReadsPFtoCopy > this.rawClusterCount;
+    this.scanOnlyPFReads = !this.uncompressFastqFile
+        && this.countReadsPFtoCopy <= this.pfClusterCountParsed;
+
+    final long readsToParse = this.scanOnlyPFReads
+        ? this.pfClusterCountParsed : this.rawClusterCount;
+
+    try {
+      this.scanSampler = new FastqSubsetSampler(this.tmpFastqFile,
+          this.reservoirSampling && !this.uncompressFastqFile,
+          this.samplingSeed);
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+
+    if (this.uncompressFastqFile) {
+      this.scanSampler.startFile(Integer.MAX_VALUE, 1, Long.MAX_VALUE);
+    } else {
+      this.scanSampler.startFile(this.countReadsPFtoCopy,
+          (int) (1 / ((double) this.countReadsPFtoCopy / readsToParse)),
+          readsToParse);
+    }
+  }
+
+  @Override
+  public boolean processRecord(final byte[] record, final int length)
+      throws AozanException {
+
+    if (this.scanSampler == null) {
+      return false;
+    }
+
+    if (this.scanOnlyPFReads && FastqSubsetSampler.isFiltered(record, length)) {
+      return true;
+    }
+
+    try {
+      return this.scanSampler.addRecord(record, length);
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  @Override
+  public void endScan() throws AozanException {
+
+    if (this.scanSampler == null) {
+      return;
+    }
+
+    try {
+      this.scanSampler.endFile();
+      this.scanSampler.close();
+      this.scanSampler = null;
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+
+    // Rename file: remove '.tmp' final
+    if (!this.tmpFastqFile.renameTo(getFastqSample().getSubsetFastqFile())) {
+      LOGGER.warning("FASTQC: fail to rename tmp fastq file "
+          + this.tmpFastqFile.getAbsolutePath());
+    }
+  }
+
   /**
    * Create a temporary partial file from a array of fastq files.
    * @throws AozanException if an error occurs while creating file
@@ -108,10 +191,10 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
 
       } else if (this.countReadsPFtoCopy > this.pfClusterCountParsed) {
         // Use all reads
-        partialFastqFile();
+        sampleFastqFiles(false);
       } else {
         // Filter reads
-        filteredFastqFile();
+        sampleFastqFiles(true);
       }
 
       // Rename file: remove '.tmp' final
@@ -123,194 +206,52 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
   }
 
   /**
-   * Write the temporary partial file from a array of fastq files, only reads
-   * passing filter Illumina are writing.
-   * @throws AozanException if an error occurs while creating file
-   */
-  private void filteredFastqFile() throws AozanException {
-
-    Writer fwTmpFastq = null;
-    try {
-      fwTmpFastq =
-          Files.newWriter(this.tmpFastqFile, Globals.DEFAULT_FILE_ENCODING);
-
-      final int step = (int) (1
-          / ((double) this.countReadsPFtoCopy / this.pfClusterCountParsed));
-
-      for (final File fastqFile : getFastqSample().getFastqFiles()) {
-        int comptReadsPF = 1;
-        int countReadsToCopyByFastq =
-            this.countReadsPFtoCopy / getFastqSample().getFastqFiles().size();
-
-        if (!fastqFile.exists()) {
-          throw new AozanException(
-              "Fastq file " + fastqFile.getName() + " doesn't exist");
-        }
-
-        FastqReader fastqReader = null;
-        try {
-          // Get compression value
-          final CompressionType zType = getFastqSample().getCompressionType();
-
-          // Append compressed fastq file to uncompressed file
-          final InputStream is =
-              zType.createInputStream(new FileInputStream(fastqFile));
-
-          fastqReader = new FastqReader(is);
-          IlluminaReadId ill = null;
-
-          for (final ReadSequence seq : fastqReader) {
-
-            if (ill == null) {
-              ill = new IlluminaReadId(seq);
-            } else {
-              ill.parse(seq);
-            }
-
-            if (!ill.isFiltered()) {
-              if (comptReadsPF % step == 0) {
-                // Write in tmp fastq file
-                fwTmpFastq.write(seq.toFastQ() + '\n');
-                fwTmpFastq.flush();
-
-                if (--countReadsToCopyByFastq <= 0) {
-                  break;
-                }
-
-              }
-              comptReadsPF++;
-            }
-          }
-
-          // Throw an exception if an error has occurred while reading data
-          fastqReader.throwException();
-
-        } catch (final IOException | EoulsanException
-            | BadBioEntryException e) {
-          throw new AozanException(e);
-        } finally {
-
-          if (fastqReader != null) {
-            try {
-              // Close fastqReader and inputStream on fastq file
-              fastqReader.close();
-            } catch (final IOException io) {
-              LOGGER.warning(
-                  "Exception occuring during the closing of FastqReader. Step collector "
-                      + SubsetFastqCollector.COLLECTOR_NAME + " for the sample "
-                      + getFastqSample().getFilenamePrefix());
-            }
-          }
-        }
-      }
-
-      if (fwTmpFastq != null) {
-        fwTmpFastq.close();
-      }
-
-    } catch (final IOException io) {
-      LOGGER.warning("Exception occuring during creating tmp file : "
-          + this.tmpFastqFile.getAbsolutePath() + ". Step collector "
-          + SubsetFastqCollector.COLLECTOR_NAME + " for the sample "
-          + getFastqSample().getFilenamePrefix());
-
-    } finally {
-      if (fwTmpFastq != null) {
-        try {
-          fwTmpFastq.close();
-        } catch (final IOException ignored) {
-        }
-      }
-
-    }
-  }
-
-  /**
-   * Write the temporary partial file from a array of fastq files, writing reads
-   * randomly in files.
+   * Write the temporary partial file from a array of fastq files. The reads are
+   * selected by a FastqSubsetSampler that stop the reading of each FASTQ file
+   * once enough reads have been selected.
+   * @param onlyPFReads true if only the reads passing filter Illumina must be
+   *          written
    * @throws AozanException if an error occurs while creating file
    */
-  private void partialFastqFile() throws AozanException {
+  private void sampleFastqFiles(final boolean onlyPFReads)
+      throws AozanException {
 
-    Writer fwTmpFastq = null;
+    final List<File> fastqFiles = getFastqSample().getFastqFiles();
+    final long readsToParse =
+        onlyPFReads ? this.pfClusterCountParsed : this.rawClusterCount;
 
-    try {
-      fwTmpFastq =
-          Files.newWriter(this.tmpFastqFile, Globals.DEFAULT_FILE_ENCODING);
+    final int step =
+        (int) (1 / ((double) this.countReadsPFtoCopy / readsToParse));
+    final int readsToCopyByFastq =
+        this.countReadsPFtoCopy / fastqFiles.size();
+    final long readsToParseByFastq =
+        (readsToParse + fastqFiles.size() - 1) / fastqFiles.size();
 
-      final int step =
-          (int) (1 / ((double) this.countReadsPFtoCopy / this.rawClusterCount));
+    // Get compression value
+    final CompressionType zType = getFastqSample().getCompressionType();
 
-      int countReadsToCopyByFastq =
-          this.countReadsPFtoCopy / getFastqSample().getFastqFiles().size();
+    try (FastqSubsetSampler sampler = new FastqSubsetSampler(
+        this.tmpFastqFile, this.reservoirSampling, this.samplingSeed)) {
 
-      for (final File fastqFile : getFastqSample().getFastqFiles()) {
-        int comptReadsPF = 1;
+      for (final File fastqFile : fastqFiles) {
 
         if (!fastqFile.exists()) {
           throw new AozanException(
               "FastQ file " + fastqFile.getName() + " doesn't exist");
         }
 
-        FastqReader fastqReader = null;
-        try {
-          // Get compression value
-          final CompressionType zType = getFastqSample().getCompressionType();
-
-          // Append compressed fastq file to uncompressed file
-          final InputStream is =
-              zType.createInputStream(new FileInputStream(fastqFile));
-
-          fastqReader = new FastqReader(is);
-
-          for (final ReadSequence seq : fastqReader) {
-
-            if (comptReadsPF % step == 0) {
-              // Write in tmp fastq file
-              fwTmpFastq.write(seq.toFastQ() + '\n');
-              fwTmpFastq.flush();
-
-              if (--countReadsToCopyByFastq <= 0) {
-                break;
-              }
-
-            }
-            comptReadsPF++;
-          }
-
-          // Throw an exception if an error has occurred while reading data
-          fastqReader.throwException();
-
-        } catch (final IOException | BadBioEntryException e) {
-          throw new AozanException(e);
-        } finally {
-
-          if (fastqReader != null) {
-            try {
-              fastqReader.close();
-            } catch (final IOException io) {
-              LOGGER.warning(
-                  "Exception occurred during the closing of FastqReader. Step collector "
-                      + SubsetFastqCollector.COLLECTOR_NAME + " for the sample "
-                      + getFastqSample().getFilenamePrefix());
-            }
-          }
-        }
-      }
+        // Closing the stream stop the uncompression of the file when enough
+        // reads have been selected
+        try (InputStream is = ParallelDecompression.createInputStream(zType,
+            new FileInputStream(fastqFile), getDecompressionThreads())) {
 
-    } catch (final IOException io) {
-      LOGGER.warning("Exception occurred during creating tmp file : "
-          + this.tmpFastqFile.getAbsolutePath() + ". Step collector "
-          + SubsetFastqCollector.COLLECTOR_NAME + " for the sample "
-          + getFastqSample().getFilenamePrefix());
-
-    } finally {
-      try {
-        if (fwTmpFastq != null) {
-          fwTmpFastq.close();
+          sampler.sample(is, onlyPFReads, readsToCopyByFastq, step,
+              readsToParseByFastq);
         }
-      } catch (final IOException ignored) {
       }
+
+    } catch (final IOException e) {
+      throw new AozanException(e);
     }
   }
 
@@ -336,7 +277,8 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
 
         // Append compressed fastq file to uncompressed file
         final InputStream in = new FileInputStream(fastqFile);
-        FileUtils.append(zType.createInputStream(in), out);
+        FileUtils.append(ParallelDecompression.createInputStream(zType, in,
+            getDecompressionThreads()), out);
       }
 
       out.close();
@@ -366,8 +308,35 @@ public class SubsetFastqThread extends AbstractFastqProcessThread {
       final int numberReadsToCopy, final int maxReadsToParse)
       throws AozanException {
 
+    this(fastqSample, rawClusterCount, pfClusterCount, numberReadsToCopy,
+        maxReadsToParse, false, 0);
+  }
+
+  /**
+   * Thread constructor.
+   * @param fastqSample fastq sample instance
+   * @param rawClusterCount raw cluster count for the sample
+   * @param pfClusterCount passing filter cluster count for the sample
+   * @param numberReadsToCopy number reads in partial fastq to create
+   * @param maxReadsToParse maximum number reads to parse for create partial
+   *          fastq
+   * @param reservoirSampling true if the reads must be selected by a reservoir
+   *          sampling instead of a fixed stride
+   * @param samplingSeed the seed of the reservoir sampling
+   * @throws AozanException if an error occurs while creating sequence file for
+   *           FastQC
+   */
+  public SubsetFastqThread(final FastqSample fastqSample,
+      final long rawClusterCount, final long pfClusterCount,
+      final int numberReadsToCopy, final int maxReadsToParse,
+      final boolean reservoirSampling, final long samplingSeed)
+      throws AozanException {
+
     super(fastqSample);
 
+    this.reservoirSampling = reservoirSampling;
+    this.samplingSeed = samplingSeed;
+
     this.countReadsPFtoCopy = numberReadsToCopy;
 
     this.rawClusterCount = rawClusterCount;
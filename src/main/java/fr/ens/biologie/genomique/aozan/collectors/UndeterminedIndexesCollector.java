@@ -76,6 +76,12 @@ public class UndeterminedIndexesCollector extends AbstractFastqCollector {
     return false;
   }
 
+  @Override
+  protected boolean isFastqScanSupported() {
+
+    return true;
+  }
+
   @Override
   public List<String> getCollectorsNamesRequiered() {
 
@@ -121,6 +127,32 @@ public class UndeterminedIndexesCollector extends AbstractFastqCollector {
     return this.numberThreads;
   }
 
+  @Override
+  protected void addSampleFingerprint(
+      final CollectorCache.Fingerprint fingerprint, final RunData data,
+      final FastqSample fastqSample, final File reportDir) {
+
+    super.addSampleFingerprint(fingerprint, data, fastqSample, reportDir);
+
+    // The indexes and the demultiplexing results of all the samples of the
+    // lane are used
+    final int lane = fastqSample.getLane();
+    fingerprint.addEntries(data,
+        SamplesheetCollector.SAMPLESHEET_DATA_PREFIX + ".lane" + lane + ".");
+
+    for (final int sampleId : data.getAllSamplesInLane(lane)) {
+
+      fingerprint.addEntries(data, SamplesheetCollector.SAMPLESHEET_DATA_PREFIX
+          + ".sample" + sampleId + ".");
+      fingerprint.addEntries(data,
+          DemultiplexingCollector.PREFIX + ".sample" + sampleId + ".");
+    }
+
+    // The report of the lane is required to restore the result
+    fingerprint.addOutputFile(new File(reportDir,
+        fastqSample.getFilenamePrefix() + "-potentialindices.html"));
+  }
+
   @Override
   protected AbstractFastqProcessThread collectSample(final RunData data,
       final FastqSample fastqSample, final File reportDir, boolean runPE)
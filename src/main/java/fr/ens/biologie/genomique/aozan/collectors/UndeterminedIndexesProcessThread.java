@@ -29,9 +29,7 @@ import static fr.ens.biologie.genomique.aozan.collectors.UndeterminedIndexesColl
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,11 +38,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -64,14 +64,14 @@ import fr.ens.biologie.genomique.aozan.Common;
 import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
+import fr.ens.biologie.genomique.aozan.util.IndexMismatchTable;
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLReportRenderer;
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.bio.IlluminaReadId;
 import fr.ens.biologie.genomique.eoulsan.util.XMLUtils;
 import uk.ac.babraham.FastQC.Sequence.Sequence;
-import uk.ac.babraham.FastQC.Sequence.SequenceFactory;
 import uk.ac.babraham.FastQC.Sequence.SequenceFile;
-import uk.ac.babraham.FastQC.Sequence.SequenceFormatException;
 
 /**
  * This class allow to process the undetermined fastq file of a lane to extract
@@ -81,7 +81,7 @@ import uk.ac.babraham.FastQC.Sequence.SequenceFormatException;
  * @author Sandrine Perrin
  */
 public class UndeterminedIndexesProcessThread
-    extends AbstractFastqProcessThread {
+    extends AbstractFastqProcessThread implements FastqSequenceConsumer {
 
   /** Logger. */
   private static final Logger LOGGER = Common.getLogger();
@@ -93,17 +93,22 @@ public class UndeterminedIndexesProcessThread
 
   private static final String REPORT_FILENAME_SUFFIX = "-potentialindices";
 
+  /** Separator of the two indexes of a dual index. */
+  private static final String INDEX_SEPARATOR = "+";
+
   private final RunData data;
   private final int lane;
   private final int read;
-  private final SequenceFile seqFile;
   private final File reportDir;
   private final File xslFile;
 
+  private final boolean dualIndexes;
   private final Map<Integer, String> sampleIndexes;
   private final Map<String, Integer> reverseSampleIndexes;
+  private final IndexMismatchTable<Integer> indexTable;
   private final Multiset<String> rawUndeterminedIndices = HashMultiset.create();
   private final Multiset<String> pfUndeterminedIndices = HashMultiset.create();
+  private final List<Future<Void>> htmlReportRenderings = new ArrayList<>();
   private final Multimap<Integer, String> newSamplesIndexes =
       ArrayListMultimap.create();
   private final Multimap<String, String> newIndexes =
@@ -112,6 +117,9 @@ public class UndeterminedIndexesProcessThread
   private int maxMismatches = 1;
   private boolean isSkipProcessResult = false;
 
+  private IlluminaReadId irid;
+  private boolean notIlluminaId;
+
   /**
    * This class store a result entry for the whole lane.
    */
@@ -498,7 +506,7 @@ public class UndeterminedIndexesProcessThread
   @Override
   protected void process() throws AozanException {
 
-    processSequences(this.seqFile);
+    scanFastqFiles(this);
   }
 
   @Override
@@ -509,95 +517,97 @@ public class UndeterminedIndexesProcessThread
         + duration);
   }
 
-  /**
-   * Read FASTQ file and process the data by FastQC modules.
-   * @param seqFile input file
-   * @throws AozanException if an error occurs while processing file
-   */
-  private void processSequences(final SequenceFile seqFile)
-      throws AozanException {
-
-    IlluminaReadId irid = null;
+  //
+  // FastqSequenceConsumer methods
+  //
 
-    try {
+  @Override
+  public void startScan(final SequenceFile seqFile) {
 
-      while (seqFile.hasNext()) {
+    this.irid = null;
+    this.notIlluminaId = false;
+  }
 
-        final Sequence seq = seqFile.next();
+  @Override
+  public boolean processSequence(final Sequence seq) {
 
-        // Parse sequence id
-        try {
-          if (irid == null) {
-            irid = new IlluminaReadId(seq.getID().substring(1));
-          } else {
-            irid.parse(seq.getID().substring(1));
-          }
-        } catch (final EoulsanException e) {
+    // Parse sequence id
+    try {
+      if (this.irid == null) {
+        this.irid = new IlluminaReadId(seq.getID().substring(1));
+      } else {
+        this.irid.parse(seq.getID().substring(1));
+      }
+    } catch (final EoulsanException e) {
 
-          // This is not an Illumina id
-          return;
-        }
+      // This is not an Illumina id
+      this.notIlluminaId = true;
+      return false;
+    }
 
-        // Get the sequence indexes
-        final List<String> indexes = irid.getSequenceIndexList();
+    // Get the sequence indexes
+    final List<String> indexes = this.irid.getSequenceIndexList();
 
-        // Process only nucleotides sequences
-        if (indexes.isEmpty()) {
-          continue;
-        }
+    // Process only nucleotides sequences
+    if (indexes.isEmpty()) {
+      return true;
+    }
 
-        // TODO Process the secondary indexes
-        final String index = indexes.get(0);
+    // Join the two indexes if the samples of the lane have dual indexes
+    final String index = this.dualIndexes && indexes.size() > 1
+        ? indexes.get(0) + INDEX_SEPARATOR + indexes.get(1) : indexes.get(0);
 
-        if (index == null
-            || index.isEmpty() || Character.isDigit(index.charAt(0))) {
-          continue;
-        }
+    if (index == null
+        || index.isEmpty() || Character.isDigit(index.charAt(0))) {
+      return true;
+    }
 
-        this.rawUndeterminedIndices.add(index);
-        if (!irid.isFiltered()) {
-          this.pfUndeterminedIndices.add(index);
-        }
-      }
+    this.rawUndeterminedIndices.add(index);
+    if (!this.irid.isFiltered()) {
+      this.pfUndeterminedIndices.add(index);
+    }
 
-      // Set max mismatches allowed
-      computeMismatchesAllowed();
+    return true;
+  }
 
-      // Process results
-      processResults();
+  @Override
+  public void endScan() throws AozanException {
 
-    } catch (final SequenceFormatException e) {
-      throw new AozanException(e);
+    // No result if the reads do not have Illumina ids
+    if (this.notIlluminaId) {
+      return;
     }
 
+    // Set max mismatches allowed
+    computeMismatchesAllowed();
+
+    // Process results
+    processResults();
   }
 
   private void computeMismatchesAllowed() {
 
-    final int maxMismatchAllowed = 2;
-
     int minMismatchFound = Integer.MAX_VALUE;
 
-    for (final Map.Entry<Integer, String> e : this.sampleIndexes.entrySet()) {
+    for (final String i : this.rawUndeterminedIndices.elementSet()) {
 
-      for (final String i : this.rawUndeterminedIndices.elementSet()) {
-        final String index = e.getValue();
-        final int mismatches = mismatches(index, i);
+      // The table has no match for the indexes with more than 2 mismatches
+      // and for the indexes whose length differs from the length of the
+      // sample indexes (e.g. a single index in a dual indexes lane)
+      final int mismatches = this.indexTable.getMinMismatches(i);
 
+      if (mismatches != -1) {
         minMismatchFound = Math.min(minMismatchFound, mismatches);
-
-        // Check minimum found
-        if (minMismatchFound == 1) {
-          break;
-        }
       }
 
-      if (minMismatchFound == 1) {
+      // An undetermined index identical to a sample index forces the
+      // maximal number of mismatches to 0
+      if (minMismatchFound == 0) {
         break;
       }
     }
 
-    if (minMismatchFound > maxMismatchAllowed) {
+    if (minMismatchFound == Integer.MAX_VALUE) {
       // Set mismatches used to recovery reads
       this.isSkipProcessResult = true;
       this.maxMismatches = -1;
@@ -609,6 +619,7 @@ public class UndeterminedIndexesProcessThread
     }
   }
 
+
   /**
    * Process results after the end of the thread.
    * @throws AozanException if an error occurs while generate report
@@ -628,20 +639,19 @@ public class UndeterminedIndexesProcessThread
     }
 
     if (!this.isSkipProcessResult) {
-      // For each sample find the indexes sequences that can be recovered
-      for (final Map.Entry<Integer, String> e : this.sampleIndexes.entrySet()) {
-
-        final int sampleId = e.getKey();
-        final String index = e.getValue();
+      // For each undetermined index find the samples that can be recovered
+      for (final String i : this.rawUndeterminedIndices.elementSet()) {
 
-        for (final String i : this.rawUndeterminedIndices.elementSet()) {
+        for (final IndexMismatchTable.Match<Integer> m : this.indexTable
+            .get(i)) {
 
-          final int mismatches = mismatches(index, i);
+          final int mismatches = m.getMismatches();
 
           if (mismatches > 0 && mismatches <= this.maxMismatches) {
 
+            final int sampleId = m.getTarget();
             this.newSamplesIndexes.put(sampleId, i);
-            this.newIndexes.put(i, index);
+            this.newIndexes.put(i, this.sampleIndexes.get(sampleId));
           }
         }
       }
@@ -676,6 +686,9 @@ public class UndeterminedIndexesProcessThread
         createReportForSample(sampleId);
       }
 
+      // Wait the end of the rendering of the HTML reports
+      XSLReportRenderer.waitRenderings(this.htmlReportRenderings);
+
     } catch (final IOException e) {
       throw new AozanException(e);
     }
@@ -1094,17 +1107,13 @@ public class UndeterminedIndexesProcessThread
       e.toXML(doc, results, "entry");
     }
 
-    // Set xsl file to write report HTML file
-    InputStream is = null;
-    if (this.xslFile == null) {
-      is = this.getClass()
-          .getResourceAsStream(Globals.EMBEDDED_UNDETERMINED_XSL);
-    } else {
-      is = new FileInputStream(this.xslFile);
-    }
+    // Get the compiled xsl file to write report HTML file
+    final XSLReportRenderer renderer = XSLReportRenderer.getInstance();
+    final Templates templates =
+        renderer.getTemplates(this.xslFile, Globals.EMBEDDED_UNDETERMINED_XSL);
 
-    // Write report HTML
-    XMLUtilsWriter.createHTMLFileFromXSL(doc, is, reportHtml);
+    // Write report HTML using the threads of the renderer
+    this.htmlReportRenderings.add(renderer.submit(doc, templates, reportHtml));
   }
 
   //
@@ -1157,7 +1166,27 @@ public class UndeterminedIndexesProcessThread
   }
 
   /**
-   * Get a map with for each sample the index.
+   * Test if all the samples of the lane have dual indexes.
+   * @return true if all the samples of the lane have dual indexes
+   */
+  private boolean isDualIndexes() {
+
+    final List<Integer> samples = this.data.getSamplesInLane(this.lane);
+
+    for (final int sampleId : samples) {
+
+      final String index2 = this.data.getSampleIndex2(sampleId);
+      if (index2 == null || index2.trim().isEmpty()) {
+        return false;
+      }
+    }
+
+    return !samples.isEmpty();
+  }
+
+  /**
+   * Get a map with for each sample the index. For dual indexes, the two indexes
+   * are joined.
    * @return a Map object
    */
   private Map<Integer, String> getSampleIndexes() {
@@ -1167,7 +1196,10 @@ public class UndeterminedIndexesProcessThread
     for (final int sampleId : this.data.getSamplesInLane(this.lane)) {
 
       // Get the sample index
-      final String index = this.data.getIndexSample(sampleId);
+      final String index = this.dualIndexes
+          ? this.data.getIndexSample(sampleId).trim()
+              + INDEX_SEPARATOR + this.data.getSampleIndex2(sampleId).trim()
+          : this.data.getIndexSample(sampleId);
 
       result.put(sampleId, index);
     }
@@ -1175,6 +1207,25 @@ public class UndeterminedIndexesProcessThread
     return result;
   }
 
+  /**
+   * Create the table of the mismatch neighbourhood of the sample indexes.
+   * @return a new IndexMismatchTable object
+   */
+  private IndexMismatchTable<Integer> createIndexTable() {
+
+    final IndexMismatchTable<Integer> result =
+        new IndexMismatchTable<>(IndexMismatchTable.MAX_MISMATCHES);
+
+    for (final Map.Entry<Integer, String> e : this.sampleIndexes.entrySet()) {
+
+      if (e.getValue() != null) {
+        result.addIndex(e.getValue(), e.getKey());
+      }
+    }
+
+    return result;
+  }
+
   //
   // Public constructor
   //
@@ -1202,18 +1253,9 @@ public class UndeterminedIndexesProcessThread
     this.reportDir = reportDir;
     this.xslFile = undeterminedIndexedXSLFile;
 
+    this.dualIndexes = isDualIndexes();
     this.sampleIndexes = getSampleIndexes();
     this.reverseSampleIndexes = reverse(this.sampleIndexes);
-
-    try {
-
-      this.seqFile = SequenceFactory.getSequenceFile(fastqSample.getFastqFiles()
-          .toArray(new File[fastqSample.getFastqFiles().size()]));
-
-    } catch (final IOException | SequenceFormatException e) {
-      throw new AozanException(e);
-
-    }
-
+    this.indexTable = createIndexTable();
   }
 }
@@ -23,14 +23,19 @@
 
 package fr.ens.biologie.genomique.aozan.collectors.interop;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
@@ -48,6 +53,20 @@ abstract class AbstractBinaryFileReader<M> {
   // 2 bytes: 1 for file version number and 1 for length for each record
   private static final int HEADER_SIZE = 2;
 
+  // Maximal size of the header with the optional quality score binning data:
+  // the binning flag, the bin count and 3 bytes for each of the 255 bins
+  private static final int MAX_HEADER_SIZE = HEADER_SIZE + 2 + 3 * 255;
+
+  // Offset of the next record to read in tailing mode, 0 if the header of the
+  // file has not been read
+  private long tailOffset;
+
+  // Offset of the first record of the file in tailing mode and checksum of
+  // the header, of the first record and of the last record already read, -1
+  // if nothing has been read. They are used to detect a rewritten file
+  private long tailRecordsOffset;
+  private long tailChecksum = -1;
+
   /**
    * Gets the name.
    * @return collector name
@@ -80,6 +99,23 @@ abstract class AbstractBinaryFileReader<M> {
     return this.dirInterOpPath;
   }
 
+  /**
+   * This interface define a handler for the records of an InterOp file.
+   * @param <M> type of the records
+   * @since 2.3
+   * @author Laurent Jourdren
+   */
+  interface MetricsHandler<M> {
+
+    /**
+     * Handle a record. The record object is a view on the mapped file that is
+     * reused for the next record, so it must not be kept after the call.
+     * @param metrics the record
+     * @throws AozanException if an error occurs while handling the record
+     */
+    void handle(M metrics) throws AozanException;
+  }
+
   /**
    * Gets the sets the illumina metrics.
    * @return set Illumina metrics corresponding to one binary InterOp file
@@ -89,8 +125,209 @@ abstract class AbstractBinaryFileReader<M> {
 
     final List<M> collection = new ArrayList<>();
 
+    final ByteBuffer buf = mapMetricsFile();
+    final int recordSize = getExpectedRecordSize();
+
+    // Build collection of illumina metrics
+    int position = buf.position();
+    while (buf.limit() - position >= recordSize) {
+      collection.add(createMetrics(buf, position));
+      position += recordSize;
+    }
+
+    return collection;
+  }
+
+  /**
+   * Read all the records of the InterOp file without creating an object for
+   * each record. The same record object is given to the handler for each
+   * record of the file.
+   * @param handler the handler of the records
+   * @throws AozanException if an error occurs while reading the file or while
+   *           handling a record
+   */
+  void readMetrics(final MetricsHandler<M> handler) throws AozanException {
+
+    checkNotNull(handler, "handler argument cannot be null");
+
+    final ByteBuffer buf = mapMetricsFile();
+    final int recordSize = getExpectedRecordSize();
+    int position = buf.position();
+    final M metrics = createMetrics(buf, position);
+
+    while (buf.limit() - position >= recordSize) {
+      moveMetrics(metrics, position);
+      handler.handle(metrics);
+      position += recordSize;
+    }
+  }
+
+  /**
+   * Read the records appended to the InterOp file since the previous call of
+   * this method, the first call reads all the records of the file. A record
+   * that is not fully written will be read by the next call. This method
+   * allows to read the InterOp files while the run is in progress, nothing is
+   * read if the file does not exist yet.
+   * @param handler the handler of the records
+   * @return the number of records read or -1 if the file has been rewritten
+   *         since the previous call. In this case, the next call will read all
+   *         the records of the file
+   * @throws AozanException if an error occurs while reading the file or while
+   *           handling a record
+   */
+  long readNewMetrics(final MetricsHandler<M> handler) throws AozanException {
+
+    checkNotNull(handler, "handler argument cannot be null");
+
+    final File file = getMetricsFile();
+
+    if (!file.isFile()) {
+      return 0;
+    }
+
+    final int recordSize = getExpectedRecordSize();
+
+    try (FileInputStream is = new FileInputStream(file);
+        FileChannel channel = is.getChannel()) {
+
+      final long fileSize = channel.size();
+
+      if (this.tailOffset == 0) {
+
+        if (fileSize < HEADER_SIZE) {
+          return 0;
+        }
+
+        // The records start after the header, only the header is mapped, the
+        // records are read by chunks below
+        final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            Math.min(fileSize, MAX_HEADER_SIZE));
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+          readHeader(buf);
+        } catch (BufferUnderflowException e) {
+
+          // The optional data of the header are not fully written yet
+          return 0;
+        }
+
+        this.tailRecordsOffset = buf.position();
+        this.tailOffset = this.tailRecordsOffset;
+      }
+
+      if (isRewritten(channel, fileSize)) {
+        this.tailOffset = 0;
+        this.tailChecksum = -1;
+        return -1;
+      }
+
+      // Only the records fully written are read
+      final long count = (fileSize - this.tailOffset) / recordSize;
+      final long maxCount = Integer.MAX_VALUE / recordSize;
+
+      for (long i = 0; i < count; i += maxCount) {
+
+        final int n = (int) Math.min(maxCount, count - i);
+        final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+            this.tailOffset, (long) n * recordSize);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        final M metrics = createMetrics(buf, 0);
+        for (int j = 0; j < n; j++) {
+          moveMetrics(metrics, j * recordSize);
+          handler.handle(metrics);
+        }
+
+        this.tailOffset += (long) n * recordSize;
+      }
+
+      this.tailChecksum = checksum(channel);
+
+      return count;
+
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Test if the file has been rewritten since the previous call of
+   * readNewMetrics(). Some InterOp files are not only appended but rewritten
+   * by RTA, the file is rewritten if it is shorter than the records already
+   * read or if its header, its first record or the last record already read
+   * have changed.
+   * @param channel the channel of the file
+   * @param fileSize the size of the file
+   * @return true if the file has been rewritten
+   * @throws IOException if an error occurs while reading the file
+   */
+  private boolean isRewritten(final FileChannel channel, final long fileSize)
+      throws IOException {
+
+    if (fileSize < this.tailOffset) {
+      return true;
+    }
+
+    return this.tailChecksum != -1 && this.tailChecksum != checksum(channel);
+  }
+
+  /**
+   * Compute the checksum of the header, of the first record and of the last
+   * record already read of the file in tailing mode.
+   * @param channel the channel of the file
+   * @return the checksum
+   * @throws IOException if an error occurs while reading the file
+   */
+  private long checksum(final FileChannel channel) throws IOException {
+
+    final int recordSize = getExpectedRecordSize();
+    final CRC32 crc = new CRC32();
+
+    // Header and first record
+    final long firstEnd = Math.min(this.tailOffset,
+        this.tailRecordsOffset + recordSize);
+    update(crc, channel, 0, firstEnd);
+
+    // Last record, if it is not the first record
+    final long lastStart = Math.max(firstEnd, this.tailOffset - recordSize);
+    if (lastStart < this.tailOffset) {
+      update(crc, channel, lastStart, this.tailOffset);
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   * Update a checksum with bytes of a file.
+   * @param crc the checksum
+   * @param channel the channel of the file
+   * @param start the offset of the first byte
+   * @param end the offset after the last byte
+   * @throws IOException if an error occurs while reading the file
+   */
+  private static void update(final CRC32 crc, final FileChannel channel,
+      final long start, final long end) throws IOException {
+
+    final ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, start + buf.position()) == -1) {
+        throw new EOFException("Unexpected end of file");
+      }
+    }
+
+    crc.update(buf.array());
+  }
+
+  /**
+   * Map the metrics file in memory and check its header.
+   * @return a ByteBuffer positioned on the first record of the file
+   * @throws AozanException if an error occurs while mapping the file or if the
+   *           header of the file is invalid
+   */
+  private ByteBuffer mapMetricsFile() throws AozanException {
+
     final ByteBuffer buf;
-    final byte[] header = new byte[HEADER_SIZE];
 
     try {
       FileUtils.checkExistingFile(getMetricsFile(),
@@ -110,6 +347,21 @@ abstract class AbstractBinaryFileReader<M> {
       throw new AozanException(e);
     }
 
+    readHeader(buf);
+
+    return buf;
+  }
+
+  /**
+   * Read and check the header of the metrics file.
+   * @param buf the ByteBuffer of the file, positioned on the first record of
+   *          the file at the end of this method
+   * @throws AozanException if the header of the file is invalid
+   */
+  private void readHeader(final ByteBuffer buf) throws AozanException {
+
+    final byte[] header = new byte[HEADER_SIZE];
+
     // check version file
     if (HEADER_SIZE > 0) {
       ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
@@ -121,22 +373,6 @@ abstract class AbstractBinaryFileReader<M> {
       readOptionalFlag(b);
       checkRecordSize(recordSize);
     }
-
-    final byte[] element = new byte[getExpectedRecordSize()];
-    final ByteBuffer recordBuf = ByteBuffer.wrap(element);
-    recordBuf.order(ByteOrder.LITTLE_ENDIAN);
-
-    // Build collection of illumina metrics
-    while (buf.limit() - buf.position() >= getExpectedRecordSize()) {
-      recordBuf.position(0);
-      buf.get(element);
-      recordBuf.position(0);
-
-      // collection.add(new IlluminaMetrics(recordBuf));
-      addIlluminaMetricsInCollection(collection, recordBuf);
-    }
-
-    return collection;
   }
 
   protected void readOptionalFlag(ByteBuffer bb) {
@@ -144,13 +380,21 @@ abstract class AbstractBinaryFileReader<M> {
   }
 
   /**
-   * Build a set of a type of illumina metrics (M) according to the interop file
-   * reading.
-   * @param collection list of illumina metrics
-   * @param bb ByteBuffer contains the value corresponding to one record
+   * Create an illumina metrics object (M) that is a view on a record of the
+   * interop file.
+   * @param bb ByteBuffer that contains the records
+   * @param offset offset of the record in the ByteBuffer
+   * @return a new illumina metrics object
+   */
+  protected abstract M createMetrics(final ByteBuffer bb, final int offset);
+
+  /**
+   * Move an illumina metrics object (M) created by createMetrics() to another
+   * record of the interop file.
+   * @param metrics the illumina metrics object
+   * @param offset offset of the record in the ByteBuffer
    */
-  protected abstract void addIlluminaMetricsInCollection(
-      final List<M> collection, final ByteBuffer bb);
+  protected abstract void moveMetrics(final M metrics, final int offset);
 
   /**
    * Check version file corresponding to the implemented code
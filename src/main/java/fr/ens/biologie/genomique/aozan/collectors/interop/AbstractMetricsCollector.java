@@ -24,6 +24,8 @@
 package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -32,7 +34,7 @@ import com.google.common.collect.Lists;
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.QC;
 import fr.ens.biologie.genomique.aozan.RunData;
-import fr.ens.biologie.genomique.aozan.collectors.Collector;
+import fr.ens.biologie.genomique.aozan.collectors.CacheableCollector;
 import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
 import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ReadsData.ReadData;
@@ -42,7 +44,7 @@ import fr.ens.biologie.genomique.aozan.collectors.interop.ReadsData.ReadData;
  * @author Sandrine Perrin
  * @since 1.4
  */
-abstract class AbstractMetricsCollector implements Collector {
+abstract class AbstractMetricsCollector implements CacheableCollector {
 
   /** The dir inter op path. */
   private File interOpDir;
@@ -56,6 +58,9 @@ abstract class AbstractMetricsCollector implements Collector {
   /** The reads count. */
   private int readsCount;
 
+  /** True if the InterOp files are read while the run is in progress. */
+  private boolean live;
+
   /**
    * Get the name of the collectors required to run this collector.
    * @return a list of String with the name of the required collectors
@@ -99,6 +104,29 @@ abstract class AbstractMetricsCollector implements Collector {
 
   }
 
+  /**
+   * Read the records of an InterOp file. In live mode, only the records added
+   * to the file since the previous call are read, otherwise all the records of
+   * the file are read.
+   * @param reader the reader of the InterOp file
+   * @param handler the handler of the records
+   * @return false if the file has been rewritten since the previous call, in
+   *         this case the data of the collector must be reset and the file read
+   *         again
+   * @throws AozanException if an error occurs while reading the file
+   */
+  <M> boolean readMetrics(final AbstractBinaryFileReader<M> reader,
+      final AbstractBinaryFileReader.MetricsHandler<M> handler)
+      throws AozanException {
+
+    if (!this.live) {
+      reader.readMetrics(handler);
+      return true;
+    }
+
+    return reader.readNewMetrics(handler) != -1;
+  }
+
   /**
    * Remove temporary files.
    */
@@ -106,6 +134,30 @@ abstract class AbstractMetricsCollector implements Collector {
   public void clear() {
   }
 
+  /**
+   * Get the InterOp files of the run.
+   * @return a list with the InterOp files of the run
+   */
+  @Override
+  public List<File> getInputFiles() {
+
+    final File[] files = this.interOpDir.listFiles(new FileFilter() {
+
+      @Override
+      public boolean accept(final File pathname) {
+        return pathname.isFile() && pathname.getName().endsWith(".bin");
+      }
+    });
+
+    if (files == null) {
+      return Collections.emptyList();
+    }
+
+    Arrays.sort(files);
+
+    return Collections.unmodifiableList(Arrays.asList(files));
+  }
+
   //
   // Getter
   //
@@ -152,6 +204,50 @@ abstract class AbstractMetricsCollector implements Collector {
     return readsData.getReadData(read);
   }
 
+  /**
+   * Gets the tiles count.
+   * @return the tiles count
+   */
+  public int computeTilesCount(final RunData data) {
+
+    if (data.contains("run.info.flow.cell.section.per.lane")
+        && data.getInt("run.info.flow.cell.section.per.lane") > 0) {
+
+      // NextSeq case, compute tile count and add data from camera number
+      return data.getInt("run.info.flow.cell.tile.count")
+          * data.getInt("run.info.flow.cell.surface.count")
+          * data.getInt("run.info.flow.cell.swath.count")
+          * data.getInt("run.info.flow.cell.section.per.lane");
+    }
+
+    return data.getInt("run.info.flow.cell.tile.count")
+        * data.getInt("run.info.flow.cell.surface.count")
+        * data.getInt("run.info.flow.cell.swath.count");
+  }
+
+  /**
+   * Test if the InterOp files are read while the run is in progress.
+   * @return true if the InterOp files are read while the run is in progress
+   */
+  boolean isLive() {
+    return this.live;
+  }
+
+  //
+  // Setter
+  //
+
+  /**
+   * Set if the InterOp files are read while the run is in progress. In live
+   * mode, the data of the collector is kept between the calls of collect() and
+   * only the records added to the InterOp files since the previous call are
+   * read.
+   * @param live true to enable the live mode
+   */
+  void setLive(final boolean live) {
+    this.live = live;
+  }
+
   @Override
   public boolean isSummaryCollector() {
     return false;
@@ -30,8 +30,8 @@ import java.nio.ByteBuffer;
 /**
  * This internal class save a record from ErrorMetricsOut.bin file,
  * corresponding of the description of the EXPECTED_VERSION. An record contains
- * data per tile per cycle per lane. Each record create an object
- * IlluminaErrorMetrics.______________________________________________________
+ * data per tile per cycle per lane. An object is a view on a record of the
+ * mapped file._______________________________________________________________
  * byte 0: file version number (3)____________________________________________
  * byte 1: length of each record______________________________________________
  * bytes (N * 30 + 2) - (N *30 + 11): record:_________________________________
@@ -50,39 +50,28 @@ import java.nio.ByteBuffer;
  */
 public class ErrorMetrics {
 
-  /** The lane number. */
-  private final int laneNumber; // uint16
+  private static final int LANE_NUMBER_OFFSET = 0;
+  private static final int TILE_NUMBER_OFFSET = 2;
+  private static final int CYCLE_NUMBER_OFFSET = 4;
+  private static final int ERROR_RATE_OFFSET = 6;
+  private static final int NUMBER_PERFECT_READS_OFFSET = 10;
+  private static final int NUMBER_READS_ONE_ERROR_OFFSET = 14;
+  private static final int NUMBER_READS_TWO_ERRORS_OFFSET = 18;
+  private static final int NUMBER_READS_THREE_ERRORS_OFFSET = 22;
+  private static final int NUMBER_READS_FOUR_ERRORS_OFFSET = 26;
 
-  /** The tile number. */
-  private final int tileNumber; // uint16
+  /** The buffer that contains the record. */
+  private final ByteBuffer buffer;
 
-  /** The cycle number. */
-  private final int cycleNumber; // uint16
-
-  /** The error rate. */
-  private final float errorRate; // float
-
-  /** The number perfect reads. */
-  private final int numberPerfectReads; // uint32
-
-  /** The number reads one error. */
-  private final int numberReadsOneError; // uint32
-
-  /** The number reads two errors. */
-  private final int numberReadsTwoErrors; // uint32
-
-  /** The number reads three errors. */
-  private final int numberReadsThreeErrors; // uint32
-
-  /** The number reads four errors. */
-  private final int numberReadsFourErrors; // uint32
+  /** The offset of the record in the buffer. */
+  private int offset;
 
   /**
    * Get the number lane.
    * @return the lane number
    */
   public int getLaneNumber() {
-    return this.laneNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + LANE_NUMBER_OFFSET));
   }
 
   /**
@@ -90,7 +79,7 @@ public class ErrorMetrics {
    * @return the tile number
    */
   public int getTileNumber() {
-    return this.tileNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + TILE_NUMBER_OFFSET));
   }
 
   /**
@@ -98,7 +87,8 @@ public class ErrorMetrics {
    * @return number cycle
    */
   public int getCycleNumber() {
-    return this.cycleNumber;
+    return uShortToInt(
+        this.buffer.getShort(this.offset + CYCLE_NUMBER_OFFSET));
   }
 
   /**
@@ -106,7 +96,7 @@ public class ErrorMetrics {
    * @return rate error
    */
   public double getErrorRate() {
-    return this.errorRate;
+    return this.buffer.getFloat(this.offset + ERROR_RATE_OFFSET);
   }
 
   /**
@@ -114,7 +104,7 @@ public class ErrorMetrics {
    * @return number perfect countReads
    */
   public int getNumberPerfectReads() {
-    return this.numberPerfectReads;
+    return this.buffer.getInt(this.offset + NUMBER_PERFECT_READS_OFFSET);
   }
 
   /**
@@ -122,7 +112,7 @@ public class ErrorMetrics {
    * @return the number reads one error
    */
   public int getNumberReadsOneError() {
-    return this.numberReadsOneError;
+    return this.buffer.getInt(this.offset + NUMBER_READS_ONE_ERROR_OFFSET);
   }
 
   /**
@@ -130,7 +120,7 @@ public class ErrorMetrics {
    * @return the number reads two errors
    */
   public int getNumberReadsTwoErrors() {
-    return this.numberReadsTwoErrors;
+    return this.buffer.getInt(this.offset + NUMBER_READS_TWO_ERRORS_OFFSET);
   }
 
   /**
@@ -138,7 +128,7 @@ public class ErrorMetrics {
    * @return the number reads three errors
    */
   public int getNumberReadsThreeErrors() {
-    return this.numberReadsThreeErrors;
+    return this.buffer.getInt(this.offset + NUMBER_READS_THREE_ERRORS_OFFSET);
   }
 
   /**
@@ -146,16 +136,24 @@ public class ErrorMetrics {
    * @return the number reads four errors
    */
   public int getNumberReadsFourErrors() {
-    return this.numberReadsFourErrors;
+    return this.buffer.getInt(this.offset + NUMBER_READS_FOUR_ERRORS_OFFSET);
+  }
+
+  /**
+   * Move the object to another record of the buffer.
+   * @param offset offset of the record in the buffer
+   */
+  void moveTo(final int offset) {
+    this.offset = offset;
   }
 
   @Override
   public String toString() {
     return String.format("%s\t%s\t%s\t%.2f\t%s\t%s\t%s\t%s\t%s",
-        this.laneNumber, this.tileNumber, this.cycleNumber, this.errorRate,
-        this.numberPerfectReads, this.numberReadsOneError,
-        this.numberReadsTwoErrors, this.numberReadsThreeErrors,
-        this.numberReadsFourErrors);
+        getLaneNumber(), getTileNumber(), getCycleNumber(), getErrorRate(),
+        getNumberPerfectReads(), getNumberReadsOneError(),
+        getNumberReadsTwoErrors(), getNumberReadsThreeErrors(),
+        getNumberReadsFourErrors());
   }
 
   //
@@ -163,22 +161,13 @@ public class ErrorMetrics {
   //
 
   /**
-   * Constructor. One record countReads on the ByteBuffer.
-   * @param bb ByteBuffer who read one record
+   * Constructor. The object is a view on a record of the ByteBuffer.
+   * @param bb ByteBuffer that contains the records
+   * @param offset offset of the record in the ByteBuffer
    */
-  ErrorMetrics(final ByteBuffer bb) {
-
-    this.laneNumber = uShortToInt(bb.getShort());
-    this.tileNumber = uShortToInt(bb.getShort());
-    this.cycleNumber = uShortToInt(bb.getShort());
-
-    this.errorRate = bb.getFloat();
-    this.numberPerfectReads = bb.getInt();
-
-    this.numberReadsOneError = bb.getInt();
-    this.numberReadsTwoErrors = bb.getInt();
-    this.numberReadsThreeErrors = bb.getInt();
-    this.numberReadsFourErrors = bb.getInt();
+  ErrorMetrics(final ByteBuffer bb, final int offset) {
 
+    this.buffer = bb;
+    this.offset = offset;
   }
 }
@@ -26,20 +26,15 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
 
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ReadsData.ReadData;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileColumns.DoubleColumn;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileColumns.LongColumn;
+import fr.ens.biologie.genomique.aozan.util.StatisticsAccumulator;
 
 /**
  * This class collects run data by reading the ErrorMetricsOut.bin in InterOp
@@ -56,6 +51,9 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
   private final Map<Integer, ErrorRatesPerLane> errorRatesMetrics =
       new HashMap<>();
 
+  private ErrorMetricsReader reader;
+  private TileColumns tiles;
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -70,18 +68,38 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
 
     super.collect(data);
 
+    // The lanes and the reads share the indexes of the tiles
+    if (this.tiles == null || !isLive()) {
+      this.tiles = new TileColumns(computeTilesCount(data));
+    }
+
+    // Distribution of metrics between lane and code
+    final AbstractBinaryFileReader.MetricsHandler<ErrorMetrics> handler =
+        new AbstractBinaryFileReader.MetricsHandler<ErrorMetrics>() {
+
+          @Override
+          public void handle(final ErrorMetrics iem) throws AozanException {
+
+            final int keyMap = getKeyMap(iem.getLaneNumber(),
+                getReadFromCycleNumber(iem.getCycleNumber()));
+
+            errorRatesMetrics.get(keyMap).addMetric(iem);
+          }
+        };
+
     try {
-      final ErrorMetricsReader reader = new ErrorMetricsReader(getInterOpDir());
-      initMetricsMap(data);
 
-      int keyMap;
+      // In live mode, the error rates of the previous calls are kept
+      if (this.reader == null || !isLive()) {
+        this.reader = new ErrorMetricsReader(getInterOpDir());
+        initMetricsMap(data);
+      }
 
-      // Distribution of metrics between lane and code
-      for (final ErrorMetrics iem : reader.getSetIlluminaMetrics()) {
-        keyMap = getKeyMap(iem.getLaneNumber(),
-            getReadFromCycleNumber(iem.getCycleNumber()));
+      if (!readMetrics(this.reader, handler)) {
 
-        this.errorRatesMetrics.get(keyMap).addMetric(iem);
+        // The file has been rewritten
+        initMetricsMap(data);
+        readMetrics(this.reader, handler);
       }
 
     } catch (final FileNotFoundException e) {
@@ -127,7 +145,7 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
           final ReadData readData = getReadData(read);
 
           this.errorRatesMetrics.put(getKeyMap(lane, read),
-              new ErrorRatesPerLane(lane, read, readData));
+              new ErrorRatesPerLane(lane, read, readData, this.tiles));
 
         } else {
           // None phix in this lane, all values error are 0
@@ -153,7 +171,7 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
 
         final int keyMap = lane * 100 + read;
         this.errorRatesMetrics.put(keyMap,
-            new ErrorRatesPerLane(lane, read, true, readData));
+            new ErrorRatesPerLane(lane, read, true, readData, this.tiles));
       }
     }
   }
@@ -162,6 +180,63 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
   // Inner class
   //
 
+  /**
+   * This class contains the sums of the rate errors of the tiles, the mean rate
+   * error of a tile can be updated without keeping the rate errors of all the
+   * cycles.
+   */
+  private static final class ErrorRateSums {
+
+    private final TileColumns tiles;
+    private final DoubleColumn sums;
+    private final LongColumn counts;
+
+    /**
+     * Add a rate error to the sum of the rate errors of a tile.
+     * @param index the index of the tile
+     * @param errorRate the rate error
+     */
+    void add(final int index, final double errorRate) {
+
+      this.sums.add(index, errorRate);
+      this.counts.add(index, 1);
+    }
+
+    /**
+     * Test if no rate error has been added.
+     * @return true if no rate error has been added
+     */
+    boolean isEmpty() {
+      return this.sums.isEmpty();
+    }
+
+    /**
+     * Compute the statistics of the rate error of the tiles, the rate error of
+     * a tile is the mean by cycle.
+     * @return a StatisticsAccumulator object with the rate error of each tile
+     */
+    StatisticsAccumulator errorRatePerTile() {
+
+      final StatisticsAccumulator result = new StatisticsAccumulator();
+
+      for (final int index : this.tiles.getSortedIndexes()) {
+
+        if (this.sums.isDefined(index)) {
+          result.addValue(this.sums.get(index) / this.counts.get(index));
+        }
+      }
+
+      return result;
+    }
+
+    ErrorRateSums(final TileColumns tiles) {
+
+      this.tiles = tiles;
+      this.sums = tiles.newDoubleColumn();
+      this.counts = tiles.newLongColumn();
+    }
+  }
+
   /**
    * This class contains all error values for a lane extracted from binary file
    * (ErrorMetricsOut.bin in InterOp directory).
@@ -194,21 +269,19 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
 
     private boolean dataToCompute = true;
 
-    // Save pair tile-rate error for all cycles for a lane
-    private final ListMultimap<Integer, Number> allErrorRates =
-        ArrayListMultimap.create();
+    private final TileColumns tiles;
+
+    // Save sum of the rate errors per tile for all cycles for a lane
+    private final ErrorRateSums allErrorRates;
 
-    // Save pair tile-rate error for cycles (1 to 35) for all tiles
-    private final ListMultimap<Integer, Number> error35 =
-        ArrayListMultimap.create();
+    // Save sum of the rate errors per tile for cycles (1 to 35)
+    private final ErrorRateSums error35;
 
-    // Save pair tile-rate error for cycles (1 to 75) for all tiles, for run PE
-    private final ListMultimap<Integer, Number> error75 =
-        ArrayListMultimap.create();
+    // Save sum of the rate errors per tile for cycles (1 to 75), for run PE
+    private final ErrorRateSums error75;
 
-    // Save pair tile-rate error for cycles (1 to 100) for all tiles, for run PE
-    private final ListMultimap<Integer, Number> error100 =
-        ArrayListMultimap.create();
+    // Save sum of the rate errors per tile for cycles (1 to 100), for run PE
+    private final ErrorRateSums error100;
 
     /**
      * Save a record from TileMetricsOut.bin file.
@@ -216,21 +289,24 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
      */
     public void addMetric(final ErrorMetrics iem) {
 
-      this.allErrorRates.put(iem.getTileNumber(), iem.getErrorRate());
+      final int tile = this.tiles.getTileIndex(iem.getTileNumber());
+      final double errorRate = iem.getErrorRate();
       final int cycle = iem.getCycleNumber();
 
+      this.allErrorRates.add(tile, errorRate);
+
       if (cycle <= this.threshold35thCycle) {
-        this.error35.put(iem.getTileNumber(), iem.getErrorRate());
+        this.error35.add(tile, errorRate);
       }
 
       // Threshold = 0 in run SR
       if (cycle <= this.threshold75thCycle) {
-        this.error75.put(iem.getTileNumber(), iem.getErrorRate());
+        this.error75.add(tile, errorRate);
       }
 
       // Threshold = 0 in run SR
       if (cycle <= this.threshold100thCycle) {
-        this.error100.put(iem.getTileNumber(), iem.getErrorRate());
+        this.error100.add(tile, errorRate);
       }
     }
 
@@ -240,79 +316,46 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
      */
     public void computeData() {
 
-      List<Number> errorRatePerTile;
+      StatisticsAccumulator errorRatePerTile;
 
-      if (this.allErrorRates.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.allErrorRates);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.allErrorRates.isEmpty()) {
+        errorRatePerTile = this.allErrorRates.errorRatePerTile();
 
-        this.errorRate = stat.getMean();
-        this.errorRateSD = stat.getStandardDeviation();
+        this.errorRate = errorRatePerTile.getMean();
+        this.errorRateSD = errorRatePerTile.getStandardDeviation();
 
       }
 
       // Check if number cycle > 35, else values are 0.0
-      if (this.error35.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.error35);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.error35.isEmpty()) {
+        errorRatePerTile = this.error35.errorRatePerTile();
 
-        this.errorRateCycle35 = stat.getMean();
-        this.errorRateCycle35SD = stat.getStandardDeviation();
+        this.errorRateCycle35 = errorRatePerTile.getMean();
+        this.errorRateCycle35SD = errorRatePerTile.getStandardDeviation();
 
       }
 
       // Check if number cycle > 75, else values are 0.0
-      if (this.error75.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.error75);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.error75.isEmpty()) {
+        errorRatePerTile = this.error75.errorRatePerTile();
 
-        this.errorRateCycle75 = stat.getMean();
-        this.errorRateCycle75SD = stat.getStandardDeviation();
+        this.errorRateCycle75 = errorRatePerTile.getMean();
+        this.errorRateCycle75SD = errorRatePerTile.getStandardDeviation();
 
       }
 
       // Check if number cycle > 100, else values are 0.0
-      if (this.error100.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.error100);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.error100.isEmpty()) {
+        errorRatePerTile = this.error100.errorRatePerTile();
 
-        this.errorRateCycle100 = stat.getMean();
-        this.errorRateCycle100SD = stat.getStandardDeviation();
+        this.errorRateCycle100 = errorRatePerTile.getMean();
+        this.errorRateCycle100SD = errorRatePerTile.getStandardDeviation();
 
       }
 
       this.dataToCompute = false;
     }
 
-    /**
-     * Compute the rate error for each Tiles with the mean by cycle.
-     * @param values of rate error per countTiles, per cycles
-     * @return list of rate error for each number tile
-     */
-    public List<Number> computeErrorRatePerTile(
-        final ListMultimap<Integer, Number> values) {
-
-      // Define map : tile and list of rate error, one per cycle to use
-      final Map<Integer, Collection<Number>> errorValuePerTile = values.asMap();
-
-      // Save rate error per tile
-      final List<Number> errorRatePerTile = new ArrayList<>();
-
-      for (final Map.Entry<Integer, Collection<Number>> entry : errorValuePerTile
-          .entrySet()) {
-
-        final Collection<Number> value = entry.getValue();
-        final List<Number> list =
-            Arrays.asList(value.toArray(new Number[value.size()]));
-
-        final StatisticsUtils stat = new StatisticsUtils(list);
-        errorRatePerTile.add(stat.getMean());
-
-      }
-
-      return errorRatePerTile;
-    }
-
     /**
      * Save data from error metrics for a run in a RunData.
      * @return rundata data from tile metrics for a run
@@ -363,12 +406,20 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
      * @param read read number
      * @param empty if true, all values are default values (0.0), corresponding
      *          to a control lane or without skipping Phix
+     * @param readData data of the read
+     * @param tiles store of the values of the tiles
      */
     public ErrorRatesPerLane(final int lane, final int read, boolean empty,
-        final ReadData readData) {
+        final ReadData readData, final TileColumns tiles) {
       this.laneNumber = lane;
       this.readNumber = read;
 
+      this.tiles = tiles;
+      this.allErrorRates = new ErrorRateSums(tiles);
+      this.error35 = new ErrorRateSums(tiles);
+      this.error75 = new ErrorRateSums(tiles);
+      this.error100 = new ErrorRateSums(tiles);
+
       if (!empty) {
 
         // Compute error rate on not indexed read
@@ -397,8 +448,8 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
     }
 
     public ErrorRatesPerLane(final int lane, final int read,
-        final ReadData readData) {
-      this(lane, read, false, readData);
+        final ReadData readData, final TileColumns tiles) {
+      this(lane, read, false, readData, tiles);
 
     }
 
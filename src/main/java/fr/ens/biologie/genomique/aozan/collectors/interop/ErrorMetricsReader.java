@@ -26,7 +26,6 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 
@@ -69,10 +68,15 @@ public class ErrorMetricsReader extends AbstractBinaryFileReader<ErrorMetrics> {
   }
 
   @Override
-  protected void addIlluminaMetricsInCollection(
-      final List<ErrorMetrics> collection, final ByteBuffer bb) {
+  protected ErrorMetrics createMetrics(final ByteBuffer bb, final int offset) {
 
-    collection.add(new ErrorMetrics(bb));
+    return new ErrorMetrics(bb, offset);
+  }
+
+  @Override
+  protected void moveMetrics(final ErrorMetrics metrics, final int offset) {
+
+    metrics.moveTo(offset);
   }
 
   //
@@ -26,12 +26,11 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 import static fr.ens.biologie.genomique.aozan.collectors.interop.AbstractBinaryFileReader.uShortToInt;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 /**
  * This internal class save a record from ExtractionMetricsOut.bin file,
  * corresponding of the description of the EXPECTED_VERSION. An record contains
- * data per tile per cycle per lane. Each record create an object_____________
+ * data per tile per cycle per lane. An object is a view on a record__________
  * byte 0: file version number (2)____________________________________________
  * byte 1: length of each record______________________________________________
  * bytes (N * 38 + 2) - (N *38 + 39): record:_________________________________
@@ -54,22 +53,25 @@ public class ExtractionMetrics {
   // private static final int BASE_G = 2;
   // private static final int BASE_T = 3;
 
-  private final float[] fwhm = new float[4]; // A C G T - float
-  private final int[] intensities = new int[4]; // A C G T - uint16
+  private static final int CHANNEL_COUNT = 4;
 
-  private final int laneNumber; // uint16
-  private final int tileNumber; // uint16
+  private static final int LANE_NUMBER_OFFSET = 0;
+  private static final int TILE_NUMBER_OFFSET = 2;
+  private static final int CYCLE_NUMBER_OFFSET = 4;
+  private static final int FWHM_OFFSET = 6; // A C G T - float
+  private static final int INTENSITIES_OFFSET = 22; // A C G T - uint16
 
-  private final int cycleNumber; // uint16
+  private final ByteBuffer buffer;
+  private int offset;
 
   /** Get the number lane. */
   public int getLaneNumber() {
-    return this.laneNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + LANE_NUMBER_OFFSET));
   }
 
   /** Get the number tile. */
   public int getTileNumber() {
-    return this.tileNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + TILE_NUMBER_OFFSET));
   }
 
   /**
@@ -77,7 +79,8 @@ public class ExtractionMetrics {
    * @return number cycle
    */
   public int getCycleNumber() {
-    return this.cycleNumber;
+    return uShortToInt(
+        this.buffer.getShort(this.offset + CYCLE_NUMBER_OFFSET));
   }
 
   /**
@@ -86,7 +89,13 @@ public class ExtractionMetrics {
    * @return float array with the fwhm scores of each channel
    */
   public float[] getFwhm() {
-    return Arrays.copyOf(this.fwhm, this.fwhm.length);
+
+    final float[] result = new float[CHANNEL_COUNT];
+    for (int i = 0; i < CHANNEL_COUNT; i++) {
+      result[i] = this.buffer.getFloat(this.offset + FWHM_OFFSET + i * 4);
+    }
+
+    return result;
   }
 
   /**
@@ -94,7 +103,28 @@ public class ExtractionMetrics {
    * @return float array with the raw intensities of each channel
    */
   public int[] getIntensities() {
-    return Arrays.copyOf(this.intensities, this.intensities.length);
+
+    final int[] result = new int[CHANNEL_COUNT];
+    for (int i = 0; i < CHANNEL_COUNT; i++) {
+      result[i] = getIntensity(i);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the raw intensity of a base.
+   * @param channel the index of the base (A=0, C=1, G=2, T=3)
+   * @return the raw intensity of the base
+   */
+  public int getIntensity(final int channel) {
+
+    if (channel < 0 || channel >= CHANNEL_COUNT) {
+      throw new IndexOutOfBoundsException("Invalid channel: " + channel);
+    }
+
+    return uShortToInt(
+        this.buffer.getShort(this.offset + INTENSITIES_OFFSET + channel * 2));
   }
 
   /**
@@ -103,10 +133,18 @@ public class ExtractionMetrics {
    */
   public int getAverageIntensities() {
     int sum = 0;
-    for (final int intensity : this.intensities) {
-      sum += intensity;
+    for (int i = 0; i < CHANNEL_COUNT; i++) {
+      sum += getIntensity(i);
     }
-    return sum / this.intensities.length;
+    return sum / CHANNEL_COUNT;
+  }
+
+  /**
+   * Move the object to another record of the buffer.
+   * @param offset offset of the record in the buffer
+   */
+  void moveTo(final int offset) {
+    this.offset = offset;
   }
 
   //
@@ -114,27 +152,14 @@ public class ExtractionMetrics {
   //
 
   /**
-   * Constructor. One record countReads on the ByteBuffer.
-   * @param bb ByteBuffer who read one record
+   * Constructor. The object is a view on a record of the ByteBuffer. The
+   * date/time of the CIF creation at the end of the record is not used.
+   * @param bb ByteBuffer that contains the records
+   * @param offset offset of the record in the ByteBuffer
    */
-  ExtractionMetrics(final ByteBuffer bb) {
-
-    this.laneNumber = uShortToInt(bb.getShort());
-    this.tileNumber = uShortToInt(bb.getShort());
-    this.cycleNumber = uShortToInt(bb.getShort());
-
-    for (int i = 0; i < 4; i++) {
-      this.fwhm[i] = bb.getFloat();
-    }
-
-    for (int i = 0; i < 4; i++) {
-      this.intensities[i] = uShortToInt(bb.getShort());
-    }
-
-    // Read date/time for CIF creation, not used
-    // TODO get date create cif file to finalize
-    @SuppressWarnings("unused")
-    final ByteBuffer buf = bb.get(new byte[8]);
+  ExtractionMetrics(final ByteBuffer bb, final int offset) {
 
+    this.buffer = bb;
+    this.offset = offset;
   }
 }
@@ -26,16 +26,13 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-
-import com.google.common.collect.Lists;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ReadsData.ReadData;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileColumns.DoubleColumn;
+import fr.ens.biologie.genomique.aozan.util.StatisticsAccumulator;
 
 /**
  * This class collects run data by reading the ExtractionMetricsOut.bin in
@@ -52,6 +49,8 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
   private final Map<Integer, ExtractionMetricsPerLane> intensityMetrics =
       new HashMap<>();
 
+  private ExtractionMetricsReader reader;
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -66,20 +65,34 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
 
     super.collect(data);
 
-    int keyMap;
-
-    final ExtractionMetricsReader reader =
-        new ExtractionMetricsReader(getInterOpDir());
-    initMetricsMap();
-
     // Distribution of metrics between lane and code
-    for (final ExtractionMetrics iim : reader.getSetIlluminaMetrics()) {
+    final AbstractBinaryFileReader.MetricsHandler<ExtractionMetrics> handler =
+        new AbstractBinaryFileReader.MetricsHandler<ExtractionMetrics>() {
+
+          @Override
+          public void handle(final ExtractionMetrics iim)
+              throws AozanException {
+
+            // key : number read, value(pair:first number cycle, last number
+            // cycle)
+            final int keyMap = getKeyMap(iim.getLaneNumber(),
+                getReadFromCycleNumber(iim.getCycleNumber()));
+
+            intensityMetrics.get(keyMap).addMetric(iim);
+          }
+        };
+
+    // In live mode, the intensities of the previous calls are kept
+    if (this.reader == null || !isLive()) {
+      this.reader = new ExtractionMetricsReader(getInterOpDir());
+      initMetricsMap(data);
+    }
 
-      // key : number read, value(pair:first number cycle, last number cycle)
-      keyMap = getKeyMap(iim.getLaneNumber(),
-          getReadFromCycleNumber(iim.getCycleNumber()));
+    if (!readMetrics(this.reader, handler)) {
 
-      this.intensityMetrics.get(keyMap).addMetric(iim);
+      // The file has been rewritten
+      initMetricsMap(data);
+      readMetrics(this.reader, handler);
     }
 
     // Build runData
@@ -93,8 +106,12 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
 
   /**
    * Initialize TileMetrics map.
+   * @param data result data object
    */
-  private void initMetricsMap() {
+  private void initMetricsMap(final RunData data) {
+
+    // The lanes and the reads share the indexes of the tiles
+    final TileColumns tiles = new TileColumns(computeTilesCount(data));
 
     for (int lane = 1; lane <= getLanesCount(); lane++) {
       for (int read = 1; read <= getReadsCount(); read++) {
@@ -103,7 +120,7 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
         final ReadData readData = getReadData(read);
 
         this.intensityMetrics.put(getKeyMap(lane, read),
-            new ExtractionMetricsPerLane(lane, read, readData));
+            new ExtractionMetricsPerLane(lane, read, readData, tiles));
       }
     }
   }
@@ -144,8 +161,9 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
     private double ratioIntensityCycle20 = 0.0;
     private double ratioIntensityCycle20SD = 0.0;
 
-    private final Map<Integer, Number> intensityCycle1ValuesPerTile;
-    private final Map<Integer, Number> intensityCycle20ValuesPerTile;
+    private final TileColumns tiles;
+    private final DoubleColumn intensityCycle1ValuesPerTile;
+    private final DoubleColumn intensityCycle20ValuesPerTile;
 
     private boolean dataToCompute = true;
 
@@ -160,12 +178,12 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
       // here use only the value for base A, like in the Illumina files.
       // TODO Good compute : iim.getAverageIntensities();
       if (cycle == this.firstCycleNumber) {
-        this.intensityCycle1ValuesPerTile.put(iim.getTileNumber(),
-            iim.getIntensities()[0]);
+        this.intensityCycle1ValuesPerTile.set(
+            this.tiles.getTileIndex(iim.getTileNumber()), iim.getIntensity(0));
 
       } else if (cycle == this.twentiethCycleNumber) {
-        this.intensityCycle20ValuesPerTile.put(iim.getTileNumber(),
-            iim.getIntensities()[0]);
+        this.intensityCycle20ValuesPerTile.set(
+            this.tiles.getTileIndex(iim.getTileNumber()), iim.getIntensity(0));
 
       }
     }
@@ -176,17 +194,17 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
      */
     public void computeData() {
 
-      final StatisticsUtils statCycle1 =
-          new StatisticsUtils(this.intensityCycle1ValuesPerTile.values());
+      final StatisticsAccumulator statsCycle1 =
+          this.intensityCycle1ValuesPerTile.statistics();
 
       // TODO to check, used only intensity for the base A
-      this.intensityCycle1 = statCycle1.getMean().intValue();
+      this.intensityCycle1 = (int) statsCycle1.getMean();
 
       // intensityCycle1 somme intensity / compt(tile) / 4
-      this.intensityCycle1SD = statCycle1.getStandardDeviation();
+      this.intensityCycle1SD = statsCycle1.getStandardDeviation();
 
       // Check if count cycle > 20
-      if (this.intensityCycle20ValuesPerTile.size() > 0) {
+      if (!this.intensityCycle20ValuesPerTile.isEmpty()) {
 
         // Compute intensity statistic at cycle 20 as a percentage of that at
         // the first cycle.
@@ -226,27 +244,28 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
      */
     private void computeRatioIntensityCycle20() {
 
-      final List<Number> intensityCycle1Values =
-          Lists.newArrayList(this.intensityCycle1ValuesPerTile.values());
+      final StatisticsAccumulator ratios = new StatisticsAccumulator();
 
-      final List<Number> intensityCycle20Values =
-          Lists.newArrayList(this.intensityCycle20ValuesPerTile.values());
+      // Compute % intensity C20 / intensity C1 for each tile, while the run is
+      // in progress the cycle 20 of some tiles may not be extracted yet
+      for (final int index : this.tiles.getSortedIndexes()) {
 
-      final StatisticsUtils stat = new StatisticsUtils();
-
-      // Compute % intensity C20 / intensity C1 for each tile
-      for (int i = 0; i < intensityCycle1Values.size(); i++) {
+        if (!this.intensityCycle1ValuesPerTile.isDefined(index)
+            || !this.intensityCycle20ValuesPerTile.isDefined(index)) {
+          continue;
+        }
 
-        final Double intensityC1 = intensityCycle1Values.get(i).doubleValue();
-        final Double intensityC20 = intensityCycle20Values.get(i).doubleValue();
+        final double intensityC1 = this.intensityCycle1ValuesPerTile.get(index);
+        final double intensityC20 =
+            this.intensityCycle20ValuesPerTile.get(index);
 
         if (intensityC1 > 0) {
-          stat.addValues(intensityC20 / intensityC1 * 100);
+          ratios.addValue(intensityC20 / intensityC1 * 100);
         }
       }
 
-      this.ratioIntensityCycle20 = stat.getMean();
-      this.ratioIntensityCycle20SD = stat.getStandardDeviation();
+      this.ratioIntensityCycle20 = ratios.getMean();
+      this.ratioIntensityCycle20SD = ratios.getStandardDeviation();
     }
 
     @Override
@@ -264,9 +283,11 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
      * Constructor.
      * @param lane lane number
      * @param read read number
+     * @param readData data of the read
+     * @param tiles store of the values of the tiles
      */
     ExtractionMetricsPerLane(final int lane, final int read,
-        final ReadData readData) {
+        final ReadData readData, final TileColumns tiles) {
 
       this.laneNumber = lane;
       this.readNumber = read;
@@ -276,8 +297,9 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
       this.twentiethCycleNumber = (readData.getNumberCycles() >= 20
           ? this.firstCycleNumber + STEP : -1);
 
-      this.intensityCycle1ValuesPerTile = new TreeMap<>();
-      this.intensityCycle20ValuesPerTile = new TreeMap<>();
+      this.tiles = tiles;
+      this.intensityCycle1ValuesPerTile = tiles.newDoubleColumn();
+      this.intensityCycle20ValuesPerTile = tiles.newDoubleColumn();
     }
   }
 
@@ -25,7 +25,6 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 
@@ -67,10 +66,17 @@ public class ExtractionMetricsReader
   }
 
   @Override
-  protected void addIlluminaMetricsInCollection(
-      final List<ExtractionMetrics> collection, final ByteBuffer bb) {
+  protected ExtractionMetrics createMetrics(final ByteBuffer bb,
+      final int offset) {
 
-    collection.add(new ExtractionMetrics(bb));
+    return new ExtractionMetrics(bb, offset);
+  }
+
+  @Override
+  protected void moveMetrics(final ExtractionMetrics metrics,
+      final int offset) {
+
+    metrics.moveTo(offset);
   }
 
   //
@@ -0,0 +1,105 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.QC;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
+
+/**
+ * This class define a collector of the InterOp files of a run in progress.
+ * Each call of collect() reads only the records added to the InterOp files
+ * since the previous call and returns the data of the cycles already
+ * sequenced, that can be used by the lane tests before the end of the run.
+ * The InterOp files rewritten by RTA are read again from their beginning.
+ * <p>
+ * This class is an API for the programs that poll a run in progress from a
+ * long running process: the read offsets are only kept in memory, in the
+ * object. It is not used by the steps of Aozan, as each execution of Aozan is
+ * a new process that would read again all the records of the files. The
+ * object is not thread safe and must only be used for a single run.
+ * </p>
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class LiveInterOpCollector {
+
+  private final RunInfoCollector runInfoCollector = new RunInfoCollector();
+  private final List<AbstractMetricsCollector> collectors = new ArrayList<>();
+  private RunData runInfoData;
+
+  /**
+   * Collect the data of the InterOp files of the run. The RunInfo.xml file is
+   * only read by the first call.
+   * @return a new RunData object with the data of the cycles already sequenced
+   * @throws AozanException if an error occurs while reading the files
+   */
+  public RunData collect() throws AozanException {
+
+    if (this.runInfoData == null) {
+
+      final RunData data = new RunData();
+      this.runInfoCollector.collect(data);
+      this.runInfoData = data;
+    }
+
+    final RunData result = new RunData();
+    result.put(this.runInfoData);
+
+    for (final AbstractMetricsCollector collector : this.collectors) {
+      collector.collect(result);
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param qc QC object, can be null in the unit tests
+   * @param conf configuration of the collectors
+   */
+  public LiveInterOpCollector(final QC qc, final CollectorConfiguration conf) {
+
+    this.collectors.add(new TileMetricsCollector());
+    this.collectors.add(new ExtractionMetricsCollector());
+    this.collectors.add(new ErrorMetricsCollector());
+    this.collectors.add(new QualityMetricsCollector());
+
+    this.runInfoCollector.configure(qc, conf);
+    for (final AbstractMetricsCollector collector : this.collectors) {
+      collector.setLive(true);
+      collector.configure(qc, conf);
+    }
+  }
+
+}
@@ -25,7 +25,6 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 
@@ -66,10 +65,16 @@ public class QMetricsVersion4Reader
   }
 
   @Override
-  protected void addIlluminaMetricsInCollection(
-      final List<QualityMetrics> collection, final ByteBuffer bb) {
+  protected QualityMetrics createMetrics(final ByteBuffer bb,
+      final int offset) {
 
-    collection.add(new QualityMetrics(bb, -1, null));
+    return new QualityMetrics(bb, offset, -1, null);
+  }
+
+  @Override
+  protected void moveMetrics(final QualityMetrics metrics, final int offset) {
+
+    metrics.moveTo(offset);
   }
 
   //
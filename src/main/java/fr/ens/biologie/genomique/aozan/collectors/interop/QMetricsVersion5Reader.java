@@ -25,7 +25,6 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 
@@ -94,13 +93,6 @@ public class QMetricsVersion5Reader extends QMetricsVersion4Reader {
     return EXPECTED_VERSION;
   }
 
-  @Override
-  protected void addIlluminaMetricsInCollection(
-      final List<QualityMetrics> collection, final ByteBuffer bb) {
-
-    collection.add(new QualityMetrics(bb, -1, null));
-  }
-
   /**
    * Get an integer telling if Qscore binning is enabled
    * @return if Qscore binning is enabled.
@@ -25,7 +25,6 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 
@@ -108,10 +107,11 @@ public class QMetricsVersion6Reader extends QMetricsVersion4Reader {
   }
 
   @Override
-  protected void addIlluminaMetricsInCollection(
-      final List<QualityMetrics> collection, final ByteBuffer bb) {
+  protected QualityMetrics createMetrics(final ByteBuffer bb,
+      final int offset) {
 
-    collection.add(new QualityMetrics(bb, this.qualityScoreBinNumber, this.remappedScoreQuality));
+    return new QualityMetrics(bb, offset, this.qualityScoreBinNumber,
+        this.remappedScoreQuality);
   }
 
   /**
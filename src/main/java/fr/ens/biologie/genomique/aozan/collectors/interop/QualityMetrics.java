@@ -27,7 +27,6 @@ import static fr.ens.biologie.genomique.aozan.collectors.interop.AbstractBinaryF
 import static fr.ens.biologie.genomique.aozan.collectors.interop.AbstractBinaryFileReader.uShortToInt;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 /**
  * This internal class save a record from ExtractionMetricsOut.bin file,
@@ -74,21 +73,27 @@ import java.util.Arrays;
  */
 public class QualityMetrics {
 
-  private final int laneNumber; // uint16
-  private final int tileNumber; // uint16
+  private static final int SCORE_COUNT = 50;
 
-  private final int cycleNumber; // uint16
+  private static final int LANE_NUMBER_OFFSET = 0;
+  private static final int TILE_NUMBER_OFFSET = 2;
+  private static final int CYCLE_NUMBER_OFFSET = 4;
+  private static final int CLUSTERS_SCORE_OFFSET = 6; // uint32
 
-  private long[] clustersScore = new long[50]; // uint16
+  private final ByteBuffer buffer;
+  private int offset;
+
+  private final int binCount;
+  private final int[] remappedScoreQuality;
 
   /** Get the lane number. */
   public int getLaneNumber() {
-    return this.laneNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + LANE_NUMBER_OFFSET));
   }
 
   /** Get the tile number. */
   public int getTileNumber() {
-    return this.tileNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + TILE_NUMBER_OFFSET));
   }
 
   /**
@@ -96,7 +101,8 @@ public class QualityMetrics {
    * @return cycle number
    */
   public int getCycleNumber() {
-    return this.cycleNumber;
+    return uShortToInt(
+        this.buffer.getShort(this.offset + CYCLE_NUMBER_OFFSET));
   }
 
   /**
@@ -104,37 +110,64 @@ public class QualityMetrics {
    * @return an array of longs with number of cluster for each quality score
    */
   public long[] getClustersScore() {
-    return Arrays.copyOf(this.clustersScore, this.clustersScore.length);
+
+    final long[] result = new long[SCORE_COUNT];
+    addClustersScore(result);
+
+    return result;
   }
-  //
-  // Constructor
-  //
 
   /**
-   * Constructor. One record countReads on the ByteBuffer.
-   * @param bb ByteBuffer who read one record
+   * Add the number of cluster having each quality score to an array.
+   * @param counts an array of longs with number of cluster for each quality
+   *          score
    */
-  QualityMetrics(final ByteBuffer bb, final int binCount, final int [] remappedScoreQuality) {
-
-    this.laneNumber = uShortToInt(bb.getShort());
-    this.tileNumber = uShortToInt(bb.getShort());
-    this.cycleNumber = uShortToInt(bb.getShort());
+  public void addClustersScore(final long[] counts) {
 
-    if (binCount > 0) {
+    if (this.binCount > 0) {
 
       // Read cluster count in each bin if version 6 but do nothing with this
       // information
-      for (int i = 0; i < binCount; i++) {
-        this.clustersScore[remappedScoreQuality[i] - 1] =
-            uIntToLong(bb.getInt());
+      for (int i = 0; i < this.binCount; i++) {
+        counts[this.remappedScoreQuality[i] - 1] += uIntToLong(
+            this.buffer.getInt(this.offset + CLUSTERS_SCORE_OFFSET + i * 4));
       }
     } else {
 
       // Read cluster count for each Phred score
-      for (int i = 0; i < 50; i++) {
-        this.clustersScore[i] = uIntToLong(bb.getInt());
+      for (int i = 0; i < SCORE_COUNT; i++) {
+        counts[i] += uIntToLong(
+            this.buffer.getInt(this.offset + CLUSTERS_SCORE_OFFSET + i * 4));
       }
     }
   }
 
+  /**
+   * Move the object to another record of the buffer.
+   * @param offset offset of the record in the buffer
+   */
+  void moveTo(final int offset) {
+    this.offset = offset;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor. The object is a view on a record of the ByteBuffer.
+   * @param bb ByteBuffer that contains the records
+   * @param offset offset of the record in the ByteBuffer
+   * @param binCount number of quality score bins
+   * @param remappedScoreQuality remapped scores of the quality score bins
+   */
+  QualityMetrics(final ByteBuffer bb, final int offset, final int binCount,
+      final int[] remappedScoreQuality) {
+
+    this.buffer = bb;
+    this.offset = offset;
+    this.binCount = binCount;
+    this.remappedScoreQuality = remappedScoreQuality;
+  }
+
 }
@@ -26,6 +26,8 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.common.primitives.Ints;
+
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.eoulsan.core.Version;
@@ -44,6 +46,10 @@ public class QualityMetricsCollector extends AbstractMetricsCollector {
   public static final String FORK_VERSION_5 = "1.18.64";
   public static final String FORK_VERSION_6 = "2.7.1";
 
+  private QMetricsVersion4Reader reader;
+  private long[][][] lanes;
+  private int[] readNumberFromCycle;
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -57,62 +63,94 @@ public class QualityMetricsCollector extends AbstractMetricsCollector {
   public void collect(final RunData data) throws AozanException {
 
     super.collect(data);
-    final QMetricsVersion4Reader reader;
-    final Version rtaVersion = new Version(data.get("run.info.rta.version"));
 
-    if (rtaVersion.greaterThanOrEqualTo(new Version(FORK_VERSION_5))) {
-      if (rtaVersion.greaterThanOrEqualTo(new Version(FORK_VERSION_6))) {
-        reader = new QMetricsVersion6Reader(getInterOpDir());
-      } else {
-        reader = new QMetricsVersion5Reader(getInterOpDir());
-      }
-    } else {
-      reader = new QMetricsVersion4Reader(getInterOpDir());
-    }
+    final AbstractBinaryFileReader.MetricsHandler<QualityMetrics> handler =
+        new AbstractBinaryFileReader.MetricsHandler<QualityMetrics>() {
 
-    final long[][][] lanes = new long[data.getLaneCount()][][];
-    final long[] global = new long[50];
-    final List<Integer> readNumberFromCycle = new ArrayList<Integer>();
-    final int maxRead = data.getInt("run.info.read.count");
-    final int[] cyclePerReads = new int[maxRead];
+          @Override
+          public void handle(final QualityMetrics qual) {
 
-    for (int i = 0; i < lanes.length; i++) {
-      lanes[i] = new long[maxRead][];
-      for (int j = 0; j < lanes[i].length; j++) {
-        lanes[i][j] = new long[50];
-      }
+            final int readSource =
+                readNumberFromCycle[qual.getCycleNumber() - 1] - 1;
+            final int lane = qual.getLaneNumber() - 1;
+            qual.addClustersScore(lanes[lane][readSource]);
+          }
+        };
 
+    // In live mode, the scores of the previous calls are kept
+    if (this.reader == null || !isLive()) {
+      this.reader = createReader(data);
+      initMetricsArrays(data);
     }
 
-    for (int i = 0; i < cyclePerReads.length; i++) {
-      cyclePerReads[i] = data.getInt("run.info.read" + (i + 1) + ".cycles");
-      for (int j = 0; j < cyclePerReads[i]; j++) {
-        readNumberFromCycle.add(i + 1);
+    if (!readMetrics(this.reader, handler)) {
 
+      // The file has been rewritten
+      initMetricsArrays(data);
+      readMetrics(this.reader, handler);
+    }
+
+    // The global scores are the sum of the scores of all the lanes and reads
+    final long[] global = new long[50];
+    for (final long[][] reads : this.lanes) {
+      for (final long[] scores : reads) {
+        for (int i = 0; i < scores.length; i++) {
+          global[i] += scores[i];
+        }
       }
+    }
 
+    for (int i = 0; i < this.lanes.length; i++) {
+      for (int j = 0; j < this.lanes[i].length; j++) {
+        data.put(DATA_PREFIX + ".lane" + (i + 1) + ".read" + (j + 1),
+            this.lanes[i][j]);
+      }
     }
+    data.put(DATA_PREFIX + ".global", global);
 
-    for (final QualityMetrics qual : reader.getSetIlluminaMetrics()) {
+  }
 
-      int readSource = readNumberFromCycle.get(qual.getCycleNumber() - 1) - 1;
-      int lane = qual.getLaneNumber() - 1;
-      long[] scores = qual.getClustersScore();
-      for (int i = 0; i < scores.length; i++) {
-        lanes[lane][readSource][i] += scores[i];
-        global[i] += scores[i];
-      }
+  /**
+   * Create the reader of the QualityMetricsOut.bin file for the version of RTA
+   * of the run.
+   * @param data result data object
+   * @return a new QMetricsVersion4Reader object
+   * @throws AozanException if the InterOp directory does not exist
+   */
+  private QMetricsVersion4Reader createReader(final RunData data)
+      throws AozanException {
+
+    final Version rtaVersion = new Version(data.get("run.info.rta.version"));
 
+    if (rtaVersion.greaterThanOrEqualTo(new Version(FORK_VERSION_5))) {
+      if (rtaVersion.greaterThanOrEqualTo(new Version(FORK_VERSION_6))) {
+        return new QMetricsVersion6Reader(getInterOpDir());
+      }
+      return new QMetricsVersion5Reader(getInterOpDir());
     }
 
-    for (int i = 0; i < lanes.length; i++) {
-      for (int j = 0; j < maxRead; j++) {
-        data.put(DATA_PREFIX + ".lane" + (i + 1) + ".read" + (j + 1),
-            lanes[i][j]);
+    return new QMetricsVersion4Reader(getInterOpDir());
+  }
+
+  /**
+   * Initialize the scores of the lanes and the read number of the cycles.
+   * @param data result data object
+   */
+  private void initMetricsArrays(final RunData data) {
+
+    final int maxRead = data.getInt("run.info.read.count");
+
+    this.lanes = new long[data.getLaneCount()][maxRead][50];
+
+    final List<Integer> readNumbers = new ArrayList<>();
+    for (int i = 0; i < maxRead; i++) {
+      final int cycles = data.getInt("run.info.read" + (i + 1) + ".cycles");
+      for (int j = 0; j < cycles; j++) {
+        readNumbers.add(i + 1);
       }
     }
-    data.put(DATA_PREFIX + ".global", global);
 
+    this.readNumberFromCycle = Ints.toArray(readNumbers);
   }
 
 }
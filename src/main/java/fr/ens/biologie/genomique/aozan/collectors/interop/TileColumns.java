@@ -0,0 +1,273 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import fr.ens.biologie.genomique.aozan.util.StatisticsAccumulator;
+
+/**
+ * This class define a columnar store of the metrics of the tiles of a run. The
+ * tile numbers are converted to dense indexes shared by all the columns of the
+ * store, the values of a metric are kept in an array of primitives indexed by
+ * the tile index. The statistics of a column are accumulated by a linear pass
+ * over the tiles in the order of their numbers with a StatisticsAccumulator.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class TileColumns {
+
+  /** Default number of tiles if the tile count of the run is unknown. */
+  private static final int DEFAULT_TILE_COUNT = 64;
+
+  private static final double[] EMPTY_DOUBLES = new double[0];
+  private static final long[] EMPTY_LONGS = new long[0];
+
+  // Index of the tiles + 1 indexed by tile number, 0 for an unknown tile
+  private int[] indexes = new int[0];
+  private int[] tileNumbers;
+  private int tileCount;
+
+  // The indexes of the tiles in the order of their numbers, null if a tile has
+  // been added since the last sort
+  private int[] sortedIndexes;
+
+  /**
+   * This class define a column of double values. A tile without value is not
+   * used in the statistics of the column.
+   */
+  final class DoubleColumn {
+
+    private double[] values = EMPTY_DOUBLES;
+    private final BitSet defined = new BitSet();
+
+    /**
+     * Test if a tile has a value.
+     * @param index index of the tile
+     * @return true if the tile has a value
+     */
+    boolean isDefined(final int index) {
+      return this.defined.get(index);
+    }
+
+    /**
+     * Test if the column contains no value.
+     * @return true if the column is empty
+     */
+    boolean isEmpty() {
+      return this.defined.isEmpty();
+    }
+
+    /**
+     * Get the value of a tile.
+     * @param index index of the tile
+     * @return the value of the tile or 0.0 if the tile has no value
+     */
+    double get(final int index) {
+      return index < this.values.length ? this.values[index] : 0.0;
+    }
+
+    /**
+     * Set the value of a tile.
+     * @param index index of the tile
+     * @param value the value
+     */
+    void set(final int index, final double value) {
+
+      ensureCapacity(index);
+      this.values[index] = value;
+      this.defined.set(index);
+    }
+
+    /**
+     * Add a value to the value of a tile.
+     * @param index index of the tile
+     * @param value the value to add
+     */
+    void add(final int index, final double value) {
+
+      ensureCapacity(index);
+      this.values[index] += value;
+      this.defined.set(index);
+    }
+
+    /**
+     * Compute the statistics of the values of the column in the order of the
+     * tile numbers. The infinite values are ignored.
+     * @return a StatisticsAccumulator object with the values of the column
+     */
+    StatisticsAccumulator statistics() {
+
+      final StatisticsAccumulator result = new StatisticsAccumulator();
+
+      for (final int index : getSortedIndexes()) {
+        if (isDefined(index)) {
+          result.addValue(this.values[index]);
+        }
+      }
+
+      return result;
+    }
+
+    private void ensureCapacity(final int index) {
+
+      if (index >= this.values.length) {
+        this.values = Arrays.copyOf(this.values,
+            Math.max(index + 1, TileColumns.this.tileNumbers.length));
+      }
+    }
+  }
+
+  /**
+   * This class define a column of long values, the value of a tile is 0 by
+   * default.
+   */
+  final class LongColumn {
+
+    private long[] values = EMPTY_LONGS;
+
+    /**
+     * Get the value of a tile.
+     * @param index index of the tile
+     * @return the value of the tile
+     */
+    long get(final int index) {
+      return index < this.values.length ? this.values[index] : 0L;
+    }
+
+    /**
+     * Add a value to the value of a tile.
+     * @param index index of the tile
+     * @param value the value to add
+     */
+    void add(final int index, final long value) {
+
+      if (index >= this.values.length) {
+        this.values = Arrays.copyOf(this.values,
+            Math.max(index + 1, TileColumns.this.tileNumbers.length));
+      }
+      this.values[index] += value;
+    }
+  }
+
+  //
+  // Index methods
+  //
+
+  /**
+   * Get the index of a tile. A new index is created for an unknown tile.
+   * @param tileNumber the tile number
+   * @return the index of the tile
+   */
+  int getTileIndex(final int tileNumber) {
+
+    if (tileNumber < 0) {
+      throw new IllegalArgumentException("Invalid tile number: " + tileNumber);
+    }
+
+    if (tileNumber < this.indexes.length && this.indexes[tileNumber] != 0) {
+      return this.indexes[tileNumber] - 1;
+    }
+
+    if (tileNumber >= this.indexes.length) {
+      this.indexes = Arrays.copyOf(this.indexes,
+          Math.max(tileNumber + 1, this.indexes.length * 2));
+    }
+
+    if (this.tileCount == this.tileNumbers.length) {
+      this.tileNumbers =
+          Arrays.copyOf(this.tileNumbers, this.tileNumbers.length * 2);
+    }
+
+    final int result = this.tileCount++;
+    this.tileNumbers[result] = tileNumber;
+    this.indexes[tileNumber] = result + 1;
+    this.sortedIndexes = null;
+
+    return result;
+  }
+
+  /**
+   * Get the number of tiles of the store.
+   * @return the number of tiles
+   */
+  int getTileCount() {
+    return this.tileCount;
+  }
+
+  /**
+   * Get the indexes of the tiles in the order of their numbers.
+   * @return an array with the indexes of the tiles
+   */
+  int[] getSortedIndexes() {
+
+    if (this.sortedIndexes == null) {
+
+      // The indexes array is already sorted by tile number
+      final int[] result = new int[this.tileCount];
+      int count = 0;
+      for (int i = 0; i < this.indexes.length && count < result.length; i++) {
+        if (this.indexes[i] != 0) {
+          result[count++] = this.indexes[i] - 1;
+        }
+      }
+      this.sortedIndexes = result;
+    }
+
+    return this.sortedIndexes;
+  }
+
+  /**
+   * Create a new column of double values.
+   * @return a new DoubleColumn object
+   */
+  DoubleColumn newDoubleColumn() {
+    return new DoubleColumn();
+  }
+
+  /**
+   * Create a new column of long values.
+   * @return a new LongColumn object
+   */
+  LongColumn newLongColumn() {
+    return new LongColumn();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param expectedTileCount the expected number of tiles, from the RunInfo.xml
+   *          file
+   */
+  TileColumns(final int expectedTileCount) {
+
+    this.tileNumbers = new int[expectedTileCount > 0
+        ? expectedTileCount : DEFAULT_TILE_COUNT];
+  }
+
+}
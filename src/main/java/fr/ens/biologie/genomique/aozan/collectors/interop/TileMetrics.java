@@ -30,8 +30,7 @@ import java.nio.ByteBuffer;
 /**
  * This class save a record from TileMetricsOut.bin file, corresponding of the
  * description of the EXPECTED_VERSION. An record contains data per tile per
- * lane per metrics.Each record create an object
- * IlluminaTileMetrics._______________________________________________________
+ * lane per metrics. An object is a view on a record of the mapped file._____
  * byte 0: file version number (2)____________________________________________
  * byte 1: length of each record______________________________________________
  * bytes (N * 10 + 2) - (N *10 + 11): record:_________________________________
@@ -53,20 +52,22 @@ import java.nio.ByteBuffer;
  */
 public class TileMetrics {
 
-  private final int metricCode;
-  private final float metricValue;
+  private static final int LANE_NUMBER_OFFSET = 0;
+  private static final int TILE_NUMBER_OFFSET = 2;
+  private static final int METRIC_CODE_OFFSET = 4;
+  private static final int METRIC_VALUE_OFFSET = 6;
 
-  private final int laneNumber; // uint16
-  private final int tileNumber; // uint16
+  private final ByteBuffer buffer;
+  private int offset;
 
   /** Get the number lane. */
   public int getLaneNumber() {
-    return this.laneNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + LANE_NUMBER_OFFSET));
   }
 
   /** Get the number tile. */
   public int getTileNumber() {
-    return this.tileNumber;
+    return uShortToInt(this.buffer.getShort(this.offset + TILE_NUMBER_OFFSET));
   }
 
   /**
@@ -74,7 +75,7 @@ public class TileMetrics {
    * @return metric code
    */
   public int getMetricCode() {
-    return this.metricCode;
+    return uShortToInt(this.buffer.getShort(this.offset + METRIC_CODE_OFFSET));
   }
 
   /**
@@ -82,13 +83,21 @@ public class TileMetrics {
    * @return value for the metric code
    */
   public float getMetricValue() {
-    return this.metricValue;
+    return this.buffer.getFloat(this.offset + METRIC_VALUE_OFFSET);
+  }
+
+  /**
+   * Move the object to another record of the buffer.
+   * @param offset offset of the record in the buffer
+   */
+  void moveTo(final int offset) {
+    this.offset = offset;
   }
 
   @Override
   public String toString() {
-    return String.format("lane %s tile %s code %s value %.04f", this.laneNumber,
-        this.tileNumber, this.metricCode, this.metricValue);
+    return String.format("lane %s tile %s code %s value %.04f",
+        getLaneNumber(), getTileNumber(), getMetricCode(), getMetricValue());
 
   }
 
@@ -97,14 +106,13 @@ public class TileMetrics {
   //
 
   /**
-   * Constructor. One record countReads on the ByteBuffer.
-   * @param bb ByteBuffer who read one record
+   * Constructor. The object is a view on a record of the ByteBuffer.
+   * @param bb ByteBuffer that contains the records
+   * @param offset offset of the record in the ByteBuffer
    */
-  TileMetrics(final ByteBuffer bb) {
-    this.laneNumber = uShortToInt(bb.getShort());
-    this.tileNumber = uShortToInt(bb.getShort());
-    this.metricCode = uShortToInt(bb.getShort());
-    this.metricValue = bb.getFloat();
+  TileMetrics(final ByteBuffer bb, final int offset) {
 
+    this.buffer = bb;
+    this.offset = offset;
   }
 }
@@ -25,20 +25,19 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-
-import com.google.common.collect.Lists;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.QC;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.Settings;
 import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileColumns.DoubleColumn;
+import fr.ens.biologie.genomique.aozan.util.StatisticsAccumulator;
 
 /**
  * This class collects run data by reading the TileMetricsOut.bin in InterOp
@@ -55,6 +54,8 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
 
   private final Map<Integer, TileMetricsPerLane> tileMetrics = new HashMap<>();
 
+  private TileMetricsReader reader;
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -77,13 +78,28 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
 
     super.collect(data);
 
-    final TileMetricsReader reader = new TileMetricsReader(getInterOpDir());
-    initMetricsMap(data);
-
     // Distribution of metrics between lane and code
-    for (final TileMetrics itm : reader.getSetIlluminaMetrics()) {
+    final AbstractBinaryFileReader.MetricsHandler<TileMetrics> handler =
+        new AbstractBinaryFileReader.MetricsHandler<TileMetrics>() {
+
+          @Override
+          public void handle(final TileMetrics itm) {
+
+            tileMetrics.get(itm.getLaneNumber()).addMetric(itm);
+          }
+        };
 
-      this.tileMetrics.get(itm.getLaneNumber()).addMetric(itm);
+    // In live mode, the metrics of the previous calls are kept
+    if (this.reader == null || !isLive()) {
+      this.reader = new TileMetricsReader(getInterOpDir());
+      initMetricsMap(data);
+    }
+
+    if (!readMetrics(this.reader, handler)) {
+
+      // The file has been rewritten
+      initMetricsMap(data);
+      readMetrics(this.reader, handler);
     }
 
     // Build runData
@@ -105,38 +121,16 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
     final int lanesCount = data.getLaneCount();
     final int readsCount = data.getReadCount();
 
+    // The lanes share the indexes of the tiles
+    final TileColumns tiles = new TileColumns(tilesCount);
+
     for (int lane = 1; lane <= lanesCount; lane++) {
       this.tileMetrics.put(lane, new TileMetricsPerLane(lane, readsCount,
-          tilesCount, this.densityRatio));
+          tilesCount, this.densityRatio, tiles));
     }
 
   }
 
-  //
-  // Getters
-  //
-
-  /**
-   * Gets the tiles count.
-   * @return the tiles count
-   */
-  public int computeTilesCount(final RunData data) {
-
-    if (data.contains("run.info.flow.cell.section.per.lane")
-        && data.getInt("run.info.flow.cell.section.per.lane") > 0) {
-
-      // NextSeq case, compute tile count and add data from camera number
-      return data.getInt("run.info.flow.cell.tile.count")
-          * data.getInt("run.info.flow.cell.surface.count")
-          * data.getInt("run.info.flow.cell.swath.count")
-          * data.getInt("run.info.flow.cell.section.per.lane");
-    }
-
-    return data.getInt("run.info.flow.cell.tile.count")
-        * data.getInt("run.info.flow.cell.surface.count")
-        * data.getInt("run.info.flow.cell.swath.count");
-  }
-
   //
   // Internal class
   //
@@ -173,7 +167,9 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
     @SuppressWarnings("unused")
     private Double controlLane = 0.0; // code in binary file 400
 
-    private final Map<Integer, Map<Integer, Double>> metricsPerTilePerCode;
+    // Values of the tiles indexed by metric code
+    private final TileColumns tiles;
+    private DoubleColumn[] metricsPerCode = new DoubleColumn[0];
 
     // Standard deviation
     private double clusterDensitySD = 0.0;
@@ -191,81 +187,85 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
      * @param itm illumina tile metrics
      */
     public void addMetric(final TileMetrics itm) {
-      final int tileNumber = itm.getTileNumber();
+      final int index = this.tiles.getTileIndex(itm.getTileNumber());
       final int code = itm.getMetricCode();
       final double value = itm.getMetricValue();
 
-      if (this.metricsPerTilePerCode.containsKey(code)) {
+      if (code >= this.metricsPerCode.length) {
+        this.metricsPerCode = Arrays.copyOf(this.metricsPerCode, code + 1);
+      }
 
-        // One value by tile by code
-        if (!this.metricsPerTilePerCode.get(code).containsKey(tileNumber)) {
-          this.metricsPerTilePerCode.get(code).put(tileNumber, value);
+      if (this.metricsPerCode[code] == null) {
+        this.metricsPerCode[code] = this.tiles.newDoubleColumn();
+      }
 
-        } else if (this.metricsPerTilePerCode.get(code)
-            .get(tileNumber) == 0.0) {
+      final DoubleColumn column = this.metricsPerCode[code];
 
-          // Replace value by numeric in case several value exist per tile
-          this.metricsPerTilePerCode.get(code).put(tileNumber, value);
-        }
-
-      } else {
-        final Map<Integer, Double> m = new TreeMap<>();
-        m.put(tileNumber, value);
-        this.metricsPerTilePerCode.put(code, m);
+      // One value by tile by code, replace value by numeric in case several
+      // value exist per tile
+      if (!column.isDefined(index) || column.get(index) == 0.0) {
+        column.set(index, value);
       }
     }
 
+    /**
+     * Get the values of the tiles for a metric code.
+     * @param code metric code
+     * @return a DoubleColumn object or null if there is no value for the code
+     */
+    private DoubleColumn getMetrics(final int code) {
+
+      return code < this.metricsPerCode.length
+          ? this.metricsPerCode[code] : null;
+    }
+
     /**
      * Compute mean and standard deviation from metrics reading in
      * TileMetricsOut.bin file.
      */
     public void computeData() {
 
-      StatisticsUtils stat;
-      Number mean;
-      Number sd;
-
       // Compute statistics for each code
-      for (final Map.Entry<Integer, Map<Integer, Double>> entry : this.metricsPerTilePerCode
-          .entrySet()) {
+      for (int code = 0; code < this.metricsPerCode.length; code++) {
 
-        // list values for the code metric
-        final List<Double> listValues =
-            Lists.newArrayList((entry.getValue().values()));
+        if (this.metricsPerCode[code] == null) {
+          continue;
+        }
 
-        // compute mean and standard deviation
-        stat = new StatisticsUtils(listValues);
-        mean = stat.getMean();
-        sd = stat.getStandardDeviation();
+        // compute mean and standard deviation of the values of the code
+        final StatisticsAccumulator stats =
+            this.metricsPerCode[code].statistics();
+        final double mean = stats.getMean();
+        final double sd = stats.getStandardDeviation();
 
-        switch (entry.getKey()) {
+        switch (code) {
         case CLUSTER_DENSITY_CODE:
-          this.clusterDensity = mean.doubleValue();
-          this.clusterDensitySD = sd.doubleValue();
+          this.clusterDensity = mean;
+          this.clusterDensitySD = sd;
           break;
 
         case CLUSTER_DENSITY_PF_CODE:
-          this.clusterDensityPF = mean.doubleValue();
-          this.clusterDensityPFSD = sd.doubleValue();
+          this.clusterDensityPF = mean;
+          this.clusterDensityPFSD = sd;
           break;
 
         case NUMBER_CLUSTER_CODE:
-          this.numberCluster = mean.longValue();
-          this.numberClusterSD = sd.doubleValue();
+          this.numberCluster = (long) mean;
+          this.numberClusterSD = sd;
           break;
 
         case NUMBER_CLUSTER_PF_CODE:
-          this.numberClusterPF = mean.longValue();
-          this.numberClusterPFSD = sd.doubleValue();
+          this.numberClusterPF = (long) mean;
+          this.numberClusterPFSD = sd;
           break;
 
         case CONTROL_LANE:
           // value unique to a run, read first value in list
-          this.controlLane = mean.doubleValue();
+          this.controlLane = mean;
           break;
 
         default: // code 20X and 30X
-          addReadMetrics(entry.getKey(), stat);
+          addReadMetrics(code, mean, sd);
         }
       }
 
@@ -279,39 +279,30 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
      */
     private void computePercentClusterPF() {
 
-      final Map<Integer, Double> numberClusterValues =
-          this.metricsPerTilePerCode.get(102);
-      final Map<Integer, Double> numberClusterPFValues =
-          this.metricsPerTilePerCode.get(103);
+      final DoubleColumn numberClusterValues = getMetrics(NUMBER_CLUSTER_CODE);
+      final DoubleColumn numberClusterPFValues =
+          getMetrics(NUMBER_CLUSTER_PF_CODE);
 
-      if (numberClusterPFValues.size() == 0
-          || numberClusterValues.size() == 0) {
+      // The codes may not be written yet while the run is in progress
+      if (numberClusterPFValues == null || numberClusterValues == null) {
         return;
       }
 
-      final StatisticsUtils stat = new StatisticsUtils();
+      final StatisticsAccumulator prcValues = new StatisticsAccumulator();
 
       // Set the percent cluster PF for each tile
-      for (final Map.Entry<Integer, Double> clusters : numberClusterValues
-          .entrySet()) {
+      for (final int index : this.tiles.getSortedIndexes()) {
 
-        for (final Map.Entry<Integer, Double> clustersPF : numberClusterPFValues
-            .entrySet()) {
+        if (numberClusterValues.isDefined(index)
+            && numberClusterPFValues.isDefined(index)) {
 
-          // For each tile
-          if (clusters.getKey().equals(clustersPF.getKey())) {
-
-            final Double prc = clustersPF.getValue() / clusters.getValue();
-
-            stat.addValues(prc);
-
-            break;
-          }
+          prcValues.addValue(
+              numberClusterPFValues.get(index) / numberClusterValues.get(index));
         }
       }
 
-      this.prcPFClusters = stat.getMean() * 100;
-      this.prcPFClustersSD = stat.getStandardDeviation() * 100;
+      this.prcPFClusters = prcValues.getMean() * 100;
+      this.prcPFClustersSD = prcValues.getStandardDeviation() * 100;
 
     }
 
@@ -319,9 +310,11 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
      * Add a metric (mean and standard deviation) to a read from the code
      * metric.
      * @param code metric
-     * @param stat object contains all metrics
+     * @param mean mean of the values of the metric
+     * @param sd standard deviation of the values of the metric
      */
-    private void addReadMetrics(final int code, final StatisticsUtils stat) {
+    private void addReadMetrics(final int code, final double mean,
+        final double sd) {
 
       int numeroRead = -1;
 
@@ -341,7 +334,7 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
       // update ReadMetrics for the read number if it exists
       for (final ReadTileMetrics read : this.listReads) {
         if (read.getNumberRead() == numeroRead) {
-          read.addValue(code, stat);
+          read.addValue(code, mean, sd);
         }
       }
     }
@@ -410,13 +403,14 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
     //
 
     TileMetricsPerLane(final int laneNumber, final int readsCount,
-        final int countTiles, final double densityRatio) {
+        final int countTiles, final double densityRatio,
+        final TileColumns tiles) {
 
       this.laneNumber = laneNumber;
       this.countTiles = countTiles;
       this.densityRatio = densityRatio;
 
-      this.metricsPerTilePerCode = new HashMap<>();
+      this.tiles = tiles;
       this.listReads = new LinkedList<>();
 
       for (int read = 1; read <= readsCount; read++) {
@@ -453,19 +447,21 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
       /**
        * Initialize a value according to code.
        * @param code metrics code
-       * @param stat object contains all metrics
+       * @param mean mean of the values of the metric
+       * @param sd standard deviation of the values of the metric
        */
-      public void addValue(final int code, final StatisticsUtils stat) {
+      public void addValue(final int code, final double mean,
+          final double sd) {
 
         if (code >= PCR_ALIGNED_PHIX_CODE && code < 400) {
-          this.percentAlignedPhix = stat.getMean();
-          this.percentAlignedPhixSD = stat.getStandardDeviation();
+          this.percentAlignedPhix = mean;
+          this.percentAlignedPhixSD = sd;
 
         } else if (code % 2 == 0) {
           // Compute the mediane with using value = 0.0
-          this.phasing = stat.getMean() * 100;
+          this.phasing = mean * 100;
         } else {
-          this.prephasing = stat.getMean() * 100;
+          this.prephasing = mean * 100;
         }
       }
 
@@ -25,7 +25,6 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 
@@ -66,10 +65,15 @@ public class TileMetricsReader extends AbstractBinaryFileReader<TileMetrics> {
   }
 
   @Override
-  protected void addIlluminaMetricsInCollection(
-      final List<TileMetrics> collection, final ByteBuffer bb) {
+  protected TileMetrics createMetrics(final ByteBuffer bb, final int offset) {
 
-    collection.add(new TileMetrics(bb));
+    return new TileMetrics(bb, offset);
+  }
+
+  @Override
+  protected void moveMetrics(final TileMetrics metrics, final int offset) {
+
+    metrics.moveTo(offset);
   }
 
   //
@@ -39,7 +39,7 @@ import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.collectors.FastqScreenCollector;
 import fr.ens.biologie.genomique.aozan.collectors.StatisticsCollector;
 import fr.ens.biologie.genomique.aozan.collectors.UndeterminedIndexesCollector;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.util.StatisticsAccumulator;
 
 /**
  * The class define a entity statistics which compute data collected on project,
@@ -79,10 +79,10 @@ public class EntityStat {
 
   // Compile demultiplexing data on all samples
   /** Raw cluster count samples. */
-  private List<Integer> rawClusterSamples;
+  private final StatisticsAccumulator rawClusterSamples;
 
   /** PF cluster count samples. */
-  private List<Integer> pfClusterSamples;
+  private final StatisticsAccumulator pfClusterSamples;
 
   /**
    * Percent mapped contamination samples, value related to mapped read on data
@@ -122,18 +122,18 @@ public class EntityStat {
     this.data.put(prefix + ".isindexed", isIndexed);
 
     // Compile data on raw cluster
-    StatisticsUtils rawStats = new StatisticsUtils(this.rawClusterSamples);
+    final StatisticsAccumulator rawStats = this.rawClusterSamples;
 
-    this.data.put(prefix + ".raw.cluster.sum", rawStats.getSumToInteger());
-    this.data.put(prefix + ".raw.cluster.min", rawStats.getMin().intValue());
-    this.data.put(prefix + ".raw.cluster.max", rawStats.getMax().intValue());
+    this.data.put(prefix + ".raw.cluster.sum", (int) rawStats.getSum());
+    this.data.put(prefix + ".raw.cluster.min", (int) rawStats.getMin());
+    this.data.put(prefix + ".raw.cluster.max", (int) rawStats.getMax());
 
     // Compile data on raw cluster
-    StatisticsUtils pfStats = new StatisticsUtils(this.pfClusterSamples);
+    final StatisticsAccumulator pfStats = this.pfClusterSamples;
 
-    this.data.put(prefix + ".pf.cluster.sum", pfStats.getSumToInteger());
-    this.data.put(prefix + ".pf.cluster.min", pfStats.getMin().intValue());
-    this.data.put(prefix + ".pf.cluster.max", pfStats.getMax().intValue());
+    this.data.put(prefix + ".pf.cluster.sum", (int) pfStats.getSum());
+    this.data.put(prefix + ".pf.cluster.min", (int) pfStats.getMin());
+    this.data.put(prefix + ".pf.cluster.max", (int) pfStats.getMax());
 
     // Check collector is enabled
     if (this.data
@@ -177,11 +177,11 @@ public class EntityStat {
 
     // Extract raw cluster
     this.rawClusterSamples
-        .add(this.data.getSampleRawClusterCount(sampleId, READ));
+        .addValue(this.data.getSampleRawClusterCount(sampleId, READ));
 
     // Extract pf cluster
     this.pfClusterSamples
-        .add(this.data.getSamplePFClusterCount(sampleId, READ));
+        .addValue(this.data.getSamplePFClusterCount(sampleId, READ));
 
     computeConditionalRundata(sampleId);
 
@@ -362,8 +362,8 @@ public class EntityStat {
     this.samples = new ArrayList<>();
 
     // Compile demultiplexing data
-    this.rawClusterSamples = new ArrayList<>();
-    this.pfClusterSamples = new ArrayList<>();
+    this.rawClusterSamples = new StatisticsAccumulator();
+    this.pfClusterSamples = new StatisticsAccumulator();
     this.mappedContaminationPercentSamples = new ArrayList<>();
 
     this.statisticsCollector = statCollector;
@@ -26,28 +26,38 @@ package fr.ens.biologie.genomique.aozan.demux;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Preconditions;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Common;
 import fr.ens.biologie.genomique.aozan.illumina.samplesheet.Sample;
 import fr.ens.biologie.genomique.aozan.illumina.samplesheet.SampleSheet;
 import fr.ens.biologie.genomique.aozan.illumina.samplesheet.io.SampleSheetCSVReader;
+import fr.ens.biologie.genomique.aozan.io.ParallelDecompression;
+import fr.ens.biologie.genomique.aozan.util.IndexMismatchTable;
 import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeException;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
@@ -61,8 +71,14 @@ import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
  */
 public class ReDemux {
 
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
   private static final int INDEX_LENGTH = 6;
 
+  // Each undetermined file processed at the same time has a writer by sample
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   private final File inputDir;
   private final File outputDir;
   private final SampleSheet sampleSheet;
@@ -82,6 +98,7 @@ public class ReDemux {
     private final File inputDir;
     private final File outputDir;
     private final Map<Pattern, Sample> newIndexes = new HashMap<>();
+    private IndexMismatchTable<Sample> sampleIndexTable;
 
     /**
      * Add an index for the re-demultiplexing.
@@ -173,31 +190,30 @@ public class ReDemux {
       int bestScore = Integer.MAX_VALUE;
       int bestCoreCount = 0;
 
-      for (Sample s : samplesheet.getSampleInLane(this.lane)) {
-
-        final String sampleIndex = s.getIndex1();
+      for (IndexMismatchTable.Match<Sample> m : getSampleIndexTable()
+          .get(index)) {
 
-        // TODO instead call mismatches method from Undetermined Thread
-        final int mismatches = mismatches(index, sampleIndex);
+        final int mismatches = m.getMismatches();
 
         if (mismatches < bestScore) {
 
           bestScore = mismatches;
           bestCoreCount = 1;
-          sample = s;
+          sample = m.getTarget();
         } else if (mismatches == bestScore) {
           bestCoreCount++;
         }
       }
 
-      // Check if the index matches with one sample
+      // Check if the index matches with one sample with no more than 2
+      // mismatches
       if (sample == null) {
-        throw new AozanException(
-            "No sample matches with index on lane " + this.lane + ": " + index);
-      }
 
-      // Check the number of mismatches of the best score
-      if (bestScore > 2) {
+        if (samplesheet.getSampleInLane(this.lane).isEmpty()) {
+          throw new AozanException("No sample matches with index on lane "
+              + this.lane + ": " + index);
+        }
+
         throw new AozanException("Cannot allow more than 2 mismatches on lane "
             + this.lane + ": " + index);
       }
@@ -212,6 +228,28 @@ public class ReDemux {
       this.newIndexes.put(Pattern.compile(index), sample);
     }
 
+    /**
+     * Get the table of the mismatch neighbourhood of the indexes of the samples
+     * of the lane. The table is created at the first call of the method.
+     * @return the table of the indexes of the samples
+     */
+    private IndexMismatchTable<Sample> getSampleIndexTable() {
+
+      if (this.sampleIndexTable == null) {
+
+        this.sampleIndexTable =
+            new IndexMismatchTable<>(IndexMismatchTable.MAX_MISMATCHES);
+
+        for (Sample s : samplesheet.getSampleInLane(this.lane)) {
+          if (s.getIndex1() != null) {
+            this.sampleIndexTable.addIndex(s.getIndex1(), s);
+          }
+        }
+      }
+
+      return this.sampleIndexTable;
+    }
+
     /**
      * Re-demultiplex all the reads.
      * @throws IOException if an error occurs while re-demultiplexing
@@ -243,7 +281,9 @@ public class ReDemux {
     }
 
     /**
-     * Re-demultiplex a read.
+     * Re-demultiplex a read. The undetermined files of the read are processed
+     * in parallel, each file in its own output files that are concatenated at
+     * the end in the order of the undetermined files.
      * @param read read index
      * @throws IOException
      * @throws BadBioEntryException
@@ -255,213 +295,242 @@ public class ReDemux {
         return;
 
       // Get the list of files to process
-      final List<File> undeterminedFiles =
-          findUndeterminedFiles(this.inputDir, this.lane, read);
+      final List<File> undeterminedFiles = new ArrayList<>(
+          findUndeterminedFiles(this.inputDir, this.lane, read));
 
       if (undeterminedFiles.size() == 0) {
         throw new IOException("No undetermined file found");
       }
 
+      // Process the files in the same order as bcl2fastq
+      Collections.sort(undeterminedFiles);
+
       // Get the compression of the undetermined file to use the same
       // compression for the new files
       final CompressionType compression = CompressionType
           .getCompressionTypeByFilename(undeterminedFiles.get(0).getName());
 
-      // Create the writers
-      // final Map<Pattern, FastqWriter> writers =
-      // createWriters(read, compression);
+      // Create the output files and the table of the indexes
+      final ReDemuxIndexTable<Integer> table = new ReDemuxIndexTable<>();
+      final List<File> outputFiles =
+          createOutputFiles(read, compression, table);
+
+      LOGGER.info("ReDemux: "
+          + this.newIndexes.size() + " indexes retrieved from the command "
+          + "line, " + outputFiles.size() + " FASTQ files created");
 
-      final Map<String, Entity> writers = createWriters2(read, compression);
+      final int fileCount = undeterminedFiles.size();
 
-      System.out
-          .println("reDemux method, nupmber index retrieve from command line "
-              + this.newIndexes.size() + " with " + writers.size()
-              + " create on fastq.");
+      // Output files of each undetermined file
+      final List<List<File>> partFiles = new ArrayList<>();
+      for (int i = 0; i < fileCount; i++) {
 
-      // Create an array with the pattern. An array is faster than a collection.
-      final List<Pattern> patterns = new ArrayList<>();
-      for (Map.Entry<String, Entity> e : writers.entrySet()) {
-        patterns.addAll(e.getValue().getPatterns());
+        if (fileCount == 1) {
+          partFiles.add(outputFiles);
+        } else {
+          final List<File> parts = new ArrayList<>();
+          for (File f : outputFiles) {
+            parts.add(new File(f.getParentFile(), f.getName() + ".part" + i));
+          }
+          partFiles.add(parts);
+        }
       }
 
-      for (File file : undeterminedFiles) {
+      final ExecutorService executor = Executors.newFixedThreadPool(
+          Math.min(fileCount, Runtime.getRuntime().availableProcessors()));
 
-        final FastqReader reader = new FastqReader(createInputStream(file));
+      try {
 
-        for (ReadSequence rs : reader) {
+        final List<Future<Void>> futures = new ArrayList<>();
 
-          // Do not use IlluminaReadId class because manual parsing is faster
-          final String seqName = rs.getName();
-          final String index = seqName.substring(seqName.lastIndexOf(':') + 1);
+        for (int i = 0; i < fileCount; i++) {
 
-          for (Pattern p : patterns) {
-            if (p.matcher(index).matches()) {
+          final File inputFile = undeterminedFiles.get(i);
+          final List<File> outputs = partFiles.get(i);
 
-              for (Map.Entry<String, Entity> e : writers.entrySet()) {
+          futures.add(executor.submit(new Callable<Void>() {
 
-                if (e.getValue().getPatterns().contains(p)) {
-                  e.getValue().getFw().write(rs);
-                  // writers.get(p).write(rs);
-                  // status.add(p);
-                  break;
-                }
-              }
+            @Override
+            public Void call() throws Exception {
+
+              reDemuxFile(inputFile, outputs, compression, table);
+              return null;
             }
-          }
+          }));
         }
-        reader.throwException();
-        reader.close();
 
-        // Close writers
-        for (Entity e : writers.values()) {
-          e.getFw().close();
+        for (Future<Void> future : futures) {
+          future.get();
         }
 
-      }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
 
-    }
+        final Throwable cause = e.getCause();
 
-    /**
-     * Create an uncompressed input stream for an undetermined file.
-     * @param file file to open
-     * @return an InputStream object.
-     * @throws IOException
-     */
-    private static InputStream createInputStream(final File file)
-        throws IOException {
-
-      final CompressionType compression =
-          CompressionType.getCompressionTypeByFilename(file.getName());
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof BadBioEntryException) {
+          throw (BadBioEntryException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException(cause);
+      } finally {
+        executor.shutdownNow();
+      }
 
-      return compression.createInputStream(new FileInputStream(file));
+      // Concatenate the output files of the undetermined files
+      if (fileCount > 1) {
+        for (int i = 0; i < outputFiles.size(); i++) {
+          concatenateFiles(partFiles, i, outputFiles.get(i));
+        }
+      }
     }
 
     /**
-     * Create writers that compress output if needed.
-     * @param read read to re-demultiplex
-     * @param compression compression of the writers
-     * @return a map with the writers
-     * @throws FileNotFoundException if one of the output files cannot be
-     *           created
-     * @throws IOException if one of the output files cannot be created
+     * Re-demultiplex an undetermined file.
+     * @param inputFile undetermined file
+     * @param outputFiles output files
+     * @param compression compression of the output files
+     * @param table table of the indexes
+     * @throws IOException if an error occurs while re-demultiplexing
+     * @throws BadBioEntryException if FASTQ entry read is invalid
      */
-    private Map<Pattern, FastqWriter> createWriters(final int read,
-        final CompressionType compression)
-        throws FileNotFoundException, IOException {
+    private static void reDemuxFile(final File inputFile,
+        final List<File> outputFiles, final CompressionType compression,
+        final ReDemuxIndexTable<Integer> table)
+        throws IOException, BadBioEntryException {
 
-      final Map<Pattern, FastqWriter> result = new HashMap<>();
+      final FastqWriter[] writers = new FastqWriter[outputFiles.size()];
+      final FastqReader reader = new FastqReader(createInputStream(inputFile));
 
-      for (Map.Entry<Pattern, Sample> e : this.newIndexes.entrySet()) {
+      try {
 
-        final String sampleProject = e.getValue().getSampleProject();
-        final String sampleName = e.getValue().getDemultiplexingName();
-        final String sampleIndex = e.getValue().getIndex1();
+        // Create the writers, each writer has its own output buffer
+        for (int i = 0; i < writers.length; i++) {
+          writers[i] = new FastqWriter(
+              compression.createOutputStream(new BufferedOutputStream(
+                  new FileOutputStream(outputFiles.get(i)), BUFFER_SIZE)));
+        }
 
-        // Define the output directory
-        final File subdir = new File(this.outputDir, "Project_"
-            + sampleProject + File.separator + "Sample_" + sampleName);
+        for (ReadSequence rs : reader) {
 
-        // Create output directory if not exists
-        if (!subdir.isDirectory()) {
+          // Do not use IlluminaReadId class because manual parsing is faster
+          final String seqName = rs.getName();
+          final String index = seqName.substring(seqName.lastIndexOf(':') + 1);
 
-          if (!subdir.mkdirs()) {
-            throw new IOException("Cannot create output directory: " + subdir);
+          for (Integer output : table.get(index)) {
+            writers[output].write(rs);
           }
         }
+        reader.throwException();
 
-        // Define the output file
-        final File file = new File(subdir,
-            sampleName
-                + "_" + sampleIndex + "_L00" + lane + "_R" + read + "_redemux_"
-                + e.getKey().pattern() + ".fastq" + compression.getExtension());
+      } finally {
 
-        final OutputStream out =
-            compression.createOutputStream(new FileOutputStream(file));
+        reader.close();
 
-        result.put(e.getKey(), new FastqWriter(out));
+        // Close writers
+        for (FastqWriter writer : writers) {
+          if (writer != null) {
+            writer.close();
+          }
+        }
       }
-
-      return result;
     }
 
-    private Map<String, Entity> createWriters2(final int read,
-        final CompressionType compression)
-        throws FileNotFoundException, IOException {
-
-      final Map<String, Entity> result = new HashMap<>();
-
-      for (Map.Entry<Pattern, Sample> e : this.newIndexes.entrySet()) {
+    /**
+     * Concatenate the output files of the undetermined files. The compressed
+     * formats used by bcl2fastq allow the concatenation of compressed files.
+     * @param partFiles output files of each undetermined files
+     * @param output the index of the output
+     * @param outputFile the output file
+     * @throws IOException if an error occurs while concatenating the files
+     */
+    private static void concatenateFiles(final List<List<File>> partFiles,
+        final int output, final File outputFile) throws IOException {
 
-        final String sampleProject = e.getValue().getSampleProject();
-        final String sampleName = e.getValue().getDemultiplexingName();
-        final String sampleIndex = e.getValue().getIndex1();
+      try (OutputStream out = new FileOutputStream(outputFile)) {
 
-        // Define the output directory
-        final File subdir = new File(this.outputDir, "Project_"
-            + sampleProject + File.separator + "Sample_" + sampleName);
+        for (List<File> parts : partFiles) {
 
-        // Create output directory if not exists
-        if (!subdir.isDirectory()) {
+          final File part = parts.get(output);
+          Files.copy(part.toPath(), out);
 
-          if (!subdir.mkdirs()) {
-            throw new IOException("Cannot create output directory: " + subdir);
+          if (!part.delete()) {
+            throw new IOException("Cannot delete file: " + part);
           }
         }
+      }
+    }
 
-        // Define the output file
-        final File file = new File(subdir,
-            sampleName
-                + "_" + sampleIndex + "_L00" + lane + "_R" + read
-                + "_redemux_.fastq" + compression.getExtension());
+    /**
+     * Create an uncompressed input stream for an undetermined file.
+     * @param file file to open
+     * @return an InputStream object.
+     * @throws IOException
+     */
+    private static InputStream createInputStream(final File file)
+        throws IOException {
 
-        final OutputStream out =
-            compression.createOutputStream(new FileOutputStream(file));
+      return ParallelDecompression.createInputStream(file);
+    }
 
-        if (!result.containsKey(sampleName)) {
-          result.put(sampleName,
-              new Entity(new FastqWriter(out), e.getValue()));
-        }
+    /**
+     * Create the output files and fill the table of the indexes. There is one
+     * output file by sample.
+     * @param read read to re-demultiplex
+     * @param compression compression of the output files
+     * @param table the table of the indexes to fill
+     * @return a list with the output files
+     * @throws IOException if one of the output directories cannot be created
+     */
+    private List<File> createOutputFiles(final int read,
+        final CompressionType compression,
+        final ReDemuxIndexTable<Integer> table) throws IOException {
 
-        result.get(sampleName).addPattern(e.getKey());
-      }
+      final List<File> result = new ArrayList<>();
+      final Map<String, Integer> samples = new HashMap<>();
 
-      return result;
-    }
+      for (Map.Entry<Pattern, Sample> e : this.newIndexes.entrySet()) {
 
-    //
-    // Internal Class
-    //
-    static final class Entity {
+        final String sampleProject = e.getValue().getSampleProject();
+        final String sampleName = e.getValue().getDemultiplexingName();
+        final String sampleIndex = e.getValue().getIndex1();
 
-      private FastqWriter fw;
-      private List<Pattern> patterns;
-      private Sample cs;
+        if (!samples.containsKey(sampleName)) {
 
-      void addPattern(final Pattern p) {
+          // Define the output directory
+          final File subdir = new File(this.outputDir, "Project_"
+              + sampleProject + File.separator + "Sample_" + sampleName);
 
-        if (patterns.contains(p))
-          throw new RuntimeException();
+          // Create output directory if not exists
+          if (!subdir.isDirectory()) {
 
-        this.patterns.add(p);
-      }
+            if (!subdir.mkdirs()) {
+              throw new IOException(
+                  "Cannot create output directory: " + subdir);
+            }
+          }
 
-      public FastqWriter getFw() {
-        return fw;
-      }
+          // Define the output file
+          final File file = new File(subdir,
+              sampleName
+                  + "_" + sampleIndex + "_L00" + lane + "_R" + read
+                  + "_redemux_.fastq" + compression.getExtension());
 
-      public List<Pattern> getPatterns() {
-        return patterns;
-      }
+          samples.put(sampleName, result.size());
+          result.add(file);
+        }
 
-      public Sample getCs() {
-        return cs;
+        table.addIndex(e.getKey().pattern(), samples.get(sampleName));
       }
 
-      Entity(final FastqWriter fw, final Sample cs) {
-        this.fw = fw;
-        this.patterns = new ArrayList<>();
-        this.cs = cs;
-      }
+      return result;
     }
 
     /**
@@ -580,31 +649,6 @@ public class ReDemux {
       rdl.reDemux();
   }
 
-  /**
-   * Get the number of mismatches of two string of the same length.
-   * @param a the first string
-   * @param b the second string
-   * @return the number of mismatches
-   */
-  private static int mismatches(final String a, final String b) {
-
-    Preconditions.checkNotNull(a, "a cannot be null");
-    Preconditions.checkNotNull(b, "b cannot be null");
-    Preconditions.checkArgument(a.length() == b.length(),
-        "The length of the 2 String must be equals");
-
-    final int len = a.length();
-    int result = 0;
-
-    for (int i = 0; i < len; i++) {
-      if (a.charAt(i) != b.charAt(i)) {
-        result++;
-      }
-    }
-
-    return result;
-  }
-
   //
   // Constructor
   //
@@ -0,0 +1,121 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.demux;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class define an exact-match table of the indexes to re-demultiplex.
+ * The wildcards ('.') of the indexes are expanded to all the possible bases
+ * when the index is added, so finding the targets of the index of a read only
+ * requires a hash lookup instead of matching the index against all the
+ * regular expressions.
+ * @param <E> type of the targets of the indexes
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class ReDemuxIndexTable<E> {
+
+  private static final char WILDCARD = '.';
+  private static final char[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+  private final Map<String, List<E>> table = new HashMap<>();
+
+  /**
+   * Add an index.
+   * @param index the index, can contains wildcards
+   * @param target the target of the index
+   */
+  void addIndex(final String index, final E target) {
+
+    checkNotNull(index, "index argument cannot be null");
+    checkNotNull(target, "target argument cannot be null");
+
+    addVariants(index.toCharArray(), 0, target);
+  }
+
+  /**
+   * Add all the variants of an index.
+   * @param index the index
+   * @param start the position of the first character to expand
+   * @param target the target of the index
+   */
+  private void addVariants(final char[] index, final int start,
+      final E target) {
+
+    for (int i = start; i < index.length; i++) {
+
+      if (index[i] == WILDCARD) {
+
+        for (char base : BASES) {
+          index[i] = base;
+          addVariants(index, i + 1, target);
+        }
+        index[i] = WILDCARD;
+
+        return;
+      }
+    }
+
+    final String variant = new String(index);
+    List<E> targets = this.table.get(variant);
+
+    if (targets == null) {
+      targets = new ArrayList<>(1);
+      this.table.put(variant, targets);
+    }
+
+    if (!targets.contains(target)) {
+      targets.add(target);
+    }
+  }
+
+  /**
+   * Get the targets of an index.
+   * @param index the index of a read
+   * @return a list with the targets of the index
+   */
+  List<E> get(final String index) {
+
+    final List<E> result = this.table.get(index);
+
+    return result == null ? Collections.<E> emptyList() : result;
+  }
+
+  /**
+   * Get the number of variants in the table.
+   * @return the number of variants in the table
+   */
+  int size() {
+
+    return this.table.size();
+  }
+
+}
@@ -43,8 +43,6 @@ import javax.swing.table.TableModel;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import fr.ens.biologie.genomique.eoulsan.EoulsanException;
-import fr.ens.biologie.genomique.eoulsan.bio.IlluminaReadId;
 import uk.ac.babraham.FastQC.Modules.AbstractQCModule;
 import uk.ac.babraham.FastQC.Report.HTMLReportArchive;
 import uk.ac.babraham.FastQC.Sequence.Sequence;
@@ -61,91 +59,208 @@ public class BadTiles extends AbstractQCModule {
   private static final int LANE_OFFSET = 10000;
   private static final double MIN_MEDIAN_SCORE = 20.0;
 
-  // public QualityCount[] qualityCounts = new QualityCount[0];
-  private final Map<Integer, QualityCount[]> tiles = new HashMap<>();
+  private final QualityHistograms histograms = new QualityHistograms();
   private final List<BadTile> badTiles = new ArrayList<>();
   private final Set<Integer> tilesWithOneOrMoreDefect = new HashSet<>();
 
-  private IlluminaReadId irid;
   private boolean calculated = false;
 
-  private static class QualityCount {
-    private final HashMap<Character, Long> counts = new HashMap<>();
+  /**
+   * This class store the count of each quality character for each cycle of
+   * each tile in a single array of longs. The tiles are stored with a dense
+   * index. The last tile is cached as the reads of a FASTQ file are sorted by
+   * tile.
+   */
+  private static final class QualityHistograms {
 
-    private long totalCounts = 0;
+    private static final int QUALITY_RANGE = 128;
 
-    public void addValue(char c) {
-      totalCounts++;
-      if (counts.containsKey(c)) {
-        counts.put(c, counts.get(c) + 1);
-      } else {
-        counts.put(c, 1L);
-      }
-    }
+    private final Map<Integer, Integer> tileIndexes = new HashMap<>();
+    private final List<Integer> tileIds = new ArrayList<>();
+    private long[] counts = new long[0];
+    private int cycleCount;
+
+    private int lastTileId = -1;
+    private int lastTileIndex = -1;
 
-    @SuppressWarnings("unused")
-    public long getTotalCount() {
-      return totalCounts;
+    /**
+     * Get the number of tiles.
+     * @return the number of tiles
+     */
+    int getTileCount() {
+      return this.tileIds.size();
     }
 
-    public char getMinChar() {
-      char minChar = 10000;
-      for (Character thisChar : counts.keySet()) {
-        if (thisChar < minChar)
-          minChar = thisChar;
-      }
+    /**
+     * Get the number of cycles.
+     * @return the number of cycles
+     */
+    int getCycleCount() {
+      return this.cycleCount;
+    }
 
-      return minChar;
+    /**
+     * Get the id of a tile.
+     * @param tileIndex index of the tile
+     * @return the id of the tile
+     */
+    int getTileId(final int tileIndex) {
+      return this.tileIds.get(tileIndex);
     }
 
-    public char getMaxChar() {
-      char maxChar = 0;
+    /**
+     * Add the qualities of a read.
+     * @param tileId id of the tile of the read
+     * @param quality quality string of the read
+     */
+    void add(final int tileId, final String quality) {
+
+      final int len = quality.length();
 
-      for (Character thisChar : counts.keySet()) {
-        if (thisChar > maxChar)
-          maxChar = thisChar;
+      if (len > this.cycleCount) {
+        resizeCycles(len);
       }
 
-      return maxChar;
+      final int tileIndex = getTileIndex(tileId);
+      final long[] counts = this.counts;
+      int pos = tileIndex * this.cycleCount * QUALITY_RANGE;
 
+      for (int i = 0; i < len; i++) {
+        counts[pos + (quality.charAt(i) & 0x7F)]++;
+        pos += QUALITY_RANGE;
+      }
     }
 
-    @SuppressWarnings("unused")
-    public double getMean(int offset) {
-      long total = 0;
-      long count = 0;
+    /**
+     * Get the minimal quality character found.
+     * @return the minimal quality character or 0 if no quality has been added
+     */
+    char getMinChar() {
+
+      final long[] counts = this.counts;
+      char result = 0;
 
-      for (Character thisChar : counts.keySet()) {
-        total += counts.get(thisChar) * (thisChar - offset);
-        count += counts.get(thisChar);
+      for (int i = 0; i < counts.length; i++) {
+
+        final char c = (char) (i % QUALITY_RANGE);
+        if (counts[i] != 0 && (result == 0 || c < result)) {
+          result = c;
+        }
       }
 
-      return ((double) total) / count;
+      return result;
     }
 
-    public double getPercentile(int offset, int percentile) {
-      Character[] chars = counts.keySet().toArray(new Character[counts.size()]);
-      Arrays.sort(chars);
+    /**
+     * Get a percentile of the quality of a cycle of a tile.
+     * @param tileIndex the index of the tile
+     * @param cycle the cycle (0 based)
+     * @param offset the quality offset
+     * @param percentile the percentile
+     * @return the percentile or NaN if there is no quality for the cycle
+     */
+    double getPercentile(final int tileIndex, final int cycle,
+        final int offset, final int percentile) {
+
+      final long[] counts = this.counts;
+      final int start = (tileIndex * this.cycleCount + cycle) * QUALITY_RANGE;
+
       long total = 0;
-      for (Character aChar : chars) {
-        total += counts.get(aChar);
+      for (int i = 0; i < QUALITY_RANGE; i++) {
+        total += counts[start + i];
+      }
+
+      // The reads of the tile can be shorter than the longest read
+      if (total == 0) {
+        return Double.NaN;
       }
 
       total *= percentile;
       total /= 100;
 
       long count = 0;
-      for (Character aChar : chars) {
-        count += counts.get(aChar);
+      for (int i = 0; i < QUALITY_RANGE; i++) {
+
+        final long n = counts[start + i];
+        if (n == 0) {
+          continue;
+        }
+
+        count += n;
         if (count >= total) {
-          return (aChar - offset);
+          return i - offset;
         }
       }
 
       return -1;
+    }
 
+    /**
+     * Clear the counts.
+     */
+    void clear() {
+
+      this.tileIndexes.clear();
+      this.tileIds.clear();
+      this.counts = new long[0];
+      this.cycleCount = 0;
+      this.lastTileId = -1;
+      this.lastTileIndex = -1;
     }
 
+    /**
+     * Get the index of a tile, create it if not exists.
+     * @param tileId id of the tile
+     * @return the index of the tile
+     */
+    private int getTileIndex(final int tileId) {
+
+      if (tileId == this.lastTileId) {
+        return this.lastTileIndex;
+      }
+
+      Integer index = this.tileIndexes.get(tileId);
+
+      if (index == null) {
+
+        index = this.tileIds.size();
+        this.tileIds.add(tileId);
+        this.tileIndexes.put(tileId, index);
+
+        final int tileSize = this.cycleCount * QUALITY_RANGE;
+        final int required = (index + 1) * tileSize;
+
+        if (required > this.counts.length) {
+          this.counts = Arrays.copyOf(this.counts,
+              Math.max(required, this.counts.length * 2));
+        }
+      }
+
+      this.lastTileId = tileId;
+      this.lastTileIndex = index;
+
+      return index;
+    }
+
+    /**
+     * Change the number of cycles of all the tiles.
+     * @param newCycleCount the new number of cycles
+     */
+    private void resizeCycles(final int newCycleCount) {
+
+      final int oldTileSize = this.cycleCount * QUALITY_RANGE;
+      final int newTileSize = newCycleCount * QUALITY_RANGE;
+      final int tileCount = this.tileIds.size();
+      final long[] newCounts = new long[Math.max(tileCount, 1) * newTileSize];
+
+      for (int i = 0; i < tileCount; i++) {
+        System.arraycopy(this.counts, i * oldTileSize, newCounts,
+            i * newTileSize, oldTileSize);
+      }
+
+      this.counts = newCounts;
+      this.cycleCount = newCycleCount;
+    }
   }
 
   private class ResultsTable extends AbstractTableModel {
@@ -370,7 +485,7 @@ public class BadTiles extends AbstractQCModule {
     if (this.badTiles.size() > 0) {
 
       final double ratio = (double) this.tilesWithOneOrMoreDefect.size()
-          / (double) this.tiles.size();
+          / (double) this.histograms.getTileCount();
 
       return ratio > 0.25;
 
@@ -390,10 +505,9 @@ public class BadTiles extends AbstractQCModule {
   @Override
   public void reset() {
 
-    this.tiles.clear();
+    this.histograms.clear();
     this.badTiles.clear();
     this.tilesWithOneOrMoreDefect.clear();
-    this.irid = null;
     this.calculated = false;
   }
 
@@ -402,78 +516,106 @@ public class BadTiles extends AbstractQCModule {
 
     this.calculated = false;
 
-    // Parse sequence id
-    try {
-      if (this.irid == null)
-        this.irid = new IlluminaReadId(sequence.getID().substring(1));
-      else
-        this.irid.parse(sequence.getID().substring(1));
-    } catch (EoulsanException e) {
+    // Encode in a integer the lane number and the tile number
+    final int tileId = parseTileId(sequence.getID());
 
-      // This is not an illumina id
+    // This is not an illumina id
+    if (tileId == -1) {
       return;
     }
 
-    // Encode in a integer the lane number and the tile number
-    final int tileId = this.irid.getFlowCellLane() * LANE_OFFSET
-        + this.irid.getTileNumberInFlowCellLane();
+    this.histograms.add(tileId, sequence.getQualityString());
+  }
 
-    // Get the quality of each cycle in an array
-    final char[] qual = sequence.getQualityString().toCharArray();
+  /**
+   * Get the lane and the tile of a read from its id without parsing the whole
+   * id. Both the Casava 1.8 and the older Illumina read ids are handled.
+   * @param id the id of the read, starting with '@'
+   * @return the lane number and the tile number encoded in an integer or -1
+   *         if the id is not an Illumina id
+   */
+  static int parseTileId(final String id) {
 
-    final QualityCount[] qualityCounts;
+    final int len = id.length();
 
-    // Get the the quality score object for the tileId from this.tiles
-    if (this.tiles.containsKey(tileId)) {
+    // Get the position of the fields of the name of the read
+    final int[] fields = new int[8];
+    int fieldCount = 1;
+    fields[0] = 1;
+    int end = 1;
 
-      final QualityCount[] qc = this.tiles.get(tileId);
-      if (qc.length < qual.length) {
+    for (; end < len; end++) {
 
-        qualityCounts = new QualityCount[qual.length];
-        System.arraycopy(qc, 0, qualityCounts, 0, qc.length);
-        for (int i = qc.length; i < qualityCounts.length; i++)
-          qualityCounts[i] = new QualityCount();
+      final char c = id.charAt(end);
 
-      } else {
-        qualityCounts = qc;
+      if (c == ' ' || c == '\t' || c == '#' || c == '/') {
+        break;
       }
 
-    } else {
-      qualityCounts = new QualityCount[qual.length];
-      this.tiles.put(tileId, qualityCounts);
-      for (int i = 0; i < qualityCounts.length; i++)
-        qualityCounts[i] = new QualityCount();
+      if (c == ':') {
+        if (fieldCount == fields.length) {
+          return -1;
+        }
+        fields[fieldCount++] = end + 1;
+      }
     }
 
-    // The quality score of each score to qualityCounts
-    for (int i = 0; i < qual.length; i++) {
-      qualityCounts[i].addValue(qual[i]);
+    final int laneField;
+    switch (fieldCount) {
+
+    // Casava 1.8 id: instrument:run:flowcell:lane:tile:x:y[:umi]
+    case 7:
+    case 8:
+      laneField = 3;
+      break;
+
+    // Old id: instrument:lane:tile:x:y
+    case 5:
+      laneField = 1;
+      break;
+
+    default:
+      return -1;
     }
 
+    final int lane =
+        parseInt(id, fields[laneField], fields[laneField + 1] - 1);
+    final int tile =
+        parseInt(id, fields[laneField + 1], fields[laneField + 2] - 1);
+
+    if (lane < 0 || tile < 0) {
+      return -1;
+    }
+
+    return lane * LANE_OFFSET + tile;
   }
 
-  private static char[] calculateOffsets(final QualityCount[] qualityCounts) {
-    // Works out from the set of chars what is the most
-    // likely encoding scale for this file.
+  /**
+   * Parse a positive integer in a string.
+   * @param s the string
+   * @param start start of the integer
+   * @param end end of the integer (exclusive)
+   * @return the integer or -1 if the substring is not a positive integer
+   */
+  private static int parseInt(final String s, final int start,
+      final int end) {
 
-    char minChar = 0;
-    char maxChar = 0;
+    if (start >= end || end - start > 9) {
+      return -1;
+    }
 
-    for (int q = 0; q < qualityCounts.length; q++) {
-      if (q == 0) {
-        minChar = qualityCounts[q].getMinChar();
-        maxChar = qualityCounts[q].getMaxChar();
-      } else {
-        if (qualityCounts[q].getMinChar() < minChar) {
-          minChar = qualityCounts[q].getMinChar();
-        }
-        if (qualityCounts[q].getMaxChar() > maxChar) {
-          maxChar = qualityCounts[q].getMaxChar();
-        }
+    int result = 0;
+
+    for (int i = start; i < end; i++) {
+
+      final int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
       }
+      result = result * 10 + digit;
     }
 
-    return new char[] {minChar, maxChar};
+    return result;
   }
 
   /**
@@ -481,35 +623,36 @@ public class BadTiles extends AbstractQCModule {
    */
   private synchronized void computeResults() {
 
-    PhredEncoding encodingScheme = null;
+    final QualityHistograms histograms = this.histograms;
 
-    // for each tile found
-    for (Map.Entry<Integer, QualityCount[]> e : this.tiles.entrySet()) {
-
-      final int tileId = e.getKey();
-      final QualityCount[] qualityCounts = e.getValue();
-
-      final char[] range = calculateOffsets(qualityCounts);
+    if (histograms.getTileCount() > 0) {
 
       // Get the encoding
-      if (encodingScheme == null)
-        encodingScheme = PhredEncoding.getFastQEncodingOffset(range[0]);
+      final PhredEncoding encodingScheme =
+          PhredEncoding.getFastQEncodingOffset(histograms.getMinChar());
 
       // Get the offset
       final int offset = encodingScheme.offset();
 
-      // Compute the median for cycles of the tile
-      for (int i = 0; i < qualityCounts.length; i++) {
+      // for each tile found
+      for (int tileIndex = 0; tileIndex < histograms
+          .getTileCount(); tileIndex++) {
 
-        final double median = qualityCounts[i].getPercentile(offset, 50);
+        final int tileId = histograms.getTileId(tileIndex);
 
-        // Test if the median quality score of the tile is bad
-        if (median < MIN_MEDIAN_SCORE) {
+        // Compute the median for cycles of the tile
+        for (int i = 0; i < histograms.getCycleCount(); i++) {
 
-          badTiles.add(new BadTile(tileId, i + 1, median));
-          this.tilesWithOneOrMoreDefect.add(tileId);
-        }
+          final double median =
+              histograms.getPercentile(tileIndex, i, offset, 50);
 
+          // Test if the median quality score of the tile is bad
+          if (median < MIN_MEDIAN_SCORE) {
+
+            badTiles.add(new BadTile(tileId, i + 1, median));
+            this.tilesWithOneOrMoreDefect.add(tileId);
+          }
+        }
       }
     }
 
@@ -0,0 +1,368 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.common.hash.Hashing;
+
+import fr.ens.biologie.genomique.aozan.Common;
+import fr.ens.biologie.genomique.aozan.Globals;
+
+/**
+ * This class define a persistent cache for the Blast results of the
+ * overrepresented sequences. There is one cache file for each Blast database
+ * and command line. The entries of a cache file are sorted from the least
+ * recently used to the most recently used and the least recently used entries
+ * are removed when the maximal number of entries is reached. A lock file
+ * allows several Aozan instances to share the same cache directory. Each entry
+ * is stored on one line, the backslash, tabulation and new line characters of
+ * the entries are escaped.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+class BlastResultCache {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  private static final String CACHE_FILE_PREFIX = "blast-cache-";
+  private static final String CACHE_FILE_EXTENSION = ".txt";
+  private static final String LOCK_FILE_NAME = "blast-cache.lock";
+  private static final String NO_HIT = "null";
+
+  // A JVM cannot hold two locks on the same file
+  private static final Object SAVE_LOCK = new Object();
+
+  private final File cacheFile;
+  private final File lockFile;
+  private final int maxEntries;
+
+  private final Map<String, String> entries;
+
+  // The new and recently used entries, from the least recently used
+  private final Map<String, String> newEntries = new LinkedHashMap<>();
+
+  private long hits;
+  private long misses;
+
+  //
+  // Cache methods
+  //
+
+  /**
+   * Test if a sequence is in the cache.
+   * @param sequence the sequence
+   * @return true if the sequence is in the cache
+   */
+  synchronized boolean contains(final String sequence) {
+
+    return this.entries.containsKey(sequence);
+  }
+
+  /**
+   * Get the Blast result of a sequence. The hit counter is updated.
+   * @param sequence the sequence
+   * @param results the map where to put the result of the sequence if the
+   *          sequence is in the cache. The result is null if the sequence has
+   *          no Blast hit
+   * @return true if the sequence is in the cache
+   */
+  synchronized boolean get(final String sequence,
+      final Map<String, BlastResultHit> results) {
+
+    checkNotNull(sequence, "sequence argument cannot be null");
+    checkNotNull(results, "results argument cannot be null");
+
+    final String line = this.entries.get(sequence);
+
+    if (line == null) {
+      return false;
+    }
+
+    this.hits++;
+
+    // Mark the entry as recently used
+    this.newEntries.remove(sequence);
+    this.newEntries.put(sequence, line);
+
+    results.put(sequence, NO_HIT.equals(line)
+        ? null : BlastResultHit.fromCacheString(sequence, line));
+
+    return true;
+  }
+
+  /**
+   * Add the Blast results of sequences in the cache. Each added result is
+   * counted as a cache miss.
+   * @param results the results to add
+   */
+  synchronized void putAll(final Map<String, BlastResultHit> results) {
+
+    checkNotNull(results, "results argument cannot be null");
+
+    for (Map.Entry<String, BlastResultHit> e : results.entrySet()) {
+
+      final String line =
+          e.getValue() == null ? NO_HIT : e.getValue().toCacheString();
+
+      this.entries.put(e.getKey(), line);
+      this.newEntries.remove(e.getKey());
+      this.newEntries.put(e.getKey(), line);
+      this.misses++;
+    }
+  }
+
+  /**
+   * Save the new and the recently used entries in the cache file. The entries
+   * added by other Aozan instances since the loading of the cache are kept.
+   * @throws IOException if an error occurs while saving the cache
+   */
+  synchronized void save() throws IOException {
+
+    if (this.newEntries.isEmpty()) {
+      return;
+    }
+
+    synchronized (SAVE_LOCK) {
+      try (RandomAccessFile raf = new RandomAccessFile(this.lockFile, "rw");
+          FileChannel channel = raf.getChannel();
+          FileLock lock = channel.lock()) {
+
+        // Reload the cache file to get the entries of the other instances
+        final Map<String, String> merged = newLRUMap(this.maxEntries);
+        load(this.cacheFile, merged);
+        merged.putAll(this.newEntries);
+
+        final File tmpFile = new File(this.cacheFile.getParentFile(),
+            this.cacheFile.getName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpFile.toPath(),
+            Globals.DEFAULT_FILE_ENCODING)) {
+
+          for (Map.Entry<String, String> e : merged.entrySet()) {
+            writer.write(
+                escape(e.getKey()) + '\t' + escape(e.getValue()) + '\n');
+          }
+        }
+
+        Files.move(tmpFile.toPath(), this.cacheFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+
+        this.newEntries.clear();
+      }
+    }
+
+    LOGGER.info("FASTQC: blast cache, "
+        + this.hits + " hit(s), " + this.misses + " miss(es), "
+        + this.entries.size() + " entries in " + this.cacheFile);
+  }
+
+  /**
+   * Load the entries of a cache file.
+   * @param file the cache file
+   * @param map the map where to put the entries
+   * @throws IOException if an error occurs while reading the cache file
+   */
+  private static void load(final File file, final Map<String, String> map)
+      throws IOException {
+
+    if (!file.isFile()) {
+      return;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(),
+        Globals.DEFAULT_FILE_ENCODING)) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+
+        // The tabulations of the entries are escaped
+        final int pos = line.indexOf('\t');
+        if (pos > 0) {
+          map.put(unescape(line.substring(0, pos)),
+              unescape(line.substring(pos + 1)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Escape the backslash, tabulation and new line characters of a string.
+   * @param s the string to escape
+   * @return the escaped string
+   */
+  static String escape(final String s) {
+
+    final StringBuilder sb = new StringBuilder(s.length());
+
+    for (int i = 0; i < s.length(); i++) {
+
+      final char c = s.charAt(i);
+      switch (c) {
+
+      case '\\':
+        sb.append("\\\\");
+        break;
+
+      case '\t':
+        sb.append("\\t");
+        break;
+
+      case '\n':
+        sb.append("\\n");
+        break;
+
+      case '\r':
+        sb.append("\\r");
+        break;
+
+      default:
+        sb.append(c);
+        break;
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Unescape a string escaped by the escape() method.
+   * @param s the string to unescape
+   * @return the unescaped string
+   */
+  static String unescape(final String s) {
+
+    if (s.indexOf('\\') == -1) {
+      return s;
+    }
+
+    final StringBuilder sb = new StringBuilder(s.length());
+
+    for (int i = 0; i < s.length(); i++) {
+
+      final char c = s.charAt(i);
+
+      if (c != '\\' || i == s.length() - 1) {
+        sb.append(c);
+        continue;
+      }
+
+      final char next = s.charAt(++i);
+      switch (next) {
+
+      case 't':
+        sb.append('\t');
+        break;
+
+      case 'n':
+        sb.append('\n');
+        break;
+
+      case 'r':
+        sb.append('\r');
+        break;
+
+      default:
+        sb.append(next);
+        break;
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Create a map that keep the entries in access order and remove the least
+   * recently used entries when the maximal number of entries is reached.
+   * @param maxEntries maximal number of entries
+   * @return a new map
+   */
+  private static Map<String, String> newLRUMap(final int maxEntries) {
+
+    return new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          final Map.Entry<String, String> eldest) {
+
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param cacheDir cache directory
+   * @param blastIdentity a string that identify the Blast database and the
+   *          Blast arguments
+   * @param maxEntries maximal number of entries of the cache
+   * @throws IOException if an error occurs while loading the cache
+   */
+  BlastResultCache(final File cacheDir, final String blastIdentity,
+      final int maxEntries) throws IOException {
+
+    checkNotNull(cacheDir, "cacheDir argument cannot be null");
+    checkNotNull(blastIdentity, "blastIdentity argument cannot be null");
+    checkArgument(maxEntries > 0, "maxEntries must be greater than 0");
+
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IOException("Unable to create blast cache directory: "
+          + cacheDir);
+    }
+
+    final String hash = Hashing.sha1()
+        .hashString(blastIdentity, Globals.DEFAULT_FILE_ENCODING).toString();
+
+    this.cacheFile = new File(cacheDir,
+        CACHE_FILE_PREFIX + hash + CACHE_FILE_EXTENSION);
+    this.lockFile = new File(cacheDir, LOCK_FILE_NAME);
+    this.maxEntries = maxEntries;
+    this.entries = newLRUMap(maxEntries);
+
+    load(this.cacheFile, this.entries);
+  }
+
+}
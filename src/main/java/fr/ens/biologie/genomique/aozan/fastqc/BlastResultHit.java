@@ -161,10 +161,66 @@ class BlastResultHit {
     return this.isNull;
   }
 
+  //
+  // Cache methods
+  //
+
+  /**
+   * Convert the object to a string that can be stored in a cache file.
+   * @return a string with the data of the object
+   */
+  String toCacheString() {
+
+    return (this.htmlTypeOutput ? "1" : "0")
+        + '\t' + (this.isNull ? "1" : "0") + '\t' + this.queryLength + '\t'
+        + this.countHits + '\t' + this.prcIdentity + '\t' + this.queryCover
+        + '\t' + this.hspEValue + '\t' + this.result;
+  }
+
+  /**
+   * Create an object from a string stored in a cache file.
+   * @param sequence the sequence
+   * @param s the string created by the toCacheString() method
+   * @return a new BlastResultHit object
+   */
+  static BlastResultHit fromCacheString(final String sequence,
+      final String s) {
+
+    final String[] fields = s.split("\t", 8);
+
+    if (fields.length != 8) {
+      throw new IllegalArgumentException("Invalid blast cache entry: " + s);
+    }
+
+    final BlastResultHit result =
+        new BlastResultHit(sequence, "1".equals(fields[0]));
+
+    result.isNull = "1".equals(fields[1]);
+    result.queryLength = Integer.parseInt(fields[2]);
+    result.countHits = Integer.parseInt(fields[3]);
+    result.prcIdentity = Integer.parseInt(fields[4]);
+    result.queryCover = Integer.parseInt(fields[5]);
+    result.hspEValue = "null".equals(fields[6]) ? null : fields[6];
+    result.result = "null".equals(fields[7]) ? null : fields[7];
+
+    return result;
+  }
+
   //
   // Constructor
   //
 
+  /**
+   * Private constructor used to create an object from the cache.
+   * @param sequence query blast
+   * @param htmlTypeOutput true if output in html type, otherwise in text type
+   */
+  private BlastResultHit(final String sequence, final boolean htmlTypeOutput) {
+
+    this.sequence = sequence;
+    this.htmlTypeOutput = htmlTypeOutput;
+  }
+
   /**
    * Public constructor. Object contains all information for one blast response
    * to a query.
@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -79,6 +80,8 @@ public class OverrepresentedSequencesBlast {
 
   private static final boolean BLAST_RESULT_HTML_TYPE = true;
 
+  private static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
+
   private static final Object LOCK = new Object();
 
   private static final String BLAST_EXECUTABLE_DOCKER = "blastall";
@@ -101,7 +104,10 @@ public class OverrepresentedSequencesBlast {
 
   // Save sequence and result blast for the run
   private final Map<String, BlastResultHit> sequencesAlreadyAnalysis =
-      new HashMap<>();
+      Collections.synchronizedMap(new HashMap<String, BlastResultHit>());
+
+  // Persistent cache of the blast results, null if not enabled
+  private BlastResultCache cache;
 
   private boolean useDocker;
   private boolean configured;
@@ -170,16 +176,22 @@ public class OverrepresentedSequencesBlast {
 
       if (ITERATION_TAG.equals(qName)) {
 
-        if (this.hitCount > 0) {
+        // Results are indexed by the sequence and not by the query id
+        final String sequence = this.sequences.get(this.seqId);
+
+        if (sequence != null) {
 
-          BlastResultHit blastResultHit =
-              new BlastResultHit(this.hitNum, this.hitResult, this.hspEValue,
-                  this.hspIdentity, this.hspAlignLen, this.hitCount,
-                  this.queryLength, this.seqId, BLAST_RESULT_HTML_TYPE);
+          if (this.hitCount > 0) {
 
-          this.result.put(seqId, blastResultHit);
-        } else {
-          this.result.put(seqId, null);
+            BlastResultHit blastResultHit = new BlastResultHit(this.hitNum,
+                this.hitResult, this.hspEValue, this.hspIdentity,
+                this.hspAlignLen, this.hitCount, this.queryLength, sequence,
+                BLAST_RESULT_HTML_TYPE);
+
+            this.result.put(sequence, blastResultHit);
+          } else {
+            this.result.put(sequence, null);
+          }
         }
 
         this.seqId = null;
@@ -253,8 +265,8 @@ public class OverrepresentedSequencesBlast {
 
       // Empty responses
       if (this.iterationCount == 0) {
-        for (String seqId : this.sequences.keySet()) {
-          this.result.put(seqId, null);
+        for (String sequence : this.sequences.values()) {
+          this.result.put(sequence, null);
         }
       }
     }
@@ -363,6 +375,9 @@ public class OverrepresentedSequencesBlast {
         // with no hit
         loadSequencesToIgnore();
 
+        // Load the persistent cache of the blast results
+        configureCache(conf, new File(blastDBPath + ".nal"));
+
         LOGGER.info("FASTQC: blast is enabled, command line = "
             + this.blastCommonCommandLine);
 
@@ -376,6 +391,40 @@ public class OverrepresentedSequencesBlast {
     this.configured = true;
   }
 
+  /**
+   * Configure the persistent cache of the blast results. The cache is
+   * specific to the blast command line and to the version of the database.
+   * @param conf object with the collector configuration
+   * @param blastDBFile the blast database file
+   */
+  private void configureCache(final CollectorConfiguration conf,
+      final File blastDBFile) {
+
+    final File cacheDir =
+        conf.getFile(Settings.QC_CONF_FASTQC_BLAST_CACHE_PATH_KEY);
+
+    if (cacheDir == null || cacheDir.getPath().isEmpty()) {
+      return;
+    }
+
+    final int maxEntries =
+        conf.getInt(Settings.QC_CONF_FASTQC_BLAST_CACHE_MAX_ENTRIES_KEY,
+            DEFAULT_CACHE_MAX_ENTRIES);
+
+    final String blastIdentity = this.blastCommonCommandLine
+        + "\t" + blastDBFile.length() + "\t" + blastDBFile.lastModified();
+
+    try {
+      this.cache = new BlastResultCache(cacheDir, blastIdentity,
+          Math.max(1, maxEntries));
+
+      LOGGER.info("FASTQC: blast cache is enabled in " + cacheDir);
+    } catch (final IOException e) {
+      LOGGER.warning("FASTQC: blast cache disabled, "
+          + e.getMessage() + '\n' + stackTraceToString(e));
+    }
+  }
+
   /**
    * Add in hashMap all sequences identified like to fail blastn analysis for
    * skipping them.
@@ -428,6 +477,7 @@ public class OverrepresentedSequencesBlast {
     checkNotNull(sequence, "sequence argument cannot be null");
 
     if (!this.sequencesAlreadyAnalysis.containsKey(sequence)
+        && (this.cache == null || !this.cache.contains(sequence))
         && !this.submittedSequences.contains(sequence)) {
       synchronized (this.submittedSequences) {
         this.submittedSequences.add(sequence);
@@ -458,6 +508,12 @@ public class OverrepresentedSequencesBlast {
       return this.sequencesAlreadyAnalysis.get(sequence);
     }
 
+    // Return the result if it is in the persistent cache
+    if (this.cache != null
+        && this.cache.get(sequence, this.sequencesAlreadyAnalysis)) {
+      return this.sequencesAlreadyAnalysis.get(sequence);
+    }
+
     synchronized (this.submittedSequences) {
 
       // Return the result if it already been computed since the end of the lock
@@ -509,6 +565,20 @@ public class OverrepresentedSequencesBlast {
 
   private void blast() throws IOException, AozanException {
 
+    // Do not blast the sequences that are in the persistent cache
+    if (this.cache != null) {
+      for (Iterator<String> it = this.submittedSequences.iterator(); it
+          .hasNext();) {
+        if (this.cache.get(it.next(), this.sequencesAlreadyAnalysis)) {
+          it.remove();
+        }
+      }
+
+      if (this.submittedSequences.isEmpty()) {
+        return;
+      }
+    }
+
     // Create temporary files
     File inputFastaFile = createTempFile(this.tmpDir, "blast_", "_input.fast");
     File resultXMLFile = createTempFile(this.tmpDir, "blast_", "_output.xml");
@@ -648,12 +718,31 @@ public class OverrepresentedSequencesBlast {
       // Search the best hit
       this.sequencesAlreadyAnalysis.putAll(iterationHandler.getResult());
 
+      // Update the persistent cache
+      if (this.cache != null) {
+        this.cache.putAll(iterationHandler.getResult());
+        saveCache();
+      }
+
     } catch (final IOException | SAXException
         | ParserConfigurationException e) {
       throw new AozanException(e);
     }
   }
 
+  /**
+   * Save the persistent cache of the blast results.
+   */
+  private void saveCache() {
+
+    try {
+      this.cache.save();
+    } catch (final IOException e) {
+      LOGGER.warning("FASTQC: fail to save the blast cache, "
+          + e.getMessage() + '\n' + stackTraceToString(e));
+    }
+  }
+
   //
   // Singleton method
   //
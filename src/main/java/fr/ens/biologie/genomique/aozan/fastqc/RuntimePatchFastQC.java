@@ -23,12 +23,21 @@
 
 package fr.ens.biologie.genomique.aozan.fastqc;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Logger;
+
 import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Common;
+import fr.ens.biologie.genomique.aozan.io.ParallelDecompression;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.NotFoundException;
+import javassist.expr.ExprEditor;
+import javassist.expr.NewExpr;
 
 /**
  * This class redefine methods or constructors from FastQC to provide access to
@@ -39,6 +48,13 @@ import javassist.NotFoundException;
  */
 public class RuntimePatchFastQC {
 
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  /** Number of threads used to uncompress the files opened by a thread. */
+  private static final ThreadLocal<Integer> DECOMPRESSION_THREADS =
+      new ThreadLocal<>();
+
   /**
    * Add code at the beginning on the method.
    * ContaminentFinder.findContaminantHit to call the version Aozan of this
@@ -122,6 +138,151 @@ public class RuntimePatchFastQC {
     }
   }
 
+  /**
+   * Replace the streams that uncompress the FASTQ files in the constructor of
+   * FastQFile by the streams of Aozan that uncompress the files with several
+   * threads. The gzip and bzip2 streams of FastQC are not created and the
+   * uncompressed stream is created when the reader of the file is created.
+   * The class is not patched if it does not contain the fields and the reader
+   * used by the patch.
+   * @throws CannotCompileException thrown when bytecode transformation has
+   *           failed.
+   */
+  public static void rewriteFastQFileStreams() throws CannotCompileException {
+
+    try {
+
+      // Get the class to modify
+      final CtClass cc = ClassPool.getDefault()
+          .get("uk.ac.babraham.FastQC.Sequence.FastQFile");
+
+      // Check class not frozen
+      if (cc != null && !cc.isFrozen()) {
+
+        if (!isFastQFilePatchable(cc)) {
+          LOGGER.warning("The FastQFile class of this version of FastQC "
+              + "cannot be patched, the FASTQ files will be uncompressed by "
+              + "FastQC with only one thread");
+          return;
+        }
+
+        cc.instrument(new ExprEditor() {
+
+          @Override
+          public void edit(final NewExpr e) throws CannotCompileException {
+
+            final String className = e.getClassName();
+
+            if (className.endsWith(".MultiMemberGZIPInputStream")
+                || "org.itadaki.bzip2.BZip2InputStream".equals(className)) {
+              e.replace("$_ = null;");
+
+            } else if ("java.io.InputStreamReader".equals(className)) {
+              e.replace("$_ = new java.io.InputStreamReader("
+                  + RuntimePatchFastQC.class.getName()
+                  + ".uncompressedInputStream($1, file, fis));");
+            }
+          }
+        });
+
+        // Load the class by the ClassLoader
+        cc.toClass();
+      }
+
+    } catch (final NotFoundException e) {
+      // Nothing to do
+    }
+  }
+
+  /**
+   * Test if the FastQFile class contains the private fields with the file and
+   * its input stream and the creation of the reader of the file used by the
+   * patch.
+   * @param cc the FastQFile class
+   * @return true if the class can be patched
+   * @throws CannotCompileException if an error occurs while reading the class
+   */
+  private static boolean isFastQFilePatchable(final CtClass cc)
+      throws CannotCompileException {
+
+    try {
+
+      final CtClass fileType = cc.getDeclaredField("file").getType();
+      final CtClass fisType = cc.getDeclaredField("fis").getType();
+
+      if (!File.class.getName().equals(fileType.getName()) || !fisType
+          .subtypeOf(ClassPool.getDefault().get(InputStream.class.getName()))) {
+        return false;
+      }
+
+    } catch (final NotFoundException e) {
+      return false;
+    }
+
+    // Search the creation of the reader without modifying the class
+    final boolean[] readerFound = new boolean[1];
+
+    cc.instrument(new ExprEditor() {
+
+      @Override
+      public void edit(final NewExpr e) {
+
+        if ("java.io.InputStreamReader".equals(e.getClassName())) {
+          readerFound[0] = true;
+        }
+      }
+    });
+
+    return readerFound[0];
+  }
+
+  /**
+   * Get the uncompressed input stream of a FASTQ file opened by FastQC. This
+   * method is called by the patched FastQFile class.
+   * @param in the input stream created by FastQC, null if the file is
+   *          compressed
+   * @param file the FASTQ file
+   * @param fis the input stream of the FASTQ file
+   * @return an uncompressed input stream
+   * @throws IOException if an error occurs while reading the file
+   */
+  public static InputStream uncompressedInputStream(final InputStream in,
+      final File file, final InputStream fis) throws IOException {
+
+    if (in != null) {
+      return in;
+    }
+
+    final Integer threads = DECOMPRESSION_THREADS.get();
+
+    return ParallelDecompression.createInputStream(file, fis,
+        threads == null ? ParallelDecompression.getDefaultThreadCount()
+            : threads);
+  }
+
+  /**
+   * Set the number of threads used to uncompress the FASTQ files opened by
+   * FastQC in the current thread.
+   * @param threads the number of threads, 1 to disable parallel uncompression
+   */
+  public static void setDecompressionThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be greater than 0");
+    }
+
+    DECOMPRESSION_THREADS.set(threads);
+  }
+
+  /**
+   * Restore the default number of threads used to uncompress the FASTQ files
+   * opened by FastQC in the current thread.
+   */
+  public static void clearDecompressionThreads() {
+
+    DECOMPRESSION_THREADS.remove();
+  }
+
   /**
    * Execute method who patch code from FastQC before call in Aozan.
    * @throws AozanException throw an error occurs during modification bytecode
@@ -145,6 +306,8 @@ public class RuntimePatchFastQC {
 
       changeSuperClassOverrepresentedModule(useBlast);
 
+      rewriteFastQFileStreams();
+
     } catch (final CannotCompileException e) {
       throw new AozanException(e);
 
@@ -51,9 +51,10 @@ public class FastqScreen {
   private static final Logger LOGGER = Common.getLogger();
 
   private final File tmpDir;
-  private final int confThreads;
+  private final int mapperThreads;
   private final String mapperName;
   private final String mapperArgument;
+  private final int concurrentGenomes;
 
   // Fields for delayed initialization of fastqScreenGenomes
   private FastqScreenGenomes fastqScreenGenomes;
@@ -70,6 +71,17 @@ public class FastqScreen {
     return this.fastqScreenGenomes;
   }
 
+  /**
+   * Get the number of processors used to map the reads of a sample. When
+   * several genomes are mapped at the same time, each genome uses at least
+   * one processor.
+   * @return the number of processors
+   */
+  public int getMapperThreads() {
+
+    return Math.max(this.mapperThreads, this.concurrentGenomes);
+  }
+
   /**
    * Mode pair-end : execute fastqscreen.
    * @param fastqRead fastq file input for mapper
@@ -117,15 +129,16 @@ public class FastqScreen {
     final Stopwatch timer = Stopwatch.createStarted();
 
     final FastqScreenPseudoMapReduce pmr = new FastqScreenPseudoMapReduce(
-        this.tmpDir, isPairedMode, this.mapperName, this.mapperArgument);
+        this.tmpDir, isPairedMode, this.mapperName, this.mapperArgument,
+        this.concurrentGenomes);
 
     try {
 
       if (isPairedMode) {
         pmr.doMap(fastqRead1, fastqRead2, genomes, sampleGenome,
-            this.confThreads);
+            this.mapperThreads);
       } else {
-        pmr.doMap(fastqRead1, genomes, sampleGenome, this.confThreads);
+        pmr.doMap(fastqRead1, genomes, sampleGenome, this.mapperThreads);
       }
 
       LOGGER.fine("FASTQSCREEN: step map for "
@@ -133,6 +146,11 @@ public class FastqScreen {
           + (isPairedMode ? "paired" : "single") + " on genome(s) " + genomes
           + " in " + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
 
+      // The hits have already been counted in memory
+      if (pmr.isInMemoryHitCount()) {
+        return pmr.getFastqScreenResult();
+      }
+
       timer.reset();
       timer.start();
 
@@ -177,7 +195,18 @@ public class FastqScreen {
 
     this.tmpDir = conf.getFile(QC.TMP_DIR);
 
-    this.confThreads = conf.getInt(Settings.QC_CONF_THREADS_KEY, -1);
+    // Number of threads of the mapper, by default all the threads of the QC
+    final int mapperThreads =
+        conf.getInt(Settings.QC_CONF_FASTQSCREEN_MAPPER_THREADS_KEY, -1);
+    final int confThreads = conf.getInt(Settings.QC_CONF_THREADS_KEY, -1);
+
+    if (mapperThreads > 0) {
+      this.mapperThreads = mapperThreads;
+    } else if (confThreads > 0) {
+      this.mapperThreads = confThreads;
+    } else {
+      this.mapperThreads = Runtime.getRuntime().availableProcessors();
+    }
 
     // Fields required to initialize fastqScreenGenomes
     this.samplesheetFile = conf.getFile(QC.BCL2FASTQ_SAMPLESHEET_PATH);
@@ -189,5 +218,9 @@ public class FastqScreen {
     this.mapperArgument =
         conf.get(Settings.QC_CONF_FASTQSCREEN_MAPPER_ARGUMENTS_KEY);
 
+    // Number of genomes to map at the same time, 0 for the map/reduce mode
+    this.concurrentGenomes =
+        conf.getInt(Settings.QC_CONF_FASTQSCREEN_CONCURRENT_GENOMES_KEY, 0);
+
   }
 }
\ No newline at end of file
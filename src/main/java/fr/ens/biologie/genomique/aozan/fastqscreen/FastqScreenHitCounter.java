@@ -0,0 +1,160 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class define an in-memory counter of the hits of the reads on several
+ * genomes. It replaces the map/sort/reduce step on a temporary file when the
+ * reads are mapped on the genomes at the same time. The hits of a genome are
+ * stored in an array indexed by the ordinal of the read in the output of the
+ * mapper, so the names of the reads are not kept. The output of the mapper
+ * must contain the reads in the order of the input file for all the genomes.
+ * The hits of a genome must be added by a single thread but the hits of
+ * different genomes can be added concurrently.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class FastqScreenHitCounter {
+
+  private static final byte NO_HIT = 0;
+  private static final byte ONE_HIT = 1;
+  private static final byte MULTIPLE_HITS = 2;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final List<String> genomes;
+  private final byte[][] hits;
+  private final int[] readCounts;
+
+  /**
+   * Get the index of a genome.
+   * @param genome the genome
+   * @return the index of the genome
+   */
+  int getGenomeIndex(final String genome) {
+
+    final int result = this.genomes.indexOf(genome);
+    checkArgument(result != -1, "Unknown genome: " + genome);
+
+    return result;
+  }
+
+  /**
+   * Add the hits of a read on a genome.
+   * @param genomeIndex the index of the genome
+   * @param ordinal the ordinal of the read in the output of the mapper
+   * @param oneHit true if the read has only one hit on the genome
+   */
+  void addHit(final int genomeIndex, final int ordinal, final boolean oneHit) {
+
+    checkArgument(ordinal >= 0, "Invalid read ordinal: " + ordinal);
+
+    byte[] genomeHits = this.hits[genomeIndex];
+
+    if (ordinal >= genomeHits.length) {
+      genomeHits = Arrays.copyOf(genomeHits,
+          Math.max(ordinal + 1, genomeHits.length * 2));
+      this.hits[genomeIndex] = genomeHits;
+    }
+
+    genomeHits[ordinal] = oneHit ? ONE_HIT : MULTIPLE_HITS;
+    this.readCounts[genomeIndex] =
+        Math.max(this.readCounts[genomeIndex], ordinal + 1);
+  }
+
+  /**
+   * Count the hits of each read in a FastqScreenResult object. This method
+   * must be called once all the hits have been added.
+   * @param result the result object
+   * @return the number of reads mapped on at least one genome
+   */
+  int countHits(final FastqScreenResult result) {
+
+    checkNotNull(result, "result argument cannot be null");
+
+    int count = 0;
+    for (final int genomeReadCount : this.readCounts) {
+      count = Math.max(count, genomeReadCount);
+    }
+
+    int readsMapped = 0;
+
+    for (int ordinal = 0; ordinal < count; ordinal++) {
+
+      // Count the genomes with at least one hit for the read
+      int genomeCount = 0;
+      for (final byte[] genomeHits : this.hits) {
+        if (ordinal < genomeHits.length && genomeHits[ordinal] != NO_HIT) {
+          genomeCount++;
+        }
+      }
+
+      if (genomeCount == 0) {
+        continue;
+      }
+
+      readsMapped++;
+
+      for (int i = 0; i < this.hits.length; i++) {
+
+        final byte[] genomeHits = this.hits[i];
+        if (ordinal < genomeHits.length && genomeHits[ordinal] != NO_HIT) {
+          result.countHitPerGenome(this.genomes.get(i),
+              genomeHits[ordinal] == ONE_HIT, genomeCount == 1);
+        }
+      }
+    }
+
+    return readsMapped;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param genomes the genomes
+   */
+  FastqScreenHitCounter(final List<String> genomes) {
+
+    checkNotNull(genomes, "genomes argument cannot be null");
+
+    this.genomes = new ArrayList<>(genomes);
+    this.hits = new byte[this.genomes.size()][];
+    this.readCounts = new int[this.genomes.size()];
+
+    for (int i = 0; i < this.hits.length; i++) {
+      this.hits[i] = new byte[INITIAL_CAPACITY];
+    }
+  }
+
+}
@@ -25,16 +25,16 @@ package fr.ens.biologie.genomique.aozan.fastqscreen;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -46,7 +46,7 @@ import com.google.common.base.Joiner;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.Globals;
-import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLReportRenderer;
 
 /**
  * The class set a project HTML report file on detection contamination by
@@ -77,24 +77,46 @@ public class FastqScreenProjectReport {
       return;
     }
 
-    // Call stylesheet file for report
-    InputStream is = null;
-    if (fastqscreenXSLFile == null) {
+    // Build document instance
+    final Document doc = buildDoc();
+
+    XSLReportRenderer.render(doc, getTemplates(), reportHtml);
+  }
+
+  /**
+   * Creates the HTML report using the threads of the report renderer. The
+   * document is built by the calling thread.
+   * @param reportHtml the report HTML.
+   * @return a Future object to wait the end of the creation of the report or
+   *         null if there is no report to create
+   * @throws AozanException the Aozan exception
+   */
+  public Future<Void> submitReport(final File reportHtml)
+      throws AozanException {
+
+    checkNotNull(reportHtml, "fastqscreen report filename");
 
-      // Use default stylesheet file
-      is = this.getClass()
-          .getResourceAsStream(Globals.EMBEDDED_FASTQSCREEN_PROJECT_XSL);
-    } else {
-      // Use specific stylesheet from properties
-      is = new FileInputStream(fastqscreenXSLFile);
+    if (fastqScreenFiles.isEmpty()) {
+      return null;
     }
 
     // Build document instance
     final Document doc = buildDoc();
 
-    XMLUtilsWriter.createXMLFileContent(doc);
+    return XSLReportRenderer.getInstance().submit(doc, getTemplates(),
+        reportHtml);
+  }
+
+  /**
+   * Get the compiled stylesheet of the report.
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  private Templates getTemplates() throws AozanException {
 
-    XMLUtilsWriter.createHTMLFileFromXSL(doc, is, reportHtml);
+    // Use the specific stylesheet from properties or the default stylesheet
+    return XSLReportRenderer.getInstance().getTemplates(
+        this.fastqscreenXSLFile, Globals.EMBEDDED_FASTQSCREEN_PROJECT_XSL);
   }
 
   /**
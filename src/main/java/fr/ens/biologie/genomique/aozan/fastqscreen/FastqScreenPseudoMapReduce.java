@@ -30,11 +30,18 @@ import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.toTimeHumanRead
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -59,7 +66,6 @@ import fr.ens.biologie.genomique.eoulsan.modules.generators.GenomeMapperIndexer;
 import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
 import fr.ens.biologie.genomique.eoulsan.util.PseudoMapReduce;
 import fr.ens.biologie.genomique.eoulsan.util.Reporter;
-import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
 
 /**
  * This class account reads that map to each of the reference genome.
@@ -73,12 +79,18 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
 
   // Boolean use to update logger with parameter mapper only at the first
   // execution
-  private static boolean firstDoMapRunning = true;
+  private static final AtomicBoolean FIRST_DO_MAP_RUNNING =
+      new AtomicBoolean(true);
+
+  // Lock used to create the genome descriptions and the indexes one at a time
+  private static final Object INDEX_LOCK = new Object();
 
   private static final String COUNTER_GROUP = "reads_mapping";
+
+  // Option of bowtie and bowtie2 to keep the order of the reads
+  private static final String REORDER_ARGUMENT = "--reorder";
   private final Reporter reporter;
 
-  private GenomeDescription desc = null;
   private final FastqScreenResult fastqScreenResult;
   private final File tmpDir;
 
@@ -93,6 +105,8 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
 
   private final String mapperName;
 
+  private final int concurrentGenomes;
+
   /**
    * Mapper Receive value in SAM format, only the read mapped are added in
    * output with reference genome.
@@ -133,7 +147,7 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
     final int mapperThreads = threadNumber > 0
         ? threadNumber : Runtime.getRuntime().availableProcessors();
 
-    if (firstDoMapRunning) {
+    if (FIRST_DO_MAP_RUNNING.compareAndSet(true, false)) {
       // Update logger at the first execution
       LOGGER.info("FASTQSCREEN: map "
           + fastqRead1.getName() + " on genomes "
@@ -142,57 +156,185 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
       LOGGER.info("FASTQSCREEN: init "
           + this.mapperName + " mapper, arguments: \"" + this.mapperArguments
           + "\", mode: " + (pairedMode ? "paired" : "single") + ", threads: "
-          + mapperThreads);
+          + mapperThreads + ", concurrent genomes: " + this.concurrentGenomes);
+    }
+
+    if (isInMemoryHitCount()) {
+      doMapConcurrently(fastqRead1, fastqRead2, genomes, sampleGenome,
+          mapperThreads);
+      return;
     }
 
     for (final String genome : genomes) {
-      // Timer : for step mapping on genome
-      final Stopwatch timer = Stopwatch.createStarted();
 
-      LOGGER.info("FASTQSCREEN: map "
-          + fastqRead1.getName() + "(" + fastqRead1
-          + (this.pairedMode ? ", " + fastqRead2 : "") + ")" + " on " + genome);
+      this.genomeReference = genome;
 
-      // Get the mapper object
-      final Mapper mapper = Mapper.newMapper(this.mapperName);
+      final int result = mapOnGenome(fastqRead1, fastqRead2, genome,
+          sampleGenome, mapperThreads, null);
 
-      // Set mapper temporary directory
-      mapper.setTempDirectory(this.tmpDir);
+      if (result != -1) {
+        this.readsProcessed = result;
+      }
+    }
+  }
 
-      try {
+  /**
+   * Map the reads on several genomes at the same time. The hits of the reads
+   * are counted in memory, so the reduce step is not required.
+   * @param fastqRead1 fastq file
+   * @param fastqRead2 fastq file in mode paired
+   * @param genomes list of genome reference
+   * @param sampleGenome genome reference corresponding to sample, can be null
+   * @param mapperThreads number threads used for mapping
+   * @throws AozanException if an error occurs while mapping
+   */
+  private void doMapConcurrently(final File fastqRead1, final File fastqRead2,
+      final List<String> genomes, final String sampleGenome,
+      final int mapperThreads) throws AozanException {
+
+    final FastqScreenHitCounter hitCounter =
+        new FastqScreenHitCounter(genomes);
+
+    final int poolSize =
+        Math.max(1, Math.min(this.concurrentGenomes, genomes.size()));
+
+    // Share the mapper threads between the genomes mapped at the same time
+    final int threadsPerGenome = Math.max(1, mapperThreads / poolSize);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+    final List<Future<Integer>> futures = new ArrayList<>();
+    int readCount = -1;
 
-        // Create the mapper instance
-        final MapperInstance mapperInstance =
-            mapper.newMapperInstance("", "", true, null);
+    try {
+
+      for (final String genome : genomes) {
+        futures.add(executor.submit(new Callable<Integer>() {
 
-        final DataFile genomeFile = new DataFile("genome://" + genome);
+          @Override
+          public Integer call() throws Exception {
+
+            return mapOnGenome(fastqRead1, fastqRead2, genome, sampleGenome,
+                threadsPerGenome, hitCounter);
+          }
+        }));
+      }
 
-        // get index Genome reference exists
-        final File archiveIndexFile = createIndex(mapperInstance, genomeFile);
+      for (final Future<Integer> future : futures) {
 
-        if (archiveIndexFile == null) {
-          LOGGER.warning(
-              "FASTQSCREEN: archive index file not found for " + genome);
+        final int result = future.get();
+
+        if (result == -1) {
           continue;
         }
 
-        final File indexDir = new File(
-            StringUtils.filenameWithoutExtension(archiveIndexFile.getPath()));
+        // The hits are counted by read ordinal, all the mapper outputs must
+        // contain the same reads
+        if (readCount != -1 && result != readCount) {
+          throw new AozanException("FastqScreen fail: the outputs of the "
+              + this.mapperName + " mapper do not contain the same number of "
+              + "reads for all the genomes (" + result + " and " + readCount
+              + "), unmapped reads must be written in the output of the "
+              + "mapper");
+        }
+
+        readCount = result;
+        this.readsProcessed = result;
+      }
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AozanException(e);
+    } catch (final ExecutionException e) {
+
+      if (e.getCause() instanceof AozanException) {
+        throw (AozanException) e.getCause();
+      }
+      throw new AozanException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    this.readsMapped = hitCounter.countHits(this.fastqScreenResult);
+  }
+
+  /**
+   * Map the reads on a genome.
+   * @param fastqRead1 fastq file
+   * @param fastqRead2 fastq file in mode paired
+   * @param genome genome reference
+   * @param sampleGenome genome reference corresponding to sample, can be null
+   * @param mapperThreads number threads used for mapping
+   * @param hitCounter in-memory counter of the hits, null if the hits are
+   *          written in the map output file
+   * @return the number of reads processed or -1 if the index of the genome
+   *         has not been found
+   * @throws AozanException if an error occurs while mapping
+   */
+  private int mapOnGenome(final File fastqRead1, final File fastqRead2,
+      final String genome, final String sampleGenome, final int mapperThreads,
+      final FastqScreenHitCounter hitCounter) throws AozanException {
+
+    // Timer : for step mapping on genome
+    final Stopwatch timer = Stopwatch.createStarted();
+
+    LOGGER.info("FASTQSCREEN: map "
+        + fastqRead1.getName() + "(" + fastqRead1
+        + (this.pairedMode ? ", " + fastqRead2 : "") + ")" + " on " + genome);
+
+    // Get the mapper object
+    final Mapper mapper = Mapper.newMapper(this.mapperName);
+
+    // Set mapper temporary directory
+    mapper.setTempDirectory(this.tmpDir);
+
+    try {
+
+      // Create the mapper instance
+      final MapperInstance mapperInstance =
+          mapper.newMapperInstance("", "", true, null);
+
+      final DataFile genomeFile = new DataFile("genome://" + genome);
+
+      // Create genome description and get index Genome reference exists
+      final GenomeDescription desc;
+      final File archiveIndexFile;
+      synchronized (INDEX_LOCK) {
+        desc = createGenomeDescription(genomeFile);
+        archiveIndexFile =
+            desc == null ? null : createIndex(mapperInstance, genomeFile, desc);
+      }
+
+      if (archiveIndexFile == null) {
+        LOGGER.warning(
+            "FASTQSCREEN: archive index file not found for " + genome);
+        return -1;
+      }
+
+      final FastqScreenSAMParser parser;
+      synchronized (this) {
 
-        final FastqScreenSAMParser parser = new FastqScreenSAMParser(
-            this.getMapOutputTempFile(), genome, this.pairedMode, this.desc);
+        parser = hitCounter == null
+            ? new FastqScreenSAMParser(this.getMapOutputTempFile(), genome,
+                this.pairedMode, desc)
+            : new FastqScreenSAMParser(hitCounter, genome, this.pairedMode,
+                desc);
 
-        this.genomeReference = genome;
         this.fastqScreenResult.addGenome(genome, sampleGenome);
+      }
+
+      // Do nothing if the file is empty
+      if (fastqRead1.length() == 0) {
+        parser.closeMapOutputFile();
+      } else {
 
-        // Do nothing if the file is empty
-        if (fastqRead1.length() == 0) {
-          parser.closeMapOutputFile();
-        } else {
+        // Get the extracted index from the cache, the index cannot be removed
+        // from the cache until the end of the mapping
+        try (MapperIndexCache.Index index = MapperIndexCache.getInstance()
+            .acquire(mapper.getName(), genome, archiveIndexFile)) {
 
           // Create the MapperIndex object
-          final MapperIndex mapperIndex =
-              mapperInstance.newMapperIndex(archiveIndexFile, indexDir);
+          final MapperIndex mapperIndex = mapperInstance
+              .newMapperIndex(archiveIndexFile, index.getDirectory());
 
           // Create the mapping object
           FileMapping mapping = mapperIndex.newFileMapping(
@@ -213,21 +355,37 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
           // Throw an exception if an exception has occurred while mapping
           mapping.throwMappingException();
         }
+      }
 
-        this.readsProcessed = parser.getReadsprocessed();
+      LOGGER.fine("FASTQSCREEN: "
+          + mapper.getName() + " mapping on genome " + genome + " in mode "
+          + (this.pairedMode ? "paired" : "single") + ", in "
+          + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
 
-        LOGGER.fine("FASTQSCREEN: "
-            + mapper.getName() + " mapping on genome " + genome + " in mode "
-            + (this.pairedMode ? "paired" : "single") + ", in "
-            + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+      timer.stop();
 
-        timer.stop();
+      return parser.getReadsprocessed();
 
-        firstDoMapRunning = false;
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+  }
 
-      } catch (final IOException e) {
-        throw new AozanException(e);
-      }
+  /**
+   * Create the description of a genome.
+   * @param genomeDataFile fasta file of genome
+   * @return the genome description or null if the genome is not found
+   * @throws IOException if an error occurs while reading the genome
+   * @throws AozanException if an error occurs while creating the description
+   */
+  private static GenomeDescription createGenomeDescription(
+      final DataFile genomeDataFile) throws IOException, AozanException {
+
+    try {
+      return GenomeDescriptionCreator.getInstance()
+          .createGenomeDescription(genomeDataFile);
+    } catch (final BadBioEntryException e) {
+      throw new AozanException(e);
     }
   }
 
@@ -235,13 +393,15 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
    * Create a index with bowtie from the fasta file genome.
    * @param bowtie mapper
    * @param genomeDataFile fasta file of genome
+   * @param desc description of the genome
    * @return File file of genome index
    * @throws IOException if an error occurs while using file index genome
    * @throws AozanException if an error occurs during call
    *           FastqScreenGenomeMapper instance.
    */
   private File createIndex(final MapperInstance bowtie,
-      final DataFile genomeDataFile) throws IOException, AozanException {
+      final DataFile genomeDataFile, final GenomeDescription desc)
+      throws IOException, AozanException {
 
     // Timer :
     final Stopwatch timer = Stopwatch.createStarted();
@@ -252,18 +412,6 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
             + bowtie.getName().toLowerCase() + "-index-"
             + genomeDataFile.getName() + ".zip");
 
-    // Create genome description
-    try {
-      this.desc = GenomeDescriptionCreator.getInstance()
-          .createGenomeDescription(genomeDataFile);
-    } catch (final BadBioEntryException e) {
-      throw new AozanException(e);
-    }
-
-    if (this.desc == null) {
-      return null;
-    }
-
     // Check if the index has already been created/retrieved
     if (result.exists()) {
       return result.toFile();
@@ -274,7 +422,7 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
     final GenomeMapperIndexer indexer =
         new GenomeMapperIndexer(bowtie, "", additionnalArgument, 1);
 
-    indexer.createIndex(genomeDataFile, this.desc, result);
+    indexer.createIndex(genomeDataFile, desc, result);
 
     LOGGER.fine("FASTQSCREEN: create/retrieve index for "
         + genomeDataFile.getName() + " in "
@@ -363,6 +511,16 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
     }
   }
 
+  /**
+   * Test if the hits of the reads are counted in memory while mapping. In this
+   * case the reduce step must not be called.
+   * @return true if the hits of the reads are counted in memory
+   */
+  public boolean isInMemoryHitCount() {
+
+    return this.concurrentGenomes > 0;
+  }
+
   /**
    * Compile data of fastqscreen in percentage.
    * @return FastqScreenResult result of FastqScreen or null if an error occurs
@@ -420,6 +578,31 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
               + mapperName);
   }
 
+  /**
+   * Add to the mapper arguments the option that keeps the order of the reads
+   * of the input file in the output of the multithreaded bowtie and bowtie2
+   * mappers.
+   * @param mapperName mapper name
+   * @param mapperArguments mapper arguments
+   * @return mapper arguments
+   */
+  private static String getOrderedMapperArguments(final String mapperName,
+      final String mapperArguments) {
+
+    final String mapperNameLower =
+        mapperName.toLowerCase(Globals.DEFAULT_LOCALE);
+
+    if ((BowtieMapperProvider.MAPPER_NAME.toLowerCase(Globals.DEFAULT_LOCALE)
+        .equals(mapperNameLower)
+        || Bowtie2MapperProvider.MAPPER_NAME
+            .toLowerCase(Globals.DEFAULT_LOCALE).equals(mapperNameLower))
+        && !mapperArguments.contains(REORDER_ARGUMENT)) {
+      return mapperArguments + " " + REORDER_ARGUMENT;
+    }
+
+    return mapperArguments;
+  }
+
   //
   // Constructor
   //
@@ -438,6 +621,25 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
       final String mapperName, final String mapperArguments)
       throws AozanException {
 
+    this(tmpDir, pairedMode, mapperName, mapperArguments, 0);
+  }
+
+  /**
+   * Public construction. Instantiation the mapper, the mapper name and the
+   * mapper arguments must be define together else it uses the default mapper.
+   * @param tmpDir path to temporary directory
+   * @param pairedMode true if a pair-end run and option paired mode equals true
+   *          else false
+   * @param mapperName mapper name name can be null
+   * @param mapperArguments mapper arguments can be null
+   * @param concurrentGenomes number of genomes to map at the same time with an
+   *          in-memory count of the hits, 0 to use the map/reduce mode
+   * @throws AozanException occurs when the instantiation of mapper fails
+   */
+  public FastqScreenPseudoMapReduce(final File tmpDir, final boolean pairedMode,
+      final String mapperName, final String mapperArguments,
+      final int concurrentGenomes) throws AozanException {
+
     checkNotNull(tmpDir, "tmpDir argument cannot be null");
     checkNotNull(mapperName, "mapperName argument cannot be null");
 
@@ -446,6 +648,7 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
 
     this.pairedMode = pairedMode;
     this.tmpDir = tmpDir;
+    this.concurrentGenomes = Math.max(0, concurrentGenomes);
 
     // Use default mapper if mapper name or arguments is null
     if (mapperName == null || mapperName.isEmpty()) {
@@ -454,9 +657,15 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
       this.mapperName = mapperName;
     }
 
-    this.mapperArguments =
+    final String arguments =
         getMapperArguments(mapperName, mapperArguments, pairedMode);
 
+    // With the in-memory count of the hits, the reads are identified by their
+    // ordinal in the output of the mapper that must keep the order of the
+    // input file
+    this.mapperArguments = this.concurrentGenomes > 0
+        ? getOrderedMapperArguments(this.mapperName, arguments) : arguments;
+
     // Define temporary directory
     this.setMapReduceTemporaryDirectory(this.tmpDir);
 
@@ -24,15 +24,14 @@
 package fr.ens.biologie.genomique.aozan.fastqscreen;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -44,6 +43,7 @@ import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLReportRenderer;
 import fr.ens.biologie.genomique.eoulsan.util.XMLUtils;
 
 /**
@@ -157,14 +157,9 @@ public class FastqScreenResult {
     final File reportXML =
         new File(reportHtml.getAbsolutePath().replaceAll(".html$", ".xml"));
 
-    // Call stylesheet file for report
-    InputStream is = null;
-    if (fastqscreenXSLFile == null) {
-      is = this.getClass()
-          .getResourceAsStream(Globals.EMBEDDED_FASTQSCREEN_XSL);
-    } else {
-      is = new FileInputStream(fastqscreenXSLFile);
-    }
+    // Get the compiled stylesheet for report
+    final Templates templates = XSLReportRenderer.getInstance()
+        .getTemplates(fastqscreenXSLFile, Globals.EMBEDDED_FASTQSCREEN_XSL);
 
     // Create document XML
     final Document doc = createDocumentXML(fastqSample, data, genomeSample);
@@ -173,7 +168,7 @@ public class FastqScreenResult {
     XMLUtilsWriter.createXMLFile(doc, reportXML);
 
     // Create html report from xml with xsl file
-    XMLUtilsWriter.createHTMLFileFromXSL(doc, is, reportHtml);
+    XSLReportRenderer.render(doc, templates, reportHtml);
 
   }
 
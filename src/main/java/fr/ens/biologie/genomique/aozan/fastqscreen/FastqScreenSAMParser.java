@@ -57,6 +57,8 @@ public class FastqScreenSAMParser {
   // private File mapOutputFile = null;
   private final String genome;
   private final Writer fw;
+  private final FastqScreenHitCounter hitCounter;
+  private final int genomeIndex;
 
   private final SAMLineParser parser;
   private boolean headerParsed = false;
@@ -135,7 +137,9 @@ public class FastqScreenSAMParser {
       parseBuffered();
     }
 
-    this.fw.close();
+    if (this.fw != null) {
+      this.fw.close();
+    }
   }
 
   private void parseBuffered() throws IOException {
@@ -153,8 +157,12 @@ public class FastqScreenSAMParser {
         nbHits = records.size() == 1 ? 1 : 2;
       }
 
-      // write in SAMmapOutputFile
-      if (nameRead != null) {
+      if (nameRead != null && this.hitCounter != null) {
+        // count the hit in memory, the reads are identified by their ordinal
+        this.hitCounter.addHit(this.genomeIndex, this.readsprocessed,
+            nbHits == 1);
+      } else if (nameRead != null) {
+        // write in SAMmapOutputFile
         this.fw.write(nameRead + "\t" + nbHits + this.genome);
         this.fw.write("\n");
       }
@@ -194,8 +202,36 @@ public class FastqScreenSAMParser {
       final boolean pairedMode, final GenomeDescription genomeDescription)
       throws IOException {
 
+    this(Files.newWriter(mapOutputFile, Globals.DEFAULT_FILE_ENCODING), null,
+        genome, pairedMode, genomeDescription);
+  }
+
+  /**
+   * Initialize FastqScreenSAMParser : the hits of the reads are counted in
+   * memory instead of being written in a mapOutputFile.
+   * @param hitCounter in-memory counter of the hits
+   * @param genome name genome
+   * @param genomeDescription description of the genome
+   * @param pairedMode true if a pair-end run and option paired mode equals true
+   *          else false
+   */
+  FastqScreenSAMParser(final FastqScreenHitCounter hitCounter,
+      final String genome, final boolean pairedMode,
+      final GenomeDescription genomeDescription) {
+
+    this(null, hitCounter, genome, pairedMode, genomeDescription);
+  }
+
+  private FastqScreenSAMParser(final Writer fw,
+      final FastqScreenHitCounter hitCounter, final String genome,
+      final boolean pairedMode, final GenomeDescription genomeDescription) {
+
     this.genome = genome;
     this.pairedMode = pairedMode;
+    this.fw = fw;
+    this.hitCounter = hitCounter;
+    this.genomeIndex =
+        hitCounter == null ? -1 : hitCounter.getGenomeIndex(genome);
 
     // Create parser object
     this.parser =
@@ -208,7 +244,5 @@ public class FastqScreenSAMParser {
     final ReadAlignmentsFilter filter =
         new MultiReadAlignmentsFilter(listFilters);
     this.buffer = new ReadAlignmentsFilterBuffer(filter);
-
-    this.fw = Files.newWriter(mapOutputFile, Globals.DEFAULT_FILE_ENCODING);
   }
 }
@@ -92,6 +92,21 @@ public class GenomeAliases {
     return this.genomeAliases.containsKey(key);
   }
 
+  /**
+   * Get the reference genomes of the aliases.
+   * @return a set with the names of the reference genomes
+   */
+  public Set<String> getGenomes() {
+
+    final Set<String> result = new HashSet<>();
+
+    for (String genome : this.genomeAliases.values()) {
+      result.add(genome.trim());
+    }
+
+    return result;
+  }
+
   /**
    * Create a map which does correspondence between genome of sample and
    * reference genome from a file, the path is in aozan configuration.
@@ -0,0 +1,536 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.io.BaseEncoding;
+
+import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
+import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
+
+/**
+ * This class define a builder of genome descriptions that read the FASTA file
+ * of a genome on several threads. The FASTA file is memory mapped and split in
+ * regions that start at the beginning of a sequence. The length of the
+ * sequences of each region are computed by a dedicated thread. Like in
+ * GenomeDescription.createGenomeDescFromFasta() of Eoulsan, the lines are
+ * trimmed, the length of a sequence is the number of characters of its lines
+ * and the checksum of the genome is the MD5 checksum of the non-empty lines of
+ * the file. As the MD5 checksum cannot be split, it is computed on a single
+ * thread at the same time as the lengths.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class GenomeDescriptionBuilder {
+
+  /** Size of the memory mapped windows. */
+  private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+  /** Size of the windows used to search the start of the sequences. */
+  private static final int SEARCH_WINDOW_SIZE = 1024 * 1024;
+
+  /** Number of regions for each thread to balance the load. */
+  private static final int REGIONS_PER_THREAD = 4;
+
+  private final int threads;
+
+  /**
+   * This class define the result of the parsing of a sequence.
+   */
+  private static final class SequenceInfo {
+
+    private final String name;
+    private final long length;
+
+    SequenceInfo(final String name, final long length) {
+
+      this.name = name;
+      this.length = length;
+    }
+  }
+
+  /**
+   * This class define the task that parse the sequences of a region of the
+   * FASTA file.
+   */
+  private static final class RegionParser
+      implements Callable<List<SequenceInfo>> {
+
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+
+    private final List<SequenceInfo> result = new ArrayList<>();
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    private String name;
+    private long length;
+
+    @Override
+    public List<SequenceInfo> call() throws IOException {
+
+      boolean inHeader = false;
+
+      // True if a character that is not a whitespace has been found in the
+      // current line
+      boolean lineContent = false;
+
+      // Number of whitespaces since the last character of the current line,
+      // they are part of the sequence if they are not at the end of the line
+      long spaces = 0;
+
+      for (long pos = this.start; pos < this.end; pos += WINDOW_SIZE) {
+
+        final int size = (int) Math.min(WINDOW_SIZE, this.end - pos);
+        final MappedByteBuffer buffer =
+            this.channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+
+        for (int i = 0; i < size; i++) {
+
+          final byte b = buffer.get(i);
+
+          if (inHeader) {
+
+            if (isEndOfLine(b)) {
+              startSequence(pos + i);
+              inHeader = false;
+            } else {
+              this.header.write(b);
+            }
+            continue;
+          }
+
+          if (isEndOfLine(b)) {
+            lineContent = false;
+            spaces = 0;
+            continue;
+          }
+
+          if (isWhitespace(b)) {
+            if (lineContent) {
+              spaces++;
+            }
+            continue;
+          }
+
+          if (!lineContent && b == '>') {
+            endSequence();
+            inHeader = true;
+            continue;
+          }
+
+          if (this.name == null) {
+            throw new IOException(
+                "Sequence without header at offset " + (pos + i));
+          }
+
+          if (!isValidResidue(b)) {
+            throw new IOException("Invalid character '"
+                + (char) (b & 0xff) + "' in sequence " + this.name
+                + " at offset " + (pos + i));
+          }
+
+          this.length += spaces + 1;
+          spaces = 0;
+          lineContent = true;
+        }
+      }
+
+      if (inHeader) {
+        startSequence(this.end);
+      }
+      endSequence();
+
+      return this.result;
+    }
+
+    /**
+     * Start a new sequence at the end of its header.
+     * @param offset the offset of the end of the header
+     * @throws IOException if the name of the sequence is empty
+     */
+    private void startSequence(final long offset) throws IOException {
+
+      final String headerLine =
+          new String(this.header.toByteArray(), StandardCharsets.UTF_8).trim();
+      this.header.reset();
+
+      // The name of the sequence is the first field of the header
+      final String[] fields = headerLine.split("\\s");
+
+      if (fields[0].isEmpty()) {
+        throw new IOException("Sequence without name at offset " + offset);
+      }
+
+      this.name = fields[0];
+      this.length = 0;
+    }
+
+    /**
+     * End the current sequence.
+     */
+    private void endSequence() {
+
+      if (this.name != null) {
+        this.result.add(new SequenceInfo(this.name, this.length));
+        this.name = null;
+      }
+    }
+
+    RegionParser(final FileChannel channel, final long start,
+        final long end) {
+
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * This class define the task that compute the MD5 checksum of the trimmed
+   * non-empty lines of the FASTA file.
+   */
+  private static final class ChecksumComputer implements Callable<String> {
+
+    private final FileChannel channel;
+    private final MessageDigest md5 = newMD5Digest();
+
+    // Whitespaces since the last character of the current line, they are
+    // part of the line if they are not at the end of the line
+    private final ByteArrayOutputStream spaces = new ByteArrayOutputStream();
+
+    @Override
+    public String call() throws IOException {
+
+      final long size = this.channel.size();
+      boolean lineContent = false;
+
+      for (long pos = 0; pos < size; pos += WINDOW_SIZE) {
+
+        final int length = (int) Math.min(WINDOW_SIZE, size - pos);
+        final MappedByteBuffer buffer =
+            this.channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+
+        // Start of the current run of characters in the buffer
+        int runStart = -1;
+
+        for (int i = 0; i < length; i++) {
+
+          final byte b = buffer.get(i);
+
+          if (isEndOfLine(b)) {
+            runStart = update(buffer, runStart, i);
+            this.spaces.reset();
+            lineContent = false;
+
+          } else if (isWhitespace(b)) {
+            runStart = update(buffer, runStart, i);
+            if (lineContent) {
+              this.spaces.write(b);
+            }
+
+          } else if (runStart == -1) {
+
+            if (this.spaces.size() > 0) {
+              this.md5.update(this.spaces.toByteArray());
+              this.spaces.reset();
+            }
+            runStart = i;
+            lineContent = true;
+          }
+        }
+
+        update(buffer, runStart, length);
+      }
+
+      return BaseEncoding.base16().lowerCase().encode(this.md5.digest());
+    }
+
+    /**
+     * Update the checksum with a run of characters.
+     * @param buffer the buffer
+     * @param runStart the start of the run in the buffer, -1 if no run
+     * @param runEnd the end of the run in the buffer
+     * @return -1
+     */
+    private int update(final ByteBuffer buffer, final int runStart,
+        final int runEnd) {
+
+      if (runStart != -1) {
+
+        final ByteBuffer run = buffer.duplicate();
+        run.limit(runEnd);
+        run.position(runStart);
+        this.md5.update(run);
+      }
+
+      return -1;
+    }
+
+    ChecksumComputer(final FileChannel channel) {
+
+      this.channel = channel;
+    }
+  }
+
+  //
+  // Build methods
+  //
+
+  /**
+   * Create the description of a genome.
+   * @param fastaFile the FASTA file of the genome
+   * @param filename the name of the genome file
+   * @return a new GenomeDescription object
+   * @throws IOException if an error occurs while reading the FASTA file
+   */
+  GenomeDescription build(final File fastaFile, final String filename)
+      throws IOException {
+
+    checkNotNull(fastaFile, "fastaFile argument cannot be null");
+    checkNotNull(filename, "filename argument cannot be null");
+
+    final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+    try (FileChannel channel =
+        FileChannel.open(fastaFile.toPath(), StandardOpenOption.READ)) {
+
+      final Future<String> checksum =
+          executor.submit(new ChecksumComputer(channel));
+
+      final List<Long> starts = splitRegions(channel);
+      final List<Future<List<SequenceInfo>>> futures = new ArrayList<>();
+
+      for (int i = 0; i < starts.size() - 1; i++) {
+        futures.add(executor.submit(
+            new RegionParser(channel, starts.get(i), starts.get(i + 1))));
+      }
+
+      final GenomeDescription result = new GenomeDescription();
+      result.setGenomeName(StringUtils.basename(filename));
+
+      for (Future<List<SequenceInfo>> future : futures) {
+        for (SequenceInfo info : future.get()) {
+          result.addSequence(info.name, info.length);
+        }
+      }
+
+      result.setMD5Sum(checksum.get());
+
+      return result;
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+
+    } catch (final ExecutionException e) {
+
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Split the FASTA file in regions that start at the beginning of a sequence.
+   * @param channel the channel of the FASTA file
+   * @return a list with the start of the regions and the end of the file
+   * @throws IOException if an error occurs while reading the FASTA file
+   */
+  private List<Long> splitRegions(final FileChannel channel)
+      throws IOException {
+
+    final long size = channel.size();
+    final int regions = this.threads * REGIONS_PER_THREAD;
+
+    final List<Long> result = new ArrayList<>();
+    result.add(0L);
+
+    for (int i = 1; i < regions; i++) {
+
+      final long last = result.get(result.size() - 1);
+      final long target = Math.max(size / regions * i, last + 1);
+
+      if (target >= size) {
+        break;
+      }
+
+      final long start = findSequenceStart(channel, target, size);
+
+      if (start < size && start > last) {
+        result.add(start);
+      }
+    }
+
+    result.add(size);
+
+    return result;
+  }
+
+  /**
+   * Find the start of the first sequence after an offset.
+   * @param channel the channel of the FASTA file
+   * @param offset the offset
+   * @param size the size of the file
+   * @return the offset of the start of the sequence or the size of the file if
+   *         no sequence has been found
+   * @throws IOException if an error occurs while reading the FASTA file
+   */
+  private static long findSequenceStart(final FileChannel channel,
+      final long offset, final long size) throws IOException {
+
+    // A sequence start with a '>' at the beginning of a line
+    byte previous =
+        channel.map(FileChannel.MapMode.READ_ONLY, offset - 1, 1).get(0);
+
+    for (long pos = offset; pos < size; pos += SEARCH_WINDOW_SIZE) {
+
+      final int length = (int) Math.min(SEARCH_WINDOW_SIZE, size - pos);
+      final MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+
+      for (int i = 0; i < length; i++) {
+
+        final byte b = buffer.get(i);
+
+        if (b == '>' && previous == '\n') {
+          return pos + i;
+        }
+        previous = b;
+      }
+    }
+
+    return size;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Test if a file can be read by the builder. The file must be a local and
+   * uncompressed FASTA file.
+   * @param file the file to test, can be null
+   * @return true if the file can be read by the builder
+   */
+  static boolean isSupported(final File file) {
+
+    if (file == null || !file.isFile() || file.length() == 0) {
+      return false;
+    }
+
+    try (InputStream is = new FileInputStream(file)) {
+      return is.read() == '>';
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Test if a character is a valid residue. Like Eoulsan, all the printable
+   * ASCII characters are accepted, the other characters are rejected as their
+   * length in the file may differ from their length in the sequence.
+   * @param b the character to test
+   * @return true if the character is a valid residue
+   */
+  private static boolean isValidResidue(final byte b) {
+
+    return b > ' ' && b < 127;
+  }
+
+  /**
+   * Test if a character is an end of line.
+   * @param b the character to test
+   * @return true if the character is an end of line
+   */
+  private static boolean isEndOfLine(final byte b) {
+
+    return b == '\n' || b == '\r';
+  }
+
+  /**
+   * Test if a character is removed by String.trim() at the ends of the lines.
+   * @param b the character to test
+   * @return true if the character is a whitespace
+   */
+  private static boolean isWhitespace(final byte b) {
+
+    return b >= 0 && b <= ' ';
+  }
+
+  /**
+   * Create a MD5 digest.
+   * @return a new MessageDigest object
+   */
+  private static MessageDigest newMD5Digest() {
+
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param threads the number of threads to use
+   */
+  GenomeDescriptionBuilder(final int threads) {
+
+    checkArgument(threads > 0, "threads must be greater than 0");
+
+    this.threads = threads;
+  }
+
+}
@@ -25,6 +25,7 @@ package fr.ens.biologie.genomique.aozan.fastqscreen;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.File;
 import java.io.IOException;
 
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
@@ -66,8 +67,19 @@ public class GenomeDescriptionCreator {
 
     // Compute the genome description
     if (desc == null) {
-      desc = GenomeDescription.createGenomeDescFromFasta(genomeFile.open(),
-          genomeFile.getName());
+
+      final File file = toLocalFile(genomeFile);
+
+      if (GenomeDescriptionBuilder.isSupported(file)) {
+
+        // Read the local uncompressed FASTA files on several threads
+        desc = new GenomeDescriptionBuilder(
+            Runtime.getRuntime().availableProcessors()).build(file,
+                genomeFile.getName());
+      } else {
+        desc = GenomeDescription.createGenomeDescFromFasta(genomeFile.open(),
+            genomeFile.getName());
+      }
 
       if (this.storage != null) {
         this.storage.put(genomeFile, desc);
@@ -77,6 +89,20 @@ public class GenomeDescriptionCreator {
     return desc;
   }
 
+  /**
+   * Get the local file of a DataFile.
+   * @param file the DataFile
+   * @return the local file or null if the DataFile is not a local file
+   */
+  private static File toLocalFile(final DataFile file) {
+
+    try {
+      return file.toFile();
+    } catch (final Exception e) {
+      return null;
+    }
+  }
+
   //
   // Static methods
   //
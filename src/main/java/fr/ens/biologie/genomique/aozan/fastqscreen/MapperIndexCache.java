@@ -0,0 +1,775 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import fr.ens.biologie.genomique.aozan.Common;
+import fr.ens.biologie.genomique.aozan.Globals;
+
+/**
+ * This class define a cache of the extracted mapper indexes. The archives of
+ * the indexes are extracted once in a dedicated directory and the CRC of each
+ * extracted file is checked and saved in a manifest. The indexes are shared by
+ * the QC processes with file locks: a process that use an index holds a shared
+ * lock on it and an index is only extracted or removed with an exclusive lock.
+ * When the size of the cache exceeds its maximal size, the least recently used
+ * indexes that are not used are removed. The files of an index can also be read
+ * before the mapping to load them in the page cache of the system, the CRC of
+ * the files are then checked again.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class MapperIndexCache {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  private static final String MANIFEST_FILENAME = ".aozan-index-manifest";
+  private static final String CACHE_LOCK_FILENAME = ".aozan-index-cache.lock";
+  private static final String LOCK_EXTENSION = ".lock";
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  private static final String ARCHIVE_PATH_KEY = "archive.path";
+  private static final String ARCHIVE_SIZE_KEY = "archive.size";
+  private static final String ARCHIVE_DATE_KEY = "archive.last.modified";
+  private static final String TOTAL_SIZE_KEY = "total.size";
+  private static final String FILE_SIZE_PREFIX = "file.size.";
+  private static final String FILE_CRC_PREFIX = "file.crc.";
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int MAX_ATTEMPTS = 3;
+
+  private static MapperIndexCache singleton;
+
+  private final File cacheDir;
+  private final long maxSize;
+  private final boolean prefault;
+
+  private final Map<String, EntryLock> entryLocks = new HashMap<>();
+
+  /**
+   * This class define the lock of an index in the current process. The shared
+   * file lock is held while at least one thread use the index.
+   */
+  private static final class EntryLock {
+
+    private int users;
+    private FileChannel channel;
+    private FileLock lock;
+    private boolean prefaulted;
+  }
+
+  /**
+   * This class define an index used by a thread. The index must be closed at
+   * the end of the mapping.
+   */
+  public final class Index implements Closeable {
+
+    private final String name;
+    private final File directory;
+    private boolean closed;
+
+    /**
+     * Get the directory of the extracted index.
+     * @return the directory of the extracted index
+     */
+    public File getDirectory() {
+
+      return this.directory;
+    }
+
+    @Override
+    public void close() {
+
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+
+      if (this.name != null) {
+        release(this.name);
+      }
+    }
+
+    private Index(final String name, final File directory) {
+
+      this.name = name;
+      this.directory = directory;
+    }
+  }
+
+  //
+  // Cache methods
+  //
+
+  /**
+   * Test if the cache is enabled.
+   * @return true if the cache is enabled
+   */
+  public boolean isEnabled() {
+
+    return this.cacheDir != null;
+  }
+
+  /**
+   * Get an extracted index. If the cache is disabled, the index is extracted
+   * by the mapper in the directory of the archive.
+   * @param mapperName the name of the mapper
+   * @param genomeName the name of the genome
+   * @param archiveFile the archive of the index
+   * @return an Index object that must be closed after the mapping
+   * @throws IOException if an error occurs while extracting the index
+   */
+  public Index acquire(final String mapperName, final String genomeName,
+      final File archiveFile) throws IOException {
+
+    checkNotNull(mapperName, "mapperName argument cannot be null");
+    checkNotNull(genomeName, "genomeName argument cannot be null");
+    checkNotNull(archiveFile, "archiveFile argument cannot be null");
+
+    if (!isEnabled()) {
+
+      final String path = archiveFile.getPath();
+      final int pos = path.lastIndexOf('.');
+
+      return new Index(null,
+          new File(pos == -1 ? path : path.substring(0, pos)));
+    }
+
+    if (!this.cacheDir.isDirectory() && !this.cacheDir.mkdirs()) {
+      throw new IOException("Cannot create directory: " + this.cacheDir);
+    }
+
+    final String name = entryName(mapperName, genomeName);
+    final File dir = new File(this.cacheDir, name);
+    final EntryLock entryLock = getEntryLock(name);
+
+    synchronized (entryLock) {
+
+      if (entryLock.users == 0) {
+        lockEntry(name, dir, archiveFile, entryLock);
+      }
+      entryLock.users++;
+    }
+
+    // Update the date of the last use of the index
+    if (!new File(dir, MANIFEST_FILENAME)
+        .setLastModified(System.currentTimeMillis())) {
+      LOGGER.warning("FASTQSCREEN: cannot update the date of index " + dir);
+    }
+
+    evict();
+
+    return new Index(name, dir);
+  }
+
+  /**
+   * Get the lock of an index in the current process.
+   * @param name the name of the index
+   * @return the lock of the index
+   */
+  private EntryLock getEntryLock(final String name) {
+
+    synchronized (this.entryLocks) {
+
+      EntryLock result = this.entryLocks.get(name);
+      if (result == null) {
+        result = new EntryLock();
+        this.entryLocks.put(name, result);
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * Take the shared file lock on an index. The index is extracted if it is
+   * missing, invalid or older than its archive.
+   * @param name the name of the index
+   * @param dir the directory of the index
+   * @param archiveFile the archive of the index
+   * @param entryLock the lock of the index in the current process
+   * @throws IOException if an error occurs while extracting the index
+   */
+  private void lockEntry(final String name, final File dir,
+      final File archiveFile, final EntryLock entryLock) throws IOException {
+
+    final FileChannel channel = FileChannel.open(
+        new File(this.cacheDir, name + LOCK_EXTENSION).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+
+    boolean success = false;
+
+    try {
+
+      boolean forceExtraction = false;
+
+      for (int i = 0; i < MAX_ATTEMPTS; i++) {
+
+        // The index is extracted with an exclusive lock
+        if (forceExtraction || !isValid(dir, archiveFile)) {
+
+          try (FileLock lock = channel.lock()) {
+
+            if (forceExtraction || !isValid(dir, archiveFile)) {
+              extract(archiveFile, dir);
+              entryLock.prefaulted = false;
+            }
+          }
+          forceExtraction = false;
+        }
+
+        // The index is used with a shared lock
+        final FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+
+        // The index may have been removed by another process
+        if (isValid(dir, archiveFile)) {
+
+          if (!this.prefault || entryLock.prefaulted || prefault(dir)) {
+
+            entryLock.prefaulted = this.prefault;
+            entryLock.channel = channel;
+            entryLock.lock = lock;
+            success = true;
+
+            return;
+          }
+
+          forceExtraction = true;
+        }
+
+        lock.release();
+      }
+
+      throw new IOException("Unable to get a valid index in " + dir);
+
+    } finally {
+
+      if (!success) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Release an index.
+   * @param name the name of the index
+   */
+  private void release(final String name) {
+
+    final EntryLock entryLock;
+    synchronized (this.entryLocks) {
+      entryLock = this.entryLocks.get(name);
+    }
+
+    synchronized (entryLock) {
+
+      entryLock.users--;
+
+      if (entryLock.users == 0) {
+
+        try {
+          entryLock.lock.release();
+          entryLock.channel.close();
+        } catch (final IOException e) {
+          LOGGER.warning("FASTQSCREEN: cannot release the lock of index "
+              + name + ": " + e.getMessage());
+        }
+
+        entryLock.lock = null;
+        entryLock.channel = null;
+      }
+    }
+  }
+
+  /**
+   * Remove the least recently used indexes until the size of the cache is
+   * lower than the maximal size. The indexes used by a process are not
+   * removed.
+   */
+  private synchronized void evict() {
+
+    if (this.maxSize <= 0) {
+      return;
+    }
+
+    try (
+        FileChannel cacheChannel = FileChannel.open(
+            new File(this.cacheDir, CACHE_LOCK_FILENAME).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock cacheLock = cacheChannel.lock()) {
+
+      final List<File> dirs = new ArrayList<>();
+      long totalSize = 0;
+
+      final File[] files = this.cacheDir.listFiles();
+      if (files != null) {
+        for (File f : files) {
+
+          // Ignore the indexes that are being extracted
+          final File manifestFile = new File(f, MANIFEST_FILENAME);
+          if (f.isDirectory()
+              && !f.getName().endsWith(TEMP_EXTENSION)
+              && manifestFile.isFile()) {
+            dirs.add(f);
+            totalSize += getTotalSize(f);
+          }
+        }
+      }
+
+      if (totalSize <= this.maxSize) {
+        return;
+      }
+
+      // Sort the indexes by date of last use
+      Collections.sort(dirs, new Comparator<File>() {
+
+        @Override
+        public int compare(final File f1, final File f2) {
+
+          return Long.compare(new File(f1, MANIFEST_FILENAME).lastModified(),
+              new File(f2, MANIFEST_FILENAME).lastModified());
+        }
+      });
+
+      for (File dir : dirs) {
+
+        if (totalSize <= this.maxSize) {
+          break;
+        }
+
+        final long size = getTotalSize(dir);
+
+        if (removeIfUnused(dir)) {
+          totalSize -= size;
+        }
+      }
+
+      if (totalSize > this.maxSize) {
+        LOGGER.warning("FASTQSCREEN: the size of the index cache ("
+            + totalSize + " bytes) exceeds its maximal size (" + this.maxSize
+            + " bytes) as some indexes are in use");
+      }
+
+    } catch (final IOException e) {
+      LOGGER.warning(
+          "FASTQSCREEN: cannot clean the index cache: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Remove an index if it is not used by a process.
+   * @param dir the directory of the index
+   * @return true if the index has been removed
+   * @throws IOException if an error occurs while removing the index
+   */
+  private boolean removeIfUnused(final File dir) throws IOException {
+
+    final String name = dir.getName();
+    final EntryLock entryLock = getEntryLock(name);
+
+    // The lock of the index in this process avoid overlapping file locks
+    synchronized (entryLock) {
+
+      if (entryLock.users > 0) {
+        return false;
+      }
+
+      try (FileChannel channel = FileChannel.open(
+          new File(this.cacheDir, name + LOCK_EXTENSION).toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+
+        final FileLock lock = channel.tryLock();
+
+        // The index is used by another process
+        if (lock == null) {
+          return false;
+        }
+
+        try {
+          LOGGER.info("FASTQSCREEN: remove the least recently used index "
+              + name + " from the index cache");
+          delete(dir);
+          entryLock.prefaulted = false;
+        } finally {
+          lock.release();
+        }
+      }
+    }
+
+    return true;
+  }
+
+  //
+  // Index methods
+  //
+
+  /**
+   * Test if an extracted index is valid. The manifest must exist, the archive
+   * must not have been modified since the extraction and all the files of the
+   * manifest must exist with the right size.
+   * @param dir the directory of the index
+   * @param archiveFile the archive of the index
+   * @return true if the index is valid
+   */
+  private static boolean isValid(final File dir, final File archiveFile) {
+
+    final Properties manifest = readManifest(dir);
+
+    if (manifest == null
+        || !archiveFile.getAbsolutePath()
+            .equals(manifest.getProperty(ARCHIVE_PATH_KEY))
+        || !Long.toString(archiveFile.length())
+            .equals(manifest.getProperty(ARCHIVE_SIZE_KEY))
+        || !Long.toString(archiveFile.lastModified())
+            .equals(manifest.getProperty(ARCHIVE_DATE_KEY))) {
+      return false;
+    }
+
+    for (String key : manifest.stringPropertyNames()) {
+
+      if (key.startsWith(FILE_SIZE_PREFIX)) {
+
+        final File f =
+            new File(dir, key.substring(FILE_SIZE_PREFIX.length()));
+
+        if (!f.isFile()
+            || !Long.toString(f.length()).equals(manifest.getProperty(key))) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Read the files of an index to load them in the page cache and check their
+   * CRC.
+   * @param dir the directory of the index
+   * @return true if the CRC of all the files are valid
+   * @throws IOException if an error occurs while reading the files
+   */
+  private static boolean prefault(final File dir) throws IOException {
+
+    final Properties manifest = readManifest(dir);
+    if (manifest == null) {
+      return false;
+    }
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    for (String key : manifest.stringPropertyNames()) {
+
+      if (!key.startsWith(FILE_CRC_PREFIX)) {
+        continue;
+      }
+
+      final File f = new File(dir, key.substring(FILE_CRC_PREFIX.length()));
+      final CRC32 crc = new CRC32();
+
+      try (InputStream is = new FileInputStream(f)) {
+
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+          crc.update(buffer, 0, n);
+        }
+      }
+
+      if (!Long.toHexString(crc.getValue())
+          .equals(manifest.getProperty(key))) {
+        LOGGER.warning("FASTQSCREEN: invalid CRC for index file " + f);
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Extract an archive of an index. The archive is extracted in a temporary
+   * directory that is renamed at the end of the extraction.
+   * @param archiveFile the archive
+   * @param dir the directory of the index
+   * @throws IOException if an error occurs while extracting the archive
+   */
+  private static void extract(final File archiveFile, final File dir)
+      throws IOException {
+
+    LOGGER.info("FASTQSCREEN: extract index " + archiveFile + " in " + dir);
+
+    final File tmpDir = new File(dir.getPath() + TEMP_EXTENSION);
+    delete(tmpDir);
+    delete(dir);
+
+    if (!tmpDir.mkdirs()) {
+      throw new IOException("Cannot create directory: " + tmpDir);
+    }
+
+    final Properties manifest = new Properties();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    long totalSize = 0;
+
+    // The CRC of the entries are checked by ZipInputStream
+    try (ZipInputStream zis = new ZipInputStream(
+        new BufferedInputStream(new FileInputStream(archiveFile),
+            BUFFER_SIZE))) {
+
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+
+        final String entryName = entry.getName();
+
+        if (entryName.startsWith("/") || entryName.contains("..")) {
+          throw new IOException("Invalid entry in index archive "
+              + archiveFile + ": " + entryName);
+        }
+
+        final File f = new File(tmpDir, entryName);
+
+        if (entry.isDirectory()) {
+          if (!f.isDirectory() && !f.mkdirs()) {
+            throw new IOException("Cannot create directory: " + f);
+          }
+          continue;
+        }
+
+        final File parent = f.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+          throw new IOException("Cannot create directory: " + parent);
+        }
+
+        final CRC32 crc = new CRC32();
+        long size = 0;
+
+        try (OutputStream os =
+            new BufferedOutputStream(new FileOutputStream(f), BUFFER_SIZE)) {
+
+          int n;
+          while ((n = zis.read(buffer)) != -1) {
+            crc.update(buffer, 0, n);
+            os.write(buffer, 0, n);
+            size += n;
+          }
+        }
+
+        manifest.setProperty(FILE_SIZE_PREFIX + entryName,
+            Long.toString(size));
+        manifest.setProperty(FILE_CRC_PREFIX + entryName,
+            Long.toHexString(crc.getValue()));
+        totalSize += size;
+      }
+    }
+
+    manifest.setProperty(ARCHIVE_PATH_KEY, archiveFile.getAbsolutePath());
+    manifest.setProperty(ARCHIVE_SIZE_KEY,
+        Long.toString(archiveFile.length()));
+    manifest.setProperty(ARCHIVE_DATE_KEY,
+        Long.toString(archiveFile.lastModified()));
+    manifest.setProperty(TOTAL_SIZE_KEY, Long.toString(totalSize));
+
+    // The manifest is written last as it marks the end of the extraction
+    try (OutputStream os =
+        new FileOutputStream(new File(tmpDir, MANIFEST_FILENAME))) {
+      manifest.store(os, "Aozan mapper index manifest");
+    }
+
+    if (!tmpDir.renameTo(dir)) {
+      throw new IOException("Cannot rename " + tmpDir + " to " + dir);
+    }
+  }
+
+  /**
+   * Read the manifest of an index.
+   * @param dir the directory of the index
+   * @return a Properties object with the content of the manifest or null if
+   *         the manifest does not exist or cannot be read
+   */
+  private static Properties readManifest(final File dir) {
+
+    final File manifestFile = new File(dir, MANIFEST_FILENAME);
+
+    if (!manifestFile.isFile()) {
+      return null;
+    }
+
+    final Properties result = new Properties();
+
+    try (InputStream is = new FileInputStream(manifestFile)) {
+      result.load(is);
+    } catch (final IOException e) {
+      return null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the size of the files of an index.
+   * @param dir the directory of the index
+   * @return the size of the files of the index
+   */
+  private static long getTotalSize(final File dir) {
+
+    final Properties manifest = readManifest(dir);
+
+    if (manifest == null) {
+      return 0;
+    }
+
+    try {
+      return Long.parseLong(manifest.getProperty(TOTAL_SIZE_KEY, "0"));
+    } catch (final NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Get the name of an index in the cache.
+   * @param mapperName the name of the mapper
+   * @param genomeName the name of the genome
+   * @return the name of the index
+   */
+  private static String entryName(final String mapperName,
+      final String genomeName) {
+
+    return (mapperName + '-' + genomeName).toLowerCase(Globals.DEFAULT_LOCALE)
+        .replaceAll("[^a-z0-9._-]", "_");
+  }
+
+  /**
+   * Delete a file or a directory and its content. The manifest of an index is
+   * removed first to invalidate the index.
+   * @param file the file to delete
+   * @throws IOException if the file cannot be deleted
+   */
+  private static void delete(final File file) throws IOException {
+
+    if (!file.exists()) {
+      return;
+    }
+
+    if (file.isDirectory()) {
+
+      final File manifestFile = new File(file, MANIFEST_FILENAME);
+      if (manifestFile.exists() && !manifestFile.delete()) {
+        throw new IOException("Cannot delete file: " + manifestFile);
+      }
+
+      final File[] files = file.listFiles();
+      if (files != null) {
+        for (File f : files) {
+          delete(f);
+        }
+      }
+    }
+
+    if (!file.delete()) {
+      throw new IOException("Cannot delete file: " + file);
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Initialize the singleton.
+   * @param cacheDir the directory of the cache, null to disable the cache
+   * @param maxSize the maximal size of the cache in bytes, 0 for no limit
+   * @param prefault true if the files of the indexes must be read before the
+   *          mapping
+   */
+  public static synchronized void initialize(final File cacheDir,
+      final long maxSize, final boolean prefault) {
+
+    if (singleton == null) {
+      singleton = new MapperIndexCache(cacheDir, maxSize, prefault);
+    }
+  }
+
+  /**
+   * Get the instance of the singleton. If the singleton has not been
+   * initialized, the cache is disabled.
+   * @return the singleton instance of MapperIndexCache
+   */
+  public static synchronized MapperIndexCache getInstance() {
+
+    if (singleton == null) {
+      singleton = new MapperIndexCache(null, 0, false);
+    }
+
+    return singleton;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param cacheDir the directory of the cache, null to disable the cache
+   * @param maxSize the maximal size of the cache in bytes, 0 for no limit
+   * @param prefault true if the files of the indexes must be read before the
+   *          mapping
+   */
+  MapperIndexCache(final File cacheDir, final long maxSize,
+      final boolean prefault) {
+
+    checkArgument(maxSize >= 0, "maxSize cannot be lower than 0");
+
+    this.cacheDir = cacheDir == null ? null : cacheDir.getAbsoluteFile();
+    this.maxSize = maxSize;
+    this.prefault = prefault;
+  }
+
+}
@@ -0,0 +1,352 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class define an input stream that uncompress the blocks of a compressed
+ * stream in parallel. The compressed blocks are read sequentially by the
+ * thread that reads the stream, the uncompression of the blocks is submitted to
+ * an executor and the uncompressed blocks are returned in the order of the
+ * compressed stream. Several blocks are uncompressed in advance. When the
+ * uncompression of a block fails, the block is merged with the next blocks
+ * if the subclass allows it, as the boundaries of the blocks of some formats
+ * can be wrongly detected. Each stream has its own pool of threads, that is
+ * shut down when the stream is closed.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+abstract class AbstractParallelBlockInputStream extends InputStream {
+
+  private static final byte[] EMPTY_BLOCK = new byte[0];
+
+  /** Maximal number of blocks merged with a block that cannot be read. */
+  private static final int MAX_MERGED_BLOCKS = 8;
+
+  /** Time after which the idle threads of an unclosed stream stop. */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private final ExecutorService executor;
+  private final int readAhead;
+  private final Deque<PendingBlock> pending = new ArrayDeque<>();
+
+  private byte[] block = EMPTY_BLOCK;
+  private int pos;
+  private boolean endOfInput;
+  private boolean closed;
+
+  /**
+   * This class define a block submitted to the executor.
+   */
+  private static final class PendingBlock {
+
+    private final Callable<byte[]> task;
+    private final Future<byte[]> future;
+
+    PendingBlock(final Callable<byte[]> task, final Future<byte[]> future) {
+
+      this.task = task;
+      this.future = future;
+    }
+  }
+
+  //
+  // Abstract methods
+  //
+
+  /**
+   * Read the next compressed block and create the task that uncompress it.
+   * This method is only called by the thread that reads the stream.
+   * @return a task that return the uncompressed block or null if the end of
+   *         the compressed stream has been reached
+   * @throws IOException if an error occurs while reading the compressed block
+   */
+  protected abstract Callable<byte[]> nextBlock() throws IOException;
+
+  /**
+   * Close the compressed stream.
+   * @throws IOException if an error occurs while closing the compressed stream
+   */
+  protected abstract void closeInput() throws IOException;
+
+  /**
+   * Create the task that uncompress a block whose uncompression has failed
+   * followed by the next block. By default, the blocks cannot be merged.
+   * @param task the task whose uncompression has failed
+   * @param next the task of the next block
+   * @return a task that uncompress the two blocks or null if the blocks cannot
+   *         be merged
+   */
+  protected Callable<byte[]> mergeBlocks(final Callable<byte[]> task,
+      final Callable<byte[]> next) {
+
+    return null;
+  }
+
+  /**
+   * Check a block after its uncompression, before its data is read. The blocks
+   * are checked in the order of the compressed stream.
+   * @param task the task of the block
+   * @throws IOException if the block is invalid
+   */
+  protected void checkBlock(final Callable<byte[]> task) throws IOException {
+  }
+
+  //
+  // InputStream methods
+  //
+
+  @Override
+  public int read() throws IOException {
+
+    if (!fill()) {
+      return -1;
+    }
+
+    return this.block[this.pos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    checkNotNull(b, "b argument cannot be null");
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!fill()) {
+      return -1;
+    }
+
+    final int count = Math.min(len, this.block.length - this.pos);
+    System.arraycopy(this.block, this.pos, b, off, count);
+    this.pos += count;
+
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+
+    return this.closed ? 0 : this.block.length - this.pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.block = EMPTY_BLOCK;
+    this.pos = 0;
+
+    // The uncompressed blocks will never be read
+    for (PendingBlock b : this.pending) {
+      b.future.cancel(false);
+    }
+    this.pending.clear();
+    this.executor.shutdown();
+
+    closeInput();
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Fill the current block if it has been fully read.
+   * @return false if the end of the stream has been reached
+   * @throws IOException if an error occurs while uncompressing a block
+   */
+  private boolean fill() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+
+    while (this.pos == this.block.length) {
+
+      submitBlocks();
+
+      final PendingBlock pendingBlock = this.pending.poll();
+
+      if (pendingBlock == null) {
+        return false;
+      }
+
+      this.block = uncompress(pendingBlock);
+      this.pos = 0;
+    }
+
+    return true;
+  }
+
+  /**
+   * Submit the uncompression of the next blocks.
+   * @throws IOException if an error occurs while reading the compressed blocks
+   */
+  private void submitBlocks() throws IOException {
+
+    while (!this.endOfInput && this.pending.size() < this.readAhead) {
+
+      final Callable<byte[]> task = nextBlock();
+
+      if (task == null) {
+        this.endOfInput = true;
+      } else {
+        this.pending.add(
+            new PendingBlock(task, this.executor.submit(task)));
+      }
+    }
+  }
+
+  /**
+   * Get the uncompressed data of a block. If the uncompression has failed, the
+   * block is uncompressed again with the next blocks by the current thread.
+   * @param pendingBlock the block
+   * @return the uncompressed block
+   * @throws IOException if an error has occurred while uncompressing the block
+   */
+  private byte[] uncompress(final PendingBlock pendingBlock)
+      throws IOException {
+
+    Callable<byte[]> task = pendingBlock.task;
+    byte[] result = null;
+
+    try {
+      result = getBlock(pendingBlock.future);
+
+    } catch (final InterruptedIOException e) {
+      throw e;
+
+    } catch (final IOException e) {
+
+      // The block may end at a wrongly detected boundary
+      for (int i = 0; result == null; i++) {
+
+        submitBlocks();
+        final PendingBlock next = this.pending.poll();
+
+        if (i == MAX_MERGED_BLOCKS || next == null) {
+          throw e;
+        }
+
+        next.future.cancel(false);
+        task = mergeBlocks(task, next.task);
+
+        if (task == null) {
+          throw e;
+        }
+
+        try {
+          result = task.call();
+        } catch (final Exception e2) {
+          // The merged blocks cannot be uncompressed
+          result = null;
+        }
+      }
+    }
+
+    checkBlock(task);
+
+    return result;
+  }
+
+  /**
+   * Wait the end of the uncompression of a block.
+   * @param future the future of the uncompression task
+   * @return the uncompressed block
+   * @throws IOException if an error has occurred while uncompressing the block
+   */
+  private static byte[] getBlock(final Future<byte[]> future)
+      throws IOException {
+
+    try {
+      return future.get();
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted while uncompressing a block");
+
+    } catch (final ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param threads the number of threads that uncompress the blocks
+   */
+  AbstractParallelBlockInputStream(final int threads) {
+
+    checkArgument(threads > 0, "threads must be greater than 0");
+
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+        threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("decompression-%d").build());
+
+    // The threads of a stream that is not closed do not remain forever
+    executor.allowCoreThreadTimeOut(true);
+
+    this.executor = executor;
+    this.readAhead = 2 * threads;
+  }
+
+}
@@ -0,0 +1,271 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class define an output stream that compress blocks of data in
+ * parallel. The data written in the stream are split in blocks, the
+ * compression of the blocks is submitted to an executor and the compressed
+ * blocks are written in the underlying stream in the order of the data by the
+ * thread that writes the stream. Several blocks are compressed in advance.
+ * Each stream has its own pool of threads, that is shut down when the stream
+ * is closed.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+abstract class AbstractParallelBlockOutputStream extends OutputStream {
+
+  /** Time after which the idle threads of an unclosed stream stop. */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int blockSize;
+  private final int writeAhead;
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+  private byte[] block;
+  private int pos;
+  private boolean closed;
+
+  //
+  // Abstract methods
+  //
+
+  /**
+   * Create the task that compress a block.
+   * @param data the uncompressed data
+   * @param length the length of the data
+   * @return a task that return the compressed block
+   */
+  protected abstract Callable<byte[]> compressBlock(byte[] data, int length);
+
+  /**
+   * Get the bytes to write at the end of the compressed stream.
+   * @return an array of bytes, can be empty
+   */
+  protected abstract byte[] trailer();
+
+  //
+  // OutputStream methods
+  //
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    checkOpen();
+
+    this.block[this.pos++] = (byte) b;
+
+    if (this.pos == this.blockSize) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    checkNotNull(b, "b argument cannot be null");
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    checkOpen();
+
+    int offset = off;
+    int remaining = len;
+
+    while (remaining > 0) {
+
+      final int count = Math.min(remaining, this.blockSize - this.pos);
+      System.arraycopy(b, offset, this.block, this.pos, count);
+      this.pos += count;
+      offset += count;
+      remaining -= count;
+
+      if (this.pos == this.blockSize) {
+        submitBlock();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+
+    checkOpen();
+
+    // Only the blocks already compressed are written
+    while (!this.pending.isEmpty() && this.pending.peek().isDone()) {
+      this.out.write(getBlock(this.pending.poll()));
+    }
+
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    try {
+
+      if (this.pos > 0) {
+        submitBlock();
+      }
+
+      while (!this.pending.isEmpty()) {
+        this.out.write(getBlock(this.pending.poll()));
+      }
+
+      this.out.write(trailer());
+
+    } finally {
+
+      this.closed = true;
+      this.block = null;
+
+      // The compressed blocks will never be written if an error has occurred
+      for (Future<byte[]> f : this.pending) {
+        f.cancel(false);
+      }
+      this.pending.clear();
+      this.executor.shutdown();
+
+      this.out.close();
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Check if the stream is open.
+   * @throws IOException if the stream has been closed
+   */
+  private void checkOpen() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  /**
+   * Submit the compression of the current block. The oldest compressed block
+   * is written if too many blocks are waiting to be written.
+   * @throws IOException if an error occurs while writing a compressed block
+   */
+  private void submitBlock() throws IOException {
+
+    while (this.pending.size() >= this.writeAhead) {
+      this.out.write(getBlock(this.pending.poll()));
+    }
+
+    this.pending.add(this.executor.submit(compressBlock(this.block, this.pos)));
+
+    // The submitted block is owned by the task
+    this.block = new byte[this.blockSize];
+    this.pos = 0;
+  }
+
+  /**
+   * Wait the end of the compression of a block.
+   * @param future the future of the compression task
+   * @return the compressed block
+   * @throws IOException if an error has occurred while compressing the block
+   */
+  private static byte[] getBlock(final Future<byte[]> future)
+      throws IOException {
+
+    try {
+      return future.get();
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing a block");
+
+    } catch (final ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param out the output stream of the compressed data
+   * @param threads the number of threads that compress the blocks
+   * @param blockSize the size of the uncompressed blocks
+   */
+  AbstractParallelBlockOutputStream(final OutputStream out, final int threads,
+      final int blockSize) {
+
+    checkNotNull(out, "out argument cannot be null");
+    checkArgument(threads > 0, "threads must be greater than 0");
+    checkArgument(blockSize > 0, "blockSize must be greater than 0");
+
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+        threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("compression-%d").build());
+
+    // The threads of a stream that is not closed do not remain forever
+    executor.allowCoreThreadTimeOut(true);
+
+    this.out = out;
+    this.executor = executor;
+    this.blockSize = blockSize;
+    this.writeAhead = 2 * threads;
+    this.block = new byte[blockSize];
+  }
+
+}
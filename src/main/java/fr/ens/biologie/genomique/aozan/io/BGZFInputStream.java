@@ -0,0 +1,319 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * This class define an input stream that inflate in parallel the blocks of a
+ * BGZF file. A BGZF file is a multi-member gzip file where the size of each
+ * member is stored in the "BC" subfield of the extra field of the gzip header,
+ * so the members can be read without being inflated. Several members are
+ * inflated by each task to limit the cost of the scheduling of the tasks.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class BGZFInputStream extends AbstractParallelBlockInputStream {
+
+  private static final int GZIP_MAGIC1 = 0x1f;
+  private static final int GZIP_MAGIC2 = 0x8b;
+  private static final int DEFLATE_METHOD = 8;
+  private static final int FLAG_FHCRC = 2;
+  private static final int FLAG_FEXTRA = 4;
+  private static final int FLAG_FNAME = 8;
+  private static final int FLAG_FCOMMENT = 16;
+
+  /** Length of the gzip header before the extra field. */
+  static final int FIXED_HEADER_LENGTH = 12;
+
+  private static final int TRAILER_LENGTH = 8;
+  private static final int BLOCKS_PER_TASK = 16;
+
+  private final InputStream in;
+
+  /**
+   * This class define the task that inflate several BGZF blocks.
+   */
+  private static final class InflateTask implements Callable<byte[]> {
+
+    private final List<byte[]> blocks;
+
+    @Override
+    public byte[] call() throws IOException {
+
+      final List<byte[]> result = new ArrayList<>(this.blocks.size());
+      int length = 0;
+
+      final Inflater inflater = new Inflater(true);
+      try {
+        for (byte[] block : this.blocks) {
+
+          final byte[] data = inflate(inflater, block);
+          result.add(data);
+          length += data.length;
+          inflater.reset();
+        }
+      } finally {
+        inflater.end();
+      }
+
+      if (result.size() == 1) {
+        return result.get(0);
+      }
+
+      final byte[] concatenated = new byte[length];
+      int pos = 0;
+      for (byte[] data : result) {
+        System.arraycopy(data, 0, concatenated, pos, data.length);
+        pos += data.length;
+      }
+
+      return concatenated;
+    }
+
+    InflateTask(final List<byte[]> blocks) {
+      this.blocks = blocks;
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Test if a gzip header is the header of a BGZF block.
+   * @param header the bytes of the header
+   * @param length the number of bytes of the header
+   * @return the size of the block or -1 if the header is not the header of a
+   *         BGZF block
+   */
+  static int getBlockSize(final byte[] header, final int length) {
+
+    if (length < FIXED_HEADER_LENGTH
+        || (header[0] & 0xff) != GZIP_MAGIC1
+        || (header[1] & 0xff) != GZIP_MAGIC2
+        || (header[2] & 0xff) != DEFLATE_METHOD
+        || (header[3] & FLAG_FEXTRA) == 0) {
+      return -1;
+    }
+
+    final int xlen = readUInt16(header, 10);
+    final int end = FIXED_HEADER_LENGTH + xlen;
+
+    if (length < end) {
+      return -1;
+    }
+
+    // Search the BC subfield
+    int pos = FIXED_HEADER_LENGTH;
+    while (pos + 4 <= end) {
+
+      final int slen = readUInt16(header, pos + 2);
+
+      if (header[pos] == 'B' && header[pos + 1] == 'C' && slen == 2) {
+        return pos + 6 <= end ? readUInt16(header, pos + 4) + 1 : -1;
+      }
+
+      pos += 4 + slen;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Inflate a BGZF block.
+   * @param inflater the inflater to use
+   * @param block the block
+   * @return an array with the inflated data
+   * @throws IOException if the block is invalid
+   */
+  private static byte[] inflate(final Inflater inflater, final byte[] block)
+      throws IOException {
+
+    final int flags = block[3] & 0xff;
+    int pos = FIXED_HEADER_LENGTH + readUInt16(block, 10);
+
+    // Skip the optional fields of the header
+    if ((flags & FLAG_FNAME) != 0) {
+      while (block[pos++] != 0) {
+      }
+    }
+    if ((flags & FLAG_FCOMMENT) != 0) {
+      while (block[pos++] != 0) {
+      }
+    }
+    if ((flags & FLAG_FHCRC) != 0) {
+      pos += 2;
+    }
+
+    final int trailer = block.length - TRAILER_LENGTH;
+    final long expectedCRC = readUInt32(block, trailer);
+    final int size = (int) readUInt32(block, trailer + 4);
+    final byte[] result = new byte[size];
+
+    inflater.setInput(block, pos, trailer - pos);
+
+    try {
+      int count = 0;
+      while (count < size) {
+
+        final int n = inflater.inflate(result, count, size - count);
+        if (n == 0 && (inflater.finished()
+            || inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        count += n;
+      }
+
+      if (count != size) {
+        throw new IOException("Invalid BGZF block: the uncompressed size is "
+            + count + " instead of " + size);
+      }
+    } catch (final DataFormatException e) {
+      throw new IOException("Invalid BGZF block: " + e.getMessage(), e);
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(result, 0, size);
+
+    if (crc.getValue() != expectedCRC) {
+      throw new IOException("Invalid CRC in BGZF block");
+    }
+
+    return result;
+  }
+
+  private static int readUInt16(final byte[] b, final int off) {
+
+    return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+  }
+
+  private static long readUInt32(final byte[] b, final int off) {
+
+    return (readUInt16(b, off) | (long) readUInt16(b, off + 2) << 16)
+        & 0xffffffffL;
+  }
+
+  //
+  // Stream methods
+  //
+
+  @Override
+  protected Callable<byte[]> nextBlock() throws IOException {
+
+    final List<byte[]> blocks = new ArrayList<>(BLOCKS_PER_TASK);
+
+    while (blocks.size() < BLOCKS_PER_TASK) {
+
+      final byte[] block = readBlock();
+      if (block == null) {
+        break;
+      }
+
+      blocks.add(block);
+    }
+
+    return blocks.isEmpty() ? null : new InflateTask(blocks);
+  }
+
+  /**
+   * Read the next BGZF block.
+   * @return the block or null if the end of the stream has been reached
+   * @throws IOException if an error occurs while reading the block
+   */
+  private byte[] readBlock() throws IOException {
+
+    final byte[] header = new byte[FIXED_HEADER_LENGTH];
+    final int n = ByteStreams.read(this.in, header, 0, header.length);
+
+    if (n == 0) {
+      return null;
+    }
+
+    if (n < header.length) {
+      throw new EOFException("Truncated BGZF block");
+    }
+
+    if ((header[0] & 0xff) != GZIP_MAGIC1
+        || (header[1] & 0xff) != GZIP_MAGIC2
+        || (header[3] & FLAG_FEXTRA) == 0) {
+      throw new IOException("The gzip member is not a BGZF block");
+    }
+
+    // Read the extra field
+    final int xlen = readUInt16(header, 10);
+    final byte[] extendedHeader = new byte[FIXED_HEADER_LENGTH + xlen];
+    System.arraycopy(header, 0, extendedHeader, 0, header.length);
+    ByteStreams.readFully(this.in, extendedHeader, header.length, xlen);
+
+    final int blockSize = getBlockSize(extendedHeader, extendedHeader.length);
+    if (blockSize < extendedHeader.length + TRAILER_LENGTH) {
+      throw new IOException("The gzip member is not a BGZF block");
+    }
+
+    final byte[] result = new byte[blockSize];
+    System.arraycopy(extendedHeader, 0, result, 0, extendedHeader.length);
+    ByteStreams.readFully(this.in, result, extendedHeader.length,
+        blockSize - extendedHeader.length);
+
+    return result;
+  }
+
+  @Override
+  protected void closeInput() throws IOException {
+
+    this.in.close();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param in the compressed input stream
+   * @param threads the number of threads that inflate the blocks
+   */
+  BGZFInputStream(final InputStream in, final int threads) {
+
+    super(threads);
+
+    checkNotNull(in, "in argument cannot be null");
+
+    this.in = in;
+  }
+
+}
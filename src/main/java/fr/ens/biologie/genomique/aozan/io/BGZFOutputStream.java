@@ -0,0 +1,197 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class define an output stream that deflate in parallel the blocks of a
+ * BGZF file. A BGZF file is a multi-member gzip file that can be read by any
+ * gzip tool and that can be uncompressed in parallel by
+ * {@link BGZFInputStream}. Several members are deflated by each task to limit
+ * the cost of the scheduling of the tasks.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class BGZFOutputStream extends AbstractParallelBlockOutputStream {
+
+  /** Maximal size of the uncompressed data of a BGZF block. */
+  private static final int MAX_DATA_LENGTH = 65280;
+
+  /** Maximal size of a BGZF block. */
+  private static final int MAX_BLOCK_LENGTH = 65536;
+
+  private static final int HEADER_LENGTH = 18;
+  private static final int TRAILER_LENGTH = 8;
+  private static final int BLOCKS_PER_TASK = 16;
+
+  /** The empty block that ends a BGZF file. */
+  private static final byte[] EOF_BLOCK = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0,
+      0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0,
+      0, 0};
+
+  private final int level;
+
+  /**
+   * This class define the task that deflate several BGZF blocks.
+   */
+  private static final class DeflateTask implements Callable<byte[]> {
+
+    private final byte[] data;
+    private final int length;
+    private final int level;
+
+    @Override
+    public byte[] call() throws IOException {
+
+      final ByteArrayOutputStream result =
+          new ByteArrayOutputStream(this.length / 2 + 1024);
+      final byte[] buffer = new byte[MAX_BLOCK_LENGTH];
+      final CRC32 crc = new CRC32();
+
+      final Deflater deflater = new Deflater(this.level, true);
+      try {
+        for (int off = 0; off < this.length; off += MAX_DATA_LENGTH) {
+
+          final int len = Math.min(MAX_DATA_LENGTH, this.length - off);
+
+          deflater.reset();
+          deflater.setInput(this.data, off, len);
+          deflater.finish();
+
+          int size = HEADER_LENGTH;
+          while (!deflater.finished()) {
+
+            if (size == MAX_BLOCK_LENGTH - TRAILER_LENGTH) {
+              throw new IOException("Deflated BGZF block too large");
+            }
+
+            size += deflater.deflate(buffer, size,
+                MAX_BLOCK_LENGTH - TRAILER_LENGTH - size);
+          }
+
+          crc.reset();
+          crc.update(this.data, off, len);
+
+          writeHeader(buffer, size + TRAILER_LENGTH);
+          writeInt(buffer, size, (int) crc.getValue());
+          writeInt(buffer, size + 4, len);
+
+          result.write(buffer, 0, size + TRAILER_LENGTH);
+        }
+      } finally {
+        deflater.end();
+      }
+
+      return result.toByteArray();
+    }
+
+    DeflateTask(final byte[] data, final int length, final int level) {
+
+      this.data = data;
+      this.length = length;
+      this.level = level;
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Write the gzip header of a BGZF block.
+   * @param buffer the buffer of the block
+   * @param blockLength the length of the block
+   */
+  private static void writeHeader(final byte[] buffer,
+      final int blockLength) {
+
+    System.arraycopy(EOF_BLOCK, 0, buffer, 0, HEADER_LENGTH - 2);
+
+    // The BC subfield contains the length of the block minus 1
+    buffer[HEADER_LENGTH - 2] = (byte) (blockLength - 1);
+    buffer[HEADER_LENGTH - 1] = (byte) ((blockLength - 1) >>> 8);
+  }
+
+  /**
+   * Write a little endian integer.
+   * @param buffer the buffer
+   * @param pos the position in the buffer
+   * @param value the value to write
+   */
+  private static void writeInt(final byte[] buffer, final int pos,
+      final int value) {
+
+    buffer[pos] = (byte) value;
+    buffer[pos + 1] = (byte) (value >>> 8);
+    buffer[pos + 2] = (byte) (value >>> 16);
+    buffer[pos + 3] = (byte) (value >>> 24);
+  }
+
+  //
+  // Stream methods
+  //
+
+  @Override
+  protected Callable<byte[]> compressBlock(final byte[] data,
+      final int length) {
+
+    return new DeflateTask(data, length, this.level);
+  }
+
+  @Override
+  protected byte[] trailer() {
+
+    return EOF_BLOCK.clone();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param out the output stream of the BGZF file
+   * @param level the compression level, between 1 and 9
+   * @param threads the number of threads that deflate the blocks
+   */
+  BGZFOutputStream(final OutputStream out, final int level,
+      final int threads) {
+
+    super(out, threads, BLOCKS_PER_TASK * MAX_DATA_LENGTH);
+
+    checkArgument(level >= 1 && level <= 9,
+        "level must be between 1 and 9: " + level);
+
+    this.level = level;
+  }
+
+}
@@ -0,0 +1,519 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.itadaki.bzip2.BZip2InputStream;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * This class define an input stream that uncompress in parallel the blocks of
+ * a bzip2 file. The blocks of a bzip2 stream are not aligned on bytes, so the
+ * compressed stream is scanned for the 48 bits magic numbers that start the
+ * blocks and each block is rewritten as a standalone bzip2 stream that is
+ * uncompressed by jbzip2. The CRC of each block is checked by jbzip2 and the
+ * combined CRC of each stream is checked when the blocks are read. The block
+ * magic number can occur by chance in the compressed data, so a block that
+ * cannot be uncompressed is merged with the next block. An end of stream magic
+ * number is only accepted if it is followed by the end of the compressed
+ * stream or by the header of a new stream. Concatenated bzip2 streams are
+ * supported.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class BZip2ParallelInputStream extends AbstractParallelBlockInputStream {
+
+  private static final long BLOCK_MAGIC = 0x314159265359L;
+  private static final long EOS_MAGIC = 0x177245385090L;
+  private static final long MAGIC_MASK = 0xffffffffffffL;
+  private static final int MAGIC_BITS = 48;
+  private static final int CRC_BITS = 32;
+
+  private final InputStream in;
+
+  // The bytes read from the compressed stream that have not been processed
+  private byte[] buffer = new byte[1024 * 1024];
+  private long bufferStartBit;
+  private int bufferLength;
+  private boolean endOfInput;
+
+  private long bitPos;
+  private boolean inStream;
+  private int level;
+
+  // Combined CRC of the blocks read from the current stream
+  private int combinedCRC;
+
+  /**
+   * This class define a writer of bits.
+   */
+  private static final class BitWriter {
+
+    private final ByteArrayOutputStream out;
+    private long acc;
+    private int count;
+
+    /**
+     * Write bits.
+     * @param bits the number of bits to write, must be lower than 57
+     * @param value the value to write
+     */
+    void write(final int bits, final long value) {
+
+      this.acc = this.acc << bits | value & (1L << bits) - 1;
+      this.count += bits;
+
+      while (this.count >= 8) {
+        this.count -= 8;
+        this.out.write((int) (this.acc >>> this.count));
+      }
+    }
+
+    /**
+     * Write bits from an array of bytes.
+     * @param bytes the array of bytes
+     * @param bitOffset the offset of the first bit in the first byte
+     * @param bitLength the number of bits to write
+     */
+    void write(final byte[] bytes, final int bitOffset, final long bitLength) {
+
+      long remaining = bitLength;
+      int pos = 0;
+
+      // Align the first bits
+      if (bitOffset > 0) {
+
+        final int bits = (int) Math.min(8 - bitOffset, remaining);
+        write(bits, (bytes[0] & 0xff) >>> (8 - bitOffset - bits));
+        remaining -= bits;
+        pos = 1;
+      }
+
+      // Copy the full bytes
+      while (remaining >= 8) {
+        write(8, bytes[pos++] & 0xff);
+        remaining -= 8;
+      }
+
+      // Copy the last bits
+      if (remaining > 0) {
+        write((int) remaining, (bytes[pos] & 0xff) >>> (8 - remaining));
+      }
+    }
+
+    /**
+     * Get the written bytes. The last byte is padded with zeros.
+     * @return an array with the written bytes
+     */
+    byte[] toByteArray() {
+
+      if (this.count > 0) {
+        write(8 - this.count, 0);
+      }
+
+      return this.out.toByteArray();
+    }
+
+    BitWriter(final int capacity) {
+      this.out = new ByteArrayOutputStream(capacity);
+    }
+  }
+
+  /**
+   * This class define the task that uncompress a bzip2 block.
+   */
+  private static final class UncompressTask implements Callable<byte[]> {
+
+    private final int level;
+    private final int blockCRC;
+    private final byte[] bytes;
+    private final int bitOffset;
+    private final long bitLength;
+    private final boolean endOfStream;
+    private final int storedCRC;
+
+    @Override
+    public byte[] call() throws IOException {
+
+      // Create a bzip2 stream with only the block
+      final BitWriter writer = new BitWriter(this.bytes.length + 32);
+      writer.write(8, 'B');
+      writer.write(8, 'Z');
+      writer.write(8, 'h');
+      writer.write(8, '0' + this.level);
+      writer.write(MAGIC_BITS, BLOCK_MAGIC);
+      writer.write(CRC_BITS, this.blockCRC);
+      writer.write(this.bytes, this.bitOffset, this.bitLength);
+      writer.write(MAGIC_BITS, EOS_MAGIC);
+
+      // The combined CRC of a stream with one block is the CRC of the block
+      writer.write(CRC_BITS, this.blockCRC);
+
+      try (InputStream is = new BZip2InputStream(
+          new ByteArrayInputStream(writer.toByteArray()), false)) {
+
+        return ByteStreams.toByteArray(is);
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param level the block size level of the stream
+     * @param blockCRC the CRC of the block
+     * @param bytes the compressed data of the block
+     * @param bitOffset the offset of the first bit in the first byte
+     * @param bitLength the number of bits of the compressed data
+     * @param endOfStream true if the block is the last block of the stream
+     * @param storedCRC the combined CRC of the stream if the block is the last
+     *          block of the stream
+     */
+    UncompressTask(final int level, final int blockCRC, final byte[] bytes,
+        final int bitOffset, final long bitLength, final boolean endOfStream,
+        final int storedCRC) {
+
+      this.level = level;
+      this.blockCRC = blockCRC;
+      this.bytes = bytes;
+      this.bitOffset = bitOffset;
+      this.bitLength = bitLength;
+      this.endOfStream = endOfStream;
+      this.storedCRC = storedCRC;
+    }
+  }
+
+  //
+  // Stream methods
+  //
+
+  @Override
+  protected Callable<byte[]> nextBlock() throws IOException {
+
+    while (!this.inStream) {
+
+      // End of the compressed stream
+      if (!ensureBits(8)) {
+        return null;
+      }
+
+      // Read the header of the stream
+      if (readBits(8) != 'B' || readBits(8) != 'Z' || readBits(8) != 'h') {
+        throw new IOException("Invalid bzip2 stream header");
+      }
+
+      this.level = (int) readBits(8) - '0';
+      if (this.level < 1 || this.level > 9) {
+        throw new IOException("Invalid bzip2 block size: " + this.level);
+      }
+
+      final long magic = readBits(MAGIC_BITS);
+
+      if (magic == BLOCK_MAGIC) {
+        this.inStream = true;
+      } else if (magic == EOS_MAGIC) {
+
+        // The combined CRC of an empty stream is 0
+        if (endStream() != 0) {
+          throw new IOException("Invalid bzip2 combined CRC");
+        }
+      } else {
+        throw new IOException("Invalid bzip2 block magic number");
+      }
+    }
+
+    // The current position is the start of a block, after its magic number
+    final int blockCRC = (int) readBits(CRC_BITS);
+    final long dataStart = this.bitPos;
+
+    final boolean endOfStream = scanMagic();
+    final long dataEnd = this.bitPos;
+
+    // Extract the compressed data of the block
+    final int firstByte = (int) (dataStart / 8 - this.bufferStartBit / 8);
+    final int lastByte = (int) ((dataEnd + 7) / 8 - this.bufferStartBit / 8);
+    final byte[] bytes = Arrays.copyOfRange(this.buffer, firstByte, lastByte);
+
+    this.bitPos += MAGIC_BITS;
+    final int storedCRC = endOfStream ? endStream() : 0;
+
+    discard();
+
+    return new UncompressTask(this.level, blockCRC, bytes,
+        (int) (dataStart % 8), dataEnd - dataStart, endOfStream, storedCRC);
+  }
+
+  @Override
+  protected Callable<byte[]> mergeBlocks(final Callable<byte[]> task,
+      final Callable<byte[]> next) {
+
+    final UncompressTask t1 = (UncompressTask) task;
+    final UncompressTask t2 = (UncompressTask) next;
+
+    // The blocks of different streams cannot be merged
+    if (t1.endOfStream) {
+      return null;
+    }
+
+    // The magic number and the CRC of the next block are compressed data
+    final BitWriter writer =
+        new BitWriter(t1.bytes.length + t2.bytes.length + 10);
+    writer.write(t1.bytes, t1.bitOffset, t1.bitLength);
+    writer.write(MAGIC_BITS, BLOCK_MAGIC);
+    writer.write(CRC_BITS, t2.blockCRC);
+    writer.write(t2.bytes, t2.bitOffset, t2.bitLength);
+
+    return new UncompressTask(t1.level, t1.blockCRC, writer.toByteArray(), 0,
+        t1.bitLength + MAGIC_BITS + CRC_BITS + t2.bitLength, t2.endOfStream,
+        t2.storedCRC);
+  }
+
+  @Override
+  protected void checkBlock(final Callable<byte[]> task) throws IOException {
+
+    final UncompressTask t = (UncompressTask) task;
+
+    this.combinedCRC =
+        (this.combinedCRC << 1 | this.combinedCRC >>> 31) ^ t.blockCRC;
+
+    if (t.endOfStream) {
+
+      if (t.storedCRC != this.combinedCRC) {
+        throw new IOException("Invalid bzip2 combined CRC");
+      }
+      this.combinedCRC = 0;
+    }
+  }
+
+  /**
+   * Read the end of a stream after the end of stream magic number.
+   * @return the combined CRC stored at the end of the stream
+   * @throws IOException if the end of the compressed stream has been reached
+   */
+  private int endStream() throws IOException {
+
+    final int storedCRC = (int) readBits(CRC_BITS);
+
+    // The streams are aligned on bytes
+    this.bitPos = (this.bitPos + 7) / 8 * 8;
+    this.inStream = false;
+
+    return storedCRC;
+  }
+
+  /**
+   * Test if an end of stream magic number is followed by the end of the
+   * compressed stream or by the header of a new stream.
+   * @param magicStart the position of the magic number
+   * @return true if the magic number is the end of the stream
+   * @throws IOException if an error occurs while reading the compressed stream
+   */
+  private boolean isEndOfStream(final long magicStart) throws IOException {
+
+    final long pos = this.bitPos;
+
+    try {
+
+      this.bitPos = magicStart + MAGIC_BITS + CRC_BITS;
+
+      // The padding bits of the last byte are 0
+      final int padding = (int) ((8 - this.bitPos % 8) % 8);
+      if (!ensureBits(padding) || readBits(padding) != 0) {
+        return false;
+      }
+
+      if (!ensureBits(8)) {
+        return true;
+      }
+
+      return ensureBits(24) && readBits(24) == ('B' << 16 | 'Z' << 8 | 'h');
+
+    } finally {
+      this.bitPos = pos;
+    }
+  }
+
+  /**
+   * Search the next block or end of stream magic number from the current
+   * position. The current position is set to the start of the magic number.
+   * @return true if the magic number is an end of stream magic number
+   * @throws IOException if the end of the compressed stream has been reached
+   */
+  private boolean scanMagic() throws IOException {
+
+    final long start = this.bitPos;
+    long window = 0;
+    long byteIndex = start / 8;
+
+    while (true) {
+
+      final long byteStartBit = byteIndex * 8;
+
+      if (!ensureBits(byteStartBit + 8 - this.bitPos)) {
+        throw new EOFException("Unexpected end of bzip2 stream");
+      }
+
+      window = window << 8 | getByte(byteIndex);
+
+      // Test the magic numbers that end in this byte
+      for (int shift = 7; shift >= 0; shift--) {
+
+        final long magicStart = byteStartBit + 8 - shift - MAGIC_BITS;
+        if (magicStart < start) {
+          continue;
+        }
+
+        final long value = window >>> shift & MAGIC_MASK;
+
+        if (value == BLOCK_MAGIC
+            || value == EOS_MAGIC && isEndOfStream(magicStart)) {
+          this.bitPos = magicStart;
+          return value == EOS_MAGIC;
+        }
+      }
+
+      byteIndex++;
+    }
+  }
+
+  //
+  // Bit reading methods
+  //
+
+  /**
+   * Test if bits are available from the current position. The buffer is
+   * filled if needed.
+   * @param bits the number of bits
+   * @return true if the bits are available
+   * @throws IOException if an error occurs while reading the compressed stream
+   */
+  private boolean ensureBits(final long bits) throws IOException {
+
+    final long end = this.bitPos + bits;
+
+    while (this.bufferStartBit + this.bufferLength * 8L < end) {
+
+      if (this.endOfInput) {
+        return false;
+      }
+
+      if (this.bufferLength == this.buffer.length) {
+        this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+      }
+
+      final int n = this.in.read(this.buffer, this.bufferLength,
+          this.buffer.length - this.bufferLength);
+
+      if (n == -1) {
+        this.endOfInput = true;
+      } else {
+        this.bufferLength += n;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get a byte of the buffer.
+   * @param byteIndex the index of the byte in the compressed stream
+   * @return the value of the byte
+   */
+  private int getByte(final long byteIndex) {
+
+    return this.buffer[(int) (byteIndex - this.bufferStartBit / 8)] & 0xff;
+  }
+
+  /**
+   * Read bits from the current position.
+   * @param bits number of bits to read, must be lower than 57
+   * @return the value of the bits
+   * @throws IOException if the end of the compressed stream has been reached
+   */
+  private long readBits(final int bits) throws IOException {
+
+    if (!ensureBits(bits)) {
+      throw new EOFException("Unexpected end of bzip2 stream");
+    }
+
+    long result = 0;
+    for (int i = 0; i < bits; i++) {
+
+      final long pos = this.bitPos++;
+      final int bit = getByte(pos / 8) >>> (7 - (int) (pos % 8)) & 1;
+      result = result << 1 | bit;
+    }
+
+    return result;
+  }
+
+  /**
+   * Remove the bytes before the current position from the buffer.
+   */
+  private void discard() {
+
+    final int count = (int) (this.bitPos / 8 - this.bufferStartBit / 8);
+
+    if (count > 0) {
+
+      final int remaining = Math.max(0, this.bufferLength - count);
+      System.arraycopy(this.buffer, count, this.buffer, 0, remaining);
+      this.bufferLength = remaining;
+      this.bufferStartBit += count * 8L;
+    }
+  }
+
+  @Override
+  protected void closeInput() throws IOException {
+
+    this.in.close();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param in the compressed input stream
+   * @param threads the number of threads that uncompress the blocks
+   */
+  BZip2ParallelInputStream(final InputStream in, final int threads) {
+
+    super(threads);
+
+    checkNotNull(in, "in argument cannot be null");
+
+    this.in = in;
+  }
+
+}
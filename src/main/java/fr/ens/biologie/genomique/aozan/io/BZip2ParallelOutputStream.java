@@ -0,0 +1,135 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import org.itadaki.bzip2.BZip2OutputStream;
+
+/**
+ * This class define an output stream that compress in parallel the blocks of
+ * a bzip2 file. Each block is compressed by jbzip2 as a standalone bzip2
+ * stream, the file is so a concatenation of bzip2 streams that can be read by
+ * any bzip2 tool and that can be uncompressed in parallel by
+ * {@link BZip2ParallelInputStream}.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class BZip2ParallelOutputStream
+    extends AbstractParallelBlockOutputStream {
+
+  /** Size of the bzip2 blocks for a block size multiplier of 1. */
+  private static final int BLOCK_SIZE_UNIT = 100000;
+
+  /** Margin for the expansion of the first run-length encoding of bzip2. */
+  private static final int BLOCK_SIZE_MARGIN = 1000;
+
+  private final int level;
+
+  /**
+   * This class define the task that compress a bzip2 block.
+   */
+  private static final class CompressTask implements Callable<byte[]> {
+
+    private final byte[] data;
+    private final int length;
+    private final int level;
+
+    @Override
+    public byte[] call() throws IOException {
+
+      final ByteArrayOutputStream result =
+          new ByteArrayOutputStream(this.length / 3 + 1024);
+
+      try (OutputStream os = new BZip2OutputStream(result, this.level)) {
+        os.write(this.data, 0, this.length);
+      }
+
+      return result.toByteArray();
+    }
+
+    CompressTask(final byte[] data, final int length, final int level) {
+
+      this.data = data;
+      this.length = length;
+      this.level = level;
+    }
+  }
+
+  //
+  // Stream methods
+  //
+
+  @Override
+  protected Callable<byte[]> compressBlock(final byte[] data,
+      final int length) {
+
+    return new CompressTask(data, length, this.level);
+  }
+
+  @Override
+  protected byte[] trailer() {
+
+    // Each block is a complete bzip2 stream
+    return new byte[0];
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param out the output stream of the bzip2 file
+   * @param level the compression level, between 1 and 9
+   * @param threads the number of threads that compress the blocks
+   */
+  BZip2ParallelOutputStream(final OutputStream out, final int level,
+      final int threads) {
+
+    super(out, threads,
+        checkLevel(level) * BLOCK_SIZE_UNIT - BLOCK_SIZE_MARGIN);
+
+    this.level = level;
+  }
+
+  /**
+   * Check the compression level.
+   * @param level the compression level
+   * @return the compression level
+   */
+  private static int checkLevel(final int level) {
+
+    checkArgument(level >= 1 && level <= 9,
+        "level must be between 1 and 9: " + level);
+
+    return level;
+  }
+
+}
@@ -0,0 +1,418 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Common;
+import fr.ens.biologie.genomique.aozan.Settings;
+import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
+
+/**
+ * This class define the recompression of the FASTQ files. The input file is
+ * uncompressed only once: the MD5 checksum of the uncompressed data is
+ * computed while the data is compressed in parallel. Once written on the disk,
+ * the temporary output file is read and uncompressed again, and the MD5
+ * checksum of its content is compared to the checksum of the input file before
+ * the output file replaces the temporary file. The last modification time and
+ * the permissions of the input file are copied to the output file.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public class FastqRecompressor {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int DEFAULT_COMPRESSION_LEVEL = 9;
+  private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+  private static final String FASTQ_EXTENSION = ".fastq";
+
+  private final CompressionType compression;
+  private final int level;
+  private final boolean deleteInput;
+  private final int threads;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the compression of the output files.
+   * @return the compression of the output files
+   */
+  public CompressionType getCompression() {
+
+    return this.compression;
+  }
+
+  /**
+   * Get the compression level of the output files.
+   * @return the compression level of the output files
+   */
+  public int getCompressionLevel() {
+
+    return this.level;
+  }
+
+  /**
+   * Get the number of threads used to compress and uncompress a file.
+   * @return the number of threads
+   */
+  public int getThreadCount() {
+
+    return this.threads;
+  }
+
+  /**
+   * Test if the input files are removed after their recompression.
+   * @return true if the input files are removed
+   */
+  public boolean isDeleteInput() {
+
+    return this.deleteInput;
+  }
+
+  /**
+   * Get the output file of an input file. The extension of the output file is
+   * the extension of the compression after the ".fastq" extension.
+   * @param inputFile the input file
+   * @return the output file
+   */
+  public File getOutputFile(final File inputFile) {
+
+    checkNotNull(inputFile, "inputFile argument cannot be null");
+
+    final String name = inputFile.getName();
+    final int index = name.indexOf(FASTQ_EXTENSION);
+
+    if (index == -1) {
+      throw new IllegalArgumentException("Not a FASTQ file: " + inputFile);
+    }
+
+    return new File(inputFile.getParentFile(),
+        name.substring(0, index + FASTQ_EXTENSION.length())
+            + this.compression.getExtension());
+  }
+
+  //
+  // Recompression methods
+  //
+
+  /**
+   * Recompress a FASTQ file.
+   * @param inputFile the input file
+   * @throws AozanException if an error occurs while recompressing the file
+   */
+  public void recompress(final File inputFile) throws AozanException {
+
+    recompress(inputFile, getOutputFile(inputFile));
+  }
+
+  /**
+   * Recompress a FASTQ file.
+   * @param inputFile the input file
+   * @param outputFile the output file
+   * @throws AozanException if an error occurs while recompressing the file
+   */
+  public void recompress(final File inputFile, final File outputFile)
+      throws AozanException {
+
+    checkNotNull(inputFile, "inputFile argument cannot be null");
+    checkNotNull(outputFile, "outputFile argument cannot be null");
+
+    if (!inputFile.isFile()) {
+      throw new AozanException("The FASTQ file does not exist: " + inputFile);
+    }
+
+    if (outputFile.exists()) {
+      throw new AozanException(
+          "The recompressed FASTQ file already exists: " + outputFile);
+    }
+
+    final File tmpFile =
+        new File(outputFile.getPath() + TEMPORARY_FILE_EXTENSION);
+    final long start = System.currentTimeMillis();
+    final long inputLength = inputFile.length();
+    final long[] uncompressedLength = new long[1];
+
+    boolean success = false;
+
+    try {
+
+      final byte[] inputDigest;
+
+      try (
+          InputStream in =
+              ParallelDecompression.createInputStream(inputFile, this.threads);
+          OutputStream out = ParallelCompression.createOutputStream(
+              this.compression,
+              new BufferedOutputStream(new FileOutputStream(tmpFile)),
+              this.level, this.threads)) {
+
+        inputDigest = digest(in, out, uncompressedLength);
+      }
+
+      // Write the data on the disk before reading it again
+      try (FileChannel channel =
+          FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE)) {
+        channel.force(true);
+      }
+
+      // Check the content of the file written on the disk
+      final byte[] outputDigest;
+      try (InputStream in = ParallelDecompression.createInputStream(
+          this.compression, new FileInputStream(tmpFile), this.threads)) {
+
+        outputDigest = digest(in, null, null);
+      }
+
+      if (!MessageDigest.isEqual(inputDigest, outputDigest)) {
+        throw new AozanException("The content of the recompressed file "
+            + tmpFile + " differs from the content of " + inputFile);
+      }
+
+      copyAttributes(inputFile.toPath(), tmpFile.toPath());
+      Files.move(tmpFile.toPath(), outputFile.toPath(),
+          StandardCopyOption.ATOMIC_MOVE);
+
+      success = true;
+
+    } catch (final IOException e) {
+
+      throw new AozanException("Error while recompressing "
+          + inputFile + ": " + e.getMessage(), e);
+
+    } finally {
+
+      if (!success && tmpFile.exists() && !tmpFile.delete()) {
+        LOGGER.warning("Cannot remove the temporary file: " + tmpFile);
+      }
+    }
+
+    if (this.deleteInput && !inputFile.delete()) {
+      throw new AozanException("Cannot remove the FASTQ file: " + inputFile);
+    }
+
+    logThroughput(inputFile, inputLength, outputFile, uncompressedLength[0],
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Log the throughput of the recompression of a file.
+   * @param inputFile the input file
+   * @param inputLength the length of the input file, that can have been
+   *          removed
+   * @param outputFile the output file
+   * @param uncompressedLength the length of the uncompressed data
+   * @param duration the duration of the recompression in milliseconds
+   */
+  private static void logThroughput(final File inputFile,
+      final long inputLength, final File outputFile,
+      final long uncompressedLength, final long duration) {
+
+    final double mb = 1024.0 * 1024.0;
+    final double seconds = Math.max(duration, 1) / 1000.0;
+    final long outputLength = outputFile.length();
+
+    LOGGER.info(String.format(
+        "Recompress %s: %.1f MB uncompressed, %.1f MB -> %.1f MB (%.2f), "
+            + "%.1f s, %.1f MB/s",
+        inputFile.getName(), uncompressedLength / mb, inputLength / mb,
+        outputLength / mb,
+        inputLength == 0 ? 1.0 : (double) outputLength / inputLength, seconds,
+        uncompressedLength / mb / seconds));
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Compute the MD5 checksum of a stream and copy the stream.
+   * @param in the input stream
+   * @param out the output stream, can be null
+   * @param length an array where the length of the stream is set, can be
+   *          null
+   * @return the MD5 checksum of the stream
+   * @throws IOException if an error occurs while reading or writing the data
+   */
+  private static byte[] digest(final InputStream in, final OutputStream out,
+      final long[] length) throws IOException {
+
+    final MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    long count = 0;
+    int n;
+
+    while ((n = in.read(buffer)) != -1) {
+
+      md5.update(buffer, 0, n);
+      if (out != null) {
+        out.write(buffer, 0, n);
+      }
+      count += n;
+    }
+
+    if (length != null) {
+      length[0] = count;
+    }
+
+    return md5.digest();
+  }
+
+  /**
+   * Copy the last modification time and the permissions of a file.
+   * @param source the source file
+   * @param target the target file
+   * @throws IOException if an error occurs while copying the attributes
+   */
+  private static void copyAttributes(final Path source, final Path target)
+      throws IOException {
+
+    Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+
+    try {
+      Files.setPosixFilePermissions(target,
+          Files.getPosixFilePermissions(source));
+    } catch (final UnsupportedOperationException e) {
+
+      // The file system does not support POSIX permissions
+      final File file = target.toFile();
+      file.setReadable(source.toFile().canRead());
+      file.setWritable(source.toFile().canWrite());
+    }
+  }
+
+  /**
+   * Parse the compression of the output files.
+   * @param value the value of the setting
+   * @return the compression of the output files
+   * @throws AozanException if the compression is unknown
+   */
+  private static CompressionType parseCompression(final String value)
+      throws AozanException {
+
+    if (value == null || value.trim().isEmpty()) {
+      return CompressionType.BZIP2;
+    }
+
+    switch (value.trim().toLowerCase()) {
+
+    case "bzip2":
+    case "bz2":
+      return CompressionType.BZIP2;
+
+    case "gzip":
+    case "gz":
+      return CompressionType.GZIP;
+
+    default:
+      throw new AozanException("Unknown compression type: " + value);
+    }
+  }
+
+  /**
+   * Parse an integer setting.
+   * @param settings the settings
+   * @param key the key of the setting
+   * @param defaultValue the default value
+   * @param min the minimal value
+   * @param max the maximal value
+   * @return the value of the setting
+   * @throws AozanException if the value of the setting is invalid
+   */
+  private static int parseInt(final Settings settings, final String key,
+      final int defaultValue, final int min, final int max)
+      throws AozanException {
+
+    final String value = settings.get(key);
+
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+
+    try {
+      final int result = Integer.parseInt(value.trim());
+
+      if (result < min || result > max) {
+        throw new AozanException("Invalid value for " + key + ": " + value);
+      }
+
+      return result;
+
+    } catch (final NumberFormatException e) {
+      throw new AozanException("Invalid value for " + key + ": " + value);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param settings Aozan settings
+   * @throws AozanException if the settings of the recompression are invalid
+   */
+  public FastqRecompressor(final Settings settings) throws AozanException {
+
+    checkNotNull(settings, "settings argument cannot be null");
+
+    this.compression =
+        parseCompression(settings.get(Settings.RECOMPRESS_COMPRESSION_KEY));
+    this.level = parseInt(settings, Settings.RECOMPRESS_COMPRESSION_LEVEL_KEY,
+        DEFAULT_COMPRESSION_LEVEL, 1, 9);
+    this.deleteInput = Boolean.parseBoolean(
+        settings.get(Settings.RECOMPRESS_DELETE_ORIGINAL_FASTQ_KEY));
+
+    this.threads = parseInt(settings, Settings.RECOMPRESS_THREADS_KEY,
+        ParallelCompression.getDefaultThreadCount(), 1, Integer.MAX_VALUE);
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+
+import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
+
+/**
+ * This class define methods to create output streams that compress the FASTQ
+ * files with several threads. gzip files are written as BGZF files and bzip2
+ * files as concatenated bzip2 streams, so the compressed files can be
+ * uncompressed in parallel by {@link ParallelDecompression}. Each stream uses
+ * its own threads, so the number of threads can differ between streams.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class ParallelCompression {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the default number of threads used to compress a file.
+   * @return the number of available processors
+   */
+  public static int getDefaultThreadCount() {
+
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  //
+  // Stream creation methods
+  //
+
+  /**
+   * Create a compressed output stream with the default number of threads.
+   * @param type the compression type of the stream
+   * @param os the output stream of the compressed data
+   * @param level the compression level, between 1 and 9
+   * @return a compressed output stream
+   */
+  public static OutputStream createOutputStream(final CompressionType type,
+      final OutputStream os, final int level) {
+
+    return createOutputStream(type, os, level, getDefaultThreadCount());
+  }
+
+  /**
+   * Create a compressed output stream.
+   * @param type the compression type of the stream
+   * @param os the output stream of the compressed data
+   * @param level the compression level, between 1 and 9
+   * @param threads the number of threads that compress the data
+   * @return a compressed output stream
+   */
+  public static OutputStream createOutputStream(final CompressionType type,
+      final OutputStream os, final int level, final int threads) {
+
+    checkNotNull(type, "type argument cannot be null");
+    checkNotNull(os, "os argument cannot be null");
+    checkArgument(level >= 1 && level <= 9,
+        "level must be between 1 and 9: " + level);
+    checkArgument(threads > 0, "threads must be greater than 0");
+
+    switch (type) {
+
+    case GZIP:
+      return new BGZFOutputStream(os, level, threads);
+
+    case BZIP2:
+      return new BZip2ParallelOutputStream(os, level, threads);
+
+    default:
+      return new BufferedOutputStream(os, BUFFER_SIZE);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   */
+  private ParallelCompression() {
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+
+import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
+
+/**
+ * This class define methods to create input streams that uncompress the
+ * compressed FASTQ files with several threads. BGZF gzip files and bzip2 files
+ * are uncompressed in parallel by blocks, other gzip files are uncompressed
+ * sequentially as they cannot be split without being inflated. Each stream
+ * uses its own threads, so the number of threads can differ between streams.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class ParallelDecompression {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the default number of threads used to uncompress a file.
+   * @return the number of available processors
+   */
+  public static int getDefaultThreadCount() {
+
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  //
+  // Stream creation methods
+  //
+
+  /**
+   * Create an uncompressed input stream for a file with the default number of
+   * threads. The compression of the file is defined by its extension.
+   * @param file the file
+   * @return an uncompressed input stream
+   * @throws IOException if an error occurs while opening the file
+   */
+  public static InputStream createInputStream(final File file)
+      throws IOException {
+
+    return createInputStream(file, getDefaultThreadCount());
+  }
+
+  /**
+   * Create an uncompressed input stream for a file. The compression of the
+   * file is defined by its extension.
+   * @param file the file
+   * @param threads the number of threads, 1 to disable parallel uncompression
+   * @return an uncompressed input stream
+   * @throws IOException if an error occurs while opening the file
+   */
+  public static InputStream createInputStream(final File file,
+      final int threads) throws IOException {
+
+    checkNotNull(file, "file argument cannot be null");
+
+    return createInputStream(file, new FileInputStream(file), threads);
+  }
+
+  /**
+   * Create an uncompressed input stream for a file already opened. The
+   * compression of the file is defined by its extension.
+   * @param file the file
+   * @param is the input stream of the file
+   * @param threads the number of threads, 1 to disable parallel uncompression
+   * @return an uncompressed input stream
+   * @throws IOException if an error occurs while opening the file
+   */
+  public static InputStream createInputStream(final File file,
+      final InputStream is, final int threads) throws IOException {
+
+    checkNotNull(file, "file argument cannot be null");
+
+    return createInputStream(
+        CompressionType.getCompressionTypeByFilename(file.getName()), is,
+        threads);
+  }
+
+  /**
+   * Create an uncompressed input stream.
+   * @param type the compression type of the stream
+   * @param is the compressed input stream
+   * @param threads the number of threads, 1 to disable parallel uncompression
+   * @return an uncompressed input stream
+   * @throws IOException if an error occurs while reading the stream
+   */
+  public static InputStream createInputStream(final CompressionType type,
+      final InputStream is, final int threads) throws IOException {
+
+    checkNotNull(type, "type argument cannot be null");
+    checkNotNull(is, "is argument cannot be null");
+    checkArgument(threads > 0, "threads must be greater than 0");
+
+    if (threads < 2) {
+      return type.createInputStream(is);
+    }
+
+    switch (type) {
+
+    case GZIP:
+
+      final BufferedInputStream bis = new BufferedInputStream(is, BUFFER_SIZE);
+
+      if (isBGZF(bis)) {
+        return new BGZFInputStream(bis, threads);
+      }
+
+      // A gzip file that is not a BGZF file cannot be split
+      return new GZIPInputStream(bis, BUFFER_SIZE);
+
+    case BZIP2:
+      return new BZip2ParallelInputStream(is, threads);
+
+    default:
+      return type.createInputStream(is);
+    }
+  }
+
+  /**
+   * Test if a stream is a BGZF stream. The position of the stream is not
+   * changed.
+   * @param is the stream
+   * @return true if the first gzip member of the stream is a BGZF block
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private static boolean isBGZF(final BufferedInputStream is)
+      throws IOException {
+
+    final byte[] header = new byte[BUFFER_SIZE];
+
+    is.mark(header.length);
+    final int n = ByteStreams.read(is, header, 0, header.length);
+    is.reset();
+
+    return BGZFInputStream.getBlockSize(header, n) != -1;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   */
+  private ParallelDecompression() {
+  }
+
+}
@@ -27,10 +27,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,19 +37,9 @@ import java.util.logging.Logger;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.spotify.docker.client.DockerClient;
-import com.spotify.docker.client.DockerClient.LogsParameter;
-import com.spotify.docker.client.DockerException;
-import com.spotify.docker.client.LogMessage;
-import com.spotify.docker.client.LogStream;
-import com.spotify.docker.client.messages.ContainerConfig;
-import com.spotify.docker.client.messages.ContainerCreation;
-import com.spotify.docker.client.messages.ContainerInfo;
-import com.spotify.docker.client.messages.HostConfig;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.Common;
-import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
 import fr.ens.biologie.genomique.eoulsan.util.ProcessUtils;
 
 /**
@@ -84,76 +71,26 @@ public class DockerCommand {
 
   private int exitValue = -1;
   private Throwable exception = null;
-  private final DockerClient dockerClient;
+  private final DockerContainerPool containerPool;
 
   /**
-   * Launch Docker container.
+   * Launch the command in a Docker container. The command is executed in a
+   * running container of the pool that use the same image and the same mount
+   * points, a new container is started if there is no such container.
    * @throws AozanException if an error occurs while running the container.
    */
   public void run() throws AozanException {
 
-    LOGGER.warning("Pull docker image: " + this.imageName);
+    LOGGER.fine("Docker command for image "
+        + this.imageName + ": " + Joiner.on(" ").join(this.commandLine)
+        + "\n\twork directory " + this.workDirectoryDocker
+        + "\n\tpermission " + this.permission);
 
-    try {
-      // Pull image
-      dockerClient.pull(this.imageName);
-    } catch (DockerException | InterruptedException e) {
-
-      // Do not thrown an exception as the network can be down
-      LOGGER.severe("Unable to pull docker image: " + e.getMessage());
-    }
-
-    try {
-
-      // Create container
-      final HostConfig hostConfig =
-          HostConfig.builder().binds(this.mountArgument).build();
-
-      List<String> cmd = this.commandLine;
-
-      final String permission = this.permission;
-      final String workDir = this.workDirectoryDocker;
-
-      // // Create container
-      LOGGER.warning("Docker create config "
-          + "\n\tdocker " + dockerClient + "\n\t imagename " + this.imageName
-          + "\n\t host Configure is  " + hostConfig + "\n\tcommend line "
-          + Joiner.on(" ").join(cmd) + "\n\twork directory " + workDir
-          + "\n\tpermission " + permission);
-
-      final ContainerConfig config = ContainerConfig.builder()
-          .image(this.imageName).cmd(cmd).hostConfig(hostConfig)
-          .user(permission).workingDir(workDir).build();
+    this.exitValue = this.containerPool.execute(this.imageName,
+        this.mountArgument, this.permission, this.workDirectoryDocker,
+        this.commandLine, this.stdoutFile, this.stderrFile);
 
-      ContainerCreation creation;
-      creation = dockerClient.createContainer(config);
-      final String id = creation.id();
-
-      // Inspect container
-      final ContainerInfo info = dockerClient.inspectContainer(id);
-      LOGGER.info("Docker container id: " + id);
-      LOGGER.info("Docker container info: " + info);
-
-      // Start container
-      dockerClient.startContainer(id);
-
-      // Redirect stdout and stderr
-      final LogStream logStream = dockerClient.logs(id, LogsParameter.FOLLOW,
-          LogsParameter.STDERR, LogsParameter.STDOUT);
-      redirect(logStream, this.stdoutFile, this.stderrFile);
-
-      // Wait the end of container
-      this.exitValue = dockerClient.waitContainer(id).statusCode();
-      LOGGER.info("Docker exit value " + this.exitValue);
-
-      // Remove container
-      dockerClient.removeContainer(id);
-      LOGGER.info("Docker container successufully removed: " + id);
-
-    } catch (DockerException | InterruptedException e) {
-      LOGGER.severe("Error while running Docker container: " + e.getMessage());
-      throw new AozanException(e);
-    }
+    LOGGER.info("Docker exit value " + this.exitValue);
   }
 
   /**
@@ -299,53 +236,6 @@ public class DockerCommand {
     return Collections.unmodifiableList(result);
   }
 
-  /**
-   * Redirect the outputs of the container to files.
-   * @param logStream the log stream
-   * @param stdout stdout output file
-   * @param stderr stderr output file
-   */
-  private static void redirect(final LogStream logStream, final File stdout,
-      final File stderr) {
-
-    final Runnable r = new Runnable() {
-
-      @Override
-      public void run() {
-
-        try (
-            WritableByteChannel stdoutChannel =
-                Channels.newChannel(new FileOutputStream(stderr));
-            WritableByteChannel stderrChannel =
-                Channels.newChannel(new FileOutputStream(stdout))) {
-
-          for (LogMessage message; logStream.hasNext();) {
-
-            message = logStream.next();
-            switch (message.stream()) {
-
-            case STDOUT:
-              stdoutChannel.write(message.content());
-              break;
-
-            case STDERR:
-              stderrChannel.write(message.content());
-              break;
-
-            case STDIN:
-            default:
-              break;
-            }
-          }
-        } catch (IOException e) {
-          EoulsanLogger.getLogger().severe(e.getMessage());
-        }
-      }
-    };
-
-    new Thread(r).start();
-  }
-
   //
   // Getters and setters
   //
@@ -386,6 +276,18 @@ public class DockerCommand {
     this.workDirectoryDocker = workDirectoryDocker;
   }
 
+  /**
+   * Sets the command that keep alive the containers of the image of the
+   * command. It must be set for the images where the usual commands like sh or
+   * sleep are not available.
+   * @param entrypoint the entrypoint of the containers, null to use the usual
+   *          commands
+   */
+  public void setKeepAliveEntrypoint(final List<String> entrypoint) {
+
+    this.containerPool.setKeepAliveEntrypoint(this.imageName, entrypoint);
+  }
+
   /**
    * Gets the exit value.
    * @return the exit value
@@ -428,8 +330,8 @@ public class DockerCommand {
     checkNotNull(commandLine, "commande line");
     checkNotNull(imageName, "software image Docker");
 
-    this.dockerClient =
-        DockerConnection.getInstance(dockerConnectionString).getClient();
+    this.containerPool = DockerConnection.getInstance(dockerConnectionString)
+        .getContainerPool();
 
     this.commandLine = commandLine;
 
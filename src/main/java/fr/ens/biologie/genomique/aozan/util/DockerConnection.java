@@ -14,14 +14,21 @@ public class DockerConnection {
 
   private static DockerConnection singleton;
 
+  /** Maximal number of idle containers kept for an image and mount points. */
+  private static final int MAX_IDLE_CONTAINERS = 4;
+
+  /** Maximal number of idle containers kept for all the images. */
+  private static final int MAX_TOTAL_IDLE_CONTAINERS = 16;
+
   private final String connectionString;
   private DockerClient client;
+  private DockerContainerPool containerPool;
 
   /**
    * Get Docker client.
    * @return a Docker client object
    */
-  public DockerClient getClient() {
+  public synchronized DockerClient getClient() {
 
     if (this.client != null) {
       return this.client;
@@ -35,10 +42,44 @@ public class DockerConnection {
     return this.client;
   }
 
+  /**
+   * Get the pool of the containers used to execute the Docker commands. The
+   * containers of the pool are removed when the connections are closed or at
+   * the end of the JVM.
+   * @return the pool of containers
+   */
+  synchronized DockerContainerPool getContainerPool() {
+
+    if (this.containerPool != null) {
+      return this.containerPool;
+    }
+
+    final DockerContainerPool pool = new DockerContainerPool(
+        new SpotifyDockerEngine(getClient()), MAX_IDLE_CONTAINERS,
+        MAX_TOTAL_IDLE_CONTAINERS);
+
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+
+      @Override
+      public void run() {
+        pool.close();
+      }
+    });
+
+    this.containerPool = pool;
+
+    return pool;
+  }
+
   /**
    * Close Docker connections.
    */
-  public void closeConnections() {
+  public synchronized void closeConnections() {
+
+    if (this.containerPool != null) {
+      this.containerPool.close();
+      this.containerPool = null;
+    }
 
     if (this.client != null) {
       client.close();
@@ -50,7 +91,8 @@ public class DockerConnection {
   // Singleton method
   //
 
-  public static DockerConnection getInstance(final String connectionString) {
+  public static synchronized DockerConnection getInstance(
+      final String connectionString) {
 
     if (singleton == null) {
       singleton = new DockerConnection(connectionString);
@@ -0,0 +1,468 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Common;
+
+/**
+ * This class define a pool of long-lived Docker containers. The containers are
+ * started once with their mount points and a command that keep them alive,
+ * then the Docker commands are executed in the containers. The containers are
+ * shared by the commands that use the same image, the same mount points, the
+ * same user and the same working directory. The images already present on the
+ * host are not pulled again. The command that keep the containers alive can be
+ * set for each image, otherwise the first command of a list of usual commands
+ * that can be started in the image is used. The number of idle containers is
+ * limited for each image and mount points and for the whole pool, the least
+ * recently used idle containers are removed first.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class DockerContainerPool {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  /**
+   * Entrypoints that keep the containers alive, in the order they are tried.
+   * They replace the entrypoint of the images, that could run another program
+   * than the command. The first one needs a shell, the others are used for
+   * the images without shell.
+   */
+  static final List<List<String>> KEEP_ALIVE_ENTRYPOINTS =
+      Collections.unmodifiableList(Arrays.asList(
+          Arrays.asList("sh", "-c", "while :; do sleep 3600; done"),
+          Arrays.asList("sleep", "infinity"),
+          Arrays.asList("tail", "-f", "/dev/null")));
+
+  private final DockerEngine engine;
+  private final int maxIdleContainers;
+  private final int maxTotalIdleContainers;
+
+  private final Set<String> presentImages = new HashSet<>();
+  private final Map<String, List<String>> keepAliveEntrypoints =
+      new HashMap<>();
+  private final Map<ContainerKey, Deque<String>> idleContainers =
+      new HashMap<>();
+  // The idle containers from the least recently to the most recently used
+  private final Map<String, ContainerKey> idleOrder = new LinkedHashMap<>();
+  private final Set<String> containers = new HashSet<>();
+  private boolean closed;
+
+  /**
+   * This class define the key of the containers that can be shared.
+   */
+  private static final class ContainerKey {
+
+    private final String imageName;
+    private final List<String> binds;
+    private final String user;
+    private final String workDir;
+
+    @Override
+    public int hashCode() {
+
+      return Objects.hash(this.imageName, this.binds, this.user, this.workDir);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+      if (o == this) {
+        return true;
+      }
+
+      if (!(o instanceof ContainerKey)) {
+        return false;
+      }
+
+      final ContainerKey that = (ContainerKey) o;
+
+      return Objects.equals(this.imageName, that.imageName)
+          && Objects.equals(this.binds, that.binds)
+          && Objects.equals(this.user, that.user)
+          && Objects.equals(this.workDir, that.workDir);
+    }
+
+    ContainerKey(final String imageName, final List<String> binds,
+        final String user, final String workDir) {
+
+      final List<String> sortedBinds = new ArrayList<>(binds);
+      Collections.sort(sortedBinds);
+
+      this.imageName = imageName;
+      this.binds = sortedBinds;
+      this.user = user;
+      this.workDir = workDir;
+    }
+  }
+
+  //
+  // Pool methods
+  //
+
+  /**
+   * Execute a command in a container.
+   * @param imageName the name of the image
+   * @param binds the mount points of the container
+   * @param user the user of the container
+   * @param workDir the working directory of the container
+   * @param cmd the command to execute
+   * @param stdoutFile the file where to write the standard output
+   * @param stderrFile the file where to write the standard error
+   * @return the exit value of the command
+   * @throws AozanException if an error occurs while executing the command
+   */
+  int execute(final String imageName, final List<String> binds,
+      final String user, final String workDir, final List<String> cmd,
+      final File stdoutFile, final File stderrFile) throws AozanException {
+
+    checkNotNull(imageName, "imageName argument cannot be null");
+    checkNotNull(binds, "binds argument cannot be null");
+    checkNotNull(cmd, "cmd argument cannot be null");
+
+    final ContainerKey key = new ContainerKey(imageName, binds, user, workDir);
+
+    ensureImage(imageName);
+
+    final String containerId = borrowContainer(key);
+    boolean reusable = false;
+
+    try {
+
+      final int exitValue =
+          this.engine.exec(containerId, cmd, stdoutFile, stderrFile);
+
+      // The state of the container is unknown after a failed command
+      reusable = exitValue == 0;
+
+      return exitValue;
+
+    } finally {
+
+      // A container where a command has failed is not reused
+      if (reusable) {
+        returnContainer(key, containerId);
+      } else {
+        discardContainer(containerId);
+      }
+    }
+  }
+
+  /**
+   * Pull an image if it is not present on the host.
+   * @param imageName the name of the image
+   */
+  synchronized void ensureImage(final String imageName) {
+
+    if (this.presentImages.contains(imageName)) {
+      return;
+    }
+
+    try {
+
+      if (!this.engine.isImagePresent(imageName)) {
+
+        LOGGER.info("Pull docker image: " + imageName);
+        this.engine.pullImage(imageName);
+      }
+
+      this.presentImages.add(imageName);
+
+    } catch (final AozanException e) {
+
+      // Do not thrown an exception as the network can be down
+      LOGGER.severe("Unable to pull docker image: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Set the entrypoint that keep alive the containers of an image.
+   * @param imageName the name of the image
+   * @param entrypoint the entrypoint, null to use the usual entrypoints
+   */
+  synchronized void setKeepAliveEntrypoint(final String imageName,
+      final List<String> entrypoint) {
+
+    checkNotNull(imageName, "imageName argument cannot be null");
+
+    if (entrypoint == null) {
+      this.keepAliveEntrypoints.remove(imageName);
+    } else {
+
+      checkArgument(!entrypoint.isEmpty(), "entrypoint cannot be empty");
+      this.keepAliveEntrypoints.put(imageName,
+          Collections.unmodifiableList(new ArrayList<>(entrypoint)));
+    }
+  }
+
+  /**
+   * Get the entrypoints to try to keep alive the containers of an image.
+   * @param imageName the name of the image
+   * @return a list of entrypoints
+   */
+  private synchronized List<List<String>> getKeepAliveEntrypoints(
+      final String imageName) {
+
+    final List<String> entrypoint = this.keepAliveEntrypoints.get(imageName);
+
+    if (entrypoint != null) {
+      return Collections.singletonList(entrypoint);
+    }
+
+    return KEEP_ALIVE_ENTRYPOINTS;
+  }
+
+  /**
+   * Get an idle container or start a new container.
+   * @param key the key of the container
+   * @return the identifier of the container
+   * @throws AozanException if an error occurs while starting the container
+   */
+  private String borrowContainer(final ContainerKey key)
+      throws AozanException {
+
+    synchronized (this) {
+
+      if (this.closed) {
+        throw new AozanException("The Docker containers pool is closed");
+      }
+
+      final Deque<String> idle = this.idleContainers.get(key);
+      if (idle != null && !idle.isEmpty()) {
+
+        final String containerId = idle.pop();
+        this.idleOrder.remove(containerId);
+
+        return containerId;
+      }
+    }
+
+    final String containerId = startContainer(key);
+
+    synchronized (this) {
+      this.containers.add(containerId);
+    }
+
+    LOGGER.fine("Docker container started for image "
+        + key.imageName + ": " + containerId);
+
+    return containerId;
+  }
+
+  /**
+   * Start a container with the first entrypoint that can be started in the
+   * image. The entrypoint found is used for the next containers of the image.
+   * @param key the key of the container
+   * @return the identifier of the container
+   * @throws AozanException if the container cannot be started with any
+   *           entrypoint
+   */
+  private String startContainer(final ContainerKey key)
+      throws AozanException {
+
+    final List<List<String>> entrypoints =
+        getKeepAliveEntrypoints(key.imageName);
+    AozanException exception = null;
+
+    for (List<String> entrypoint : entrypoints) {
+
+      try {
+
+        final String containerId = this.engine.startContainer(key.imageName,
+            entrypoint, key.binds, key.user, key.workDir);
+
+        if (entrypoints.size() > 1) {
+          setKeepAliveEntrypoint(key.imageName, entrypoint);
+        }
+
+        return containerId;
+
+      } catch (final AozanException e) {
+
+        // The program of the entrypoint may not exist in the image
+        LOGGER.fine("Unable to start a Docker container for image "
+            + key.imageName + " with entrypoint " + entrypoint + ": "
+            + e.getMessage());
+
+        exception = e;
+      }
+    }
+
+    throw new AozanException("Unable to start a Docker container for image "
+        + key.imageName + ", no entrypoint can keep the container alive: "
+        + exception.getMessage(), exception);
+  }
+
+  /**
+   * Return a container to the pool.
+   * @param key the key of the container
+   * @param containerId the identifier of the container
+   */
+  private void returnContainer(final ContainerKey key,
+      final String containerId) {
+
+    final List<String> toRemove = new ArrayList<>();
+
+    synchronized (this) {
+
+      Deque<String> idle = this.idleContainers.get(key);
+      if (idle == null) {
+        idle = new ArrayDeque<>();
+        this.idleContainers.put(key, idle);
+      }
+
+      if (!this.closed
+          && idle.size() < this.maxIdleContainers
+          && this.maxTotalIdleContainers > 0) {
+
+        idle.push(containerId);
+        this.idleOrder.put(containerId, key);
+
+        // Evict the least recently used idle containers
+        final Iterator<Map.Entry<String, ContainerKey>> it =
+            this.idleOrder.entrySet().iterator();
+
+        while (this.idleOrder.size() > this.maxTotalIdleContainers) {
+
+          final Map.Entry<String, ContainerKey> e = it.next();
+          this.idleContainers.get(e.getValue()).remove(e.getKey());
+          toRemove.add(e.getKey());
+          it.remove();
+        }
+
+      } else {
+        toRemove.add(containerId);
+      }
+    }
+
+    for (String id : toRemove) {
+      discardContainer(id);
+    }
+  }
+
+  /**
+   * Remove a container.
+   * @param containerId the identifier of the container
+   */
+  private void discardContainer(final String containerId) {
+
+    synchronized (this) {
+      this.containers.remove(containerId);
+    }
+
+    try {
+      this.engine.removeContainer(containerId);
+    } catch (final AozanException e) {
+      LOGGER.warning("Unable to remove Docker container "
+          + containerId + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Get the number of idle containers of the pool.
+   * @return the number of idle containers
+   */
+  synchronized int getIdleContainerCount() {
+
+    return this.idleOrder.size();
+  }
+
+  /**
+   * Get the number of containers started by the pool and not removed.
+   * @return the number of containers
+   */
+  synchronized int getContainerCount() {
+
+    return this.containers.size();
+  }
+
+  /**
+   * Remove all the containers of the pool. The pool cannot be used after this
+   * call.
+   */
+  void close() {
+
+    final List<String> toRemove;
+
+    synchronized (this) {
+
+      this.closed = true;
+      toRemove = new ArrayList<>(this.containers);
+      this.idleContainers.clear();
+      this.idleOrder.clear();
+    }
+
+    for (String containerId : toRemove) {
+      discardContainer(containerId);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param engine the Docker engine
+   * @param maxIdleContainers the maximal number of idle containers to keep
+   *          for each image and mount points
+   * @param maxTotalIdleContainers the maximal number of idle containers to
+   *          keep in the pool
+   */
+  DockerContainerPool(final DockerEngine engine, final int maxIdleContainers,
+      final int maxTotalIdleContainers) {
+
+    checkNotNull(engine, "engine argument cannot be null");
+    checkArgument(maxIdleContainers >= 0,
+        "maxIdleContainers cannot be lower than 0");
+    checkArgument(maxTotalIdleContainers >= 0,
+        "maxTotalIdleContainers cannot be lower than 0");
+
+    this.engine = engine;
+    this.maxIdleContainers = maxIdleContainers;
+    this.maxTotalIdleContainers = maxTotalIdleContainers;
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import java.io.File;
+import java.util.List;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This interface define the operations on a Docker daemon used to execute the
+ * Docker commands. It allows to test the containers pool without a Docker
+ * daemon.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+interface DockerEngine {
+
+  /**
+   * Test if an image is available locally.
+   * @param imageName the name of the image
+   * @return true if the image is available locally
+   * @throws AozanException if an error occurs while querying the daemon
+   */
+  boolean isImagePresent(String imageName) throws AozanException;
+
+  /**
+   * Pull an image.
+   * @param imageName the name of the image
+   * @throws AozanException if an error occurs while pulling the image
+   */
+  void pullImage(String imageName) throws AozanException;
+
+  /**
+   * Create and start a container.
+   * @param imageName the name of the image
+   * @param entrypoint the entrypoint of the container, it replaces the
+   *          entrypoint and the command of the image
+   * @param binds the mount points of the container
+   * @param user the user of the container
+   * @param workDir the working directory of the container
+   * @return the identifier of the container
+   * @throws AozanException if an error occurs while starting the container
+   */
+  String startContainer(String imageName, List<String> entrypoint,
+      List<String> binds, String user, String workDir) throws AozanException;
+
+  /**
+   * Execute a command in a running container and wait the end of the command.
+   * @param containerId the identifier of the container
+   * @param cmd the command to execute
+   * @param stdoutFile the file where to write the standard output
+   * @param stderrFile the file where to write the standard error
+   * @return the exit value of the command
+   * @throws AozanException if an error occurs while executing the command
+   */
+  int exec(String containerId, List<String> cmd, File stdoutFile,
+      File stderrFile) throws AozanException;
+
+  /**
+   * Stop and remove a container.
+   * @param containerId the identifier of the container
+   * @throws AozanException if an error occurs while removing the container
+   */
+  void removeContainer(String containerId) throws AozanException;
+
+}
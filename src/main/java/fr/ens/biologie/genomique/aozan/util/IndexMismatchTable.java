@@ -0,0 +1,268 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class define a table of the mismatch neighbourhood of sample indexes.
+ * All the variants of the indexes with up to the maximal number of mismatches
+ * are computed when the indexes are added, so the samples that match an index
+ * and their number of mismatches are found with a single hash lookup instead
+ * of comparing the index with all the indexes of the samples. Dual indexes
+ * must be joined with a separator (e.g. "ACGTAC+GGTTAA"), the separator is
+ * never mutated and the number of mismatches is the sum of the mismatches of
+ * the two indexes.
+ * @param <E> type of the targets of the indexes
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class IndexMismatchTable<E> {
+
+  /** Maximal number of mismatches supported by the table. */
+  public static final int MAX_MISMATCHES = 2;
+
+  private static final char[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+  private final int maxMismatches;
+  private final Map<String, List<Match<E>>> table = new HashMap<>();
+
+  /**
+   * This class define a target of the table with its number of mismatches.
+   * @param <E> type of the target
+   */
+  public static final class Match<E> {
+
+    private final E target;
+    private final int mismatches;
+
+    /**
+     * Get the target.
+     * @return the target
+     */
+    public E getTarget() {
+      return this.target;
+    }
+
+    /**
+     * Get the number of mismatches between the index and the index of the
+     * target.
+     * @return the number of mismatches
+     */
+    public int getMismatches() {
+      return this.mismatches;
+    }
+
+    @Override
+    public String toString() {
+      return this.target + "(" + this.mismatches + ")";
+    }
+
+    private Match(final E target, final int mismatches) {
+      this.target = target;
+      this.mismatches = mismatches;
+    }
+  }
+
+  //
+  // Table methods
+  //
+
+  /**
+   * Add an index.
+   * @param index the index
+   * @param target the target of the index
+   */
+  public void addIndex(final String index, final E target) {
+
+    checkNotNull(index, "index argument cannot be null");
+    checkNotNull(target, "target argument cannot be null");
+
+    addVariants(index.toUpperCase().toCharArray(), 0, 0, target);
+  }
+
+  /**
+   * Add all the variants of an index.
+   * @param index the index
+   * @param start the first position where a mismatch can be added
+   * @param mismatches the number of mismatches of the current variant
+   * @param target the target of the index
+   */
+  private void addVariants(final char[] index, final int start,
+      final int mismatches, final E target) {
+
+    put(new String(index), target, mismatches);
+
+    if (mismatches == this.maxMismatches) {
+      return;
+    }
+
+    for (int i = start; i < index.length; i++) {
+
+      final char c = index[i];
+
+      if (!isBase(c)) {
+        continue;
+      }
+
+      for (char base : BASES) {
+
+        if (base != c) {
+          index[i] = base;
+          addVariants(index, i + 1, mismatches + 1, target);
+        }
+      }
+      index[i] = c;
+    }
+  }
+
+  /**
+   * Add a target to a variant.
+   * @param variant the variant
+   * @param target the target
+   * @param mismatches the number of mismatches of the variant
+   */
+  private void put(final String variant, final E target,
+      final int mismatches) {
+
+    List<Match<E>> matches = this.table.get(variant);
+
+    if (matches == null) {
+      matches = new ArrayList<>(1);
+      this.table.put(variant, matches);
+    }
+
+    for (int i = 0; i < matches.size(); i++) {
+
+      final Match<E> m = matches.get(i);
+      if (m.target.equals(target)) {
+
+        // Keep the lowest number of mismatches for a target
+        if (mismatches < m.mismatches) {
+          matches.set(i, new Match<>(target, mismatches));
+        }
+        return;
+      }
+    }
+
+    matches.add(new Match<>(target, mismatches));
+  }
+
+  /**
+   * Get the targets that match an index with no more than the maximal number
+   * of mismatches.
+   * @param index the index
+   * @return an unmodifiable list with the matches in the order of the addition
+   *         of the targets
+   */
+  public List<Match<E>> get(final String index) {
+
+    checkNotNull(index, "index argument cannot be null");
+
+    final List<Match<E>> result = this.table.get(index);
+
+    return result == null
+        ? Collections.<Match<E>> emptyList()
+        : Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Get the lowest number of mismatches between an index and the indexes of
+   * the table.
+   * @param index the index
+   * @return the lowest number of mismatches or -1 if the index has more
+   *         mismatches than the maximal number of mismatches with all the
+   *         indexes of the table
+   */
+  public int getMinMismatches(final String index) {
+
+    int result = -1;
+
+    for (Match<E> m : get(index)) {
+      if (result == -1 || m.mismatches < result) {
+        result = m.mismatches;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the maximal number of mismatches of the table.
+   * @return the maximal number of mismatches of the table
+   */
+  public int getMaxMismatches() {
+
+    return this.maxMismatches;
+  }
+
+  /**
+   * Get the number of variants in the table.
+   * @return the number of variants in the table
+   */
+  public int size() {
+
+    return this.table.size();
+  }
+
+  /**
+   * Test if a character is a base that can be mutated.
+   * @param c the character
+   * @return true if the character is a base
+   */
+  private static boolean isBase(final char c) {
+
+    for (char base : BASES) {
+      if (c == base) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param maxMismatches maximal number of mismatches
+   */
+  public IndexMismatchTable(final int maxMismatches) {
+
+    checkArgument(maxMismatches >= 0 && maxMismatches <= MAX_MISMATCHES,
+        "maxMismatches must be between 0 and " + MAX_MISMATCHES);
+
+    this.maxMismatches = maxMismatches;
+  }
+
+}
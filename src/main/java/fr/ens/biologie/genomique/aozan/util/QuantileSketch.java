@@ -0,0 +1,441 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.google.common.base.Objects;
+
+/**
+ * This class define a mergeable sketch of the distribution of values, used to
+ * estimate the quantiles without storing all the values. The values are
+ * summarized by centroids like in the t-digest of Ted Dunning: the new values
+ * are appended to a buffer and, when the buffer is full, the centroids are
+ * sorted and the neighbouring centroids are merged as long as they span less
+ * than a unit of a scale function that gives smaller centroids toward the
+ * tails of the distribution. The centroids of identical values are always
+ * merged without loss, so the quantiles are exact as long as the number of
+ * distinct values does not exceed half the size of the buffer (e.g. a small
+ * dataset or a bounded integer domain). The quantiles are interpolated between
+ * the ranks of the values like the default estimation of the Percentile class
+ * of commons-math. This class is not thread-safe, the partial sketches of
+ * parallel tasks must be combined with the merge() method.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class QuantileSketch {
+
+  /** Default compression of the sketch. */
+  public static final int DEFAULT_COMPRESSION = 100;
+
+  /** Number of centroids of the buffer by unit of compression. */
+  private static final int BUFFER_FACTOR = 5;
+
+  private final double compression;
+
+  // Centroids, the first sortedCount centroids are sorted by mean. A centroid
+  // is exact if all its values are equal to its mean
+  private double[] means;
+  private long[] weights;
+  private boolean[] exact;
+  private int size;
+  private int sortedCount;
+
+  private long count;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of values of the sketch.
+   * @return the number of values
+   */
+  public long getN() {
+    return this.count;
+  }
+
+  /**
+   * Get the number of centroids of the sketch.
+   * @return the number of centroids
+   */
+  int getCentroidCount() {
+    return this.size;
+  }
+
+  /**
+   * Estimate a quantile of the values.
+   * @param quantile the quantile, between 0 and 1
+   * @return the quantile or NaN if no values have been added
+   */
+  public double quantile(final double quantile) {
+
+    return quantile(quantile, 0);
+  }
+
+  /**
+   * Estimate a quantile of the values and a number of additional values equal
+   * to 0.
+   * @param quantile the quantile, between 0 and 1
+   * @param zeroCount number of additional values equal to 0
+   * @return the quantile or NaN if no values have been added
+   */
+  double quantile(final double quantile, final long zeroCount) {
+
+    checkArgument(quantile >= 0.0 && quantile <= 1.0,
+        "Invalid quantile: " + quantile);
+    checkArgument(zeroCount >= 0, "Invalid number of zeros: " + zeroCount);
+
+    final long n = this.count + zeroCount;
+
+    if (n == 0) {
+      return Double.NaN;
+    }
+
+    final double min = zeroCount > 0 ? minWithZero(this.min) : this.min;
+    final double max = zeroCount > 0 ? maxWithZero(this.max) : this.max;
+
+    // Estimation of the Percentile class of commons-math
+    final double pos = quantile * (n + 1);
+
+    if (pos < 1.0) {
+      return min;
+    }
+
+    if (pos >= n) {
+      return max;
+    }
+
+    sort(false);
+
+    // The zeros are an exact centroid between the negative and the positive
+    // values
+    int zeroIndex = -1;
+    if (zeroCount > 0) {
+      zeroIndex = 0;
+      while (zeroIndex < this.size && this.means[zeroIndex] <= 0.0) {
+        zeroIndex++;
+      }
+    }
+
+    // Anchors (rank, value) of the interpolation, the exact centroids give
+    // their first and last ranks, the others the rank of their center
+    double previousRank = 1.0;
+    double previousValue = min;
+    long cumulative = 0;
+    final int centroidCount = this.size + (zeroIndex == -1 ? 0 : 1);
+
+    for (int k = 0; k < centroidCount; k++) {
+
+      final double mean;
+      final long weight;
+      final boolean exactCentroid;
+
+      if (k == zeroIndex) {
+        mean = 0.0;
+        weight = zeroCount;
+        exactCentroid = true;
+      } else {
+        final int i = zeroIndex != -1 && k > zeroIndex ? k - 1 : k;
+        mean = this.means[i];
+        weight = this.weights[i];
+        exactCentroid = this.exact[i];
+      }
+
+      final double first;
+      final double last;
+
+      if (exactCentroid) {
+        first = cumulative + 1;
+        last = cumulative + weight;
+      } else {
+        first = cumulative + (weight + 1) / 2.0;
+        last = first;
+      }
+
+      if (pos <= first) {
+        return interpolate(pos, previousRank, previousValue, first, mean);
+      }
+
+      if (pos <= last) {
+        return mean;
+      }
+
+      previousRank = last;
+      previousValue = mean;
+      cumulative += weight;
+    }
+
+    return interpolate(pos, previousRank, previousValue, n, max);
+  }
+
+  /**
+   * Estimate the median of the values.
+   * @return the median or NaN if no values have been added
+   */
+  public double median() {
+
+    return quantile(0.5);
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Add a value to the sketch.
+   * @param value the value to add
+   */
+  public void add(final double value) {
+
+    add(value, 1, true);
+  }
+
+  /**
+   * Merge the values of another sketch in this sketch.
+   * @param sketch the sketch to merge
+   */
+  public void merge(final QuantileSketch sketch) {
+
+    checkNotNull(sketch, "sketch argument cannot be null");
+    checkArgument(sketch != this, "a sketch cannot be merged with itself");
+
+    for (int i = 0; i < sketch.size; i++) {
+      add(sketch.means[i], sketch.weights[i], sketch.exact[i]);
+    }
+
+    if (sketch.count > 0) {
+      this.min = Double.isNaN(this.min) || sketch.min < this.min
+          ? sketch.min : this.min;
+      this.max = Double.isNaN(this.max) || sketch.max > this.max
+          ? sketch.max : this.max;
+    }
+  }
+
+  private void add(final double mean, final long weight,
+      final boolean exactCentroid) {
+
+    if (this.size == this.means.length) {
+      compress();
+    }
+
+    this.means[this.size] = mean;
+    this.weights[this.size] = weight;
+    this.exact[this.size] = exactCentroid;
+    this.size++;
+    this.count += weight;
+
+    if (this.count == weight) {
+      this.min = mean;
+      this.max = mean;
+    } else {
+      this.min = Math.min(this.min, mean);
+      this.max = Math.max(this.max, mean);
+    }
+  }
+
+  /**
+   * Compress the centroids when the buffer is full.
+   */
+  private void compress() {
+
+    // Merge only the identical values if it releases enough room
+    sort(false);
+
+    if (this.size > this.means.length / 2) {
+      sort(true);
+    }
+
+    // Grow the buffer if the compression has not released enough room
+    if (this.size > this.means.length / 2) {
+
+      final int length = this.means.length * 2;
+      this.means = Arrays.copyOf(this.means, length);
+      this.weights = Arrays.copyOf(this.weights, length);
+      this.exact = Arrays.copyOf(this.exact, length);
+    }
+  }
+
+  /**
+   * Sort the centroids and merge the neighbouring centroids.
+   * @param lossy true if the centroids with different means can be merged
+   */
+  private void sort(final boolean lossy) {
+
+    if (this.sortedCount == this.size && !lossy) {
+      return;
+    }
+
+    sortCentroids();
+
+    int result = 0;
+    long cumulative = 0;
+
+    for (int i = 1; i < this.size; i++) {
+
+      final double mean = this.means[i];
+      final long weight = this.weights[i];
+      final long merged = this.weights[result] + weight;
+
+      if (this.exact[result] && this.exact[i] && this.means[result] == mean) {
+
+        // Identical values, no loss of precision
+        this.weights[result] = merged;
+        continue;
+      }
+
+      if (lossy) {
+
+        // The merged centroid must not span more than one unit of the scale
+        // function
+        final double kFirst = scale((double) cumulative / this.count);
+        final double kLast = scale((double) (cumulative + merged) / this.count);
+
+        if (kLast - kFirst <= 1.0) {
+          this.means[result] += (mean - this.means[result]) * weight / merged;
+          this.weights[result] = merged;
+          this.exact[result] = false;
+          continue;
+        }
+      }
+
+      cumulative += this.weights[result];
+      result++;
+      this.means[result] = mean;
+      this.weights[result] = weight;
+      this.exact[result] = this.exact[i];
+    }
+
+    this.size = this.size == 0 ? 0 : result + 1;
+    this.sortedCount = this.size;
+  }
+
+  /**
+   * Sort the centroids by mean.
+   */
+  private void sortCentroids() {
+
+    final Integer[] order = new Integer[this.size];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+
+    Arrays.sort(order, new Comparator<Integer>() {
+
+      @Override
+      public int compare(final Integer i1, final Integer i2) {
+        return Double.compare(QuantileSketch.this.means[i1],
+            QuantileSketch.this.means[i2]);
+      }
+    });
+
+    final double[] means = new double[this.size];
+    final long[] weights = new long[this.size];
+    final boolean[] exact = new boolean[this.size];
+
+    for (int i = 0; i < order.length; i++) {
+      means[i] = this.means[order[i]];
+      weights[i] = this.weights[order[i]];
+      exact[i] = this.exact[order[i]];
+    }
+
+    System.arraycopy(means, 0, this.means, 0, this.size);
+    System.arraycopy(weights, 0, this.weights, 0, this.size);
+    System.arraycopy(exact, 0, this.exact, 0, this.size);
+  }
+
+  /**
+   * Scale function of the centroids, the k1 function of the t-digest.
+   * @param q a quantile
+   * @return the value of the scale function for the quantile
+   */
+  private double scale(final double q) {
+
+    return this.compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+  }
+
+  private static double interpolate(final double pos, final double rank1,
+      final double value1, final double rank2, final double value2) {
+
+    if (rank2 <= rank1) {
+      return value2;
+    }
+
+    return value1 + (pos - rank1) / (rank2 - rank1) * (value2 - value1);
+  }
+
+  private static double minWithZero(final double value) {
+
+    return Double.isNaN(value) ? 0.0 : Math.min(value, 0.0);
+  }
+
+  private static double maxWithZero(final double value) {
+
+    return Double.isNaN(value) ? 0.0 : Math.max(value, 0.0);
+  }
+
+  @Override
+  public String toString() {
+
+    return Objects.toStringHelper(this)
+        .add("count", this.count).add("centroids", this.size)
+        .add("min", this.min).add("max", this.max).toString();
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor with the default compression.
+   */
+  public QuantileSketch() {
+
+    this(DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Public constructor.
+   * @param compression the compression of the sketch, the number of centroids
+   *          is proportional to the compression
+   */
+  public QuantileSketch(final int compression) {
+
+    checkArgument(compression > 0, "Invalid compression: " + compression);
+
+    this.compression = compression;
+
+    final int length = compression * BUFFER_FACTOR;
+    this.means = new double[length];
+    this.weights = new long[length];
+    this.exact = new boolean[length];
+  }
+
+}
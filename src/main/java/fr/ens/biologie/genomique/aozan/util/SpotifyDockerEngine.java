@@ -0,0 +1,201 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ExecParameter;
+import com.spotify.docker.client.DockerException;
+import com.spotify.docker.client.ImageNotFoundException;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.HostConfig;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Common;
+
+/**
+ * This class define a Docker engine that use the Spotify Docker client.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+final class SpotifyDockerEngine implements DockerEngine {
+
+  /** Logger. */
+  private static final Logger LOGGER = Common.getLogger();
+
+  private final DockerClient client;
+
+  @Override
+  public boolean isImagePresent(final String imageName)
+      throws AozanException {
+
+    try {
+      this.client.inspectImage(imageName);
+      return true;
+
+    } catch (final ImageNotFoundException e) {
+      return false;
+    } catch (final DockerException | InterruptedException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  @Override
+  public void pullImage(final String imageName) throws AozanException {
+
+    try {
+      this.client.pull(imageName);
+    } catch (final DockerException | InterruptedException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  @Override
+  public String startContainer(final String imageName,
+      final List<String> entrypoint, final List<String> binds,
+      final String user, final String workDir) throws AozanException {
+
+    try {
+
+      final HostConfig hostConfig = HostConfig.builder().binds(binds).build();
+
+      final ContainerConfig config =
+          ContainerConfig.builder().image(imageName).entrypoint(entrypoint)
+              .hostConfig(hostConfig).user(user).workingDir(workDir).build();
+
+      final ContainerCreation creation = this.client.createContainer(config);
+      final String id = creation.id();
+
+      this.client.startContainer(id);
+      LOGGER.info("Docker container started: " + id);
+
+      return id;
+
+    } catch (final DockerException | InterruptedException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  @Override
+  public int exec(final String containerId, final List<String> cmd,
+      final File stdoutFile, final File stderrFile) throws AozanException {
+
+    try {
+
+      final String execId =
+          this.client.execCreate(containerId, cmd.toArray(new String[0]),
+              ExecParameter.STDOUT, ExecParameter.STDERR);
+
+      try (LogStream logStream = this.client.execStart(execId)) {
+        write(logStream, stdoutFile, stderrFile);
+      }
+
+      final Integer exitCode = this.client.execInspect(execId).exitCode();
+
+      return exitCode == null ? -1 : exitCode;
+
+    } catch (final DockerException | InterruptedException | IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  @Override
+  public void removeContainer(final String containerId)
+      throws AozanException {
+
+    try {
+      this.client.killContainer(containerId);
+      this.client.removeContainer(containerId);
+      LOGGER.info("Docker container successfully removed: " + containerId);
+
+    } catch (final DockerException | InterruptedException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Write the outputs of a command to files.
+   * @param logStream the log stream
+   * @param stdout stdout output file
+   * @param stderr stderr output file
+   * @throws IOException if an error occurs while writing the files
+   */
+  private static void write(final LogStream logStream, final File stdout,
+      final File stderr) throws IOException {
+
+    try (
+        WritableByteChannel stdoutChannel =
+            Channels.newChannel(new FileOutputStream(stdout));
+        WritableByteChannel stderrChannel =
+            Channels.newChannel(new FileOutputStream(stderr))) {
+
+      while (logStream.hasNext()) {
+
+        final LogMessage message = logStream.next();
+        switch (message.stream()) {
+
+        case STDOUT:
+          stdoutChannel.write(message.content());
+          break;
+
+        case STDERR:
+          stderrChannel.write(message.content());
+          break;
+
+        case STDIN:
+        default:
+          break;
+        }
+      }
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param client the Docker client
+   */
+  SpotifyDockerEngine(final DockerClient client) {
+
+    checkNotNull(client, "client argument cannot be null");
+
+    this.client = client;
+  }
+
+}
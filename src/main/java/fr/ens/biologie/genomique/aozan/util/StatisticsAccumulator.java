@@ -0,0 +1,343 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+/**
+ * This class define a streaming accumulator of statistics on values of a
+ * single variable. Unlike DescriptiveStatistics of commons-math, the values are
+ * not stored: the mean and the variance are updated with the algorithm of
+ * Welford, the sum, the minimum and the maximum are exact and the quantiles
+ * are estimated with a QuantileSketch. The statistics without the values equal
+ * to 0 are updated at the same time and are available without any cost with
+ * the withoutZero() view. The partial accumulators of parallel tasks can be
+ * combined with the merge() method. The infinite values are ignored like in
+ * StatisticsUtils. This class is not thread-safe.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class StatisticsAccumulator {
+
+  private final Moments all;
+  private final Moments withoutZero;
+  private final QuantileSketch sketch;
+  private final boolean zeroExcluded;
+  private final StatisticsAccumulator withoutZeroView;
+
+  /**
+   * This class define the moments of the values, updated with the algorithm of
+   * Welford and merged with the algorithm of Chan et al.
+   */
+  private static final class Moments {
+
+    private long n;
+    private double mean;
+    private double m2;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    private void add(final double value) {
+
+      this.n++;
+
+      final double delta = value - this.mean;
+      this.mean += delta / this.n;
+      this.m2 += delta * (value - this.mean);
+      this.sum += value;
+
+      if (this.n == 1) {
+        this.min = value;
+        this.max = value;
+      } else {
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+      }
+    }
+
+    private void merge(final Moments moments) {
+
+      if (moments.n == 0) {
+        return;
+      }
+
+      if (this.n == 0) {
+        this.n = moments.n;
+        this.mean = moments.mean;
+        this.m2 = moments.m2;
+        this.sum = moments.sum;
+        this.min = moments.min;
+        this.max = moments.max;
+        return;
+      }
+
+      final long n = this.n + moments.n;
+      final double delta = moments.mean - this.mean;
+
+      this.mean += delta * moments.n / n;
+      this.m2 +=
+          moments.m2 + delta * delta * ((double) this.n * moments.n / n);
+      this.sum += moments.sum;
+      this.min = Math.min(this.min, moments.min);
+      this.max = Math.max(this.max, moments.max);
+      this.n = n;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of values.
+   * @return the number of values
+   */
+  public long getN() {
+    return moments().n;
+  }
+
+  /**
+   * Compute the mean of the values.
+   * @return mean or NaN if no values have been added
+   */
+  public double getMean() {
+
+    final Moments m = moments();
+
+    return m.n == 0 ? Double.NaN : m.mean;
+  }
+
+  /**
+   * Compute the variance of the values, without bias correction.
+   * @return variance or NaN if no values have been added, or 0.0 for a single
+   *         value set
+   */
+  public double getVariance() {
+
+    return getVariance(false);
+  }
+
+  /**
+   * Compute the variance of the values.
+   * @param isBiasCorrected true if the sum of the squared deviations must be
+   *          divided by the number of values - 1
+   * @return variance or NaN if no values have been added, or 0.0 for a single
+   *         value set
+   */
+  public double getVariance(final boolean isBiasCorrected) {
+
+    final Moments m = moments();
+
+    if (m.n == 0) {
+      return Double.NaN;
+    }
+
+    if (m.n == 1) {
+      return 0.0;
+    }
+
+    return m.m2 / (isBiasCorrected ? m.n - 1 : m.n);
+  }
+
+  /**
+   * Compute the standard deviation of the values, without bias correction.
+   * @return standard deviation or NaN if no values have been added, or 0.0 for
+   *         a single value set
+   */
+  public double getStandardDeviation() {
+
+    return getStandardDeviation(false);
+  }
+
+  /**
+   * Compute the standard deviation of the values.
+   * @param isBiasCorrected true if the sum of the squared deviations must be
+   *          divided by the number of values - 1
+   * @return standard deviation or NaN if no values have been added, or 0.0 for
+   *         a single value set
+   */
+  public double getStandardDeviation(final boolean isBiasCorrected) {
+
+    return Math.sqrt(getVariance(isBiasCorrected));
+  }
+
+  /**
+   * Get the sum of the values.
+   * @return the sum of the values, 0.0 if no values have been added
+   */
+  public double getSum() {
+    return moments().sum;
+  }
+
+  /**
+   * Get the minimum of the values.
+   * @return the minimum or NaN if no values have been added
+   */
+  public double getMin() {
+    return moments().min;
+  }
+
+  /**
+   * Get the maximum of the values.
+   * @return the maximum or NaN if no values have been added
+   */
+  public double getMax() {
+    return moments().max;
+  }
+
+  /**
+   * Estimate the median of the values.
+   * @return the median or NaN if no values have been added
+   */
+  public double getMedian() {
+
+    return getQuantile(0.5);
+  }
+
+  /**
+   * Estimate a quantile of the values.
+   * @param quantile the quantile, between 0 and 1
+   * @return the quantile or NaN if no values have been added
+   */
+  public double getQuantile(final double quantile) {
+
+    return this.sketch.quantile(quantile,
+        this.zeroExcluded ? 0 : this.all.n - this.withoutZero.n);
+  }
+
+  /**
+   * Get a read-only view of the statistics of the values different of 0. The
+   * view is updated with the values added to this accumulator.
+   * @return a StatisticsAccumulator object
+   */
+  public StatisticsAccumulator withoutZero() {
+
+    return this.withoutZeroView;
+  }
+
+  private Moments moments() {
+
+    return this.zeroExcluded ? this.withoutZero : this.all;
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Add a value. Infinite values are ignored.
+   * @param value the value to add
+   */
+  public void addValue(final double value) {
+
+    checkWritable();
+
+    if (Double.isInfinite(value)) {
+      return;
+    }
+
+    this.all.add(value);
+
+    if (value != 0.0) {
+      this.withoutZero.add(value);
+      this.sketch.add(value);
+    }
+  }
+
+  /**
+   * Merge the values of another accumulator in this accumulator.
+   * @param accumulator the accumulator to merge
+   */
+  public void merge(final StatisticsAccumulator accumulator) {
+
+    checkNotNull(accumulator, "accumulator argument cannot be null");
+    checkArgument(!accumulator.zeroExcluded,
+        "a view without zero cannot be merged");
+    checkWritable();
+
+    this.all.merge(accumulator.all);
+    this.withoutZero.merge(accumulator.withoutZero);
+    this.sketch.merge(accumulator.sketch);
+  }
+
+  private void checkWritable() {
+
+    if (this.zeroExcluded) {
+      throw new UnsupportedOperationException(
+          "a view without zero cannot be modified");
+    }
+  }
+
+  @Override
+  public String toString() {
+
+    return Objects.toStringHelper(this)
+        .add("n", getN()).add("mean", getMean())
+        .add("sd", getStandardDeviation()).add("sum", getSum())
+        .add("min", getMin()).add("max", getMax()).toString();
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Private constructor of the view without zero.
+   * @param accumulator the accumulator of the view
+   */
+  private StatisticsAccumulator(final StatisticsAccumulator accumulator) {
+
+    this.all = accumulator.all;
+    this.withoutZero = accumulator.withoutZero;
+    this.sketch = accumulator.sketch;
+    this.zeroExcluded = true;
+    this.withoutZeroView = this;
+  }
+
+  /**
+   * Public constructor with the default compression of the quantile sketch.
+   */
+  public StatisticsAccumulator() {
+
+    this(QuantileSketch.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Public constructor.
+   * @param compression compression of the quantile sketch
+   */
+  public StatisticsAccumulator(final int compression) {
+
+    this.all = new Moments();
+    this.withoutZero = new Moments();
+    this.sketch = new QuantileSketch(compression);
+    this.zeroExcluded = false;
+    this.withoutZeroView = new StatisticsAccumulator(this);
+  }
+
+}
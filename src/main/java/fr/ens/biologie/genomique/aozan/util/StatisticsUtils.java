@@ -24,76 +24,54 @@
 package fr.ens.biologie.genomique.aozan.util;
 
 import java.util.Collection;
-import java.util.List;
-
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math3.stat.descriptive.rank.Median;
-
-import com.google.common.collect.Lists;
 
 /**
- * This class contains statistics methods, using the class DescriptiveStatistics
- * from commons.apache.math.
+ * This class contains statistics methods, using the class
+ * StatisticsAccumulator. The values are not stored, the statistics are updated
+ * when a value is added.
  * @author Sandrine Perrin
  * @since 1.1
  */
 public class StatisticsUtils {
 
-  /** object maintains a dataset of values of a single variable. */
-  private final DescriptiveStatistics ds;
-  /** copy dataset without values == 0 */
-  private DescriptiveStatistics dsWithoutZero = null;
+  /** Statistics of the values of a single variable. */
+  private final StatisticsAccumulator stats = new StatisticsAccumulator();
 
   /**
    * Compute the mean for values.
-   * @return mean or NaN if no values have been added, or 0.0 for a single value
-   *         set.
+   * @return mean or NaN if no values have been added
    */
   public Double getMean() {
 
-    return this.ds.getMean();
+    return this.stats.getMean();
   }
 
   /**
    * Compute the mean for values which are different of 0.
-   * @return mean or NaN if no values have been added, or 0.0 for a single value
-   *         set.
+   * @return mean or NaN if no values have been added
    */
   public Double getMeanWithoutZero() {
 
-    buildDescriptiveStatisticsWithZero();
-
-    // Build dataset of values from dataset initial
-    for (final Double d : this.ds.getValues()) {
-      if (d != 0.0) {
-        this.dsWithoutZero.addValue(d);
-      }
-    }
-
-    return this.dsWithoutZero.getMean();
+    return this.stats.withoutZero().getMean();
   }
 
   /**
    * Compute the median for values which are different of 0.
-   * @return median or NaN if no values have been added, or 0.0 for a single
-   *         value set.
+   * @return median or 0.0 if no values have been added
    */
   public Double getMedianWithoutZero() {
 
-    buildDescriptiveStatisticsWithZero();
-
-    return (this.dsWithoutZero.getN() == 0
-        ? 0.0 : new Median().evaluate(this.dsWithoutZero.getValues()));
+    final StatisticsAccumulator withoutZero = this.stats.withoutZero();
 
+    return withoutZero.getN() == 0 ? 0.0 : withoutZero.getMedian();
   }
 
   /**
    * Compute the median for values.
-   * @return median or NaN if no values have been added, or 0.0 for a single
-   *         value set.
+   * @return median or NaN if no values have been added
    */
   public Double getMediane() {
-    return new Median().evaluate(this.ds.getValues());
+    return this.stats.getMedian();
   }
 
   /**
@@ -101,7 +79,7 @@ public class StatisticsUtils {
    * @return sum of values.
    */
   public Double getSum() {
-    return this.ds.getSum();
+    return this.stats.getSum();
   }
 
   /**
@@ -168,63 +146,19 @@ public class StatisticsUtils {
   }
 
   public Double getMin() {
-    return this.ds.getMin();
+    return this.stats.getMin();
   }
 
   public Double getMax() {
-    return this.ds.getMax();
-  }
-
-  /**
-   * Returns the instance of DescriptiveStatistics.
-   * @return instance of DescriptiveStatistics
-   */
-  public DescriptiveStatistics getDescriptiveStatistics() {
-    return this.ds;
-  }
-
-  /**
-   * Returns the instance of DescriptiveStatistics which doesn't contain the
-   * value zero.
-   * @return instance of DescriptiveStatistics
-   */
-  public DescriptiveStatistics getDescriptiveStatisticsWithZero() {
-    buildDescriptiveStatisticsWithZero();
-
-    return this.dsWithoutZero;
-  }
-
-  /**
-   * Print dataset.
-   * @return string of dataset
-   */
-  public String printValuesWithoutZero() {
-    buildDescriptiveStatisticsWithZero();
-
-    return printValues(this.dsWithoutZero);
-  }
-
-  /**
-   * Print dataset.
-   * @return string of dataset
-   */
-  public String printValues() {
-    return printValues(this.ds);
+    return this.stats.getMax();
   }
 
   /**
-   * Print dataset.
-   * @return string of dataset
+   * Returns the accumulator of the statistics.
+   * @return instance of StatisticsAccumulator
    */
-  private String printValues(final DescriptiveStatistics stat) {
-    final StringBuilder s = new StringBuilder();
-
-    for (final double d : stat.getValues()) {
-      s.append(d);
-      s.append("\n");
-    }
-
-    return s.toString();
+  public StatisticsAccumulator getStatisticsAccumulator() {
+    return this.stats;
   }
 
   /**
@@ -234,36 +168,8 @@ public class StatisticsUtils {
    *         single value set.
    */
   public Double getStandardDeviation(final boolean isBiasCorrected) {
-    final double average = getMean();
-
-    double result = Double.NaN;
-    double sum = 0.0;
-    Double val = 0.0;
-    double count = 0.0;
-
-    if (this.ds.getN() > 0) {
-      if (this.ds.getN() > 1) {
-
-        for (int i = 0; i < this.ds.getN(); i++) {
-
-          val = this.ds.getElement(i);
-
-          val -= average;
-          sum += val * val;
-          count++;
 
-        }
-
-        // With bias corrected, division by count values - 1
-        count -= isBiasCorrected ? 1 : 0;
-
-        result = Math.sqrt(sum / count);
-
-      } else {
-        result = 0.0;
-      }
-    }
-    return result;
+    return this.stats.getStandardDeviation(isBiasCorrected);
   }
 
   /**
@@ -271,27 +177,9 @@ public class StatisticsUtils {
    * @param number new values to put in dataset
    */
   public void addValues(final Number number) {
-    final Double val = number.doubleValue();
-
-    if (val != null) {
-      if (!val.isInfinite()) {
-        this.ds.addValue(val);
-      }
-    }
-  }
-
-  /**
-   * Builds dataset without value zero of each call, if the dataset source has
-   * been modified.
-   */
-  private void buildDescriptiveStatisticsWithZero() {
 
-    this.dsWithoutZero = new DescriptiveStatistics();
-
-    for (final Double d : this.ds.getValues()) {
-      if (d != 0.0) {
-        this.dsWithoutZero.addValue(d);
-      }
+    if (number != null) {
+      this.stats.addValue(number.doubleValue());
     }
   }
 
@@ -304,37 +192,17 @@ public class StatisticsUtils {
    * Infinity values are ignored.
    * @param list values
    */
-  public StatisticsUtils(final List<? extends Number> list) {
-
-    this.ds = new DescriptiveStatistics();
+  public StatisticsUtils(final Collection<? extends Number> list) {
 
     for (final Number n : list) {
-      final Double val = n.doubleValue();
-
-      if (val != null) {
-        if (!val.isInfinite()) {
-          this.ds.addValue(val);
-        }
-      }
-
+      addValues(n);
     }
   }
 
-  /**
-   * Public constructor, build a list of values used for compute statistics.
-   * Infinity values are ignored.
-   * @param list values
-   */
-  public StatisticsUtils(final Collection<? extends Number> list) {
-    this(Lists.newArrayList(list));
-
-  }
-
   /**
    * Public constructor with a empty dataset.
    */
   public StatisticsUtils() {
-    this.ds = new DescriptiveStatistics();
   }
 
 }
@@ -231,11 +231,9 @@ public final class XMLUtilsWriter {
           "Error create HTML file, XSL file is not define.");
     }
 
-    // Transform document xml in text html
-    final String text = createHTMLFileFromXSL(doc, isXslFile);
-
-    // Create html file
-    Files.write(text, reportHtml, StandardCharsets.UTF_8);
+    // Transform document xml in html file
+    XSLReportRenderer.render(doc, XSLReportRenderer.compile(isXslFile),
+        reportHtml);
   }
 
   /**
@@ -259,41 +257,7 @@ public final class XMLUtilsWriter {
           "Error create HTML file, XSL file is not define.");
     }
 
-    try {
-      // Set up a transformer
-      final TransformerFactory transfac = TransformerFactory.newInstance();
-      Transformer trans = transfac.newTransformer();
-      // trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-      trans.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "yes");
-      trans.setOutputProperty(OutputKeys.INDENT, "yes");
-      trans.setOutputProperty(OutputKeys.METHOD, "html");
-      trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-
-      // Create string from XML tree
-      final StringWriter sw = new StringWriter();
-      final StreamResult result = new StreamResult(sw);
-
-      final DOMSource source = new DOMSource(doc);
-      trans.transform(source, result);
-
-      // Create the transformer
-      final Transformer transformer =
-          TransformerFactory.newInstance().newTransformer(
-              new javax.xml.transform.stream.StreamSource(isXslFile));
-
-      // Create the String writer
-      final StringWriter writer = new StringWriter();
-
-      // Transform the document
-      transformer.transform(new DOMSource(doc), new StreamResult(writer));
-
-      // Close input stream
-      isXslFile.close();
-
-      return writer.toString();
-
-    } catch (final TransformerException | IOException e) {
-      throw new AozanException(e);
-    }
+    return XSLReportRenderer.renderToString(doc,
+        XSLReportRenderer.compile(isXslFile));
   }
 }
@@ -0,0 +1,367 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Document;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a service that render the XML reports in HTML with XSL
+ * stylesheets. Each stylesheet is compiled only once in a Templates object
+ * that is shared by all the threads, the output of the transformations is
+ * written directly in the report files and the reports can be rendered on a
+ * bounded pool of threads. When all the threads of the pool are busy and the
+ * queue of the pool is full, the report is rendered by the calling thread.
+ * @since 2.3
+ * @author Laurent Jourdren
+ */
+public final class XSLReportRenderer {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+  private static XSLReportRenderer singleton;
+
+  private final ConcurrentMap<String, FutureTask<Templates>> templatesCache =
+      new ConcurrentHashMap<>();
+  private final ExecutorService executor;
+
+  //
+  // Templates methods
+  //
+
+  /**
+   * Get the compiled stylesheet of an XSL file or of an embedded XSL file if
+   * the XSL file is not defined. A stylesheet file is compiled again if it has
+   * been modified.
+   * @param xslFile the XSL file, can be null
+   * @param embeddedXSL the path of the embedded XSL file in the class path
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  public Templates getTemplates(final File xslFile, final String embeddedXSL)
+      throws AozanException {
+
+    if (xslFile != null) {
+      return getTemplates(xslFile);
+    }
+
+    checkNotNull(embeddedXSL, "embeddedXSL argument cannot be null");
+
+    return getTemplates("resource:" + embeddedXSL, new Callable<Templates>() {
+
+      @Override
+      public Templates call() throws Exception {
+
+        final InputStream is =
+            XSLReportRenderer.class.getResourceAsStream(embeddedXSL);
+
+        if (is == null) {
+          throw new AozanException("Embedded XSL file not found: "
+              + embeddedXSL);
+        }
+
+        return compile(is);
+      }
+    });
+  }
+
+  /**
+   * Get the compiled stylesheet of an XSL file. The stylesheet is compiled
+   * again if the file has been modified.
+   * @param xslFile the XSL file
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  public Templates getTemplates(final File xslFile) throws AozanException {
+
+    checkNotNull(xslFile, "xslFile argument cannot be null");
+
+    final File file = xslFile.getAbsoluteFile();
+    final String key = "file:" + file.getPath() + ':' + file.lastModified();
+
+    return getTemplates(key, new Callable<Templates>() {
+
+      @Override
+      public Templates call() throws Exception {
+
+        return compile(new FileInputStream(file));
+      }
+    });
+  }
+
+  /**
+   * Get a compiled stylesheet from the cache. The stylesheet is compiled only
+   * once even if several threads request it at the same time.
+   * @param key the key of the stylesheet in the cache
+   * @param compiler the task that compile the stylesheet
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  private Templates getTemplates(final String key,
+      final Callable<Templates> compiler) throws AozanException {
+
+    FutureTask<Templates> task = this.templatesCache.get(key);
+
+    if (task == null) {
+
+      final FutureTask<Templates> newTask = new FutureTask<>(compiler);
+      task = this.templatesCache.putIfAbsent(key, newTask);
+
+      if (task == null) {
+        task = newTask;
+        task.run();
+      }
+    }
+
+    try {
+      return task.get();
+
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AozanException(e);
+
+    } catch (final ExecutionException e) {
+
+      // Do not keep the failed compilations in the cache
+      this.templatesCache.remove(key, task);
+
+      final Throwable cause = e.getCause();
+      if (cause instanceof AozanException) {
+        throw (AozanException) cause;
+      }
+      throw new AozanException(cause);
+    }
+  }
+
+  /**
+   * Compile a stylesheet.
+   * @param is the input stream of the stylesheet
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  public static Templates compile(final InputStream is)
+      throws AozanException {
+
+    checkNotNull(is, "is argument cannot be null");
+
+    try (InputStream in = is) {
+
+      return TransformerFactory.newInstance()
+          .newTemplates(new StreamSource(in));
+
+    } catch (final TransformerException | IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  //
+  // Rendering methods
+  //
+
+  /**
+   * Render a document in a file.
+   * @param doc the document to render
+   * @param templates the compiled stylesheet
+   * @param outputFile the output file
+   * @throws AozanException if an error occurs while rendering the document
+   */
+  public static void render(final Document doc, final Templates templates,
+      final File outputFile) throws AozanException {
+
+    checkNotNull(doc, "doc argument cannot be null");
+    checkNotNull(templates, "templates argument cannot be null");
+    checkNotNull(outputFile, "outputFile argument cannot be null");
+
+    try (OutputStream out = new BufferedOutputStream(
+        new FileOutputStream(outputFile), BUFFER_SIZE)) {
+
+      templates.newTransformer().transform(new DOMSource(doc),
+          new StreamResult(out));
+
+    } catch (final TransformerException | IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Render a document in a String.
+   * @param doc the document to render
+   * @param templates the compiled stylesheet
+   * @return a String with the rendered document
+   * @throws AozanException if an error occurs while rendering the document
+   */
+  public static String renderToString(final Document doc,
+      final Templates templates) throws AozanException {
+
+    checkNotNull(doc, "doc argument cannot be null");
+    checkNotNull(templates, "templates argument cannot be null");
+
+    try {
+      final StringWriter writer = new StringWriter();
+      templates.newTransformer().transform(new DOMSource(doc),
+          new StreamResult(writer));
+
+      return writer.toString();
+
+    } catch (final TransformerException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Render a document in a file using the pool of threads. The document must
+   * not be modified until the end of the rendering.
+   * @param doc the document to render
+   * @param templates the compiled stylesheet
+   * @param outputFile the output file
+   * @return a Future object to wait the end of the rendering
+   */
+  public Future<Void> submit(final Document doc, final Templates templates,
+      final File outputFile) {
+
+    checkNotNull(doc, "doc argument cannot be null");
+    checkNotNull(templates, "templates argument cannot be null");
+    checkNotNull(outputFile, "outputFile argument cannot be null");
+
+    return this.executor.submit(new Callable<Void>() {
+
+      @Override
+      public Void call() throws AozanException {
+
+        render(doc, templates, outputFile);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Wait the end of renderings.
+   * @param futures the Future objects of the renderings
+   * @throws AozanException if an error has occurred during a rendering
+   */
+  public static void waitRenderings(final List<Future<Void>> futures)
+      throws AozanException {
+
+    checkNotNull(futures, "futures argument cannot be null");
+
+    AozanException exception = null;
+
+    // Wait all the renderings even if a rendering has failed
+    for (Future<Void> f : new ArrayList<>(futures)) {
+
+      try {
+        f.get();
+
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AozanException(e);
+
+      } catch (final ExecutionException e) {
+
+        if (exception == null) {
+          final Throwable cause = e.getCause();
+          exception = cause instanceof AozanException
+              ? (AozanException) cause : new AozanException(cause);
+        }
+      }
+    }
+
+    futures.clear();
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  //
+  // Singleton method
+  //
+
+  /**
+   * Get the instance of the renderer.
+   * @return the instance of the renderer
+   */
+  public static synchronized XSLReportRenderer getInstance() {
+
+    if (singleton == null) {
+      singleton = new XSLReportRenderer(
+          Runtime.getRuntime().availableProcessors());
+    }
+
+    return singleton;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param threads number of threads of the pool
+   */
+  private XSLReportRenderer(final int threads) {
+
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("report-renderer-%d").build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+}
@@ -540,6 +540,8 @@ def aozan_main():
                       help='Returns non zero exit code if a step fails')
     parser.add_option('-c', '--conf', action='store_true', dest='conf',
                       help='Default Aozan configuration, loads before configuration file.')
+    parser.add_option('-g', '--genome-descriptions', action='store_true', dest='genome_descriptions',
+                      help='Create the missing descriptions of the FastqScreen genomes and exit.')
 
     # Parse command line arguments
     (options, args) = parser.parse_args()
@@ -621,8 +623,12 @@ def aozan_main():
             # Create lock file
             create_lock_file(lock_file_path)
 
-            # Launch steps
-            result = launch_steps(conf)
+            if options.genome_descriptions:
+                # Create the genome descriptions
+                result = qc_run.create_genome_descriptions(conf)
+            else:
+                # Launch steps
+                result = launch_steps(conf)
 
             # Remove lock file
             delete_lock_file(lock_file_path)
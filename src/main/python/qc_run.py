@@ -270,3 +270,29 @@ def qc(run_id, conf):
                                     common.get_instrument_name(run_id, conf), msg, html_report_file, False, conf)
     common.log('INFO', 'QC step: successful in ' + common.duration_to_human_readable(duration), conf)
     return True
+
+
+def create_genome_descriptions(conf):
+    """Create the descriptions of the FastqScreen genomes that are not in the genome description storage.
+
+    Arguments:
+        conf: configuration dictionary
+    """
+
+    start_time = time.time()
+    common.log('INFO', 'Create the descriptions of the FastqScreen genomes', conf)
+
+    try:
+        QC.createGenomeDescriptions(Settings(conf))
+
+    except AozanException, exp:
+        error("Error while creating the genome descriptions.", common.exception_msg(exp, conf), conf)
+        return False
+
+    except Throwable, exp:
+        error("Error while creating the genome descriptions.", common.exception_msg(exp, conf), conf)
+        return False
+
+    common.log('INFO', 'Genome descriptions created in ' +
+               common.duration_to_human_readable(time.time() - start_time), conf)
+    return True
@@ -0,0 +1,300 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.collectors.Collector;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+import fr.ens.biologie.genomique.aozan.collectors.GlobalStatsCollector;
+import fr.ens.biologie.genomique.aozan.collectors.ReadCollector;
+import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
+import fr.ens.biologie.genomique.aozan.collectors.interop.ErrorMetricsCollector;
+import fr.ens.biologie.genomique.aozan.collectors.interop.ExtractionMetricsCollector;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileMetricsCollector;
+
+public class CollectorSchedulerTest {
+
+  private static final int THREADS = 4;
+
+  /**
+   * This class define a collector that records the keys of its input data.
+   */
+  private static final class TestCollector implements Collector {
+
+    private final String name;
+    private final List<String> requiredNames;
+    private final boolean summary;
+    private final boolean fail;
+    private Set<String> inputKeys;
+
+    @Override
+    public String getName() {
+      return this.name;
+    }
+
+    @Override
+    public List<String> getCollectorsNamesRequiered() {
+      return this.requiredNames;
+    }
+
+    @Override
+    public void configure(final QC qc, final CollectorConfiguration conf) {
+    }
+
+    @Override
+    public void collect(final RunData data) throws AozanException {
+
+      synchronized (this) {
+        this.inputKeys = new TreeSet<>(data.getMap().keySet());
+      }
+
+      if (this.fail) {
+        throw new AozanException(this.name + " failed");
+      }
+
+      data.put(this.name + ".input.keys", this.inputKeys.size());
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public boolean isSummaryCollector() {
+      return this.summary;
+    }
+
+    synchronized Set<String> getInputKeys() {
+      return this.inputKeys;
+    }
+
+    TestCollector(final String name, final boolean summary, final boolean fail,
+        final String... requiredNames) {
+
+      this.name = name;
+      this.summary = summary;
+      this.fail = fail;
+      this.requiredNames = Arrays.asList(requiredNames);
+    }
+  }
+
+  /**
+   * This class define a read collector that does not read the quality metrics
+   * as the test runs have no QMetricsOut.bin file.
+   */
+  private static final class InterOpReadCollector implements Collector {
+
+    private final List<Collector> subCollectors =
+        Arrays.<Collector> asList(new TileMetricsCollector(),
+            new ExtractionMetricsCollector(), new ErrorMetricsCollector());
+
+    @Override
+    public String getName() {
+      return ReadCollector.COLLECTOR_NAME;
+    }
+
+    @Override
+    public List<String> getCollectorsNamesRequiered() {
+      return new ReadCollector().getCollectorsNamesRequiered();
+    }
+
+    @Override
+    public void configure(final QC qc, final CollectorConfiguration conf) {
+
+      for (final Collector collector : this.subCollectors) {
+        collector.configure(qc, conf);
+      }
+    }
+
+    @Override
+    public void collect(final RunData data) throws AozanException {
+
+      for (final Collector collector : this.subCollectors) {
+        collector.collect(data);
+      }
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public boolean isSummaryCollector() {
+      return false;
+    }
+  }
+
+  @Test
+  public void testSequentialAndConcurrentCollect() throws AozanException {
+
+    testSequentialAndConcurrentCollect("InterOp_PE100");
+    testSequentialAndConcurrentCollect("InterOp_SR50");
+  }
+
+  @Test
+  public void testDependenciesData() throws AozanException {
+
+    final TestCollector a = new TestCollector("a", false, false);
+    final TestCollector b = new TestCollector("b", false, false, "a");
+    final TestCollector c = new TestCollector("c", false, false, "b");
+    final TestCollector d = new TestCollector("d", false, false);
+    final TestCollector e = new TestCollector("e", false, false, "d");
+    final TestCollector summary = new TestCollector("summary", true, false);
+
+    final RunData data =
+        collectConcurrently(Arrays.<Collector> asList(a, b, c, d, e, summary));
+
+    // Each collector only get the data of the collectors it depends on
+    assertEquals(keys(), a.getInputKeys());
+    assertEquals(keys("a"), b.getInputKeys());
+    assertEquals(keys("a", "b"), c.getInputKeys());
+    assertEquals(keys(), d.getInputKeys());
+    assertEquals(keys("d"), e.getInputKeys());
+    assertEquals(keys("a", "b", "c", "d", "e"), summary.getInputKeys());
+
+    assertEquals(keys("a", "b", "c", "d", "e", "summary"),
+        data.getMap().keySet());
+  }
+
+  @Test
+  public void testFailingCollector() {
+
+    final TestCollector a = new TestCollector("a", false, false);
+    final TestCollector b = new TestCollector("b", false, true, "a");
+    final TestCollector c = new TestCollector("c", false, false, "b");
+    final TestCollector d = new TestCollector("d", false, false, "c");
+    final TestCollector summary = new TestCollector("summary", true, false);
+
+    final List<String> ended = Collections.synchronizedList(
+        new ArrayList<String>());
+
+    try {
+      new CollectorScheduler(Arrays.<Collector> asList(a, b, c, d, summary),
+          THREADS, "runid", null,
+          new HashMap<Collector, CollectorConfiguration>())
+              .collect(null, new CollectorScheduler.CollectorListener() {
+
+                @Override
+                public void collectorEnded(final Collector collector,
+                    final RunData fragment) {
+                  ended.add(collector.getName());
+                }
+              });
+      fail("The collect must fail");
+    } catch (AozanException e) {
+      assertEquals("b failed", e.getMessage());
+    }
+
+    // The collectors that depend on the failed collector are not executed
+    assertEquals(Collections.singletonList("a"), ended);
+    assertEquals(keys("a"), b.getInputKeys());
+    assertTrue(c.getInputKeys() == null);
+    assertTrue(d.getInputKeys() == null);
+    assertTrue(summary.getInputKeys() == null);
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Compare the data of the collectors that read the RTA output of a run when
+   * the collectors are executed one after another and when they are executed
+   * concurrently.
+   * @param runDir the directory of the run
+   */
+  private static void testSequentialAndConcurrentCollect(final String runDir)
+      throws AozanException {
+
+    final RunData sequential = new RunData();
+    for (final Collector collector : createRunCollectors(runDir)) {
+      collector.collect(sequential);
+    }
+
+    final RunData concurrent = collectConcurrently(createRunCollectors(runDir));
+
+    assertFalse(sequential.getMap().isEmpty());
+    assertTrue(sequential.contains("globalstats.cycles"));
+    assertEquals(sequential.getMap(), concurrent.getMap());
+  }
+
+  /**
+   * Create and configure the collectors of the default set that read the RTA
+   * output of a run, in the order of the QC, with a summary collector.
+   * @param runDir the directory of the run
+   * @return a list of collectors
+   */
+  private static List<Collector> createRunCollectors(final String runDir) {
+
+    final Map<String, String> props = new HashMap<>();
+    props.put(Settings.QC_CONF_CLUSTER_DENSITY_RATIO_KEY, "0.3472222");
+    props.put(QC.RTA_OUTPUT_DIR,
+        new File("src/test/java/files", runDir).getAbsolutePath());
+
+    final List<Collector> result = Arrays.<Collector> asList(
+        new RunInfoCollector(), new InterOpReadCollector(),
+        new GlobalStatsCollector(),
+        new TestCollector("summary", true, false));
+
+    for (final Collector collector : result) {
+      collector.configure(null, new CollectorConfiguration(props));
+    }
+
+    return result;
+  }
+
+  private static RunData collectConcurrently(final List<Collector> collectors)
+      throws AozanException {
+
+    return new CollectorScheduler(collectors, THREADS, "runid", null,
+        new HashMap<Collector, CollectorConfiguration>()).collect(null, null);
+  }
+
+  private static Set<String> keys(final String... collectorNames) {
+
+    final Set<String> result = new TreeSet<>();
+    for (final String name : collectorNames) {
+      result.add(name + ".input.keys");
+    }
+
+    return result;
+  }
+
+}
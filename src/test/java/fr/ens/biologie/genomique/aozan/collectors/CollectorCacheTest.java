@@ -0,0 +1,191 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.Settings;
+
+public class CollectorCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File dir;
+  private File inputFile;
+  private File outputFile;
+  private Map<String, String> settings;
+  private RunData upstream;
+
+  @Before
+  public void setUp() throws IOException {
+
+    this.dir = this.tmp.getRoot();
+    this.inputFile = new File(this.dir, "input.fastq");
+    this.outputFile = new File(this.dir, "report.html");
+    Files.write("@read\nACGT\n+\nIIII\n", this.inputFile,
+        StandardCharsets.UTF_8);
+    Files.touch(this.outputFile);
+
+    this.settings = new HashMap<>();
+    this.settings.put("qc.conf.fastqc.keep.zip.report.file", "false");
+    this.settings.put("qc.conf.other", "a");
+    this.settings.put(Settings.QC_CONF_THREADS_KEY, "4");
+
+    this.upstream = new RunData();
+    this.upstream.put("run.info.read.count", 2);
+    this.upstream.put("samplesheet.sample1.name", "sample1");
+  }
+
+  @Test
+  public void testRestore() throws IOException {
+
+    final CollectorCache cache =
+        new CollectorCache(new File(this.dir, "cache"));
+
+    assertNull(cache.load(newFingerprint(cache)));
+    save(cache);
+
+    final RunData result = cache.load(newFingerprint(cache));
+    assertNotNull(result);
+    assertEquals(2, result.size());
+    assertEquals(42, result.getInt("fastqc.sample1.read1.count"));
+    assertEquals("a=b", result.get("fastqc.sample1.read1.text"));
+
+    // The content of a touched file is unchanged
+    assertTrue(this.inputFile.setLastModified(
+        this.inputFile.lastModified() - 10000));
+    assertNotNull(cache.load(newFingerprint(cache)));
+    assertNotNull(new CollectorCache(new File(this.dir, "cache"))
+        .load(newFingerprint(cache)));
+
+    // The settings that are not read or that does not change the results
+    this.settings.put("qc.conf.other", "b");
+    this.settings.put(Settings.QC_CONF_THREADS_KEY, "8");
+    assertNotNull(cache.load(newFingerprint(cache)));
+  }
+
+  @Test
+  public void testInvalidation() throws IOException {
+
+    final CollectorCache cache =
+        new CollectorCache(new File(this.dir, "cache"));
+
+    // Upstream data
+    save(cache);
+    this.upstream.put("samplesheet.sample1.name", "sample2");
+    assertNull(cache.load(newFingerprint(cache)));
+    this.upstream.put("samplesheet.sample1.name", "sample1");
+    assertNotNull(cache.load(newFingerprint(cache)));
+
+    // Settings read by the collector
+    this.settings.put("qc.conf.fastqc.keep.zip.report.file", "true");
+    assertNull(cache.load(newFingerprint(cache)));
+    this.settings.remove("qc.conf.fastqc.keep.zip.report.file");
+    assertNull(cache.load(newFingerprint(cache)));
+    save(cache);
+    assertNotNull(cache.load(newFingerprint(cache)));
+
+    // Content of an input file with the same length
+    final long modified = this.inputFile.lastModified();
+    Files.write("@read\nACGA\n+\nIIII\n", this.inputFile,
+        StandardCharsets.UTF_8);
+    assertTrue(this.inputFile.setLastModified(modified - 10000));
+    assertNull(cache.load(newFingerprint(cache)));
+    save(cache);
+    assertNotNull(cache.load(newFingerprint(cache)));
+
+    // Missing output file
+    assertTrue(this.outputFile.delete());
+    assertNull(cache.load(newFingerprint(cache)));
+  }
+
+  @Test
+  public void testLargeInputFile() throws IOException {
+
+    // The MD5 sum of the input file is not saved
+    final CollectorCache cache =
+        new CollectorCache(new File(this.dir, "cache"), 0);
+
+    save(cache);
+    assertNotNull(cache.load(newFingerprint(cache)));
+
+    // A touched file is considered as changed
+    assertTrue(this.inputFile.setLastModified(
+        this.inputFile.lastModified() - 10000));
+    assertNull(cache.load(newFingerprint(cache)));
+  }
+
+  //
+  // Private methods
+  //
+
+  private CollectorCache.Fingerprint newFingerprint(
+      final CollectorCache cache) {
+
+    final CollectorConfiguration conf =
+        new CollectorConfiguration(this.settings);
+
+    // Settings read by the collector
+    conf.getBoolean("qc.conf.fastqc.keep.zip.report.file", true);
+    conf.getInt(Settings.QC_CONF_THREADS_KEY, 1);
+
+    final CollectorCache.Fingerprint result =
+        cache.newFingerprint("fastqc.sample1.read1", conf);
+    result.addEntries(this.upstream, "samplesheet.sample1.");
+    result.addEntries(this.upstream, "run.info.");
+    result.addInputFiles(Collections.singletonList(this.inputFile));
+    result.addOutputFile(this.outputFile);
+
+    return result;
+  }
+
+  private void save(final CollectorCache cache) {
+
+    final RunData data = new RunData();
+    data.put("fastqc.sample1.read1.count", 42);
+    data.put("fastqc.sample1.read1.text", "a=b");
+
+    cache.save(newFingerprint(cache), data);
+  }
+
+}
@@ -0,0 +1,590 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.illumina.Bcl2FastqOutput;
+import fr.ens.biologie.genomique.aozan.illumina.Bcl2FastqOutput.Bcl2FastqVersion;
+import fr.ens.biologie.genomique.aozan.illumina.samplesheet.Sample;
+import fr.ens.biologie.genomique.aozan.illumina.samplesheet.SampleSheet;
+import fr.ens.biologie.genomique.aozan.illumina.samplesheet.io.SampleSheetCSVReader;
+import fr.ens.biologie.genomique.aozan.io.FastqSample;
+import uk.ac.babraham.FastQC.Sequence.Sequence;
+import uk.ac.babraham.FastQC.Sequence.SequenceFile;
+
+public class FastqScanStageTest {
+
+  private static final int READ_COUNT = 3000;
+  private static final int SUBSET_READ_COUNT = 200;
+  private static final String[] INDEXES =
+      {"CGATGT", "TGACCA", "GCCAAT", "NNNNNN", "ACAGTG"};
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private SampleSheet samplesheet;
+  private File fastqDir;
+
+  /**
+   * Kinds of test collectors.
+   */
+  private enum Kind {
+    // FastQC like collector that read FastQC sequences of all the samples
+    SEQUENCES,
+    // Undetermined indexes like collector that read the first records of the
+    // read 1 of the undetermined samples
+    INDEXES,
+    // Subset FASTQ collector of the read 1 of the standard samples
+    SUBSET,
+    // Collector that fail once while reading the records of all the samples
+    FAILING
+  }
+
+  /**
+   * This class define a FASTQ collector that does not need a QC object.
+   */
+  private static final class TestCollector extends AbstractFastqCollector {
+
+    private final Kind kind;
+    private boolean failed;
+    private int scanThreadCount;
+
+    @Override
+    public String getName() {
+      return this.kind.name().toLowerCase();
+    }
+
+    @Override
+    protected boolean isProcessUndeterminedIndicesSamples() {
+      return this.kind != Kind.SUBSET;
+    }
+
+    @Override
+    protected boolean isProcessStandardSamples() {
+      return this.kind != Kind.INDEXES;
+    }
+
+    @Override
+    protected boolean isProcessAllReads() {
+      return this.kind == Kind.SEQUENCES || this.kind == Kind.FAILING;
+    }
+
+    @Override
+    protected int getThreadsNumber() {
+      return 1;
+    }
+
+    @Override
+    protected AbstractFastqProcessThread collectSample(final RunData data,
+        final FastqSample fastqSample, final File reportDir,
+        final boolean runPE) throws AozanException {
+
+      if (fastqSample.isUndeterminedIndex()
+          ? !isProcessUndeterminedIndicesSamples()
+          : !isProcessStandardSamples()) {
+        return null;
+      }
+
+      if (!isProcessAllReads() && fastqSample.getRead() != 1) {
+        return null;
+      }
+
+      switch (this.kind) {
+
+      case SEQUENCES:
+        return new SequenceStatsThread(fastqSample);
+
+      case INDEXES:
+        return new IndexCountThread(fastqSample, READ_COUNT / 3, false);
+
+      case SUBSET:
+        return new SubsetFastqThread(fastqSample, READ_COUNT,
+            READ_COUNT * 9 / 10, SUBSET_READ_COUNT, READ_COUNT);
+
+      case FAILING:
+        final boolean fail = !this.failed;
+        this.failed = true;
+        return new IndexCountThread(fastqSample, Integer.MAX_VALUE, fail);
+
+      default:
+        throw new IllegalStateException();
+      }
+    }
+
+    @Override
+    AbstractFastqProcessThread createScanThread(final RunData data,
+        final FastqSample fastqSample, final boolean runPE)
+        throws AozanException {
+
+      // The report directory and the result parts require a QC object
+      final AbstractFastqProcessThread thread =
+          collectSample(data, fastqSample, null, runPE);
+      if (thread != null) {
+        this.scanThreadCount++;
+      }
+
+      return thread;
+    }
+
+    @Override
+    protected void saveResultPart(final FastqSample fastqSample,
+        final RunData data) {
+      // The result parts are not saved
+    }
+
+    TestCollector(final Kind kind) {
+      this.kind = kind;
+    }
+  }
+
+  /**
+   * This class define a thread that compute statistics on the FastQC
+   * sequences of a sample.
+   */
+  private static final class SequenceStatsThread
+      extends AbstractFastqProcessThread implements FastqSequenceConsumer {
+
+    private long reads;
+    private long gc;
+    private long quality;
+    private int idHash;
+
+    @Override
+    protected void process() throws AozanException {
+      scanFastqFiles(this);
+    }
+
+    @Override
+    public void startScan(final SequenceFile seqFile) {
+      this.reads = 0;
+    }
+
+    @Override
+    public boolean processSequence(final Sequence seq) {
+
+      this.reads++;
+      this.idHash = 31 * this.idHash + seq.getID().hashCode();
+
+      for (char c : seq.getSequence().toCharArray()) {
+        if (c == 'G' || c == 'C') {
+          this.gc++;
+        }
+      }
+
+      for (char c : seq.getQualityString().toCharArray()) {
+        this.quality += c - 33;
+      }
+
+      return true;
+    }
+
+    @Override
+    public void endScan() {
+
+      final String prefix = "sequences" + getFastqSample().getRundataPrefix()
+          + ".lane" + getFastqSample().getLane();
+      getResults().put(prefix + ".reads", this.reads);
+      getResults().put(prefix + ".gc", this.gc);
+      getResults().put(prefix + ".quality", this.quality);
+      getResults().put(prefix + ".id.hash", this.idHash);
+    }
+
+    @Override
+    protected void logThreadStart() {
+    }
+
+    @Override
+    protected void logThreadEnd(final String duration) {
+    }
+
+    SequenceStatsThread(final FastqSample fastqSample)
+        throws AozanException {
+      super(fastqSample);
+    }
+  }
+
+  /**
+   * This class define a thread that count the indexes of the first records of
+   * a sample.
+   */
+  private static final class IndexCountThread
+      extends AbstractFastqProcessThread implements FastqRecordConsumer {
+
+    private final Map<String, Integer> counts = new TreeMap<>();
+    private final int maxRecords;
+    private final boolean fail;
+    private int records;
+
+    @Override
+    protected void process() throws AozanException {
+      scanFastqFiles(this);
+    }
+
+    @Override
+    public void startScan(final SequenceFile seqFile) {
+      this.records = 0;
+    }
+
+    @Override
+    public boolean processRecord(final byte[] record, final int length)
+        throws AozanException {
+
+      if (this.fail && this.records == 100) {
+        throw new AozanException("Invalid record");
+      }
+
+      int end = 0;
+      while (record[end] != '\n') {
+        end++;
+      }
+
+      int start = end;
+      while (record[start - 1] != ':') {
+        start--;
+      }
+
+      final String index =
+          new String(record, start, end - start, StandardCharsets.US_ASCII);
+      final Integer count = this.counts.get(index);
+      this.counts.put(index, count == null ? 1 : count + 1);
+
+      return ++this.records < this.maxRecords;
+    }
+
+    @Override
+    public void endScan() {
+
+      final String prefix = "indexes" + getFastqSample().getRundataPrefix()
+          + ".lane" + getFastqSample().getLane();
+      getResults().put(prefix + ".records", this.records);
+      for (Map.Entry<String, Integer> e : this.counts.entrySet()) {
+        getResults().put(prefix + ".index." + e.getKey(), e.getValue());
+      }
+    }
+
+    @Override
+    protected void logThreadStart() {
+    }
+
+    @Override
+    protected void logThreadEnd(final String duration) {
+    }
+
+    IndexCountThread(final FastqSample fastqSample, final int maxRecords,
+        final boolean fail) throws AozanException {
+
+      super(fastqSample);
+      this.maxRecords = maxRecords;
+      this.fail = fail;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException, AozanException {
+
+    this.samplesheet = new SampleSheetCSVReader(
+        this.getClass().getClassLoader().getResourceAsStream(
+            "samplesheets/design_version_bcl2fastq2_sorted.csv")).read();
+    this.fastqDir = this.tmp.newFolder("fastq");
+
+    // Paired-end FASTQ files of the samples and of the undetermined reads of
+    // the lane 1
+    final Random random = new Random(0);
+    for (FastqSample fs : createSamples(this.tmp.newFolder("init"))) {
+
+      final File dir = fs.getFastqSampleParentDir();
+      if (!dir.isDirectory()) {
+        assertTrue(dir.mkdirs());
+      }
+
+      writeFastq(new File(dir, fs.getFilenamePrefix() + ".fastq.gz"),
+          fs.getRead(), random);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testFusedScan() throws AozanException, IOException {
+
+    final List<FastqSample> separateSamples =
+        createSamples(this.tmp.newFolder("separate"));
+    final List<FastqSample> fusedSamples =
+        createSamples(this.tmp.newFolder("fused"));
+
+    final RunData separate = new RunData();
+    for (TestCollector collector : createCollectors(Kind.SEQUENCES,
+        Kind.INDEXES, Kind.SUBSET)) {
+      collect(collector, separateSamples, null, separate);
+    }
+
+    final RunData fused = new RunData();
+    final List<TestCollector> collectors =
+        createCollectors(Kind.SEQUENCES, Kind.INDEXES, Kind.SUBSET);
+    final FastqScanStage stage = new FastqScanStage();
+    for (TestCollector collector : collectors) {
+      stage.register(collector);
+    }
+    for (TestCollector collector : collectors) {
+      collect(collector, fusedSamples, stage, fused);
+    }
+
+    assertTrue(separate.contains(
+        "indexes.sample0.read1.lane1.index." + INDEXES[0]));
+    assertTrue(separate.contains("sequences.sample2.read2.lane1.reads"));
+    assertEquals(separate.getMap(), fused.getMap());
+
+    // The samples have been scanned for the other collectors by the first one
+    assertEquals(0, collectors.get(0).scanThreadCount);
+    assertEquals(1, collectors.get(1).scanThreadCount);
+    assertEquals(2, collectors.get(2).scanThreadCount);
+
+    // The subset FASTQ files of the read 1 of the standard samples
+    int subsetFiles = 0;
+    for (int i = 0; i < separateSamples.size(); i++) {
+
+      final File separateFile = separateSamples.get(i).getSubsetFastqFile();
+      final File fusedFile = fusedSamples.get(i).getSubsetFastqFile();
+
+      assertEquals(separateFile.exists(), fusedFile.exists());
+      if (separateFile.exists()) {
+        assertArrayEquals(Files.toByteArray(separateFile),
+            Files.toByteArray(fusedFile));
+        subsetFiles++;
+      }
+    }
+    assertEquals(2, subsetFiles);
+
+    stage.clear();
+  }
+
+  @Test(timeout = 60000)
+  public void testConsumerError() throws AozanException, IOException {
+
+    final List<FastqSample> samples =
+        createSamples(this.tmp.newFolder("fused"));
+    final FastqSample sample = samples.get(0);
+
+    final List<TestCollector> collectors =
+        createCollectors(Kind.SEQUENCES, Kind.FAILING);
+    final FastqScanStage stage = new FastqScanStage();
+    for (TestCollector collector : collectors) {
+      stage.register(collector);
+    }
+
+    // The error of the other collector fails the scan of the first collector
+    final AbstractFastqProcessThread thread =
+        newThread(collectors.get(0), sample, stage);
+    thread.run();
+
+    assertFalse(thread.isSuccess());
+    assertTrue(thread.getException() instanceof AozanException);
+    assertEquals("Invalid record", thread.getException().getMessage());
+
+    // The sample is scanned again for the failing collector
+    final AbstractFastqProcessThread failingThread =
+        newThread(collectors.get(1), sample, stage);
+    failingThread.run();
+    assertTrue(failingThread.isSuccess());
+    assertEquals(READ_COUNT, failingThread.getResults()
+        .getInt("indexes.sample0.read1.lane1.records"));
+
+    // The result of the first collector has been computed by this scan
+    final AbstractFastqProcessThread thread2 =
+        newThread(collectors.get(0), sample, stage);
+    thread2.run();
+    assertTrue(thread2.isSuccess());
+    assertEquals(READ_COUNT, thread2.getResults()
+        .getInt("sequences.sample0.read1.lane1.reads"));
+
+    stage.clear();
+  }
+
+  @Test(timeout = 60000)
+  public void testScannerError() throws AozanException, IOException {
+
+    final FastqSample sample =
+        createSamples(this.tmp.newFolder("scanner")).get(1);
+
+    final IndexCountThread consumer1 =
+        new IndexCountThread(sample, Integer.MAX_VALUE, false);
+    final IndexCountThread consumer2 =
+        new IndexCountThread(sample, Integer.MAX_VALUE, true);
+
+    final FastqScanner scanner = new FastqScanner(sample, 2);
+    scanner.addConsumer(consumer1);
+    scanner.addConsumer(consumer2);
+
+    try {
+      scanner.scan();
+      assertTrue("The scan must fail", false);
+    } catch (AozanException e) {
+      assertEquals("Invalid record", e.getMessage());
+    }
+
+    // The reading has stopped on the error
+    assertEquals(101, consumer1.records);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static List<TestCollector> createCollectors(final Kind... kinds) {
+
+    final List<TestCollector> result = new ArrayList<>();
+    for (Kind kind : kinds) {
+      result.add(new TestCollector(kind));
+    }
+
+    return result;
+  }
+
+  /**
+   * Process the samples with a collector, as AbstractFastqCollector.collect()
+   * does with one thread.
+   */
+  private static void collect(final TestCollector collector,
+      final List<FastqSample> samples, final FastqScanStage stage,
+      final RunData data) throws AozanException {
+
+    for (FastqSample fs : samples) {
+
+      final AbstractFastqProcessThread thread = newThread(collector, fs, stage);
+
+      if (thread == null) {
+        continue;
+      }
+
+      thread.run();
+
+      if (!thread.isSuccess()) {
+        throw new AozanException(thread.getException());
+      }
+
+      data.put(thread.getResults());
+    }
+  }
+
+  private static AbstractFastqProcessThread newThread(
+      final TestCollector collector, final FastqSample fs,
+      final FastqScanStage stage) throws AozanException {
+
+    final AbstractFastqProcessThread thread =
+        collector.collectSample(new RunData(), fs, null, true);
+
+    if (thread != null) {
+      thread.setDecompressionThreads(2);
+      if (stage != null) {
+        thread.setScanRequester(
+            stage.newRequester(collector, new RunData(), true));
+      }
+    }
+
+    return thread;
+  }
+
+  /**
+   * Create the samples of the lane 1: the undetermined reads and the first
+   * two samples of the samplesheet, with two reads.
+   */
+  private List<FastqSample> createSamples(final File tmpDir)
+      throws IOException {
+
+    final Bcl2FastqOutput bcl2FastqOutput = new Bcl2FastqOutput(
+        this.samplesheet, this.fastqDir, Bcl2FastqVersion.BCL2FASTQ_2, null,
+        false);
+
+    final List<FastqSample> result = new ArrayList<>();
+
+    for (int read = 1; read <= 2; read++) {
+
+      result.add(new FastqSample(bcl2FastqOutput, tmpDir, "runid", 0, read, 1,
+          null, "lane1", "", "", null, true, false));
+
+      int sampleId = 1;
+      for (Sample sample : this.samplesheet) {
+        if (sample.getLane() == 1 && sampleId <= 2) {
+          result.add(new FastqSample(bcl2FastqOutput, tmpDir, "runid",
+              sampleId++, read, sample));
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static void writeFastq(final File file, final int read,
+      final Random random) throws IOException {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < READ_COUNT; i++) {
+
+      final boolean filtered = random.nextInt(10) == 0;
+      final String index = INDEXES[random.nextInt(INDEXES.length)];
+
+      sb.append("@M00001:1:FC:1:1101:").append(1000 + i).append(':')
+          .append(random.nextInt(30000)).append(' ').append(read)
+          .append(filtered ? ":Y:" : ":N:").append("0:").append(index)
+          .append('\n');
+      for (int j = 0; j < 50; j++) {
+        sb.append("ACGTN".charAt(random.nextInt(5)));
+      }
+      sb.append("\n+\n");
+      for (int j = 0; j < 50; j++) {
+        sb.append((char) ('#' + random.nextInt(40)));
+      }
+      sb.append('\n');
+    }
+
+    try (OutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+      os.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+}
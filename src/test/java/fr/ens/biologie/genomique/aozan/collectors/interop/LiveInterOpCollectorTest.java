@@ -0,0 +1,169 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+
+public class LiveInterOpCollectorTest {
+
+  private static final String ERROR_METRICS_FILE = "ErrorMetricsOut.bin";
+  private static final int ERROR_METRICS_RECORD_SIZE = 30;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File sourceDir;
+  private File runDir;
+  private File interOpDir;
+  private byte[] errorMetrics;
+
+  @Before
+  public void setUp() throws IOException {
+
+    this.sourceDir = new File(new File(".").getAbsolutePath()
+        + "/src/test/java/files/InterOp_PE100").getAbsoluteFile();
+    this.runDir = this.tmp.getRoot();
+    this.interOpDir = new File(this.runDir, "InterOp");
+    assertTrue(this.interOpDir.mkdir());
+
+    Files.copy(new File(this.sourceDir, "RunInfo.xml"),
+        new File(this.runDir, "RunInfo.xml"));
+    Files.copy(new File(this.sourceDir, "runParameters.xml"),
+        new File(this.runDir, "runParameters.xml"));
+
+    for (String filename : Arrays.asList("TileMetricsOut.bin",
+        "ExtractionMetricsOut.bin")) {
+      Files.copy(new File(this.sourceDir, "InterOp/" + filename),
+          new File(this.interOpDir, filename));
+    }
+
+    this.errorMetrics = Files
+        .toByteArray(new File(this.sourceDir, "InterOp/" + ERROR_METRICS_FILE));
+  }
+
+  @Test
+  public void testAppendedRecords() throws AozanException, IOException {
+
+    // The last record of the file is not fully written
+    final int partialLength = this.errorMetrics.length / 3 + 7;
+    writeErrorMetrics(0, partialLength, false);
+
+    final LiveInterOpCollector collector = newCollector();
+    final RunData partial = collector.collect();
+
+    assertTrue(partial.contains("reads.read1.lane1.clusters.pf"));
+
+    writeErrorMetrics(partialLength, this.errorMetrics.length, true);
+    final RunData complete = collector.collect();
+
+    assertNotEquals(partial.getMap(), complete.getMap());
+    assertEquals(newCollector().collect().getMap(), complete.getMap());
+
+    // Nothing has been appended since the previous call
+    assertEquals(complete.getMap(), collector.collect().getMap());
+  }
+
+  @Test
+  public void testRewrittenFile() throws AozanException, IOException {
+
+    writeErrorMetrics(0, this.errorMetrics.length, false);
+
+    final LiveInterOpCollector collector = newCollector();
+    collector.collect();
+
+    // RTA rewrite the file with less records
+    writeErrorMetrics(0, this.errorMetrics.length / 2, false);
+
+    assertEquals(newCollector().collect().getMap(),
+        collector.collect().getMap());
+  }
+
+  @Test
+  public void testRewrittenFileWithSameSize()
+      throws AozanException, IOException {
+
+    writeErrorMetrics(0, this.errorMetrics.length, false);
+
+    final LiveInterOpCollector collector = newCollector();
+    final RunData original = collector.collect();
+
+    // RTA rewrite the file with other values in the last record
+    final ByteBuffer buf = ByteBuffer.wrap(this.errorMetrics);
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+    buf.putFloat(this.errorMetrics.length - ERROR_METRICS_RECORD_SIZE + 6,
+        50.0f);
+    writeErrorMetrics(0, this.errorMetrics.length, false);
+
+    final RunData rewritten = collector.collect();
+
+    assertNotEquals(original.getMap(), rewritten.getMap());
+    assertEquals(newCollector().collect().getMap(), rewritten.getMap());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private LiveInterOpCollector newCollector() {
+
+    final Map<String, String> props = new HashMap<>();
+    props.put("qc.conf.cluster.density.ratio", "0.3472222");
+    props.put("rta.output.dir", this.runDir.getAbsolutePath());
+
+    return new LiveInterOpCollector(null, new CollectorConfiguration(props));
+  }
+
+  private void writeErrorMetrics(final int from, final int to,
+      final boolean append) throws IOException {
+
+    try (OutputStream os = new FileOutputStream(
+        new File(this.interOpDir, ERROR_METRICS_FILE), append)) {
+      os.write(this.errorMetrics, from, to - from);
+    }
+  }
+
+}
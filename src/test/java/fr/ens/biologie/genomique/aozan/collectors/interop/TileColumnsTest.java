@@ -0,0 +1,111 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileColumns.DoubleColumn;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileColumns.LongColumn;
+import fr.ens.biologie.genomique.aozan.util.StatisticsAccumulator;
+import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+
+public class TileColumnsTest {
+
+  @Test
+  public void testTileIndexes() {
+
+    // Less tiles expected than used
+    final TileColumns tiles = new TileColumns(2);
+
+    assertEquals(0, tiles.getTileIndex(2101));
+    assertEquals(1, tiles.getTileIndex(1101));
+    assertEquals(2, tiles.getTileIndex(11204));
+    assertEquals(0, tiles.getTileIndex(2101));
+    assertEquals(3, tiles.getTileCount());
+
+    assertArrayEquals(new int[] {1, 0, 2}, tiles.getSortedIndexes());
+  }
+
+  @Test
+  public void testColumns() {
+
+    final TileColumns tiles = new TileColumns(10);
+    final DoubleColumn values = tiles.newDoubleColumn();
+    final LongColumn counts = tiles.newLongColumn();
+
+    assertTrue(values.isEmpty());
+
+    values.set(tiles.getTileIndex(1102), 3.0);
+    values.add(tiles.getTileIndex(1101), 1.0);
+    values.add(tiles.getTileIndex(1101), 1.5);
+    values.set(tiles.getTileIndex(1103), Double.POSITIVE_INFINITY);
+    counts.add(tiles.getTileIndex(1101), 2);
+    tiles.getTileIndex(1104);
+
+    assertFalse(values.isEmpty());
+    assertFalse(values.isDefined(tiles.getTileIndex(1104)));
+    assertEquals(0L, counts.get(tiles.getTileIndex(1102)));
+    assertEquals(2L, counts.get(tiles.getTileIndex(1101)));
+
+    // Without the infinite values
+    final StatisticsAccumulator stats = values.statistics();
+    assertEquals(2, stats.getN());
+    assertEquals(5.5, stats.getSum(), 0.0);
+    assertEquals(2.5, stats.getMin(), 0.0);
+    assertEquals(3.0, stats.getMax(), 0.0);
+  }
+
+  @Test
+  public void testStatistics() {
+
+    final Random random = new Random(17);
+    final TileColumns tiles = new TileColumns(1000);
+    final DoubleColumn values = tiles.newDoubleColumn();
+    final StatisticsUtils stat = new StatisticsUtils();
+
+    assertTrue(Double.isNaN(values.statistics().getMean()));
+    assertTrue(Double.isNaN(values.statistics().getStandardDeviation()));
+
+    values.set(tiles.getTileIndex(1), 4.0);
+    assertEquals(0.0, values.statistics().getStandardDeviation(), 0.0);
+
+    for (int i = 1; i <= 1000; i++) {
+      final double value = random.nextDouble() * 1000.0;
+      values.set(tiles.getTileIndex(i), value);
+      stat.addValues(value);
+    }
+
+    assertEquals(stat.getMean(), values.statistics().getMean(), 0.0);
+    assertEquals(stat.getStandardDeviation(),
+        values.statistics().getStandardDeviation(), 0.0);
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BadTilesTest {
+
+  @Test
+  public void testParseTileId() {
+
+    // Casava 1.8 ids
+    assertEquals(11101,
+        BadTiles.parseTileId("@M00000:1:000000000-A1B2C:1:1101:15589:1331"));
+    assertEquals(22316, BadTiles.parseTileId(
+        "@NB500000:12:HXXXXBGXY:2:2316:1024:20112 1:N:0:ATCACG"));
+    assertEquals(42101, BadTiles.parseTileId(
+        "@A00000:8:HXXXXDSXX:4:2101:1000:1000:ACGTACGT 2:Y:0:1"));
+
+    // Old Illumina ids
+    assertEquals(60073,
+        BadTiles.parseTileId("@HWUSI-EAS100R:6:73:941:1973#0/1"));
+    assertEquals(10005, BadTiles.parseTileId("@EAS100R:1:5:10:20"));
+
+    // Not Illumina ids
+    assertEquals(-1, BadTiles.parseTileId("@read1"));
+    assertEquals(-1, BadTiles.parseTileId("@"));
+    assertEquals(-1, BadTiles.parseTileId("@a:b:c:d:e:f:g"));
+    assertEquals(-1, BadTiles.parseTileId("@a:b:c::1101:1:2"));
+    assertEquals(-1, BadTiles.parseTileId("@a:b:c:1:2:3:4:5:6"));
+  }
+
+}
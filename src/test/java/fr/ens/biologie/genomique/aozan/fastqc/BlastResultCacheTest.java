@@ -0,0 +1,252 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlastResultCacheTest {
+
+  private static final String BLAST_IDENTITY = "blastn -db nt";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testEscape() {
+
+    final String s = "a\tb\nc\rd\\e\\tf";
+
+    assertEquals("a\\tb\\nc\\rd\\\\e\\\\tf", BlastResultCache.escape(s));
+    assertEquals(s, BlastResultCache.unescape(BlastResultCache.escape(s)));
+    assertEquals("ACGT", BlastResultCache.escape("ACGT"));
+    assertEquals("ACGT", BlastResultCache.unescape("ACGT"));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+
+    final File cacheDir = this.tmp.getRoot();
+
+    final BlastResultHit hit = newHit("ACGTACGT",
+        "Homo sapiens\tchromosome 1\nclone \\ A1");
+    final Map<String, BlastResultHit> results = new LinkedHashMap<>();
+    results.put("ACGTACGT", hit);
+    results.put("TTTTTTTT", null);
+
+    final BlastResultCache cache =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 10);
+    cache.putAll(results);
+    cache.save();
+
+    // One line for each entry
+    final File[] files = cacheDir.listFiles(new FilenameFilter() {
+
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.endsWith(".txt");
+      }
+    });
+    assertEquals(1, files.length);
+    assertEquals(2, Files
+        .readAllLines(files[0].toPath(), StandardCharsets.UTF_8).size());
+
+    final BlastResultCache cache2 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 10);
+    final Map<String, BlastResultHit> loaded = new HashMap<>();
+
+    assertTrue(cache2.get("ACGTACGT", loaded));
+    assertTrue(cache2.get("TTTTTTTT", loaded));
+    assertFalse(cache2.get("GGGGGGGG", loaded));
+
+    assertEquals(hit.toCacheString(), loaded.get("ACGTACGT").toCacheString());
+    assertTrue(loaded.containsKey("TTTTTTTT"));
+    assertNull(loaded.get("TTTTTTTT"));
+
+    // Another Blast database use another cache file
+    assertFalse(
+        new BlastResultCache(cacheDir, BLAST_IDENTITY + " -evalue 1", 10)
+            .contains("ACGTACGT"));
+  }
+
+  @Test
+  public void testLRUEviction() throws IOException {
+
+    final File cacheDir = this.tmp.getRoot();
+
+    final BlastResultCache cache =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 3);
+    cache.putAll(newResults("A", "B", "C"));
+
+    // Use A, B is now the least recently used entry
+    assertTrue(cache.get("A", new HashMap<String, BlastResultHit>()));
+    cache.putAll(newResults("D"));
+
+    assertTrue(cache.contains("A"));
+    assertFalse(cache.contains("B"));
+    assertTrue(cache.contains("C"));
+    assertTrue(cache.contains("D"));
+
+    cache.save();
+
+    final BlastResultCache cache2 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 3);
+    assertTrue(cache2.contains("A"));
+    assertFalse(cache2.contains("B"));
+    assertTrue(cache2.contains("C"));
+    assertTrue(cache2.contains("D"));
+
+    // The recently used entries of another instance are kept when saving
+    final BlastResultCache cache3 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 3);
+    assertTrue(cache3.get("C", new HashMap<String, BlastResultHit>()));
+    cache3.putAll(newResults("E", "F"));
+    cache3.save();
+
+    final BlastResultCache cache4 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 3);
+    assertFalse(cache4.contains("A"));
+    assertTrue(cache4.contains("C"));
+    assertFalse(cache4.contains("D"));
+    assertTrue(cache4.contains("E"));
+    assertTrue(cache4.contains("F"));
+  }
+
+  @Test
+  public void testMergeOnSave() throws IOException {
+
+    final File cacheDir = this.tmp.getRoot();
+
+    // Two instances load the same empty cache
+    final BlastResultCache cache1 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 10);
+    final BlastResultCache cache2 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 10);
+
+    cache1.putAll(newResults("A", "B"));
+    cache1.save();
+    cache2.putAll(newResults("C"));
+    cache2.save();
+
+    final BlastResultCache cache3 =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 10);
+    assertTrue(cache3.contains("A"));
+    assertTrue(cache3.contains("B"));
+    assertTrue(cache3.contains("C"));
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentSaveInProcesses()
+      throws IOException, InterruptedException {
+
+    final File cacheDir = this.tmp.getRoot();
+    final int processCount = 3;
+    final int entryCount = 20;
+
+    final String java = new File(new File(System.getProperty("java.home"),
+        "bin"), "java").getAbsolutePath();
+
+    final List<Process> processes = new ArrayList<>();
+    for (int i = 0; i < processCount; i++) {
+      processes.add(new ProcessBuilder(java, "-cp",
+          System.getProperty("java.class.path"),
+          BlastResultCacheTest.class.getName(), cacheDir.getAbsolutePath(),
+          "P" + i + "-", "" + entryCount).inheritIO().start());
+    }
+
+    for (final Process p : processes) {
+      assertEquals(0, p.waitFor());
+    }
+
+    // All the entries saved by the processes are in the cache file
+    final BlastResultCache cache =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 1000);
+    for (int i = 0; i < processCount; i++) {
+      for (int j = 0; j < entryCount; j++) {
+        assertTrue(cache.contains("P" + i + "-" + j));
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static BlastResultHit newHit(final String sequence,
+      final String result) {
+
+    return new BlastResultHit(1, result, "1e-20", 50, 50, 3, 50, sequence,
+        false);
+  }
+
+  private static Map<String, BlastResultHit> newResults(
+      final String... sequences) {
+
+    final Map<String, BlastResultHit> result = new LinkedHashMap<>();
+    for (final String sequence : sequences) {
+      result.put(sequence, newHit(sequence, "hit of " + sequence));
+    }
+
+    return result;
+  }
+
+  /**
+   * Add entries to a cache and save the cache after each entry. This method is
+   * launched in other processes by testConcurrentSaveInProcesses().
+   * @param args the cache directory, the prefix of the sequences and the
+   *          number of entries to add
+   * @throws IOException if an error occurs while saving the cache
+   */
+  public static void main(final String[] args) throws IOException {
+
+    final File cacheDir = new File(args[0]);
+    final int count = Integer.parseInt(args[2]);
+
+    final BlastResultCache cache =
+        new BlastResultCache(cacheDir, BLAST_IDENTITY, 1000);
+
+    for (int i = 0; i < count; i++) {
+      cache.putAll(newResults(args[1] + i));
+      cache.save();
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
+
+public class GenomeDescriptionBuilderTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testBuild() throws Exception {
+
+    final StringBuilder sb = new StringBuilder();
+    final Random random = new Random(0);
+    final int[] lengths = {0, 1, 59, 60, 61, 1000, 12345, 7};
+
+    for (int i = 0; i < lengths.length; i++) {
+
+      sb.append(">chr").append(i).append(" description of chr").append(i)
+          .append('\n');
+
+      for (int j = 0; j < lengths[i]; j++) {
+        sb.append("ACGTN".charAt(random.nextInt(5)));
+        if (j % 60 == 59) {
+          sb.append(i % 2 == 0 ? "\n" : " \r\n");
+        }
+      }
+      sb.append('\n');
+    }
+
+    // Empty lines, indented lines and whitespaces inside a line
+    sb.append("\n  >chrX  description of chrX \n\n\tAC GT\t\n AC\n\n");
+
+    final File file = write("genome.fasta", sb.toString());
+    assertTrue(GenomeDescriptionBuilder.isSupported(file));
+
+    final GenomeDescription desc1 =
+        new GenomeDescriptionBuilder(1).build(file, "genome.fasta");
+
+    for (int i = 0; i < lengths.length; i++) {
+      assertEquals(lengths[i], desc1.getSequenceLength("chr" + i));
+    }
+    assertEquals(7, desc1.getSequenceLength("chrX"));
+
+    // The result is the same as the result of Eoulsan
+    try (InputStream is = new FileInputStream(file)) {
+
+      final GenomeDescription desc =
+          GenomeDescription.createGenomeDescFromFasta(is, "genome.fasta");
+
+      assertEquals(desc.getMD5Sum(), desc1.getMD5Sum());
+      assertEquals(desc.getSequenceLength("chrX"),
+          desc1.getSequenceLength("chrX"));
+    }
+
+    // The result does not depend of the number of threads
+    for (int threads = 2; threads <= 8; threads++) {
+
+      final GenomeDescription desc2 =
+          new GenomeDescriptionBuilder(threads).build(file, "genome.fasta");
+
+      assertEquals(desc1.getMD5Sum(), desc2.getMD5Sum());
+      for (int i = 0; i < lengths.length; i++) {
+        assertEquals(lengths[i], desc2.getSequenceLength("chr" + i));
+      }
+    }
+
+    // The checksum depends of the sequences
+    final File other =
+        write("other.fasta", sb.toString().replaceFirst("A", "C"));
+    assertNotEquals(desc1.getMD5Sum(),
+        new GenomeDescriptionBuilder(4).build(other, "other.fasta")
+            .getMD5Sum());
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+
+    assertFalse(GenomeDescriptionBuilder.isSupported(null));
+    assertFalse(GenomeDescriptionBuilder.isSupported(write("empty.fa", "")));
+    assertFalse(
+        GenomeDescriptionBuilder.isSupported(write("seq.fa", "ACGT\n")));
+
+    final File file =
+        write("invalid.fa", ">chr1\nACGT\n>chr2\nAC\u00e9GT\n");
+
+    try {
+      new GenomeDescriptionBuilder(2).build(file, "invalid.fa");
+      fail();
+    } catch (final IOException e) {
+      assertTrue(e.getMessage().contains("chr2"));
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private File write(final String filename, final String content)
+      throws IOException {
+
+    final File result = new File(this.tmp.getRoot(), filename);
+    Files.write(content.getBytes(StandardCharsets.UTF_8), result);
+
+    return result;
+  }
+
+}
@@ -0,0 +1,212 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+public class MapperIndexCacheTest {
+
+  private static final String MANIFEST = ".aozan-index-manifest";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File tmpDir;
+  private File cacheDir;
+
+  @Before
+  public void setUp() {
+
+    this.tmpDir = this.tmp.getRoot();
+    this.cacheDir = new File(this.tmpDir, "cache");
+  }
+
+  @Test
+  public void testExtraction() throws IOException {
+
+    final File archive = createArchive("phix", 1000);
+    final MapperIndexCache cache =
+        new MapperIndexCache(this.cacheDir, 0, false);
+
+    final File dir;
+    try (MapperIndexCache.Index index =
+        cache.acquire("bowtie", "phix", archive)) {
+
+      dir = index.getDirectory();
+      assertEquals(new File(this.cacheDir, "bowtie-phix"), dir);
+      assertArrayEquals(content(1000),
+          Files.toByteArray(new File(dir, "phix.1.ebwt")));
+      assertTrue(new File(dir, "sub/phix.2.ebwt").isFile());
+    }
+
+    // The index is not extracted again
+    final File marker = new File(dir, "marker");
+    assertTrue(marker.createNewFile());
+    try (MapperIndexCache.Index index =
+        cache.acquire("bowtie", "phix", archive)) {
+      assertTrue(marker.exists());
+    }
+
+    // The index is extracted again when the archive changes
+    createArchive("phix", 2000);
+    assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+    try (MapperIndexCache.Index index =
+        cache.acquire("bowtie", "phix", archive)) {
+      assertFalse(marker.exists());
+      assertEquals(2000, new File(dir, "phix.1.ebwt").length());
+    }
+
+    // The index is extracted again when a file is truncated
+    Files.write(new byte[10], new File(dir, "phix.1.ebwt"));
+    try (MapperIndexCache.Index index =
+        cache.acquire("bowtie", "phix", archive)) {
+      assertEquals(2000, new File(dir, "phix.1.ebwt").length());
+    }
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+
+    final File archive1 = createArchive("genome1", 1000);
+    final File archive2 = createArchive("genome2", 1000);
+    final File archive3 = createArchive("genome3", 1000);
+
+    // The cache can only contain two indexes
+    final MapperIndexCache cache =
+        new MapperIndexCache(this.cacheDir, 2500, false);
+
+    cache.acquire("bowtie", "genome1", archive1).close();
+
+    // The index in use is not removed
+    try (MapperIndexCache.Index index2 =
+        cache.acquire("bowtie", "genome2", archive2)) {
+
+      // The genome 1 is the least recently used index
+      assertTrue(new File(this.cacheDir, "bowtie-genome1/" + MANIFEST)
+          .setLastModified(System.currentTimeMillis() - 100000));
+
+      try (MapperIndexCache.Index index3 =
+          cache.acquire("bowtie", "genome3", archive3)) {
+
+        assertFalse(new File(this.cacheDir, "bowtie-genome1").exists());
+        assertTrue(index2.getDirectory().exists());
+        assertTrue(index3.getDirectory().exists());
+      }
+    }
+  }
+
+  @Test
+  public void testPrefault() throws IOException {
+
+    final File archive = createArchive("phix", 1000);
+    final MapperIndexCache cache =
+        new MapperIndexCache(this.cacheDir, 0, true);
+
+    final File file;
+    try (MapperIndexCache.Index index =
+        cache.acquire("bowtie", "phix", archive)) {
+      file = new File(index.getDirectory(), "phix.1.ebwt");
+    }
+
+    // A corrupted file with the right size is detected while prefaulting in
+    // another process
+    Files.write(new byte[1000], file);
+    final MapperIndexCache otherProcess =
+        new MapperIndexCache(this.cacheDir, 0, true);
+    try (MapperIndexCache.Index index =
+        otherProcess.acquire("bowtie", "phix", archive)) {
+      assertArrayEquals(content(1000), Files.toByteArray(file));
+    }
+  }
+
+  @Test
+  public void testDisabledCache() throws IOException {
+
+    final MapperIndexCache cache = new MapperIndexCache(null, 0, false);
+    final File archive = new File(this.tmpDir, "aozan-bowtie-index-phix.zip");
+
+    try (MapperIndexCache.Index index =
+        cache.acquire("bowtie", "phix", archive)) {
+      assertEquals(new File(this.tmpDir, "aozan-bowtie-index-phix"),
+          index.getDirectory());
+    }
+
+    assertFalse(this.cacheDir.exists());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private File createArchive(final String genome, final int size)
+      throws IOException {
+
+    final File result = new File(this.tmpDir, genome + ".zip");
+
+    try (ZipOutputStream zos =
+        new ZipOutputStream(new FileOutputStream(result))) {
+
+      zos.putNextEntry(new ZipEntry(genome + ".1.ebwt"));
+      zos.write(content(size));
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry("sub/"));
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry("sub/" + genome + ".2.ebwt"));
+      zos.write(genome.getBytes(StandardCharsets.UTF_8));
+      zos.closeEntry();
+    }
+
+    return result;
+  }
+
+  private static byte[] content(final int size) {
+
+    final byte[] result = new byte[size];
+    Arrays.fill(result, (byte) 'A');
+    result[size / 2] = 'C';
+
+    return result;
+  }
+
+}
@@ -0,0 +1,170 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Settings;
+
+public class FastqRecompressorTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File tmpDir;
+  private File inputFile;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws IOException {
+
+    this.tmpDir = this.tmp.getRoot();
+    this.inputFile = new File(this.tmpDir, "sample_S1_L001_R1_001.fastq.gz");
+    this.content = createFastq(20000);
+
+    try (OutputStream os =
+        new GZIPOutputStream(new FileOutputStream(this.inputFile))) {
+      os.write(this.content);
+    }
+
+    assertTrue(this.inputFile.setLastModified(1500000000000L));
+  }
+
+  @Test
+  public void testBZip2() throws AozanException, IOException {
+
+    final FastqRecompressor recompressor =
+        new FastqRecompressor(createSettings("bzip2", false));
+    final File outputFile = recompressor.getOutputFile(this.inputFile);
+
+    assertEquals(new File(this.tmpDir, "sample_S1_L001_R1_001.fastq.bz2"),
+        outputFile);
+
+    recompressor.recompress(this.inputFile);
+
+    assertArrayEquals(this.content, uncompress(outputFile));
+    assertEquals(this.inputFile.lastModified(), outputFile.lastModified());
+    assertTrue(this.inputFile.exists());
+    assertFalse(new File(outputFile.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void testGzip() throws AozanException, IOException {
+
+    final FastqRecompressor recompressor =
+        new FastqRecompressor(createSettings("gzip", true));
+    final File outputFile = new File(this.tmpDir, "output.fastq.gz");
+
+    recompressor.recompress(this.inputFile, outputFile);
+
+    assertArrayEquals(this.content, uncompress(outputFile));
+    assertFalse(this.inputFile.exists());
+  }
+
+  @Test
+  public void testThreadCount() throws AozanException {
+
+    // The number of threads is not shared between the recompressors
+    final FastqRecompressor recompressor =
+        new FastqRecompressor(createSettings("bzip2", false));
+    new FastqRecompressor(new Settings(
+        Collections.singletonMap(Settings.RECOMPRESS_THREADS_KEY, "5")));
+
+    assertEquals(2, recompressor.getThreadCount());
+  }
+
+  @Test(expected = AozanException.class)
+  public void testInvalidSettings() throws AozanException {
+
+    new FastqRecompressor(createSettings("xz", false));
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static Settings createSettings(final String compression,
+      final boolean deleteInput) {
+
+    final Map<String, String> map = new HashMap<>();
+    map.put(Settings.RECOMPRESS_COMPRESSION_KEY, compression);
+    map.put(Settings.RECOMPRESS_COMPRESSION_LEVEL_KEY, "1");
+    map.put(Settings.RECOMPRESS_THREADS_KEY, "2");
+    map.put(Settings.RECOMPRESS_DELETE_ORIGINAL_FASTQ_KEY, "" + deleteInput);
+
+    return new Settings(map);
+  }
+
+  private static byte[] uncompress(final File file) throws IOException {
+
+    try (InputStream is = ParallelDecompression.createInputStream(file)) {
+      return ByteStreams.toByteArray(is);
+    }
+  }
+
+  private static byte[] createFastq(final int count) {
+
+    final Random random = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+
+      sb.append("@read").append(i).append('\n');
+      for (int j = 0; j < 100; j++) {
+        sb.append("ACGT".charAt(random.nextInt(4)));
+      }
+      sb.append("\n+\n");
+      for (int j = 0; j < 100; j++) {
+        sb.append((char) ('#' + random.nextInt(40)));
+      }
+      sb.append('\n');
+    }
+
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+}
@@ -0,0 +1,385 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
+
+public class ParallelDecompressionTest {
+
+  private static final int[] THREADS = {1, 2, 4};
+
+  /**
+   * This class define a stream whose blocks are the chunks of an array split
+   * at some positions. Only some of the positions are real boundaries, the
+   * uncompression of a chunk that does not end at a real boundary fails.
+   */
+  private static final class ChunkInputStream
+      extends AbstractParallelBlockInputStream {
+
+    private final byte[] data;
+    private final int[] cuts;
+    private final Set<Integer> boundaries;
+    private int index;
+
+    private final class ChunkTask implements Callable<byte[]> {
+
+      private final int start;
+      private final int end;
+
+      @Override
+      public byte[] call() throws IOException {
+
+        if (!boundaries.contains(this.end)) {
+          throw new IOException("Invalid block end: " + this.end);
+        }
+
+        return Arrays.copyOfRange(data, this.start, this.end);
+      }
+
+      ChunkTask(final int start, final int end) {
+        this.start = start;
+        this.end = end;
+      }
+    }
+
+    @Override
+    protected Callable<byte[]> nextBlock() {
+
+      if (this.index == this.cuts.length) {
+        return null;
+      }
+
+      final int start = this.index == 0 ? 0 : this.cuts[this.index - 1];
+      return new ChunkTask(start, this.cuts[this.index++]);
+    }
+
+    @Override
+    protected Callable<byte[]> mergeBlocks(final Callable<byte[]> task,
+        final Callable<byte[]> next) {
+
+      return new ChunkTask(((ChunkTask) task).start, ((ChunkTask) next).end);
+    }
+
+    @Override
+    protected void closeInput() {
+    }
+
+    ChunkInputStream(final byte[] data, final int[] cuts,
+        final Set<Integer> boundaries, final int threads) {
+
+      super(threads);
+      this.data = data;
+      this.cuts = cuts;
+      this.boundaries = boundaries;
+    }
+  }
+
+  @Test
+  public void testBZip2MultipleBlocks() throws IOException {
+
+    // Blocks of 100 kB
+    final byte[] content = createFastq(5000);
+    final byte[] compressed = bzip2(content, 1);
+
+    for (int threads : THREADS) {
+      assertArrayEquals(content,
+          uncompress(CompressionType.BZIP2, compressed, threads));
+    }
+
+    assertArrayEquals(content, ByteStreams.toByteArray(
+        new BZip2ParallelInputStream(new ByteArrayInputStream(compressed), 3)));
+  }
+
+  @Test
+  public void testBZip2FalseBlockMagic() throws IOException {
+
+    // The block and end of stream magic numbers shifted by all the possible
+    // bits, inside the uncompressed data and around the block boundaries
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final Random random = new Random(1);
+
+    for (int i = 0; i < 2000; i++) {
+
+      for (long magic : new long[] {0x314159265359L, 0x177245385090L}) {
+        final long shifted = magic << random.nextInt(8);
+        for (int j = 6; j >= 0; j--) {
+          baos.write((int) (shifted >>> (j * 8)));
+        }
+      }
+
+      final byte[] noise = new byte[random.nextInt(200)];
+      random.nextBytes(noise);
+      baos.write(noise);
+    }
+
+    final byte[] content = baos.toByteArray();
+    final byte[] compressed = bzip2(content, 1);
+
+    for (int threads : THREADS) {
+      assertArrayEquals(content,
+          uncompress(CompressionType.BZIP2, compressed, threads));
+    }
+  }
+
+  @Test
+  public void testBZip2ConcatenatedStreams() throws IOException {
+
+    final byte[] content1 = createFastq(3000);
+    final byte[] content2 = new byte[0];
+    final byte[] content3 = createFastq(100);
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    compressed.write(bzip2(content1, 1));
+    compressed.write(bzip2(content2, 9));
+    compressed.write(bzip2(content3, 5));
+
+    final byte[] expected =
+        ByteStreams.toByteArray(new BZip2CompressorInputStream(
+            new ByteArrayInputStream(compressed.toByteArray()), true));
+    assertEquals(content1.length + content3.length, expected.length);
+
+    for (int threads : THREADS) {
+      assertArrayEquals(expected, uncompress(CompressionType.BZIP2,
+          compressed.toByteArray(), threads));
+    }
+  }
+
+  @Test
+  public void testBGZF() throws IOException {
+
+    final byte[] content = createFastq(3000);
+    final byte[] compressed = bgzf(content, 10000);
+
+    final byte[] expected = ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    assertArrayEquals(content, expected);
+
+    for (int threads : THREADS) {
+      assertArrayEquals(expected,
+          uncompress(CompressionType.GZIP, compressed, threads));
+    }
+
+    assertArrayEquals(expected, ByteStreams.toByteArray(
+        new BGZFInputStream(new ByteArrayInputStream(compressed), 3)));
+  }
+
+  @Test
+  public void testMultiMemberGzip() throws IOException {
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    compressed.write(gzip(createFastq(1000)));
+    compressed.write(gzip(new byte[0]));
+    compressed.write(gzip(createFastq(10)));
+
+    final byte[] expected = ByteStreams.toByteArray(new GZIPInputStream(
+        new ByteArrayInputStream(compressed.toByteArray())));
+
+    for (int threads : THREADS) {
+      assertArrayEquals(expected, uncompress(CompressionType.GZIP,
+          compressed.toByteArray(), threads));
+    }
+  }
+
+  @Test
+  public void testMergeBlocks() throws IOException {
+
+    final byte[] data = createFastq(200);
+    final Random random = new Random(2);
+
+    // Cut the data at random positions, only some of them are real boundaries
+    final Set<Integer> positions = new HashSet<>();
+    while (positions.size() < 100) {
+      positions.add(1 + random.nextInt(data.length - 1));
+    }
+    positions.add(data.length);
+
+    final List<Integer> sorted = new ArrayList<>(positions);
+    Collections.sort(sorted);
+
+    final int[] cuts = new int[sorted.size()];
+    final Set<Integer> boundaries = new HashSet<>();
+    for (int i = 0; i < cuts.length; i++) {
+      cuts[i] = sorted.get(i);
+
+      // Never more than 8 false boundaries in a row
+      if (i % 3 == 0 || i == cuts.length - 1) {
+        boundaries.add(cuts[i]);
+      }
+    }
+
+    for (int threads : THREADS) {
+      try (InputStream is =
+          new ChunkInputStream(data, cuts, boundaries, threads)) {
+        assertArrayEquals(data, ByteStreams.toByteArray(is));
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidBlock() throws IOException {
+
+    final byte[] data = createFastq(10);
+    final int[] cuts = {10, 20, data.length};
+    final Set<Integer> boundaries = new HashSet<>();
+
+    try (InputStream is = new ChunkInputStream(data, cuts, boundaries, 2)) {
+      ByteStreams.toByteArray(is);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] uncompress(final CompressionType type,
+      final byte[] compressed, final int threads) throws IOException {
+
+    try (InputStream is = ParallelDecompression.createInputStream(type,
+        new ByteArrayInputStream(compressed), threads)) {
+      return ByteStreams.toByteArray(is);
+    }
+  }
+
+  private static byte[] bzip2(final byte[] content, final int blockSize)
+      throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = new BZip2CompressorOutputStream(baos, blockSize)) {
+      os.write(content);
+    }
+
+    return baos.toByteArray();
+  }
+
+  private static byte[] gzip(final byte[] content) throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = new GZIPOutputStream(baos)) {
+      os.write(content);
+    }
+
+    return baos.toByteArray();
+  }
+
+  /**
+   * Compress data in BGZF format as described in the SAM specification.
+   * @param content the data to compress
+   * @param blockLength the length of the uncompressed data of the blocks
+   * @return the compressed data, with the empty block at the end
+   */
+  private static byte[] bgzf(final byte[] content, final int blockLength) {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    for (int start = 0; start < content.length; start += blockLength) {
+      bgzfBlock(baos, Arrays.copyOfRange(content, start,
+          Math.min(content.length, start + blockLength)));
+    }
+    bgzfBlock(baos, new byte[0]);
+
+    return baos.toByteArray();
+  }
+
+  private static void bgzfBlock(final ByteArrayOutputStream out,
+      final byte[] data) {
+
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data);
+    deflater.finish();
+
+    final byte[] buffer = new byte[data.length + 1024];
+    final int length = deflater.deflate(buffer);
+    deflater.end();
+
+    final CRC32 crc = new CRC32();
+    crc.update(data);
+
+    final int blockSize = 18 + length + 8;
+
+    out.write(new byte[] {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6,
+        0, 'B', 'C', 2, 0}, 0, 16);
+    writeLittleEndian(out, blockSize - 1, 2);
+    out.write(buffer, 0, length);
+    writeLittleEndian(out, crc.getValue(), 4);
+    writeLittleEndian(out, data.length, 4);
+  }
+
+  private static void writeLittleEndian(final ByteArrayOutputStream out,
+      final long value, final int bytes) {
+
+    for (int i = 0; i < bytes; i++) {
+      out.write((int) (value >>> (i * 8)));
+    }
+  }
+
+  private static byte[] createFastq(final int count) {
+
+    final Random random = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+
+      sb.append("@read").append(i).append('\n');
+      for (int j = 0; j < 100; j++) {
+        sb.append("ACGT".charAt(random.nextInt(4)));
+      }
+      sb.append("\n+\n");
+      for (int j = 0; j < 100; j++) {
+        sb.append((char) ('#' + random.nextInt(40)));
+      }
+      sb.append('\n');
+    }
+
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+}
@@ -0,0 +1,246 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+public class DockerContainerPoolTest {
+
+  private static final String IMAGE = "genomicpariscentre/blast:2.2.31";
+  private static final List<String> BINDS =
+      Arrays.asList("/tmp:/tmp", "/data:/data");
+
+  @Test
+  public void testImageCache() throws AozanException {
+
+    final StubDockerEngine engine = new StubDockerEngine();
+    final DockerContainerPool pool = new DockerContainerPool(engine, 2, 10);
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, pool.execute(IMAGE, BINDS, "1000:1000", "/root",
+          Arrays.asList("blastn", "-version"), null, null));
+    }
+
+    // The image is pulled only once
+    assertEquals(Collections.singletonList(IMAGE), engine.getPulledImages());
+
+    // An image already present is not pulled
+    engine.addImage("multiqc");
+    pool.execute("multiqc", BINDS, "1000:1000", "/root",
+        Arrays.asList("multiqc", "--version"), null, null);
+    assertEquals(1, engine.getPulledImages().size());
+
+    pool.close();
+  }
+
+  @Test
+  public void testContainerReuse() throws AozanException, IOException {
+
+    final StubDockerEngine engine = new StubDockerEngine();
+    final DockerContainerPool pool = new DockerContainerPool(engine, 2, 10);
+
+    final File stdout = File.createTempFile("stdout", ".txt");
+    stdout.deleteOnExit();
+
+    for (int i = 0; i < 10; i++) {
+      pool.execute(IMAGE, BINDS, "1000:1000", "/root",
+          Arrays.asList("blastn", "-query", "query" + i + ".fasta"), stdout,
+          null);
+    }
+
+    assertEquals(10, engine.getExecCount());
+    assertEquals(1, engine.getStartedContainerCount());
+    assertEquals("blastn -query query9.fasta",
+        Files.toString(stdout, StandardCharsets.UTF_8));
+
+    // The order of the mount points does not matter
+    pool.execute(IMAGE, Arrays.asList("/data:/data", "/tmp:/tmp"),
+        "1000:1000", "/root", Arrays.asList("blastn"), null, null);
+    assertEquals(1, engine.getStartedContainerCount());
+
+    // Other mount points need another container
+    pool.execute(IMAGE, Collections.singletonList("/tmp:/tmp"), "1000:1000",
+        "/root", Arrays.asList("blastn"), null, null);
+    assertEquals(2, engine.getStartedContainerCount());
+    assertEquals(2, pool.getContainerCount());
+
+    // All the containers are removed when the pool is closed
+    pool.close();
+    assertEquals(0, engine.getRunningContainerCount());
+    assertEquals(0, pool.getContainerCount());
+
+    try {
+      pool.execute(IMAGE, BINDS, "1000:1000", "/root",
+          Arrays.asList("blastn"), null, null);
+      fail();
+    } catch (AozanException e) {
+      assertTrue(e.getMessage().contains("closed"));
+    }
+  }
+
+  @Test
+  public void testFailedCommand() throws AozanException {
+
+    final StubDockerEngine engine = new StubDockerEngine();
+    final DockerContainerPool pool = new DockerContainerPool(engine, 2, 10);
+
+    pool.execute(IMAGE, BINDS, "1000:1000", "/root", Arrays.asList("blastn"),
+        null, null);
+    assertEquals(1, engine.getRunningContainerCount());
+
+    engine.setFailExec(true);
+    try {
+      pool.execute(IMAGE, BINDS, "1000:1000", "/root",
+          Arrays.asList("blastn"), null, null);
+      fail();
+    } catch (AozanException e) {
+      // The container where the command has failed is removed
+      assertEquals(0, engine.getRunningContainerCount());
+    }
+
+    engine.setFailExec(false);
+    pool.execute(IMAGE, BINDS, "1000:1000", "/root", Arrays.asList("blastn"),
+        null, null);
+    assertEquals(2, engine.getStartedContainerCount());
+
+    pool.close();
+  }
+
+  @Test
+  public void testNonZeroExitValue() throws AozanException {
+
+    final StubDockerEngine engine = new StubDockerEngine();
+    final DockerContainerPool pool = new DockerContainerPool(engine, 2, 10);
+
+    engine.setExitValue(1);
+    assertEquals(1, pool.execute(IMAGE, BINDS, "1000:1000", "/root",
+        Arrays.asList("blastn"), null, null));
+
+    // The container where the command has failed is removed
+    assertEquals(0, engine.getRunningContainerCount());
+    assertEquals(0, pool.getContainerCount());
+
+    engine.setExitValue(0);
+    pool.execute(IMAGE, BINDS, "1000:1000", "/root", Arrays.asList("blastn"),
+        null, null);
+    pool.execute(IMAGE, BINDS, "1000:1000", "/root", Arrays.asList("blastn"),
+        null, null);
+    assertEquals(2, engine.getStartedContainerCount());
+    assertEquals(1, pool.getIdleContainerCount());
+
+    pool.close();
+  }
+
+  @Test
+  public void testMaxTotalIdleContainers() throws AozanException {
+
+    final StubDockerEngine engine = new StubDockerEngine();
+    final DockerContainerPool pool = new DockerContainerPool(engine, 2, 3);
+
+    // Each working directory needs another container
+    for (int i = 0; i < 5; i++) {
+      pool.execute(IMAGE, BINDS, "1000:1000", "/dir" + i,
+          Arrays.asList("blastn"), null, null);
+    }
+
+    // The least recently used containers have been removed
+    assertEquals(5, engine.getStartedContainerCount());
+    assertEquals(3, pool.getIdleContainerCount());
+    assertEquals(3, pool.getContainerCount());
+    assertEquals(3, engine.getRunningContainerCount());
+
+    // The container of the first directory has been removed
+    pool.execute(IMAGE, BINDS, "1000:1000", "/dir0", Arrays.asList("blastn"),
+        null, null);
+    assertEquals(6, engine.getStartedContainerCount());
+
+    // The container of the last directory is still idle
+    pool.execute(IMAGE, BINDS, "1000:1000", "/dir4", Arrays.asList("blastn"),
+        null, null);
+    assertEquals(6, engine.getStartedContainerCount());
+    assertEquals(3, engine.getRunningContainerCount());
+
+    pool.close();
+    assertEquals(0, engine.getRunningContainerCount());
+  }
+
+  @Test
+  public void testKeepAliveEntrypoint() throws AozanException {
+
+    final StubDockerEngine engine = new StubDockerEngine();
+    final DockerContainerPool pool = new DockerContainerPool(engine, 0, 10);
+
+    // Image with a shell
+    engine.addImage(IMAGE);
+    pool.execute(IMAGE, BINDS, "1000:1000", "/root", Arrays.asList("blastn"),
+        null, null);
+    assertEquals(DockerContainerPool.KEEP_ALIVE_ENTRYPOINTS.get(0),
+        engine.getEntrypoint("container1"));
+
+    // Image without shell
+    engine.addImage("noshell", "sh");
+    pool.execute("noshell", BINDS, "1000:1000", "/root",
+        Arrays.asList("tool"), null, null);
+    assertEquals(Arrays.asList("sleep", "infinity"),
+        engine.getEntrypoint("container2"));
+
+    // Image with an entrypoint set
+    final List<String> entrypoint =
+        Arrays.asList("/bin/busybox", "sleep", "86400");
+    engine.addImage("busybox", "sh", "sleep", "tail");
+    pool.setKeepAliveEntrypoint("busybox", entrypoint);
+    pool.execute("busybox", BINDS, "1000:1000", "/root",
+        Arrays.asList("tool"), null, null);
+    assertEquals(entrypoint, engine.getEntrypoint("container3"));
+
+    // Image where no entrypoint can be started
+    engine.addImage("distroless", "sh", "sleep", "tail");
+    try {
+      pool.execute("distroless", BINDS, "1000:1000", "/root",
+          Arrays.asList("tool"), null, null);
+      fail();
+    } catch (AozanException e) {
+      assertTrue(e.getMessage().contains("entrypoint"));
+    }
+
+    assertEquals(3, engine.getStartedContainerCount());
+    pool.close();
+  }
+
+}
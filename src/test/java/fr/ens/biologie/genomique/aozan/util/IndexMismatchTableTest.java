@@ -0,0 +1,170 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.collectors.UndeterminedIndexesProcessThread;
+
+public class IndexMismatchTableTest {
+
+  private static final char[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+  @Test
+  public void testGet() {
+
+    final IndexMismatchTable<Integer> table = new IndexMismatchTable<>(2);
+    table.addIndex("ACGTAC", 1);
+    table.addIndex("ACGTTT", 2);
+
+    List<IndexMismatchTable.Match<Integer>> matches = table.get("ACGTAC");
+    assertEquals(2, matches.size());
+    assertEquals(1, (int) matches.get(0).getTarget());
+    assertEquals(0, matches.get(0).getMismatches());
+    assertEquals(2, (int) matches.get(1).getTarget());
+    assertEquals(2, matches.get(1).getMismatches());
+    assertEquals(0, table.getMinMismatches("ACGTAC"));
+
+    matches = table.get("ACGTAT");
+    assertEquals(2, matches.size());
+    assertEquals(1, matches.get(0).getMismatches());
+    assertEquals(1, matches.get(1).getMismatches());
+
+    matches = table.get("NCGTAC");
+    assertEquals(1, matches.size());
+    assertEquals(1, (int) matches.get(0).getTarget());
+    assertEquals(1, matches.get(0).getMismatches());
+
+    // More than 2 mismatches
+    assertTrue(table.get("TTTTAC").isEmpty());
+    assertEquals(-1, table.getMinMismatches("TTTTAC"));
+
+    // Invalid length
+    assertTrue(table.get("ACGTA").isEmpty());
+    assertTrue(table.get("ACGTACG").isEmpty());
+  }
+
+  @Test
+  public void testMaxMismatches() {
+
+    final IndexMismatchTable<Integer> table = new IndexMismatchTable<>(1);
+    table.addIndex("ACGT", 1);
+
+    // 1 + 4 * 4 variants
+    assertEquals(17, table.size());
+    assertEquals(1, table.getMinMismatches("ACGA"));
+    assertTrue(table.get("ACAA").isEmpty());
+  }
+
+  @Test
+  public void testDualIndexes() {
+
+    final IndexMismatchTable<Integer> table = new IndexMismatchTable<>(2);
+    table.addIndex("ACGTAC+GGTTAA", 1);
+    table.addIndex("ACGTAC+CCAATT", 2);
+
+    assertEquals(0, table.getMinMismatches("ACGTAC+GGTTAA"));
+    assertEquals(1, table.get("ACGTAC+GGTTAA").size());
+
+    // One mismatch on each index
+    final List<IndexMismatchTable.Match<Integer>> matches =
+        table.get("ACGTAA+GGTTAT");
+    assertEquals(1, matches.size());
+    assertEquals(1, (int) matches.get(0).getTarget());
+    assertEquals(2, matches.get(0).getMismatches());
+
+    // The separator is never mutated
+    assertTrue(table.get("ACGTACAGGTTAA").isEmpty());
+
+    // A read with a single index does not match the dual indexes
+    assertEquals(-1, table.getMinMismatches("ACGTAC"));
+    assertEquals(-1, table.getMinMismatches("ACGTAC+GGTTA"));
+  }
+
+  @Test
+  public void testRandomIndexes() {
+
+    final Random random = new Random(42);
+    final Map<Integer, String> indexes = new HashMap<>();
+    final IndexMismatchTable<Integer> table = new IndexMismatchTable<>(2);
+
+    for (int i = 0; i < 96; i++) {
+      final String index = randomIndex(random, 8);
+      indexes.put(i, index);
+      table.addIndex(index, i);
+    }
+
+    for (int i = 0; i < 10000; i++) {
+
+      // Use a random index or an index of the table with random mutations
+      final String query;
+      if (random.nextBoolean()) {
+        query = randomIndex(random, 8);
+      } else {
+        final char[] array = indexes.get(random.nextInt(96)).toCharArray();
+        for (int j = random.nextInt(4); j > 0; j--) {
+          array[random.nextInt(8)] = BASES[random.nextInt(BASES.length)];
+        }
+        query = new String(array);
+      }
+
+      final List<Integer> expected = new ArrayList<>();
+      for (Map.Entry<Integer, String> e : indexes.entrySet()) {
+        if (UndeterminedIndexesProcessThread.mismatches(e.getValue(),
+            query) <= 2) {
+          expected.add(e.getKey());
+        }
+      }
+
+      final List<Integer> found = new ArrayList<>();
+      for (IndexMismatchTable.Match<Integer> m : table.get(query)) {
+        assertEquals(UndeterminedIndexesProcessThread
+            .mismatches(indexes.get(m.getTarget()), query), m.getMismatches());
+        found.add(m.getTarget());
+      }
+
+      assertEquals(expected, found);
+    }
+  }
+
+  private static String randomIndex(final Random random, final int length) {
+
+    final char[] result = new char[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = BASES[random.nextInt(BASES.length)];
+    }
+
+    return new String(result);
+  }
+
+}
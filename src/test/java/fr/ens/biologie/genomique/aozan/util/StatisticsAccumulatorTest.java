@@ -0,0 +1,226 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StatisticsAccumulatorTest {
+
+  @Test
+  public void testMoments() {
+
+    final Random random = new Random(17);
+    final double[] values = new double[1000];
+    final StatisticsAccumulator stats = new StatisticsAccumulator();
+
+    assertEquals(0, stats.getN());
+    assertTrue(Double.isNaN(stats.getMean()));
+    assertTrue(Double.isNaN(stats.getStandardDeviation()));
+    assertTrue(Double.isNaN(stats.getMin()));
+    assertTrue(Double.isNaN(stats.getMedian()));
+    assertEquals(0.0, stats.getSum(), 0.0);
+
+    stats.addValue(4.0);
+    assertEquals(4.0, stats.getMean(), 0.0);
+    assertEquals(0.0, stats.getStandardDeviation(), 0.0);
+    assertEquals(0.0, stats.getStandardDeviation(true), 0.0);
+
+    values[0] = 4.0;
+    for (int i = 1; i < values.length; i++) {
+      values[i] = 1e6 + random.nextDouble() * 1000.0;
+      stats.addValue(values[i]);
+    }
+
+    // Infinite values are ignored
+    stats.addValue(Double.POSITIVE_INFINITY);
+
+    double sum = 0.0;
+    for (final double v : values) {
+      sum += v;
+    }
+    final double mean = sum / values.length;
+    double m2 = 0.0;
+    for (final double v : values) {
+      m2 += (v - mean) * (v - mean);
+    }
+
+    assertEquals(values.length, stats.getN());
+    assertEquals(sum, stats.getSum(), 0.0);
+    assertEquals(mean, stats.getMean(), 1e-9);
+    assertEquals(Math.sqrt(m2 / values.length), stats.getStandardDeviation(),
+        1e-9);
+    assertEquals(Math.sqrt(m2 / (values.length - 1)),
+        stats.getStandardDeviation(true), 1e-9);
+    assertEquals(4.0, stats.getMin(), 0.0);
+  }
+
+  @Test
+  public void testWithoutZero() {
+
+    final StatisticsAccumulator stats = new StatisticsAccumulator();
+    final StatisticsAccumulator withoutZero = stats.withoutZero();
+
+    assertTrue(Double.isNaN(withoutZero.getMean()));
+
+    for (final double v : new double[] {0, 2, 0, 4, 0, 9, -3}) {
+      stats.addValue(v);
+    }
+
+    assertEquals(7, stats.getN());
+    assertEquals(4, withoutZero.getN());
+    assertEquals(3.0, withoutZero.getMean(), 1e-15);
+    assertEquals(3.0, withoutZero.getMean(), 1e-15);
+    assertEquals(12.0 / 7, stats.getMean(), 1e-15);
+    assertEquals(-3.0, withoutZero.getMin(), 0.0);
+    assertEquals(0.0, stats.getMedian(), 0.0);
+    assertEquals(3.0, withoutZero.getMedian(), 0.0);
+
+    // The view follows the accumulator
+    stats.addValue(7.0);
+    assertEquals(4.0, withoutZero.getMedian(), 0.0);
+    assertEquals(1.0, stats.getMedian(), 0.0);
+
+    try {
+      withoutZero.addValue(1.0);
+      fail();
+    } catch (UnsupportedOperationException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testExactMedian() {
+
+    final Random random = new Random(5);
+
+    for (int n = 1; n < 300; n += 7) {
+
+      final double[] values = new double[n];
+      final StatisticsAccumulator stats = new StatisticsAccumulator();
+
+      for (int i = 0; i < n; i++) {
+        values[i] = random.nextInt(4) == 0 ? 0 : random.nextGaussian() * 100;
+        stats.addValue(values[i]);
+      }
+
+      Arrays.sort(values);
+      final double expected = n % 2 == 1
+          ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2;
+
+      assertEquals(expected, stats.getMedian(), 1e-12);
+      assertEquals(values[0], stats.getQuantile(0.0), 0.0);
+      assertEquals(values[n - 1], stats.getQuantile(1.0), 0.0);
+    }
+
+    // Bounded integer domain
+    final StatisticsAccumulator stats = new StatisticsAccumulator();
+    for (int i = 0; i < 100000; i++) {
+      stats.addValue(i % 41 + 1);
+    }
+    assertEquals(21.0, stats.getMedian(), 0.0);
+    assertEquals(11.0, stats.getQuantile(0.25), 0.0);
+  }
+
+  @Test
+  public void testApproximateQuantiles() {
+
+    final Random random = new Random(11);
+    final int n = 200000;
+    final double[] values = new double[n];
+    final QuantileSketch sketch = new QuantileSketch();
+
+    for (int i = 0; i < n; i++) {
+      values[i] = random.nextDouble();
+      sketch.add(values[i]);
+    }
+
+    assertTrue(
+        sketch.getCentroidCount() <= 5 * QuantileSketch.DEFAULT_COMPRESSION);
+
+    Arrays.sort(values);
+    for (final double q : new double[] {0.01, 0.1, 0.5, 0.9, 0.99}) {
+      assertEquals(values[(int) (q * n)], sketch.quantile(q), 0.005);
+    }
+  }
+
+  @Test
+  public void testMerge() {
+
+    final Random random = new Random(3);
+    final StatisticsAccumulator all = new StatisticsAccumulator();
+    final StatisticsAccumulator[] parts = new StatisticsAccumulator[4];
+
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = new StatisticsAccumulator();
+    }
+
+    for (int i = 0; i < 10000; i++) {
+      final double v = random.nextInt(10) == 0 ? 0.0 : random.nextGaussian();
+      all.addValue(v);
+      parts[i % parts.length].addValue(v);
+    }
+
+    final StatisticsAccumulator merged = new StatisticsAccumulator();
+    for (final StatisticsAccumulator part : parts) {
+      merged.merge(part);
+    }
+
+    assertEquals(all.getN(), merged.getN());
+    assertEquals(all.withoutZero().getN(), merged.withoutZero().getN());
+    assertEquals(all.getMean(), merged.getMean(), 1e-12);
+    assertEquals(all.getStandardDeviation(), merged.getStandardDeviation(),
+        1e-12);
+    assertEquals(all.withoutZero().getMean(), merged.withoutZero().getMean(),
+        1e-12);
+    assertEquals(all.getSum(), merged.getSum(), 1e-9);
+    assertEquals(all.getMin(), merged.getMin(), 0.0);
+    assertEquals(all.getMax(), merged.getMax(), 0.0);
+    assertEquals(all.getMedian(), merged.getMedian(), 0.02);
+  }
+
+  @Test
+  public void testStatisticsUtils() {
+
+    final StatisticsUtils stats =
+        new StatisticsUtils(Arrays.asList(3, 0, 1, 0, 8));
+
+    assertEquals(2.4, stats.getMean(), 1e-15);
+    assertEquals(4.0, stats.getMeanWithoutZero(), 1e-15);
+    assertEquals(4.0, stats.getMeanWithoutZero(), 1e-15);
+    assertEquals(1.0, stats.getMediane(), 0.0);
+    assertEquals(3.0, stats.getMedianWithoutZero(), 0.0);
+    assertEquals(12, stats.getSumToInteger());
+
+    assertEquals(0.0, new StatisticsUtils().getMedianWithoutZero(), 0.0);
+    assertTrue(Double.isNaN(new StatisticsUtils().getMediane()));
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Joiner;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a Docker engine that does not need a Docker daemon. The
+ * commands executed in the containers are not executed, they are written in
+ * the standard output file and their exit value can be set.
+ * @author Laurent Jourdren
+ */
+public class StubDockerEngine implements DockerEngine {
+
+  private final Set<String> images = new HashSet<>();
+  private final Map<String, List<String>> runningContainers = new HashMap<>();
+  private final Map<String, List<String>> entrypoints = new HashMap<>();
+  private final Map<String, Set<String>> missingPrograms = new HashMap<>();
+  private final List<String> pulledImages = new ArrayList<>();
+  private int startedContainerCount;
+  private int execCount;
+  private boolean failExec;
+  private int exitValue;
+
+  @Override
+  public synchronized boolean isImagePresent(final String imageName) {
+
+    return this.images.contains(imageName);
+  }
+
+  @Override
+  public synchronized void pullImage(final String imageName) {
+
+    this.pulledImages.add(imageName);
+    this.images.add(imageName);
+  }
+
+  @Override
+  public synchronized String startContainer(final String imageName,
+      final List<String> entrypoint, final List<String> binds,
+      final String user, final String workDir) throws AozanException {
+
+    if (!this.images.contains(imageName)) {
+      throw new AozanException("Unknown image: " + imageName);
+    }
+
+    final Set<String> missing = this.missingPrograms.get(imageName);
+    if (missing != null && missing.contains(entrypoint.get(0))) {
+      throw new AozanException(
+          "Executable file not found in $PATH: " + entrypoint.get(0));
+    }
+
+    final String id = "container" + (++this.startedContainerCount);
+    this.runningContainers.put(id, new ArrayList<>(binds));
+    this.entrypoints.put(id, new ArrayList<>(entrypoint));
+
+    return id;
+  }
+
+  @Override
+  public int exec(final String containerId, final List<String> cmd,
+      final File stdoutFile, final File stderrFile) throws AozanException {
+
+    synchronized (this) {
+
+      if (!this.runningContainers.containsKey(containerId)) {
+        throw new AozanException("Unknown container: " + containerId);
+      }
+
+      this.execCount++;
+
+      if (this.failExec) {
+        throw new AozanException("Exec failed in container: " + containerId);
+      }
+    }
+
+    final int result;
+    synchronized (this) {
+      result = this.exitValue;
+    }
+
+    if (stdoutFile != null) {
+      try (OutputStream out = new FileOutputStream(stdoutFile)) {
+        out.write(Joiner.on(' ').join(cmd).getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new AozanException(e);
+      }
+    }
+
+    return result;
+  }
+
+  @Override
+  public synchronized void removeContainer(final String containerId)
+      throws AozanException {
+
+    if (this.runningContainers.remove(containerId) == null) {
+      throw new AozanException("Unknown container: " + containerId);
+    }
+  }
+
+  //
+  // Test methods
+  //
+
+  /**
+   * Add an image present on the host.
+   * @param imageName the name of the image
+   */
+  public synchronized void addImage(final String imageName) {
+    this.images.add(imageName);
+  }
+
+  /**
+   * Add an image present on the host where some programs are not available.
+   * @param imageName the name of the image
+   * @param programs the programs that are not available in the image
+   */
+  public synchronized void addImage(final String imageName,
+      final String... programs) {
+
+    this.images.add(imageName);
+    this.missingPrograms.put(imageName,
+        new HashSet<>(Arrays.asList(programs)));
+  }
+
+  /**
+   * Get the entrypoint of a container.
+   * @param containerId the identifier of the container
+   * @return the entrypoint of the container
+   */
+  public synchronized List<String> getEntrypoint(final String containerId) {
+    return this.entrypoints.get(containerId);
+  }
+
+  /**
+   * Get the pulled images.
+   * @return a list with the pulled images
+   */
+  public synchronized List<String> getPulledImages() {
+    return new ArrayList<>(this.pulledImages);
+  }
+
+  /**
+   * Get the number of started containers.
+   * @return the number of started containers
+   */
+  public synchronized int getStartedContainerCount() {
+    return this.startedContainerCount;
+  }
+
+  /**
+   * Get the number of running containers.
+   * @return the number of running containers
+   */
+  public synchronized int getRunningContainerCount() {
+    return this.runningContainers.size();
+  }
+
+  /**
+   * Get the number of executed commands.
+   * @return the number of executed commands
+   */
+  public synchronized int getExecCount() {
+    return this.execCount;
+  }
+
+  /**
+   * Make the next commands fail.
+   * @param failExec true if the commands must fail
+   */
+  public synchronized void setFailExec(final boolean failExec) {
+    this.failExec = failExec;
+  }
+
+  /**
+   * Set the exit value of the next commands.
+   * @param exitValue the exit value
+   */
+  public synchronized void setExitValue(final int exitValue) {
+    this.exitValue = exitValue;
+  }
+
+}